@@ -0,0 +1,194 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Минимальный измерительный стенд: прогрев и серия измерительных итераций
+ * фиксированной длительности с подсчётом пропускной способности, объёма
+ * выделенной памяти (по данным ThreadMXBean для текущего потока) и работы
+ * сборщика мусора.
+ * <p>
+ * Результат каждой операции «поглощается» (см. consume), чтобы JIT-компилятор
+ * не мог исключить вычисление как неиспользуемое.
+ * <p>
+ * Стенд, созданный методом listing, измерений не выполняет, а только
+ * перечисляет имена измерений, соответствующих фильтру.
+ */
+final class BenchmarkRunner {
+
+	/**
+	 * Измеряемая операция.
+	 */
+	@FunctionalInterface
+	interface Operation {
+		Object run() throws Exception;
+	}
+
+	// Число операций между проверками времени окончания итерации.
+	private static final int BATCH_OPERATIONS = 16;
+
+	private final Pattern filter;
+	private final int warmupIterations;
+	private final int measurementIterations;
+	private final long iterationNanos;
+	private final com.sun.management.ThreadMXBean threads;
+	private final List<String> names;
+
+	// Состояние поглощения результатов: линейный конгруэнтный генератор и
+	// маска, определяющая, как редко результат сохраняется в поле escaped.
+	private int consumeSeed = 1;
+	private int consumeMask = 1;
+
+	volatile Object escaped;
+
+	/**
+	 * @param filter                Регулярное выражение -- запускаются только
+	 *                              измерения, имя которых ему соответствует.
+	 * @param warmupIterations      Число итераций прогрева.
+	 * @param measurementIterations Число измерительных итераций.
+	 * @param iterationMillis       Длительность итерации, мс.
+	 */
+	BenchmarkRunner(String filter, int warmupIterations, int measurementIterations, long iterationMillis) {
+		this(filter, warmupIterations, measurementIterations, iterationMillis, null);
+	}
+
+	private BenchmarkRunner(String filter, int warmupIterations, int measurementIterations, long iterationMillis,
+			List<String> names) {
+		this.filter = Pattern.compile(filter);
+		this.names = names;
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.iterationNanos = iterationMillis * 1_000_000;
+		this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		threads.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	/**
+	 * @return Стенд, перечисляющий имена измерений, соответствующих фильтру,
+	 *         без их выполнения.
+	 */
+	static BenchmarkRunner listing(String filter) {
+		return new BenchmarkRunner(filter, 0, 0, 0, new ArrayList<>());
+	}
+
+	/**
+	 * @return Имена измерений, перечисленных стендом, созданным методом
+	 *         listing, в порядке перечисления.
+	 */
+	List<String> names() {
+		return names;
+	}
+
+	/**
+	 * @return true, если измерение с заданным именем будет выполнено.
+	 */
+	boolean accepts(String name) {
+		if (!filter.matcher(name).find()) {
+			return false;
+		}
+		if (names != null) {
+			names.add(name);
+			return false;
+		}
+		return true;
+	}
+
+	static void printHeader() {
+		System.out.printf(Locale.ROOT, "%-44s %14s %10s %12s %12s %8s %8s%n",
+				"Benchmark", "ops/s", "± %", "alloc MB/s", "alloc B/op", "gc", "gc ms");
+	}
+
+	/**
+	 * Выполняет измерение, если его имя соответствует фильтру, и выводит
+	 * результат строкой таблицы.
+	 */
+	void run(String name, Operation operation) throws Exception {
+		if (!accepts(name)) {
+			return;
+		}
+
+		for (int i = 0; i < warmupIterations; ++i) {
+			iterate(operation);
+		}
+
+		var rates = new double[measurementIterations];
+		long operations = 0;
+		long allocatedBytes = 0;
+		long nanos = 0;
+		long gcCount = -gcCount();
+		long gcMillis = -gcMillis();
+		for (int i = 0; i < measurementIterations; ++i) {
+			long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+			long start = System.nanoTime();
+			long count = iterate(operation);
+			long elapsed = System.nanoTime() - start;
+			allocatedBytes += threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+			operations += count;
+			nanos += elapsed;
+			rates[i] = count * 1e9 / elapsed;
+		}
+		gcCount += gcCount();
+		gcMillis += gcMillis();
+
+		double mean = 0;
+		for (double rate : rates) {
+			mean += rate;
+		}
+		mean /= rates.length;
+		double variance = 0;
+		for (double rate : rates) {
+			variance += (rate - mean) * (rate - mean);
+		}
+		double error = rates.length > 1 ? Math.sqrt(variance / (rates.length - 1)) / mean * 100 : 0;
+
+		System.out.printf(Locale.ROOT, "%-44s %14.1f %10.1f %12.1f %12.1f %8d %8d%n",
+				name, mean, error, allocatedBytes * 1e9 / nanos / (1024 * 1024),
+				(double) allocatedBytes / operations, gcCount, gcMillis);
+	}
+
+	private long iterate(Operation operation) throws Exception {
+		long deadline = System.nanoTime() + iterationNanos;
+		long count = 0;
+		do {
+			for (int i = 0; i < BATCH_OPERATIONS; ++i) {
+				consume(operation.run());
+			}
+			count += BATCH_OPERATIONS;
+		} while (System.nanoTime() < deadline);
+		return count;
+	}
+
+	/**
+	 * Поглощает результат операции. Результат изредка -- со всё убывающей
+	 * частотой -- сохраняется в volatile-поле, поэтому JIT-компилятор не может
+	 * считать его неиспользуемым, а стоимость поглощения не зависит от
+	 * результата: в отличие от System.identityHashCode, не вычисляется хеш-код
+	 * объекта, сохраняемый в его заголовке.
+	 */
+	private void consume(Object result) {
+		int seed = consumeSeed = consumeSeed * 1664525 + 1013904223;
+		if ((seed & consumeMask) == 0) {
+			escaped = result;
+			consumeMask = (consumeMask << 1) + 1;
+		}
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+}
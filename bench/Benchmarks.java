@@ -0,0 +1,266 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.regex.Pattern;
+
+import entities.Gender;
+import entities.UserData;
+import entities.UserDataView;
+import exceptions.ParseException;
+import storage.BinaryRecordCodec;
+
+/**
+ * Измерения производительности горячих путей: синтаксического разбора
+ * строк (UserDataParser и UserDataScanningParser), строкового
+ * представления данных и сохранения данных в директории с различным числом
+ * уже существующих файлов.
+ * <p>
+ * Запуск (из корня репозитория):
+ *
+ * <pre>
+ * javac -encoding UTF-8 -d out $(find src bench -name '*.java') &amp;&amp; java -cp out Benchmarks [фильтр]
+ * </pre>
+ *
+ * где фильтр -- регулярное выражение для имён измерений. Параметры задаются
+ * системными свойствами: bench.warmup и bench.iterations -- число итераций
+ * прогрева и измерения, bench.millis -- длительность итерации, мс,
+ * bench.files -- числа существующих файлов директории данных через запятую,
+ * bench.fork -- выполнять ли каждое измерение в отдельной JVM (по умолчанию
+ * true).
+ * <p>
+ * Каждое измерение выполняется в собственной JVM, запускаемой с теми же
+ * параметрами, что и текущая: иначе профиль, накопленный JIT-компилятором на
+ * предыдущих измерениях (например, разбор строки обоими разборщиками через
+ * общий интерфейс Parser), влияет на результаты последующих. У проекта нет
+ * сборки с зависимостями, поэтому JMH не используется, а стенд
+ * (BenchmarkRunner) повторяет его основные приёмы.
+ */
+public class Benchmarks {
+
+	private static final String VALID_SHORT = "Иванов Иван Иванович 01.02.1990 89001234567 m";
+	private static final String VALID_LONG = String.join(" ",
+			"Иванов".repeat(200), "Иван".repeat(200), "Иванович".repeat(200),
+			"01.02.1990", "8".repeat(1000), "m");
+
+	// Строки, разбор которых завершается проблемой каждого из родов,
+	// порождаемых разборщиком. Проблема WRONG_ITEMS_COUNT выявляется методом
+	// setInput, UNSPECIFIED разборщиком не порождается.
+	private static final String[][] MALFORMED = {
+			{ "missing-data", "Иванов Иван Иванович 01.02.1990 89001234567 12" },
+			{ "ambiguous-data", "Иванов Иван Иванович 01.02.1990 02.03.1991 m" },
+			{ "wrong-format", "Иванов Иван Иванович 32.01.1990 89001234567 m" },
+			{ "wrong-items-count", "Иванов Иван Иванович 01.02.1990 89001234567" },
+	};
+
+	// Наибольшее число различных файлов, в которые сохраняются данные при
+	// измерении, -- чтобы не увеличивать заметно объём директории.
+	private static final int MAX_TARGET_FILES = 1024;
+
+	// Системное свойство, которым отмечается JVM, запущенная для выполнения
+	// одного измерения.
+	private static final String FORKED_PROPERTY = "bench.forked";
+
+	public static void main(String[] args) throws Exception {
+		var filter = args.length > 0 ? args[0] : "";
+		boolean forked = Boolean.getBoolean(FORKED_PROPERTY);
+		if (!forked && Boolean.parseBoolean(System.getProperty("bench.fork", "true"))) {
+			fork(filter);
+			return;
+		}
+
+		var runner = new BenchmarkRunner(filter,
+				Integer.getInteger("bench.warmup", 3),
+				Integer.getInteger("bench.iterations", 5),
+				Long.getLong("bench.millis", 1000));
+		if (!forked) {
+			BenchmarkRunner.printHeader();
+		}
+		runAll(runner);
+	}
+
+	/**
+	 * Выполняет каждое измерение, имя которого соответствует фильтру, в
+	 * отдельной JVM.
+	 */
+	private static void fork(String filter) throws Exception {
+		var listing = BenchmarkRunner.listing(filter);
+		runAll(listing);
+
+		var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+		var jvmArguments = ManagementFactory.getRuntimeMXBean().getInputArguments();
+		BenchmarkRunner.printHeader();
+		System.out.flush();
+		for (var name : listing.names()) {
+			var command = new ArrayList<String>();
+			command.add(java);
+			command.addAll(jvmArguments);
+			command.add("-D" + FORKED_PROPERTY + "=true");
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(Benchmarks.class.getName());
+			command.add("^" + Pattern.quote(name) + "$");
+			int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+			if (exitCode != 0) {
+				throw new IllegalStateException("Измерение " + name + " завершилось с кодом " + exitCode);
+			}
+		}
+	}
+
+	private static void runAll(BenchmarkRunner runner) throws Exception {
+		parserBenchmarks(runner, "regex", new UserDataParser());
+		parserBenchmarks(runner, "scanning", new UserDataScanningParser());
+		viewParserBenchmarks(runner);
+		formattingBenchmarks(runner);
+		for (var files : System.getProperty("bench.files", "10,10000,500000").split(",")) {
+			saverBenchmark(runner, Integer.parseInt(files.trim()));
+		}
+	}
+
+	private static void parserBenchmarks(BenchmarkRunner runner, String kind, Parser<UserData> parser)
+			throws Exception {
+		var prefix = "parser." + kind + ".";
+
+		runner.run(prefix + "setInput.valid-short", () -> parser.setInput(VALID_SHORT));
+		runner.run(prefix + "setInput.valid-long", () -> parser.setInput(VALID_LONG));
+		runner.run(prefix + "parse.valid-short", () -> parse(parser, VALID_SHORT));
+		runner.run(prefix + "parse.valid-long", () -> parse(parser, VALID_LONG));
+		for (var malformed : MALFORMED) {
+			runner.run(prefix + "parse." + malformed[0], () -> parse(parser, malformed[1]));
+		}
+		runner.run(prefix + "tryParse.valid-short", () -> tryParse(parser, VALID_SHORT));
+		for (var malformed : MALFORMED) {
+			runner.run(prefix + "tryParse." + malformed[0], () -> tryParse(parser, malformed[1]));
+		}
+	}
+
+	/**
+	 * Разбор в многократно используемое представление UserDataView.
+	 */
+	private static void viewParserBenchmarks(BenchmarkRunner runner) throws Exception {
+		var parser = new UserDataScanningParser();
+		var view = new UserDataView();
+		var prefix = "parser.scanning.parseView.";
+
+		runner.run(prefix + "valid-short", () -> parse(parser, VALID_SHORT, view));
+		runner.run(prefix + "valid-long", () -> parse(parser, VALID_LONG, view));
+		for (var malformed : MALFORMED) {
+			runner.run(prefix + malformed[0], () -> parse(parser, malformed[1], view));
+		}
+	}
+
+	private static Object parse(UserDataScanningParser parser, String input, UserDataView view) {
+		int itemsCountDiff = parser.setInput(input);
+		if (itemsCountDiff != 0) {
+			return itemsCountDiff;
+		}
+		try {
+			parser.parse(view);
+			return view;
+		} catch (ParseException e) {
+			return e;
+		}
+	}
+
+	/**
+	 * Разбор строки так, как его выполняет пакетная загрузка: строки с
+	 * неверным количеством полей не разбираются.
+	 */
+	private static Object parse(Parser<UserData> parser, String input) {
+		int itemsCountDiff = parser.setInput(input);
+		if (itemsCountDiff != 0) {
+			return itemsCountDiff;
+		}
+		try {
+			return parser.parse();
+		} catch (ParseException e) {
+			return e;
+		}
+	}
+
+	private static Object tryParse(Parser<UserData> parser, String input) {
+		int itemsCountDiff = parser.setInput(input);
+		return itemsCountDiff != 0 ? itemsCountDiff : parser.tryParse();
+	}
+
+	private static void formattingBenchmarks(BenchmarkRunner runner) throws Exception {
+		var shortData = userData("Иванов", "Иван", "Иванович", "89001234567");
+		var longData = userData("Иванов".repeat(200), "Иван".repeat(200), "Иванович".repeat(200), "8".repeat(1000));
+		var codec = new BinaryRecordCodec();
+
+		runner.run("format.toString.short", shortData::toString);
+		runner.run("format.toString.long", longData::toString);
+		runner.run("format.binary.short", () -> codec.encode(shortData));
+		runner.run("format.binary.long", () -> codec.encode(longData));
+	}
+
+	/**
+	 * Сохранение данных с параметрами по умолчанию в директорию, содержащую
+	 * заданное число файлов.
+	 */
+	private static void saverBenchmark(BenchmarkRunner runner, int filesCount) throws Exception {
+		var name = "saver.save.files-" + filesCount;
+		if (!runner.accepts(name)) {
+			return;
+		}
+
+		var dir = Files.createTempDirectory("bench-saver-");
+		try {
+			for (int i = 0; i < filesCount; ++i) {
+				Files.createFile(dir.resolve(lastName(i)));
+			}
+			// Файлы, в которые сохраняются данные, равномерно распределены
+			// среди существующих.
+			var targets = new String[Math.min(filesCount, MAX_TARGET_FILES)];
+			for (int i = 0; i < targets.length; ++i) {
+				targets[i] = lastName(i * (filesCount / targets.length));
+			}
+
+			var userData = userData(targets[0], "Иван", "Иванович", "89001234567");
+			var next = new int[1];
+			try (var saver = new UserDataSaver(dir.toString(), UserData::toString)) {
+				runner.run(name, () -> {
+					userData.setLastName(targets[next[0]++ % targets.length]);
+					return saver.save(userData);
+				});
+			}
+		} finally {
+			deleteRecursively(dir);
+		}
+	}
+
+	/**
+	 * @return Фамилия, однозначно соответствующая номеру, -- суффикс
+	 *         составлен из букв кириллицы по номеру в 32-ричной системе.
+	 */
+	private static String lastName(int number) {
+		var sb = new StringBuilder("Петров");
+		do {
+			sb.append((char) ('а' + number % 32));
+			number /= 32;
+		} while (number > 0);
+		return sb.toString();
+	}
+
+	private static UserData userData(String lastName, String firstName, String middleName, String phoneNumber) {
+		var userData = new UserData();
+		userData.setLastName(lastName);
+		userData.setFirstName(firstName);
+		userData.setMiddleName(middleName);
+		userData.setBirthDate(LocalDate.of(1990, 2, 1));
+		userData.setPhoneNumber(phoneNumber);
+		userData.setGender(Gender.MALE);
+		return userData;
+	}
+
+	private static void deleteRecursively(Path dir) throws IOException {
+		try (var paths = Files.walk(dir)) {
+			for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+}
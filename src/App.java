@@ -1,7 +1,30 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 import entities.UserData;
 import exceptions.ParseException;
+import metrics.IngestionMetrics;
+import storage.BinaryRecordCodec;
+import storage.BlockCompressedCodec;
+import storage.CompactRecordStore;
+import storage.CompressionDictionary;
+import storage.MappedQueryEngine;
+import storage.OffHeapRecordStore;
+import storage.QueryEngine;
+import storage.RecordAggregator;
+import storage.RecordCodec;
+import storage.RecordIndexes;
+import storage.ShardedLayout;
+import storage.TextRecordCodec;
 import utils.ConsoleUtils;
 import utils.UncloseableInputStream;
 
@@ -20,12 +43,514 @@ public class App {
             + "\tПол \u2014 символ латиницей f или m\n"
             + "\n>";
 
-    final static Parser<UserData> userDataParser = new UserDataParser();
+    final static Parser<UserData> userDataParser = InstrumentedParser.wrapIfEnabled(new UserDataScanningParser());
     static Saver<UserData> userDataSaver;
 
+    final static String BATCH_OPTION = "--batch";
+    final static String REJECTS_OPTION = "--rejects";
+    final static String THREADS_OPTION = "--threads";
+    final static String GROUP_COMMIT_OPTION = "--group-commit";
+    final static String SHARED_OPTION = "--shared";
+    final static String BINARY_OPTION = "--binary";
+    final static String COMPRESSED_OPTION = "--compressed";
+    final static String DEDUP_OPTION = "--dedup";
+    final static String SHARDED_OPTION = "--sharded";
+    final static String REJECTS_FILE_SUFFIX = ".rejects";
+    final static String QUERY_OPTION = "--query";
+    final static String QUERY_BY_LAST_NAME = "last-name";
+    final static String QUERY_BY_PHONE_NUMBER = "phone";
+    final static String QUERY_BY_BIRTH_DATE = "birth-date";
+    final static String RESIDENT_OPTION = "--resident";
+    final static String COLUMNAR_OPTION = "--columnar";
+    final static String QUERY_PROMPT = "Введите запрос: " + QUERY_BY_LAST_NAME + " <Фамилия>"
+            + " | " + QUERY_BY_PHONE_NUMBER + " <Номер_телефона>"
+            + " | " + QUERY_BY_BIRTH_DATE + " <dd.mm.yyyy> <dd.mm.yyyy>"
+            + " (пустая строка \u2014 завершение работы)\n>";
+    final static String REINDEX_OPTION = "--reindex";
+    final static String SERVE_OPTION = "--serve";
+    final static String RESHARD_OPTION = "--reshard";
+    final static String COMPACT_OPTION = "--compact";
+    final static String AGGREGATE_OPTION = "--aggregate";
+    final static String PHONE_PREFIX_OPTION = "--phone-prefix";
+    final static String TOP_OPTION = "--top";
+
+    // В пакетном режиме файлы удерживаются открытыми, а записи буферизуются.
+    final static int BATCH_MAX_OPEN_FILES = 256;
+    final static int BATCH_FLUSH_THRESHOLD_BYTES = 8 * 1024;
+    final static long BATCH_FLUSH_INTERVAL_MILLIS = 1000;
+    final static int BATCH_COMMIT_WINDOW_RECORDS = 4096;
+    final static int BATCH_ASYNC_QUEUE_CAPACITY = 4096;
+    final static int SHARED_LOCK_STRIPES = 64;
+    final static int SERVER_MAX_CONCURRENT_SAVES = 64;
+    // Число первых строк входного файла, на корректных записях которых
+    // обучается словарь сжатия.
+    final static int DICTIONARY_SAMPLE_LINES = 10_000;
+    final static int DEFAULT_PHONE_PREFIX_DIGITS = 3;
+    final static int DEFAULT_TOP_LAST_NAMES = 20;
+
+    final static String USAGE = "Использование:"
+            + "\n\tApp — интерактивный режим;"
+            + "\n\tApp " + BATCH_OPTION + " <входной_файл> [" + REJECTS_OPTION + " <файл_отклонённых_строк>]"
+            + " [" + THREADS_OPTION + " <число_потоков_разбора>]"
+            + " [" + GROUP_COMMIT_OPTION + " <окно_фиксации_мс> | " + SHARED_OPTION + "]"
+            + " [" + BINARY_OPTION + " | " + COMPRESSED_OPTION + "] [" + DEDUP_OPTION + "] [" + SHARDED_OPTION + "]"
+            + " — пакетная загрузка строк из файла;"
+            + "\n\tApp " + QUERY_OPTION + " " + QUERY_BY_LAST_NAME + " <Фамилия>"
+            + " | " + QUERY_BY_PHONE_NUMBER + " <Номер_телефона>"
+            + " | " + QUERY_BY_BIRTH_DATE + " <dd.mm.yyyy> <dd.mm.yyyy>"
+            + " — поиск сохранённых данных;"
+            + "\n\tApp " + QUERY_OPTION + " " + RESIDENT_OPTION + " [" + COLUMNAR_OPTION + "]"
+            + " — серия запросов к данным, загруженным в память;"
+            + "\n\tApp " + REINDEX_OPTION + " — перестроение индексов по телефону и дате рождения;"
+            + "\n\tApp " + SERVE_OPTION + " <порт> — приём строк по TCP на локальном порту;"
+            + "\n\tApp " + RESHARD_OPTION + " — перенос файлов фамилий в сегменты директории данных;"
+            + "\n\tApp " + COMPACT_OPTION + " [" + BINARY_OPTION + " | " + COMPRESSED_OPTION + "]"
+            + " — уплотнение небольших файлов фамилий;"
+            + "\n\tApp " + AGGREGATE_OPTION + " [" + PHONE_PREFIX_OPTION + " <число_цифр>]"
+            + " [" + TOP_OPTION + " <число_фамилий>] — сводная статистика по сохранённым данным.";
+
     public static void main(String[] args) {
 
-        runLifecycle();
+        // Метрики публикуются через JMX, если приложение запущено с
+        // -Duserdata.metrics=true.
+        if (IngestionMetrics.ENABLED) {
+            try {
+                IngestionMetrics.register();
+            } catch (Exception e) {
+                ConsoleUtils.printError("Не удалось опубликовать метрики через JMX.");
+                printExceptionDetails(e);
+            }
+        }
+
+        if (args.length == 0) {
+            runLifecycle();
+        } else if (args[0].equals(BATCH_OPTION)) {
+            runBatch(args);
+        } else if (args[0].equals(QUERY_OPTION)) {
+            runQuery(args);
+        } else if (args[0].equals(REINDEX_OPTION) && args.length == 1) {
+            runReindex();
+        } else if (args[0].equals(SERVE_OPTION) && args.length == 2) {
+            runServer(args[1]);
+        } else if (args[0].equals(RESHARD_OPTION) && args.length == 1) {
+            runReshard();
+        } else if (args[0].equals(COMPACT_OPTION) && (args.length == 1
+                || args.length == 2 && (args[1].equals(BINARY_OPTION) || args[1].equals(COMPRESSED_OPTION)))) {
+            runCompact(args.length == 2 ? args[1] : null);
+        } else if (args[0].equals(AGGREGATE_OPTION)) {
+            runAggregate(args);
+        } else {
+            ConsoleUtils.printError(USAGE);
+        }
+
+        closeSaver();
+    }
+
+    private static void runBatch(String[] args) {
+
+        if (args.length < 2) {
+            ConsoleUtils.printError(USAGE);
+            return;
+        }
+
+        String inputPath = args[1];
+        String rejectsPath = inputPath + REJECTS_FILE_SUFFIX;
+        int threads = 1;
+        long commitWindowMillis = -1;
+        boolean shared = false;
+        boolean binary = false;
+        boolean compressed = false;
+        boolean dedup = false;
+        boolean sharded = false;
+        try {
+            for (int i = 2; i < args.length; ++i) {
+                if (args[i].equals(SHARED_OPTION)) {
+                    shared = true;
+                } else if (args[i].equals(BINARY_OPTION)) {
+                    binary = true;
+                } else if (args[i].equals(COMPRESSED_OPTION)) {
+                    compressed = true;
+                } else if (args[i].equals(DEDUP_OPTION)) {
+                    dedup = true;
+                } else if (args[i].equals(SHARDED_OPTION)) {
+                    sharded = true;
+                } else if (i + 1 == args.length) {
+                    throw new IllegalArgumentException();
+                } else if (args[i].equals(REJECTS_OPTION)) {
+                    rejectsPath = args[++i];
+                } else if (args[i].equals(THREADS_OPTION)) {
+                    threads = Integer.parseInt(args[++i]);
+                    if (threads < 1) {
+                        throw new NumberFormatException();
+                    }
+                } else if (args[i].equals(GROUP_COMMIT_OPTION)) {
+                    commitWindowMillis = Long.parseLong(args[++i]);
+                    if (commitWindowMillis < 0) {
+                        throw new NumberFormatException();
+                    }
+                } else {
+                    throw new IllegalArgumentException();
+                }
+            }
+            // Журнал требует монопольного использования директории данных.
+            if (shared && commitWindowMillis >= 0) {
+                throw new IllegalArgumentException();
+            }
+            // Подавление повторов требует немедленного дописывания записей
+            // единственным процессом.
+            if (dedup && (shared || commitWindowMillis >= 0)) {
+                throw new IllegalArgumentException();
+            }
+            if (binary && compressed) {
+                throw new IllegalArgumentException();
+            }
+        } catch (IllegalArgumentException e) {
+            ConsoleUtils.printError(USAGE);
+            return;
+        }
+
+        ConsoleUtils.printEmphasized(String.format("\nПАКЕТНАЯ ЗАГРУЗКА ДАННЫХ ИЗ ФАЙЛА '%s'.", inputPath));
+
+        var options = new UserDataSaver.Options()
+                .withWriterPool(BATCH_MAX_OPEN_FILES, BATCH_FLUSH_THRESHOLD_BYTES, BATCH_FLUSH_INTERVAL_MILLIS);
+        if (commitWindowMillis >= 0) {
+            options.withGroupCommit(commitWindowMillis, BATCH_COMMIT_WINDOW_RECORDS);
+        }
+        if (sharded) {
+            options.withShardedLayout();
+        }
+        if (shared) {
+            options.withConcurrentAccess(SHARED_LOCK_STRIPES);
+        } else {
+            options.withNameDictionary();
+            if (dedup) {
+                options.withDeduplication();
+            }
+            if (!binary && !compressed) {
+                options.withSecondaryIndexes();
+            }
+        }
+
+        Saver<UserData> saver;
+        if (compressed) {
+            var codec = getCompressedCodec(Path.of(inputPath));
+            saver = codec != null ? getSaver(codec, options) : null;
+        } else {
+            saver = binary ? getSaver(new BinaryRecordCodec(), options) : getSaver(options);
+        }
+        if (saver == null) {
+            return;
+        }
+
+        // Разбор строк использует словарь имён сервиса сохранения, общий для
+        // всех потоков разбора.
+        var names = saver instanceof UserDataSaver dataSaver ? dataSaver.getNameDictionary() : null;
+
+        try {
+            var input = Path.of(inputPath);
+            var rejects = Path.of(rejectsPath);
+            BatchIngestion.Report report;
+            if (threads > 1) {
+                report = new PipelinedIngestion(
+                        () -> InstrumentedParser.wrapIfEnabled(new UserDataScanningParser(names)), saver, threads)
+                        .run(input, rejects);
+            } else {
+                // Строки разбираются, пока разобранные ранее сохраняются
+                // пакетами в потоке записи; закрытие асинхронного сервиса
+                // закрывает и сервис сохранения.
+                try (var asyncSaver = new QueuedAsyncSaver<>(saver, BATCH_ASYNC_QUEUE_CAPACITY,
+                        QueuedAsyncSaver.OverflowPolicy.BLOCK)) {
+                    report = new BatchIngestion(InstrumentedParser.wrapIfEnabled(new UserDataScanningParser(names)),
+                            asyncSaver).run(input, rejects);
+                }
+            }
+            System.out.println(report);
+            if (IngestionMetrics.ENABLED) {
+                System.out.println(IngestionMetrics.get());
+            }
+            if (report.getRejected() + report.getSaveFailures() > 0) {
+                ConsoleUtils.printEmphasized(String.format("Отклонённые строки записаны в файл '%s'.", rejectsPath));
+            }
+
+        } catch (Exception e) {
+            ConsoleUtils.printError("Произошло исключение при пакетной загрузке данных.");
+            printExceptionDetails(e);
+        }
+    }
+
+    private static void runQuery(String[] args) {
+
+        if (args.length >= 2 && args[1].equals(RESIDENT_OPTION)) {
+            if (args.length > 3 || args.length == 3 && !args[2].equals(COLUMNAR_OPTION)) {
+                ConsoleUtils.printError(USAGE);
+                return;
+            }
+            runResidentQueries(args.length == 3);
+            return;
+        }
+        if (!query(new MappedQueryEngine(Path.of(PATH_TO_DATA_DIR)), Arrays.copyOfRange(args, 1, args.length))) {
+            ConsoleUtils.printError(USAGE);
+        }
+    }
+
+    /**
+     * @param columnar Размещать ли записи в куче в столбцовом представлении
+     *                 (CompactRecordStore) вместо прямой памяти.
+     */
+    private static void runResidentQueries(boolean columnar) {
+
+        ConsoleUtils.printEmphasized(String.format("\nЗАГРУЗКА ДАННЫХ ДИРЕКТОРИИ '%s' В ПАМЯТЬ.", PATH_TO_DATA_DIR));
+        long started = System.nanoTime();
+        QueryEngine store;
+        try {
+            if (columnar) {
+                var compactStore = CompactRecordStore.load(Path.of(PATH_TO_DATA_DIR));
+                ConsoleUtils.printEmphasized(String.format("Загружено записей: %d за %d мс.",
+                        compactStore.size(), (System.nanoTime() - started) / 1_000_000));
+                store = compactStore;
+            } else {
+                var offHeapStore = OffHeapRecordStore.load(Path.of(PATH_TO_DATA_DIR), false);
+                ConsoleUtils.printEmphasized(String.format("Загружено записей: %d за %d мс, прямой памяти: %d МиБ.",
+                        offHeapStore.size(), (System.nanoTime() - started) / 1_000_000,
+                        offHeapStore.memoryBytes() >> 20));
+                store = offHeapStore;
+            }
+        } catch (Exception e) {
+            ConsoleUtils.printError(
+                    String.format("Не удалось загрузить данные директории '%s'.", PATH_TO_DATA_DIR));
+            printExceptionDetails(e);
+            return;
+        }
+
+        while (true) {
+            System.out.println();
+            System.out.print(QUERY_PROMPT);
+            if (!CONSOLE.hasNextLine()) {
+                return;
+            }
+            var input = CONSOLE.nextLine();
+            if (input.isBlank()) {
+                return;
+            }
+            if (!query(store, input.trim().split("\\s+"))) {
+                ConsoleUtils.printError("Некорректный запрос! Пожалуйста попробуйте снова.");
+            }
+        }
+    }
+
+    /**
+     * Выполняет запрос и выводит найденные записи.
+     *
+     * @param query Вид запроса и его аргументы.
+     * @return false, если запрос некорректен.
+     */
+    private static boolean query(QueryEngine engine, String[] query) {
+
+        long started = System.nanoTime();
+        List<UserData> found;
+        try {
+            if (query.length == 2 && query[0].equals(QUERY_BY_LAST_NAME)) {
+                found = engine.findByLastName(query[1]);
+            } else if (query.length == 2 && query[0].equals(QUERY_BY_PHONE_NUMBER)) {
+                found = engine.findByPhoneNumber(query[1]);
+            } else if (query.length == 3 && query[0].equals(QUERY_BY_BIRTH_DATE)) {
+                found = engine.findByBirthDate(LocalDate.parse(query[1], UserDataParser.DATE_FORMATTER),
+                        LocalDate.parse(query[2], UserDataParser.DATE_FORMATTER));
+            } else {
+                return false;
+            }
+
+        } catch (DateTimeParseException e) {
+            return false;
+
+        } catch (Exception e) {
+            ConsoleUtils.printError(
+                    String.format("Произошло исключение при поиске данных в директории '%s'.", PATH_TO_DATA_DIR));
+            printExceptionDetails(e);
+            return true;
+        }
+
+        found.forEach(System.out::println);
+        ConsoleUtils.printEmphasized(String.format("Найдено записей: %d за %d мс.",
+                found.size(), (System.nanoTime() - started) / 1_000_000));
+        return true;
+    }
+
+    private static void runReindex() {
+
+        long started = System.nanoTime();
+        try {
+            RecordIndexes.rebuild(Path.of(PATH_TO_DATA_DIR));
+            ConsoleUtils.printEmphasized(String.format("Индексы перестроены за %d мс.",
+                    (System.nanoTime() - started) / 1_000_000));
+
+        } catch (Exception e) {
+            ConsoleUtils.printError(
+                    String.format("Не удалось перестроить индексы директории '%s'.", PATH_TO_DATA_DIR));
+            printExceptionDetails(e);
+        }
+    }
+
+    private static void runReshard() {
+
+        long started = System.nanoTime();
+        try {
+            int moved = ShardedLayout.reshard(Path.of(PATH_TO_DATA_DIR));
+            ConsoleUtils.printEmphasized(String.format("В сегменты перенесено файлов: %d за %d мс.",
+                    moved, (System.nanoTime() - started) / 1_000_000));
+
+        } catch (Exception e) {
+            ConsoleUtils.printError(
+                    String.format("Не удалось перенести файлы директории '%s' в сегменты.", PATH_TO_DATA_DIR));
+            printExceptionDetails(e);
+        }
+    }
+
+    private static void runCompact(String format) {
+
+        // Уплотняются все небольшие файлы фамилий, сколько бы они ни
+        // изменялись, поэтому загрузка в директорию в это время не
+        // допускается: её исключает словарь имён.
+        var options = new UserDataSaver.Options().withNameDictionary().withCompaction(0, 0);
+        Saver<UserData> saver;
+        if (format == null) {
+            saver = getSaver(options.withSecondaryIndexes());
+        } else if (format.equals(BINARY_OPTION)) {
+            saver = getSaver(new BinaryRecordCodec(), options);
+        } else {
+            var codec = getCompressedCodec(null);
+            saver = codec != null ? getSaver(codec, options) : null;
+        }
+        if (!(saver instanceof UserDataSaver dataSaver)) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        try {
+            int files = 0;
+            int compacted;
+            while ((compacted = dataSaver.compact()) > 0) {
+                files += compacted;
+            }
+            ConsoleUtils.printEmphasized(String.format("Уплотнено файлов: %d за %d мс.",
+                    files, (System.nanoTime() - started) / 1_000_000));
+
+        } catch (Exception e) {
+            ConsoleUtils.printError(
+                    String.format("Не удалось уплотнить файлы директории '%s'.", PATH_TO_DATA_DIR));
+            printExceptionDetails(e);
+        }
+    }
+
+    private static void runAggregate(String[] args) {
+
+        int phonePrefixDigits = DEFAULT_PHONE_PREFIX_DIGITS;
+        int topLastNames = DEFAULT_TOP_LAST_NAMES;
+        try {
+            for (int i = 1; i < args.length; ++i) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException();
+                } else if (args[i].equals(PHONE_PREFIX_OPTION)) {
+                    phonePrefixDigits = Integer.parseInt(args[++i]);
+                    if (phonePrefixDigits < 1 || phonePrefixDigits > RecordAggregator.MAX_PHONE_PREFIX_DIGITS) {
+                        throw new NumberFormatException();
+                    }
+                } else if (args[i].equals(TOP_OPTION)) {
+                    topLastNames = Integer.parseInt(args[++i]);
+                    if (topLastNames < 0) {
+                        throw new NumberFormatException();
+                    }
+                } else {
+                    throw new IllegalArgumentException();
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            ConsoleUtils.printError(USAGE);
+            return;
+        }
+
+        long started = System.nanoTime();
+        RecordAggregator.Aggregates aggregates;
+        try {
+            aggregates = new RecordAggregator(Path.of(PATH_TO_DATA_DIR), phonePrefixDigits).aggregate();
+
+        } catch (Exception e) {
+            ConsoleUtils.printError(
+                    String.format("Произошло исключение при подсчёте статистики директории '%s'.", PATH_TO_DATA_DIR));
+            printExceptionDetails(e);
+            return;
+        }
+
+        ConsoleUtils.printEmphasized("Записей по полу:");
+        aggregates.getGenderCounts().forEach((gender, count) -> System.out.printf("\t%s\t%d%n", gender, count));
+        ConsoleUtils.printEmphasized("Записей по годам рождения:");
+        aggregates.getBirthYearCounts().forEach((year, count) -> System.out.printf("\t%d\t%d%n", year, count));
+        ConsoleUtils.printEmphasized(
+                String.format("Записей по первым %d цифрам номера телефона:", phonePrefixDigits));
+        aggregates.getPhonePrefixCounts().forEach((prefix, count) -> System.out.printf("\t%s\t%d%n", prefix, count));
+        var lastNames = aggregates.getLastNameCounts();
+        ConsoleUtils.printEmphasized(String.format("Записей по фамилиям (%d из %d):",
+                Math.min(topLastNames, lastNames.size()), lastNames.size()));
+        lastNames.entrySet().stream().limit(topLastNames)
+                .forEach(entry -> System.out.printf("\t%s\t%d%n", entry.getKey(), entry.getValue()));
+        ConsoleUtils.printEmphasized(String.format("Обработано записей: %d за %d мс.",
+                aggregates.getRecordCount(), (System.nanoTime() - started) / 1_000_000));
+    }
+
+    private static void runServer(String portArg) {
+
+        int port;
+        try {
+            port = Integer.parseInt(portArg);
+            if (port < 0 || port > 0xFFFF) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            ConsoleUtils.printError(USAGE);
+            return;
+        }
+
+        // Соединения обслуживаются параллельно, поэтому сервис сохранения
+        // работает в режиме совместного доступа.
+        var options = new UserDataSaver.Options()
+                .withWriterPool(BATCH_MAX_OPEN_FILES, BATCH_FLUSH_THRESHOLD_BYTES, BATCH_FLUSH_INTERVAL_MILLIS)
+                .withConcurrentAccess(SHARED_LOCK_STRIPES);
+        var saver = getSaver(options);
+        if (saver == null) {
+            return;
+        }
+
+        IngestionServer server;
+        try {
+            server = new IngestionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                    () -> InstrumentedParser.wrapIfEnabled(new UserDataScanningParser()), saver,
+                    SERVER_MAX_CONCURRENT_SAVES);
+        } catch (Exception e) {
+            ConsoleUtils.printError(String.format("Не удалось запустить сервер на порту %d.", port));
+            printExceptionDetails(e);
+            return;
+        }
+
+        // Сервер закрывается обработчиком завершения работы (например, по
+        // Ctrl+C): он обрабатывает уже полученные строки до закрытия сервиса
+        // сохранения.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // Сервер уже остановлен.
+            }
+            closeSaver();
+        }));
+        try {
+            ConsoleUtils.printEmphasized(
+                    String.format("\nПРИЁМ СТРОК ДАННЫХ ПО TCP НА ПОРТУ %d.", server.getPort()));
+            server.run();
+
+        } catch (Exception e) {
+            ConsoleUtils.printError(String.format("Произошло исключение при работе сервера на порту %d.", port));
+            printExceptionDetails(e);
+        }
     }
 
     private static void runLifecycle() {
@@ -120,7 +645,7 @@ public class App {
 
     private static void trySaveUserData(UserData userData) {
 
-        var saver = getSaver();
+        var saver = getSaver(new UserDataSaver.Options());
         if (saver == null) {
             ConsoleUtils.printEmphasized("\nСохранение данных в файл отменено.");
             return;
@@ -136,13 +661,63 @@ public class App {
         }
     }
 
-    private static Saver<UserData> getSaver() {
+    /**
+     * Формат, сжатый блоками, со словарём сжатия директории данных. Если
+     * словарь ещё не создан, он обучается на записях первых строк входного
+     * файла и сохраняется в директории данных.
+     *
+     * @param sample Входной файл, либо null, если словарь должен существовать.
+     * @return Формат, либо null, если словарь не удалось получить.
+     */
+    private static BlockCompressedCodec getCompressedCodec(Path sample) {
+        var dataDir = Path.of(PATH_TO_DATA_DIR);
+        var records = new TextRecordCodec(UserData::toString);
+        try {
+            var dictionary = CompressionDictionary.load(dataDir);
+            if (dictionary == null && sample != null) {
+                var samples = new ArrayList<byte[]>();
+                var parser = new UserDataScanningParser();
+                try (var lines = Files.lines(sample)) {
+                    lines.limit(DICTIONARY_SAMPLE_LINES).forEach(line -> {
+                        if (parser.setInput(line) == 0) {
+                            var result = parser.tryParse();
+                            if (result.isValid()) {
+                                samples.add(records.encode(result.getValue()));
+                            }
+                        }
+                    });
+                }
+                dictionary = CompressionDictionary.train(samples, records.separator()).storeIfAbsent(dataDir);
+            }
+            if (dictionary == null) {
+                ConsoleUtils.printError(
+                        String.format("Словарь сжатия директории '%s' не найден.", PATH_TO_DATA_DIR));
+                return null;
+            }
+            return new BlockCompressedCodec(records, dictionary);
+
+        } catch (Exception e) {
+            ConsoleUtils.printError(
+                    String.format("Не удалось получить словарь сжатия директории '%s'.", PATH_TO_DATA_DIR));
+            printExceptionDetails(e);
+            return null;
+        }
+    }
+
+    private static Saver<UserData> getSaver(UserDataSaver.Options options) {
+        return getSaver(new TextRecordCodec(UserData::toString), options);
+    }
+
+    private static Saver<UserData> getSaver(RecordCodec codec, UserDataSaver.Options options) {
         if (userDataSaver != null) {
             return userDataSaver;
         }
 
         try {
-            userDataSaver = new UserDataSaver(PATH_TO_DATA_DIR, UserData::toString);
+            userDataSaver = new UserDataSaver(PATH_TO_DATA_DIR, codec, options);
+            // Буферизованные данные сохраняются и при аварийном завершении
+            // работы приложения (например, по Ctrl+C).
+            Runtime.getRuntime().addShutdownHook(new Thread(App::closeSaver));
             return userDataSaver;
 
         } catch (Exception e) {
@@ -153,6 +728,19 @@ public class App {
         }
     }
 
+    private static synchronized void closeSaver() {
+        if (userDataSaver == null) {
+            return;
+        }
+
+        try {
+            userDataSaver.close();
+        } catch (Exception e) {
+            ConsoleUtils.printError("Произошло исключение при завершении сохранения данных в файлы.");
+            printExceptionDetails(e);
+        }
+    }
+
     private static void printExceptionDetails(Exception e) {
         var cause = e.getCause();
         if (cause == null) {
@@ -0,0 +1,30 @@
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Объект, предоставляющий сервис асинхронного сохранения данных: сохранение
+ * выполняется в фоне, а вызывающий поток получает результат в виде
+ * CompletableFuture.
+ */
+public interface AsyncSaver<T> extends AutoCloseable {
+
+	/**
+	 * Передаёт экземпляр данных на сохранение.
+	 *
+	 * @param data Экземпляр данных.
+	 * @return Результат сохранения: полный путь к сохранённому файлу, либо
+	 *         исключение, если сохранение не удалось или было отклонено
+	 *         (java.util.concurrent.RejectedExecutionException).
+	 */
+	CompletableFuture<String> saveAsync(T data);
+
+	/**
+	 * Завершает работу сервиса: прекращает приём данных, дожидается
+	 * сохранения уже принятых и освобождает используемые ресурсы.
+	 *
+	 * @throws IOException если не удалось сохранить буферизованные данные или
+	 *                     освободить ресурсы.
+	 */
+	@Override
+	void close() throws IOException;
+}
@@ -0,0 +1,283 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import entities.UserData;
+import exceptions.IssueKind;
+import exceptions.PartialSaveException;
+
+/**
+ * Неинтерактивная (пакетная) загрузка пользовательских данных из текстового
+ * файла: каждая строка файла разбирается и сохраняется так же, как строка,
+ * введённая пользователем в интерактивном режиме.
+ * <p>
+ * Файл читается потоково, построчно, поэтому объём используемой памяти не
+ * зависит от размера входного файла. Отклонённые строки записываются в
+ * отдельный файл в формате:
+ *
+ * <pre>
+ * номер_строки	род_проблемы	поле_данных	некорректные_данные	исходная_строка
+ * </pre>
+ *
+ * (поля разделены символом табуляции).
+ * <p>
+ * При асинхронном сервисе сохранения (AsyncSaver) строки разбираются, пока
+ * ранее разобранные сохраняются в фоне; результаты сохранения ожидаются не
+ * более чем для MAX_PENDING_LINES строк, а отклонённые строки записываются
+ * в порядке строк входного файла.
+ */
+public class BatchIngestion {
+
+	// Наибольшее число строк, ожидающих результата асинхронного сохранения.
+	static final int MAX_PENDING_LINES = 8192;
+
+	private static final char SEPARATOR = '\t';
+
+	private final Parser<UserData> parser;
+	private final Saver<UserData> saver;
+	private final AsyncSaver<UserData> asyncSaver;
+
+	public BatchIngestion(Parser<UserData> parser, Saver<UserData> saver) {
+		if (parser == null || saver == null) {
+			throw new NullPointerException();
+		}
+		this.parser = parser;
+		this.saver = saver;
+		this.asyncSaver = null;
+	}
+
+	/**
+	 * @param parser     Парсер строк.
+	 * @param asyncSaver Асинхронный сервис сохранения; загрузка не закрывает
+	 *                   его.
+	 */
+	public BatchIngestion(Parser<UserData> parser, AsyncSaver<UserData> asyncSaver) {
+		if (parser == null || asyncSaver == null) {
+			throw new NullPointerException();
+		}
+		this.parser = parser;
+		this.saver = null;
+		this.asyncSaver = asyncSaver;
+	}
+
+	/**
+	 * Загружает все строки входного файла.
+	 *
+	 * @param input   Путь к входному файлу в кодировке UTF-8.
+	 * @param rejects Путь к файлу отклонённых строк; существующий файл
+	 *                перезаписывается.
+	 * @return Статистика загрузки.
+	 * @throws IOException если не удалось прочитать входной файл или записать
+	 *                     файл отклонённых строк.
+	 */
+	public Report run(Path input, Path rejects) throws IOException {
+		var report = new Report();
+		long startNanos = System.nanoTime();
+
+		try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+				BufferedWriter rejectsWriter = Files.newBufferedWriter(rejects, StandardCharsets.UTF_8)) {
+
+			// Строки, ожидающие результата асинхронного сохранения, и
+			// отклонённые строки, следующие за ними.
+			var pending = new ArrayDeque<PendingLine>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				++report.linesRead;
+
+				if (line.isBlank()) {
+					++report.skipped;
+					continue;
+				}
+
+				int status = parser.setInput(line);
+				if (status != 0) {
+					reject(pending, new PendingLine(report.linesRead, line, IssueKind.WRONG_ITEMS_COUNT, "",
+							Integer.toString(status)), rejectsWriter, report);
+					++report.rejected;
+					continue;
+				}
+
+				var result = parser.tryParse();
+				if (!result.isValid()) {
+					reject(pending, new PendingLine(report.linesRead, line, result.getIssueKind(),
+							result.getDataItemName(), result.getWrongValue()), rejectsWriter, report);
+					++report.rejected;
+					continue;
+				}
+
+				if (asyncSaver != null) {
+					pending.add(new PendingLine(report.linesRead, line, asyncSaver.saveAsync(result.getValue())));
+					if (pending.size() > MAX_PENDING_LINES) {
+						complete(pending.poll(), rejectsWriter, report);
+					}
+					continue;
+				}
+
+				try {
+					saver.save(result.getValue());
+					++report.accepted;
+				} catch (Exception e) {
+					var cause = e.getCause() != null ? e.getCause() : e;
+					writeReject(rejectsWriter, report.linesRead, IssueKind.UNSPECIFIED, "",
+							String.valueOf(cause.getMessage()), line);
+					++report.saveFailures;
+				}
+			}
+
+			while (!pending.isEmpty()) {
+				complete(pending.poll(), rejectsWriter, report);
+			}
+		}
+
+		report.elapsedNanos = System.nanoTime() - startNanos;
+		return report;
+	}
+
+	/**
+	 * Записывает отклонённую строку; если результаты сохранения предыдущих
+	 * строк ещё ожидаются, строка записывается после них, а число ожидающих
+	 * строк ограничивается так же, как при сохранении.
+	 */
+	private static void reject(ArrayDeque<PendingLine> pending, PendingLine rejected, BufferedWriter rejectsWriter,
+			Report report) throws IOException {
+		if (pending.isEmpty()) {
+			writeReject(rejectsWriter, rejected.lineNumber, rejected.issueKind, rejected.dataItemName,
+					rejected.wrongValue, rejected.line);
+		} else {
+			pending.add(rejected);
+			if (pending.size() > MAX_PENDING_LINES) {
+				complete(pending.poll(), rejectsWriter, report);
+			}
+		}
+	}
+
+	/**
+	 * Дожидается результата сохранения строки либо записывает отклонённую
+	 * строку.
+	 */
+	private static void complete(PendingLine pendingLine, BufferedWriter rejectsWriter, Report report)
+			throws IOException {
+		if (pendingLine.result == null) {
+			writeReject(rejectsWriter, pendingLine.lineNumber, pendingLine.issueKind, pendingLine.dataItemName,
+					pendingLine.wrongValue, pendingLine.line);
+			return;
+		}
+		try {
+			pendingLine.result.join();
+			++report.accepted;
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause() instanceof PartialSaveException ? e.getCause().getCause() : e.getCause();
+			cause = cause.getCause() != null ? cause.getCause() : cause;
+			writeReject(rejectsWriter, pendingLine.lineNumber, IssueKind.UNSPECIFIED, "",
+					String.valueOf(cause.getMessage()), pendingLine.line);
+			++report.saveFailures;
+		}
+	}
+
+	static void writeReject(BufferedWriter writer, long lineNumber, IssueKind issueKind,
+			String dataItemName, String wrongValue, String line) throws IOException {
+		writer.write(Long.toString(lineNumber));
+		writer.write(SEPARATOR);
+		writer.write(issueKind.name());
+		writer.write(SEPARATOR);
+		writer.write(dataItemName);
+		writer.write(SEPARATOR);
+		writer.write(wrongValue);
+		writer.write(SEPARATOR);
+		writer.write(line);
+		writer.newLine();
+	}
+
+	/**
+	 * Строка, ожидающая результата асинхронного сохранения, либо отклонённая
+	 * строка (result == null).
+	 */
+	private static final class PendingLine {
+		final long lineNumber;
+		final String line;
+		final CompletableFuture<String> result;
+		final IssueKind issueKind;
+		final String dataItemName;
+		final String wrongValue;
+
+		PendingLine(long lineNumber, String line, CompletableFuture<String> result) {
+			this.lineNumber = lineNumber;
+			this.line = line;
+			this.result = result;
+			this.issueKind = null;
+			this.dataItemName = null;
+			this.wrongValue = null;
+		}
+
+		PendingLine(long lineNumber, String line, IssueKind issueKind, String dataItemName, String wrongValue) {
+			this.lineNumber = lineNumber;
+			this.line = line;
+			this.result = null;
+			this.issueKind = issueKind;
+			this.dataItemName = dataItemName;
+			this.wrongValue = wrongValue;
+		}
+	}
+
+	/**
+	 * Статистика пакетной загрузки.
+	 */
+	public static class Report {
+		long linesRead;
+		long accepted;
+		long rejected;
+		long saveFailures;
+		long skipped;
+		long elapsedNanos;
+
+		public long getLinesRead() {
+			return linesRead;
+		}
+
+		public long getAccepted() {
+			return accepted;
+		}
+
+		public long getRejected() {
+			return rejected;
+		}
+
+		public long getSaveFailures() {
+			return saveFailures;
+		}
+
+		public long getSkipped() {
+			return skipped;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * @return Пропускная способность, строк в секунду.
+		 */
+		public double getLinesPerSecond() {
+			return elapsedNanos > 0 ? linesRead * 1e9 / elapsedNanos : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Прочитано строк: %d"
+					+ "\nСохранено записей: %d"
+					+ "\nОтклонено строк: %d"
+					+ "\nОшибок сохранения: %d"
+					+ "\nПропущено пустых строк: %d"
+					+ "\nВремя обработки: %.3f с"
+					+ "\nПропускная способность: %.0f строк/с",
+					linesRead, accepted, rejected, saveFailures, skipped,
+					elapsedNanos / 1e9, getLinesPerSecond());
+		}
+	}
+}
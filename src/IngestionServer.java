@@ -0,0 +1,325 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import entities.UserData;
+import exceptions.IssueKind;
+import exceptions.PartialSaveException;
+
+/**
+ * Сервер загрузки пользовательских данных по TCP.
+ * <p>
+ * Клиент передаёт строки пользовательских данных, разделённые символом
+ * перевода строки (UTF-8), и на каждую строку получает ответ -- строку
+ *
+ * <pre>
+ * OK
+ * </pre>
+ *
+ * либо
+ *
+ * <pre>
+ * ERROR	род_проблемы	поле_данных	некорректные_данные
+ * </pre>
+ *
+ * (поля разделены символом табуляции, род проблемы -- IssueKind; ошибка
+ * сохранения сообщается родом UNSPECIFIED с текстом ошибки; символы
+ * табуляции и перевода строки в некорректных данных заменяются пробелами).
+ * Ответы следуют в порядке строк. Ответ OK отправляется после того, как
+ * запись сохранена и буферы сервиса сохранения сброшены на диск
+ * (Saver.flush); если сохранение пакета прервано ошибкой, OK получают
+ * строки, сохранённые до ошибки (PartialSaveException), остальные --
+ * ERROR.
+ * <p>
+ * Каждое соединение обслуживается отдельным потоком -- виртуальным, если
+ * среда исполнения их поддерживает, иначе платформенным с уменьшенным
+ * стеком. Клиент может передавать строки, не дожидаясь ответов (конвейер
+ * запросов): строки, уже полученные от клиента, разбираются и сохраняются
+ * одним пакетом (Saver.saveAll), а ответы на них отправляются вместе.
+ * <p>
+ * Число одновременно выполняемых сохранений ограничено. Если сервис
+ * сохранения не успевает, потоки соединений ожидают разрешения на
+ * сохранение и перестают читать из сокетов, так что клиенты притормаживаются
+ * механизмом управления потоком TCP, а объём памяти сервера остаётся
+ * ограниченным.
+ */
+public final class IngestionServer implements AutoCloseable {
+
+	static final int MAX_BATCH_LINES = 256;
+	static final int BACKLOG = 1024;
+	static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+	private static final int BUFFER_CHARS = 16 * 1024;
+	// Размер стека платформенного потока соединения, байт.
+	private static final long PLATFORM_THREAD_STACK_SIZE = 256 * 1024;
+	private static final String OK = "OK";
+	private static final String ERROR = "ERROR";
+	private static final char SEPARATOR = '\t';
+
+	private final ServerSocket serverSocket;
+	private final Supplier<Parser<UserData>> parserFactory;
+	private final Saver<UserData> saver;
+	private final Semaphore savePermits;
+	private final ExecutorService connections = newThreadPerTaskExecutor();
+	private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param address            Адрес и порт приёма соединений; порт 0 --
+	 *                           любой свободный порт.
+	 * @param parserFactory      Фабрика парсеров; вызывается однократно для
+	 *                           каждого соединения.
+	 * @param saver              Сервис сохранения данных, допускающий
+	 *                           одновременное использование несколькими
+	 *                           потоками.
+	 * @param maxConcurrentSaves Наибольшее число одновременно выполняемых
+	 *                           сохранений.
+	 * @throws IOException если не удалось занять заданный адрес.
+	 */
+	public IngestionServer(InetSocketAddress address, Supplier<Parser<UserData>> parserFactory,
+			Saver<UserData> saver, int maxConcurrentSaves) throws IOException {
+		if (address == null || parserFactory == null || saver == null) {
+			throw new NullPointerException();
+		}
+		if (maxConcurrentSaves < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.parserFactory = parserFactory;
+		this.saver = saver;
+		this.savePermits = new Semaphore(maxConcurrentSaves, true);
+		this.serverSocket = new ServerSocket();
+		try {
+			serverSocket.bind(address, BACKLOG);
+		} catch (IOException e) {
+			serverSocket.close();
+			connections.shutdown();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return Порт приёма соединений.
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Принимает соединения до закрытия сервера.
+	 *
+	 * @throws IOException если приём соединений завершился ошибкой.
+	 */
+	public void run() throws IOException {
+		while (true) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (SocketException e) {
+				if (serverSocket.isClosed()) {
+					return;
+				}
+				throw e;
+			}
+			sockets.add(socket);
+			try {
+				connections.execute(() -> {
+					try {
+						serve(socket);
+					} finally {
+						sockets.remove(socket);
+					}
+				});
+			} catch (RuntimeException e) {
+				sockets.remove(socket);
+				socket.close();
+				if (serverSocket.isClosed()) {
+					return;
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Прекращает приём соединений и завершает обслуживание открытых:
+	 * строки, уже полученные от клиентов, обрабатываются, после чего
+	 * соединения закрываются. Соединения, не завершённые за отведённое
+	 * время, закрываются принудительно. Сервис сохранения не закрывается.
+	 */
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		for (var socket : sockets) {
+			try {
+				socket.shutdownInput();
+			} catch (IOException e) {
+				// Соединение уже разорвано.
+			}
+		}
+		connections.shutdown();
+		try {
+			if (!connections.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				for (var socket : sockets) {
+					socket.close();
+				}
+				connections.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (socket;
+				var reader = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_CHARS);
+				var writer = new BufferedWriter(
+						new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_CHARS)) {
+
+			socket.setTcpNoDelay(true);
+			var parser = parserFactory.get();
+			var lines = new ArrayList<String>(MAX_BATCH_LINES);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// Пакет составляют строки, уже полученные от клиента.
+				lines.add(line);
+				while (lines.size() < MAX_BATCH_LINES && reader.ready() && (line = reader.readLine()) != null) {
+					lines.add(line);
+				}
+
+				for (var response : process(lines, parser)) {
+					writer.write(response);
+					writer.newLine();
+				}
+				writer.flush();
+				lines.clear();
+			}
+
+		} catch (IOException e) {
+			// Соединение разорвано клиентом либо закрыто при остановке
+			// сервера.
+		}
+	}
+
+	/**
+	 * Разбирает и сохраняет пакет строк.
+	 *
+	 * @return Ответы на строки в порядке строк.
+	 */
+	private String[] process(List<String> lines, Parser<UserData> parser) {
+		var responses = new String[lines.size()];
+		var accepted = new ArrayList<UserData>(lines.size());
+		var acceptedLines = new int[lines.size()];
+
+		for (int i = 0; i < lines.size(); ++i) {
+			int status = parser.setInput(lines.get(i));
+			if (status != 0) {
+				responses[i] = error(IssueKind.WRONG_ITEMS_COUNT, "", Integer.toString(status));
+				continue;
+			}
+			var result = parser.tryParse();
+			if (!result.isValid()) {
+				responses[i] = error(result.getIssueKind(), result.getDataItemName(), result.getWrongValue());
+				continue;
+			}
+			acceptedLines[accepted.size()] = i;
+			accepted.add(result.getValue());
+		}
+
+		if (!accepted.isEmpty()) {
+			var saved = save(accepted);
+			for (int i = 0; i < accepted.size(); ++i) {
+				responses[acceptedLines[i]] = saved[i];
+			}
+		}
+		return responses;
+	}
+
+	/**
+	 * Сохраняет пакет и сбрасывает буферы сервиса сохранения на диск.
+	 *
+	 * @return Ответы на сохраняемые строки в порядке строк.
+	 */
+	private String[] save(List<UserData> accepted) {
+		var responses = new String[accepted.size()];
+		try {
+			savePermits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			Arrays.fill(responses, error(IssueKind.UNSPECIFIED, "", "Сервер остановлен."));
+			return responses;
+		}
+		try {
+			saver.saveAll(accepted);
+			saver.flush();
+			Arrays.fill(responses, OK);
+		} catch (Exception e) {
+			Throwable cause = e instanceof PartialSaveException ? e.getCause() : e;
+			cause = cause.getCause() != null ? cause.getCause() : cause;
+			var response = error(IssueKind.UNSPECIFIED, "", String.valueOf(cause.getMessage()));
+			Arrays.fill(responses, response);
+			if (e instanceof PartialSaveException partial) {
+				// Строки, сохранённые до ошибки, подтверждаются после сброса
+				// буферов.
+				try {
+					saver.flush();
+					for (int i = 0; i < responses.length; ++i) {
+						if (partial.isSaved(i)) {
+							responses[i] = OK;
+						}
+					}
+				} catch (Exception flushFailure) {
+					e.addSuppressed(flushFailure);
+				}
+			}
+		} finally {
+			savePermits.release();
+		}
+		return responses;
+	}
+
+	private static String error(IssueKind issueKind, String dataItemName, String wrongValue) {
+		// Ответ занимает ровно одну строку, а некорректные данные -- одно
+		// поле.
+		return ERROR + SEPARATOR + issueKind.name() + SEPARATOR + dataItemName + SEPARATOR
+				+ wrongValue.replace('\n', ' ').replace('\r', ' ').replace(SEPARATOR, ' ');
+	}
+
+	/**
+	 * @return Исполнитель, запускающий каждую задачу в новом виртуальном
+	 *         потоке, если среда исполнения их поддерживает (Java 21, либо
+	 *         Java 19-20 с --enable-preview), иначе -- в новом платформенном
+	 *         потоке.
+	 */
+	private static ExecutorService newThreadPerTaskExecutor() {
+		try {
+			var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			var threads = new AtomicInteger();
+			return Executors.newCachedThreadPool(task -> {
+				var thread = new Thread(null, task, "ingestion-connection-" + threads.incrementAndGet(),
+						PLATFORM_THREAD_STACK_SIZE);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
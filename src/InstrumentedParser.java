@@ -0,0 +1,65 @@
+import exceptions.IssueKind;
+import exceptions.ParseException;
+import metrics.IngestionMetrics;
+
+/**
+ * Синтаксический разборщик, учитывающий в метриках (IngestionMetrics)
+ * длительность разбора и проблемы разбора, выявленные заданным
+ * разборщиком.
+ * <p>
+ * Приложение использует обёртку только при включённых метриках, поэтому
+ * при выключенных метриках разбор не несёт никаких дополнительных затрат.
+ */
+public final class InstrumentedParser<T> implements Parser<T> {
+
+	private final Parser<T> parser;
+	private final IngestionMetrics metrics = IngestionMetrics.get();
+
+	public InstrumentedParser(Parser<T> parser) {
+		if (parser == null) {
+			throw new NullPointerException();
+		}
+		this.parser = parser;
+	}
+
+	/**
+	 * @return Заданный разборщик, обёрнутый в InstrumentedParser, если
+	 *         метрики включены, либо сам заданный разборщик.
+	 */
+	public static <T> Parser<T> wrapIfEnabled(Parser<T> parser) {
+		return IngestionMetrics.ENABLED ? new InstrumentedParser<>(parser) : parser;
+	}
+
+	@Override
+	public int setInput(String input) {
+		int status = parser.setInput(input);
+		if (status != 0) {
+			metrics.issue(IssueKind.WRONG_ITEMS_COUNT, "");
+		}
+		return status;
+	}
+
+	@Override
+	public T parse() throws ParseException {
+		long started = System.nanoTime();
+		try {
+			return parser.parse();
+		} catch (ParseException e) {
+			metrics.issue(e.getIssueKind(), e.getDataItemName());
+			throw e;
+		} finally {
+			metrics.parsed(System.nanoTime() - started);
+		}
+	}
+
+	@Override
+	public ParseResult<T> tryParse() {
+		long started = System.nanoTime();
+		var result = parser.tryParse();
+		metrics.parsed(System.nanoTime() - started);
+		if (!result.isValid()) {
+			metrics.issue(result.getIssueKind(), result.getDataItemName());
+		}
+		return result;
+	}
+}
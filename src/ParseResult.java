@@ -0,0 +1,85 @@
+import exceptions.IssueKind;
+import exceptions.ParseException;
+
+/**
+ * Результат синтаксического разбора без выбрасывания исключения: либо
+ * экземпляр сущности, либо сведения о проблеме разбора (наименование поля
+ * данных, род проблемы и некорректные данные).
+ */
+public final class ParseResult<T> {
+
+	private final T value;
+	private final ParseException issue;
+
+	private ParseResult(T value, ParseException issue) {
+		this.value = value;
+		this.issue = issue;
+	}
+
+	/**
+	 * @return Результат успешного разбора.
+	 */
+	public static <T> ParseResult<T> of(T value) {
+		return new ParseResult<>(value, null);
+	}
+
+	/**
+	 * @return Результат разбора, завершившегося проблемой, описанной
+	 *         исключением.
+	 */
+	public static <T> ParseResult<T> issue(ParseException issue) {
+		if (issue == null) {
+			throw new NullPointerException();
+		}
+		return new ParseResult<>(null, issue);
+	}
+
+	/**
+	 * @return true, если разбор выполнен успешно.
+	 */
+	public boolean isValid() {
+		return issue == null;
+	}
+
+	/**
+	 * @return Экземпляр сущности, либо null, если разбор завершился
+	 *         проблемой.
+	 */
+	public T getValue() {
+		return value;
+	}
+
+	/**
+	 * @return Род проблемы, либо null, если разбор выполнен успешно.
+	 */
+	public IssueKind getIssueKind() {
+		return issue != null ? issue.getIssueKind() : null;
+	}
+
+	/**
+	 * @return Наименование поля данных, к которому относится проблема, либо
+	 *         пустая строка.
+	 */
+	public String getDataItemName() {
+		return issue != null ? issue.getDataItemName() : "";
+	}
+
+	/**
+	 * @return Подстрока с некорректными и/или лишними данными, либо пустая
+	 *         строка.
+	 */
+	public String getWrongValue() {
+		return issue != null ? issue.getWrongValue() : "";
+	}
+
+	/**
+	 * @return Экземпляр сущности.
+	 * @throws ParseException если разбор завершился проблемой.
+	 */
+	public T orElseThrow() throws ParseException {
+		if (issue != null) {
+			throw issue;
+		}
+		return value;
+	}
+}
@@ -31,4 +31,23 @@ public interface Parser<T> {
 	 *                        преобразование невозможно.
 	 */
 	T parse() throws ParseException;
+
+	/**
+	 * Выполняет разбор так же, как parse(), но сообщает о проблеме разбора
+	 * результатом, а не исключением.
+	 * <p>
+	 * Реализация по умолчанию перехватывает исключение, выброшенное parse();
+	 * реализации могут переопределять метод так, чтобы исключение не
+	 * создавалось.
+	 *
+	 * @return Результат разбора: экземпляр типа сущности либо сведения о
+	 *         проблеме.
+	 */
+	default ParseResult<T> tryParse() {
+		try {
+			return ParseResult.of(parse());
+		} catch (ParseException e) {
+			return ParseResult.issue(e);
+		}
+	}
 }
@@ -0,0 +1,320 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import entities.UserData;
+import exceptions.IssueKind;
+import exceptions.PartialSaveException;
+
+/**
+ * Конвейерная пакетная загрузка пользовательских данных из текстового файла.
+ * <p>
+ * Строки входного файла читаются блоками, блоки разбираются параллельно в
+ * пуле fork-join (каждый поток пула использует собственный экземпляр
+ * парсера), а результаты разбора передаются единственному потоку сохранения
+ * строго в порядке следования блоков во входном файле. Сохранение выполняется
+ * пакетами (Saver.saveAll), что позволяет группировать записи по целевым
+ * файлам; порядок дописывания данных в каждый файл соответствует порядку
+ * строк во входном файле.
+ * <p>
+ * Формат файла отклонённых строк и статистика совпадают с BatchIngestion.
+ * Строки блока, разбор которого завершился исключением парсера, отмечаются
+ * в файле отклонённых строк как не сохранённые.
+ */
+public class PipelinedIngestion {
+
+	static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	private final Supplier<Parser<UserData>> parserFactory;
+	private final Saver<UserData> saver;
+	private final int parallelism;
+	private final int chunkSize;
+
+	/**
+	 * @param parserFactory Фабрика парсеров; вызывается однократно для каждого
+	 *                      потока разбора.
+	 * @param saver         Сервис сохранения данных; вызывается только из
+	 *                      одного потока.
+	 * @param parallelism   Число потоков разбора.
+	 */
+	public PipelinedIngestion(Supplier<Parser<UserData>> parserFactory, Saver<UserData> saver, int parallelism) {
+		this(parserFactory, saver, parallelism, DEFAULT_CHUNK_SIZE);
+	}
+
+	public PipelinedIngestion(Supplier<Parser<UserData>> parserFactory, Saver<UserData> saver, int parallelism,
+			int chunkSize) {
+		if (parserFactory == null || saver == null) {
+			throw new NullPointerException();
+		}
+		if (parallelism < 1 || chunkSize < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.parserFactory = parserFactory;
+		this.saver = saver;
+		this.parallelism = parallelism;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Загружает все строки входного файла.
+	 *
+	 * @param input   Путь к входному файлу в кодировке UTF-8.
+	 * @param rejects Путь к файлу отклонённых строк; существующий файл
+	 *                перезаписывается.
+	 * @return Статистика загрузки.
+	 * @throws IOException если не удалось прочитать входной файл или записать
+	 *                     файл отклонённых строк.
+	 */
+	public BatchIngestion.Report run(Path input, Path rejects) throws IOException {
+		var report = new BatchIngestion.Report();
+		long startNanos = System.nanoTime();
+
+		var parsePool = new ForkJoinPool(parallelism);
+		ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+		// Ограничение числа блоков "в полёте" удерживает объём памяти
+		// постоянным независимо от размера входного файла и от того,
+		// насколько сохранение отстаёт от разбора.
+		var inFlight = new Semaphore(parallelism * 2);
+		var failure = new IOException[1];
+		ThreadLocal<Parser<UserData>> parsers = ThreadLocal.withInitial(parserFactory);
+
+		try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+				BufferedWriter rejectsWriter = Files.newBufferedWriter(rejects, StandardCharsets.UTF_8)) {
+
+			try {
+				long lineNumber = 0;
+				Chunk chunk;
+				do {
+					chunk = readChunk(reader, lineNumber + 1);
+					lineNumber += chunk.count;
+					if (chunk.count == 0) {
+						break;
+					}
+
+					inFlight.acquire();
+					synchronized (failure) {
+						if (failure[0] != null) {
+							inFlight.release();
+							break;
+						}
+					}
+
+					final Chunk toParse = chunk;
+					ForkJoinTask<Chunk> parsed = parsePool.submit(() -> parseChunk(toParse, parsers.get()));
+					saveExecutor.execute(() -> {
+						try {
+							Chunk parsedChunk;
+							try {
+								parsedChunk = parsed.join();
+							} catch (RuntimeException | Error e) {
+								failChunk(toParse, e, rejectsWriter, report);
+								return;
+							}
+							saveChunk(parsedChunk, rejectsWriter, report);
+						} catch (IOException e) {
+							synchronized (failure) {
+								if (failure[0] == null) {
+									failure[0] = e;
+								}
+							}
+						} finally {
+							inFlight.release();
+						}
+					});
+				} while (chunk.count == chunkSize);
+			} finally {
+				// Задачи сохранения пишут в файл отклонённых строк, поэтому на
+				// любом пути выхода (в том числе при ошибке чтения входного
+				// файла) они завершаются до его закрытия. Число ожидаемых
+				// задач ограничено числом блоков "в полёте".
+				saveExecutor.shutdown();
+				parsePool.shutdown();
+				awaitTermination(saveExecutor);
+				awaitTermination(parsePool);
+			}
+
+			synchronized (failure) {
+				if (failure[0] != null) {
+					throw failure[0];
+				}
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+
+		} finally {
+			saveExecutor.shutdownNow();
+			parsePool.shutdownNow();
+		}
+
+		report.elapsedNanos = System.nanoTime() - startNanos;
+		return report;
+	}
+
+	/**
+	 * Ожидает завершения задач исполнителя независимо от прерывания потока.
+	 */
+	private static void awaitTermination(ExecutorService executor) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Chunk readChunk(BufferedReader reader, long firstLineNumber) throws IOException {
+		var chunk = new Chunk(firstLineNumber, chunkSize);
+		String line;
+		while (chunk.count < chunkSize && (line = reader.readLine()) != null) {
+			chunk.lines[chunk.count++] = line;
+		}
+		return chunk;
+	}
+
+	private static Chunk parseChunk(Chunk chunk, Parser<UserData> parser) {
+		for (int i = 0; i < chunk.count; ++i) {
+			String line = chunk.lines[i];
+			if (line.isBlank()) {
+				continue;
+			}
+
+			int status = parser.setInput(line);
+			if (status != 0) {
+				chunk.rejects[i] = new Reject(IssueKind.WRONG_ITEMS_COUNT, "", Integer.toString(status));
+				continue;
+			}
+
+			var result = parser.tryParse();
+			if (result.isValid()) {
+				chunk.records[i] = result.getValue();
+			} else {
+				chunk.rejects[i] = new Reject(result.getIssueKind(), result.getDataItemName(), result.getWrongValue());
+			}
+		}
+		return chunk;
+	}
+
+	private void saveChunk(Chunk chunk, BufferedWriter rejectsWriter, BatchIngestion.Report report)
+			throws IOException {
+		var accepted = new ArrayList<UserData>(chunk.count);
+
+		for (int i = 0; i < chunk.count; ++i) {
+			long lineNumber = chunk.firstLineNumber + i;
+			var reject = chunk.rejects[i];
+			if (reject != null) {
+				BatchIngestion.writeReject(rejectsWriter, lineNumber, reject.issueKind, reject.dataItemName,
+						reject.wrongValue, chunk.lines[i]);
+				++report.rejected;
+			} else if (chunk.records[i] != null) {
+				accepted.add(chunk.records[i]);
+			} else {
+				++report.skipped;
+			}
+		}
+		report.linesRead += chunk.count;
+
+		if (accepted.isEmpty()) {
+			return;
+		}
+
+		try {
+			saver.saveAll(accepted);
+			report.accepted += accepted.size();
+
+		} catch (Exception e) {
+			// Пакет мог быть сохранён частично: строки, сохранение которых не
+			// подтверждено (PartialSaveException), отмечаются как не
+			// сохранённые.
+			var partial = e instanceof PartialSaveException ? (PartialSaveException) e : null;
+			Throwable cause = partial != null ? e.getCause() : e;
+			cause = cause.getCause() != null ? cause.getCause() : cause;
+			int index = 0;
+			for (int i = 0; i < chunk.count; ++i) {
+				if (chunk.records[i] == null) {
+					continue;
+				}
+				if (partial != null && partial.isSaved(index++)) {
+					++report.accepted;
+					continue;
+				}
+				BatchIngestion.writeReject(rejectsWriter, chunk.firstLineNumber + i, IssueKind.UNSPECIFIED, "",
+						String.valueOf(cause.getMessage()), chunk.lines[i]);
+				++report.saveFailures;
+			}
+		}
+	}
+
+	/**
+	 * Отмечает строки блока, разбор которого завершился исключением, как не
+	 * сохранённые: какие из них успели разобраться, неизвестно.
+	 */
+	private static void failChunk(Chunk chunk, Throwable failure, BufferedWriter rejectsWriter,
+			BatchIngestion.Report report) throws IOException {
+		// ForkJoinTask.join выбрасывает исключение задачи, обёрнутое в
+		// CompletionException либо в копию исключения, причиной которой
+		// является исходное.
+		var cause = failure;
+		if (cause.getCause() != null
+				&& (cause instanceof CompletionException || cause.getCause().getClass() == cause.getClass())) {
+			cause = cause.getCause();
+		}
+		for (int i = 0; i < chunk.count; ++i) {
+			if (chunk.lines[i].isBlank()) {
+				++report.skipped;
+				continue;
+			}
+			BatchIngestion.writeReject(rejectsWriter, chunk.firstLineNumber + i, IssueKind.UNSPECIFIED, "",
+					cause.toString(), chunk.lines[i]);
+			++report.saveFailures;
+		}
+		report.linesRead += chunk.count;
+	}
+
+	private static final class Chunk {
+		final long firstLineNumber;
+		final String[] lines;
+		final UserData[] records;
+		final Reject[] rejects;
+		int count;
+
+		Chunk(long firstLineNumber, int capacity) {
+			this.firstLineNumber = firstLineNumber;
+			this.lines = new String[capacity];
+			this.records = new UserData[capacity];
+			this.rejects = new Reject[capacity];
+		}
+	}
+
+	private static final class Reject {
+		final IssueKind issueKind;
+		final String dataItemName;
+		final String wrongValue;
+
+		Reject(IssueKind issueKind, String dataItemName, String wrongValue) {
+			this.issueKind = issueKind;
+			this.dataItemName = dataItemName;
+			this.wrongValue = wrongValue;
+		}
+	}
+}
@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import exceptions.PartialSaveException;
+
+/**
+ * Асинхронный сервис сохранения поверх синхронного (Saver): принятые данные
+ * помещаются в ограниченную очередь, из которой небольшое число потоков
+ * записи сохраняет их пакетами (Saver.saveAll).
+ * <p>
+ * Вызывающий поток ожидает только при заполненной очереди, то есть когда
+ * сохранение действительно не успевает, и только при политике
+ * OverflowPolicy.BLOCK; при политике REJECT данные, не поместившиеся в
+ * очередь, отклоняются.
+ * <p>
+ * При нескольких потоках записи сервис сохранения должен допускать
+ * одновременное использование несколькими потоками. Порядок сохранения
+ * сохраняется для данных с одинаковым ключом распределения: данные
+ * распределяются по очередям потоков записи по ключу (например, по
+ * фамилии в свёрнутом регистре), а без ключа все потоки записи разбирают
+ * одну общую очередь. Если сохранение пакета прервано ошибкой, результаты
+ * данных, сохранённых до ошибки (PartialSaveException), завершаются
+ * успешно, остальные -- исключением, прервавшим сохранение.
+ * <p>
+ * Результаты завершаются в потоках записи, поэтому продолжения
+ * результатов, выполняющие длительные действия, следует запускать
+ * асинхронно (thenApplyAsync и т. п.).
+ */
+public final class QueuedAsyncSaver<T> implements AsyncSaver<T> {
+
+	/**
+	 * Поведение при заполненной очереди.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Вызывающий поток ожидает освобождения места в очереди.
+		 */
+		BLOCK,
+		/**
+		 * Данные отклоняются: результат завершается исключением
+		 * RejectedExecutionException.
+		 */
+		REJECT
+	}
+
+	static final int MAX_BATCH_SIZE = 256;
+
+	// Интервал, с которым простаивающий поток записи проверяет, не закрыт
+	// ли сервис.
+	private static final long POLL_INTERVAL_MILLIS = 100;
+
+	private static final class Task<T> {
+		final T data;
+		final CompletableFuture<String> result = new CompletableFuture<>();
+
+		Task(T data) {
+			this.data = data;
+		}
+	}
+
+	private final Saver<T> saver;
+	private final OverflowPolicy policy;
+	private final Function<? super T, ?> partitionKey;
+	private final List<ArrayBlockingQueue<Task<T>>> queues = new ArrayList<>();
+	private final Thread[] writers;
+	// Приём данных (блокировка чтения) и закрытие (блокировка записи)
+	// взаимно исключаются, чтобы данные не попали в очередь после
+	// завершения потоков записи.
+	private final ReentrantReadWriteLock closing = new ReentrantReadWriteLock();
+	private volatile boolean closed;
+	private boolean drained;
+
+	/**
+	 * Асинхронный сервис сохранения с одним потоком записи.
+	 *
+	 * @param saver         Сервис сохранения данных.
+	 * @param queueCapacity Ёмкость очереди, экземпляров данных.
+	 * @param policy        Поведение при заполненной очереди.
+	 */
+	public QueuedAsyncSaver(Saver<T> saver, int queueCapacity, OverflowPolicy policy) {
+		this(saver, 1, queueCapacity, policy, null);
+	}
+
+	/**
+	 * @param saver         Сервис сохранения данных; при нескольких потоках
+	 *                      записи -- допускающий одновременное использование
+	 *                      несколькими потоками.
+	 * @param writers       Число потоков записи.
+	 * @param queueCapacity Суммарная ёмкость очередей, экземпляров данных.
+	 * @param policy        Поведение при заполненной очереди.
+	 * @param partitionKey  Функция ключа распределения данных по потокам
+	 *                      записи, либо null -- общая очередь без сохранения
+	 *                      порядка между потоками записи.
+	 */
+	public QueuedAsyncSaver(Saver<T> saver, int writers, int queueCapacity, OverflowPolicy policy,
+			Function<? super T, ?> partitionKey) {
+		if (saver == null || policy == null) {
+			throw new NullPointerException();
+		}
+		if (writers < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.saver = saver;
+		this.policy = policy;
+		this.partitionKey = writers > 1 ? partitionKey : null;
+
+		int queuesCount = this.partitionKey != null ? writers : 1;
+		for (int i = 0; i < queuesCount; ++i) {
+			queues.add(new ArrayBlockingQueue<>(Math.max(1, (queueCapacity + queuesCount - 1) / queuesCount)));
+		}
+		this.writers = new Thread[writers];
+		for (int i = 0; i < writers; ++i) {
+			var queue = queues.get(i % queuesCount);
+			this.writers[i] = new Thread(() -> write(queue), "async-saver-" + i);
+			this.writers[i].setDaemon(true);
+			this.writers[i].start();
+		}
+	}
+
+	/**
+	 * Регистрирует обработчик завершения работы приложения, закрывающий
+	 * сервис, так что принятые данные сохраняются и при завершении
+	 * приложения (например, по Ctrl+C).
+	 *
+	 * @return Этот же объект сервиса.
+	 */
+	public QueuedAsyncSaver<T> drainOnShutdown() {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				close();
+			} catch (Exception e) {
+				System.err.println("Не удалось завершить асинхронное сохранение данных: " + e);
+			}
+		}, "async-saver-shutdown"));
+		return this;
+	}
+
+	@Override
+	public CompletableFuture<String> saveAsync(T data) {
+		var task = new Task<>(data);
+		var queue = queues.get(
+				partitionKey != null ? Math.floorMod(partitionKey.apply(data).hashCode(), queues.size()) : 0);
+
+		closing.readLock().lock();
+		try {
+			if (closed) {
+				task.result.completeExceptionally(new RejectedExecutionException("Сервис сохранения закрыт."));
+			} else if (policy == OverflowPolicy.BLOCK) {
+				queue.put(task);
+			} else if (!queue.offer(task)) {
+				task.result.completeExceptionally(new RejectedExecutionException("Очередь сохранения заполнена."));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			task.result.completeExceptionally(
+					new RejectedExecutionException("Ожидание места в очереди прервано.", e));
+		} finally {
+			closing.readLock().unlock();
+		}
+		return task.result;
+	}
+
+	/**
+	 * @return Число экземпляров данных, ожидающих сохранения в очередях.
+	 */
+	public int getQueuedCount() {
+		int count = 0;
+		for (var queue : queues) {
+			count += queue.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Прекращает приём данных, дожидается сохранения всех принятых данных и
+	 * закрывает сервис сохранения. Ожидание не прерывается прерыванием
+	 * закрывающего потока: признак прерывания восстанавливается после
+	 * закрытия. Повторный вызов не выполняет никаких действий.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (drained) {
+			return;
+		}
+
+		closing.writeLock().lock();
+		try {
+			closed = true;
+		} finally {
+			closing.writeLock().unlock();
+		}
+		boolean interrupted = false;
+		for (var writer : writers) {
+			while (writer.isAlive()) {
+				try {
+					writer.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		drained = true;
+		try {
+			saver.close();
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void write(ArrayBlockingQueue<Task<T>> queue) {
+		var batch = new ArrayList<Task<T>>(MAX_BATCH_SIZE);
+		var items = new ArrayList<T>(MAX_BATCH_SIZE);
+		while (true) {
+			Task<T> task;
+			try {
+				task = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				// Поток записи завершается только после закрытия сервиса.
+				continue;
+			}
+			if (task == null) {
+				// Данные не принимаются после закрытия, поэтому пустая
+				// очередь закрытого сервиса остаётся пустой.
+				if (closed && queue.isEmpty()) {
+					return;
+				}
+				continue;
+			}
+
+			batch.add(task);
+			queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+			for (var queued : batch) {
+				items.add(queued.data);
+			}
+			try {
+				var paths = saver.saveAll(items);
+				for (int i = 0; i < batch.size(); ++i) {
+					batch.get(i).result.complete(paths.get(i));
+				}
+			} catch (PartialSaveException e) {
+				// Данные, сохранённые до ошибки, получают свои результаты,
+				// остальные -- исключение, прервавшее сохранение.
+				for (int i = 0; i < batch.size(); ++i) {
+					if (e.isSaved(i)) {
+						batch.get(i).result.complete(e.getSavedPath(i));
+					} else {
+						batch.get(i).result.completeExceptionally(e.getCause());
+					}
+				}
+			} catch (Throwable e) {
+				// Поток записи продолжает работу при любой ошибке пакета,
+				// иначе результаты данных, оставшихся в очереди, никогда не
+				// были бы завершены.
+				for (var failed : batch) {
+					failed.result.completeExceptionally(e);
+				}
+			}
+			batch.clear();
+			items.clear();
+		}
+	}
+}
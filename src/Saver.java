@@ -1,7 +1,13 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import exceptions.PartialSaveException;
+
 /**
  * Объект, предоставляющий сервис сохранения данных в заданной директории.
  */
-public interface Saver<T> {
+public interface Saver<T> extends AutoCloseable {
 
 	/**
 	 * Сохраняет экземпляр данных в текстовый файл с вычислимым именем.
@@ -13,4 +19,48 @@ public interface Saver<T> {
 	 *                   выполнения.
 	 */
 	String save(T data) throws Exception;
+
+	/**
+	 * Сохраняет пакет экземпляров данных. Порядок дописывания данных в каждый
+	 * из файлов соответствует порядку экземпляров в пакете.
+	 * 
+	 * @param data Пакет экземпляров данных.
+	 * @return Полные пути к сохранённым файлам в порядке экземпляров пакета.
+	 * @throws PartialSaveException если сохранение прервано ошибкой; исключение
+	 *                              сообщает, какие экземпляры пакета были
+	 *                              сохранены до ошибки.
+	 */
+	default List<String> saveAll(List<T> data) throws Exception {
+		var paths = new ArrayList<String>(data.size());
+		for (T item : data) {
+			try {
+				paths.add(save(item));
+			} catch (Exception e) {
+				throw new PartialSaveException(e, paths.toArray(new String[data.size()]));
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Сбрасывает буферизованные данные на диск, так что все сохранённые к
+	 * этому моменту данные записаны в файлы. Реализация по умолчанию не
+	 * выполняет никаких действий.
+	 * 
+	 * @throws Exception если не удалось записать буферизованные данные.
+	 */
+	default void flush() throws Exception {
+	}
+
+	/**
+	 * Завершает работу сервиса: сбрасывает буферизованные данные и освобождает
+	 * используемые ресурсы. Реализация по умолчанию не выполняет никаких
+	 * действий.
+	 * 
+	 * @throws IOException если не удалось сохранить буферизованные данные или
+	 *                     освободить ресурсы.
+	 */
+	@Override
+	default void close() throws IOException {
+	}
 }
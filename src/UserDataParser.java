@@ -18,13 +18,22 @@ import exceptions.ParseException;
 
 public class UserDataParser implements Parser<UserData> {
 
-	private static final String LAST_NAME = "Фамилия";
-	private static final String FIRST_NAME = "Имя";
-	private static final String MIDDLE_NAME = "Отчество";
-	private static final String BIRTH_DATE = "Дата_рождения";
-	private static final String PHONE_NUMBER = "Номер_телефона";
-	private static final String GENDER = "Пол";
-	private static final int REQUIRED_DATA_ITEMS = 6;
+	static final String LAST_NAME = "Фамилия";
+	static final String FIRST_NAME = "Имя";
+	static final String MIDDLE_NAME = "Отчество";
+	static final String BIRTH_DATE = "Дата_рождения";
+	static final String PHONE_NUMBER = "Номер_телефона";
+	static final String GENDER = "Пол";
+	static final int REQUIRED_DATA_ITEMS = 6;
+
+	static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.uuuu");
+
+	// Регулярные выражения компилируются однократно, а не при каждом вызове
+	// parse().
+	private static final Pattern GENDER_PATTERN = compile("\\b(f|m|F|M)\\b");
+	private static final Pattern DATE_PATTERN = compile("\\b(\\d{2}\\.\\d{2}\\.\\d{4})\\b");
+	private static final Pattern PHONE_NUMBER_PATTERN = compile("\\b(\\d+)\\b");
+	private static final Pattern NAME_PATTERN = compile("((?!\\b[fmFM]{1}\\b)\\b[\\w&&\\D]+\\b)");
 
 	// static {
 	// int gettersCount;
@@ -63,39 +72,39 @@ public class UserDataParser implements Parser<UserData> {
 		// Тем не менее, фактический порядок выбран от более конкретных к более
 		// общим форматам.
 
-		var genders = extractAll(sbInput, "\\b(f|m|F|M)\\b");
-		var dates = extractAll(sbInput, "\\b(\\d{2}\\.\\d{2}\\.\\d{4})\\b");
-		var phoneNumbers = extractAll(sbInput, "\\b(\\d+)\\b");
-		var lastFirstMiddleNames = extractAll(sbInput, "((?!\\b[fmFM]{1}\\b)\\b[\\w&&\\D]+\\b)");
+		var genders = extractAll(sbInput, GENDER_PATTERN);
+		var dates = extractAll(sbInput, DATE_PATTERN);
+		var phoneNumbers = extractAll(sbInput, PHONE_NUMBER_PATTERN);
+		var lastFirstMiddleNames = extractAll(sbInput, NAME_PATTERN);
 
 		String wrongData = sbInput.toString().trim();
 
 		if (lastFirstMiddleNames.isEmpty()) {
-			throw new ParseException(LAST_NAME, IssueKind.MISSING_DATA, wrongData);
+			throw ParseException.stackless(LAST_NAME, IssueKind.MISSING_DATA, wrongData);
 		} else if (lastFirstMiddleNames.size() == 1) {
-			throw new ParseException(FIRST_NAME, IssueKind.MISSING_DATA, wrongData);
+			throw ParseException.stackless(FIRST_NAME, IssueKind.MISSING_DATA, wrongData);
 		} else if (lastFirstMiddleNames.size() == 2) {
-			throw new ParseException(MIDDLE_NAME, IssueKind.MISSING_DATA, wrongData);
+			throw ParseException.stackless(MIDDLE_NAME, IssueKind.MISSING_DATA, wrongData);
 		} else if (lastFirstMiddleNames.size() != 3) {
-			throw new ParseException(MIDDLE_NAME, IssueKind.AMBIGUOUS_DATA, wrongData);
+			throw ParseException.stackless(MIDDLE_NAME, IssueKind.AMBIGUOUS_DATA, wrongData);
 		}
 
 		if (genders.isEmpty()) {
-			throw new ParseException(GENDER, IssueKind.MISSING_DATA, wrongData);
+			throw ParseException.stackless(GENDER, IssueKind.MISSING_DATA, wrongData);
 		} else if (genders.size() != 1) {
-			throw new ParseException(GENDER, IssueKind.AMBIGUOUS_DATA, wrongData);
+			throw ParseException.stackless(GENDER, IssueKind.AMBIGUOUS_DATA, wrongData);
 		}
 
 		if (dates.isEmpty()) {
-			throw new ParseException(BIRTH_DATE, IssueKind.MISSING_DATA, wrongData);
+			throw ParseException.stackless(BIRTH_DATE, IssueKind.MISSING_DATA, wrongData);
 		} else if (dates.size() != 1) {
-			throw new ParseException(BIRTH_DATE, IssueKind.AMBIGUOUS_DATA, wrongData);
+			throw ParseException.stackless(BIRTH_DATE, IssueKind.AMBIGUOUS_DATA, wrongData);
 		}
 
 		if (phoneNumbers.isEmpty()) {
-			throw new ParseException(PHONE_NUMBER, IssueKind.MISSING_DATA, wrongData);
+			throw ParseException.stackless(PHONE_NUMBER, IssueKind.MISSING_DATA, wrongData);
 		} else if (phoneNumbers.size() != 1) {
-			throw new ParseException(PHONE_NUMBER, IssueKind.AMBIGUOUS_DATA, wrongData);
+			throw ParseException.stackless(PHONE_NUMBER, IssueKind.AMBIGUOUS_DATA, wrongData);
 		}
 
 		var userData = new UserData();
@@ -108,9 +117,12 @@ public class UserDataParser implements Parser<UserData> {
 		return userData;
 	}
 
-	private static List<String> extractAll(StringBuilder from, String regex) {
+	private static Pattern compile(String regex) {
+		return Pattern.compile(regex, Pattern.UNICODE_CHARACTER_CLASS);
+	}
+
+	private static List<String> extractAll(StringBuilder from, Pattern pattern) {
 		var result = new ArrayList<String>();
-		Pattern pattern = Pattern.compile(regex, Pattern.UNICODE_CHARACTER_CLASS);
 		Matcher matcher = pattern.matcher(from.toString());
 
 		int removedLength = 0;
@@ -137,11 +149,10 @@ public class UserDataParser implements Parser<UserData> {
 	// }
 
 	private static LocalDate parseDate(String str) throws ParseException {
-		final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd.MM.uuuu");
 		try {
-			return LocalDate.parse(str, dateFormatter);
+			return LocalDate.parse(str, DATE_FORMATTER);
 		} catch (DateTimeParseException e) {
-			throw new ParseException(BIRTH_DATE, IssueKind.WRONG_FORMAT, str);
+			throw ParseException.stackless(BIRTH_DATE, IssueKind.WRONG_FORMAT, str);
 		}
 	}
 }
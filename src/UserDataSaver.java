@@ -1,23 +1,67 @@
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
+import entities.NameDictionary;
 import entities.UserData;
+import exceptions.PartialSaveException;
+import metrics.IngestionMetrics;
+import metrics.SlowSaveEvent;
+import storage.DirectoryIndex;
+import storage.DuplicateFilter;
+import storage.GroupCommitJournal;
+import storage.PersistentNameDictionary;
+import storage.RecordCodec;
+import storage.RecordFiles;
+import storage.RecordIndexes;
+import storage.SegmentCompactor;
+import storage.ShardedLayout;
+import storage.StripedLocks;
+import storage.TextRecordCodec;
+import storage.WriterPool;
+import utils.StringUtils;
 
 public class UserDataSaver implements Saver<UserData> {
 
+	static final String NAMES_FILE = ".names";
+
 	private final Path dataDir;
-	private final Function<UserData, String> getAsString;
+	private final RecordCodec codec;
+	private final DirectoryIndex directoryIndex;
+	private final WriterPool writerPool;
+	private final GroupCommitJournal journal;
+	private final StripedLocks locks;
+	private final boolean lockFiles;
+	private final RecordIndexes indexes;
+	private final PersistentNameDictionary names;
+	private final DuplicateFilter duplicates;
+	private final SegmentCompactor compactor;
+	private final long coldAgeMillis;
+	// Дописывание в файлы фамилий и завершение уплотнения взаимно
+	// исключаются.
+	private final ReentrantLock writeLock;
+	private final ScheduledExecutorService compaction;
+	private volatile IOException compactionFailure;
+	private boolean closed;
 
 	/**
 	 * Объект, предоставляющий сервис сохранения пользовательских данных
 	 * в заданной директории.
 	 * Данные пользователей сохраняются в файлы, соответствующие фамилии
-	 * пользователя.
+	 * пользователя. Поиск файла по фамилии выполняется по индексу имён файлов
+	 * директории, построенному однократно при создании объекта.
 	 * 
 	 * @param pathToDataDir Путь к директории данных.
 	 * @param getAsString   Функция приведения экземпляра пользовательских данных
@@ -26,9 +70,132 @@ public class UserDataSaver implements Saver<UserData> {
 	 *                   пути к директории для сохранения файлов.
 	 */
 	public UserDataSaver(String pathToDataDir, Function<UserData, String> getAsString) throws Exception {
+		this(pathToDataDir, getAsString, new Options());
+	}
+
+	/**
+	 * Объект, предоставляющий сервис сохранения пользовательских данных
+	 * в заданной директории, с дополнительными параметрами сохранения.
+	 * 
+	 * @param pathToDataDir Путь к директории данных.
+	 * @param getAsString   Функция приведения экземпляра пользовательских данных
+	 *                      к строковому представлению.
+	 * @param options       Параметры сохранения.
+	 * @throws Exception если указанный путь невозможно использовать в качестве
+	 *                   пути к директории для сохранения файлов.
+	 */
+	public UserDataSaver(String pathToDataDir, Function<UserData, String> getAsString, Options options)
+			throws Exception {
+		this(pathToDataDir, new TextRecordCodec(getAsString != null ? getAsString : UserData::toString), options);
+	}
+
+	/**
+	 * Объект, предоставляющий сервис сохранения пользовательских данных
+	 * в заданной директории в заданном формате хранения, с дополнительными
+	 * параметрами сохранения.
+	 * 
+	 * @param pathToDataDir Путь к директории данных.
+	 * @param codec         Формат хранения записей, например, компактный
+	 *                      двоичный (BinaryRecordCodec).
+	 * @param options       Параметры сохранения.
+	 * @throws Exception если указанный путь невозможно использовать в качестве
+	 *                   пути к директории для сохранения файлов.
+	 */
+	public UserDataSaver(String pathToDataDir, RecordCodec codec, Options options) throws Exception {
 		try {
+			// Смещения записей отслеживаются только единственным пишущим
+			// процессом.
+			if (options.secondaryIndexes && options.lockStripes > 0) {
+				throw new IllegalArgumentException(
+						"Вторичные индексы несовместимы с режимом совместного доступа.");
+			}
+			if (options.secondaryIndexes && !(codec instanceof TextRecordCodec)) {
+				throw new IllegalArgumentException("Вторичные индексы поддерживаются только для текстового формата.");
+			}
+			if (options.nameDictionary && options.lockStripes > 0) {
+				throw new IllegalArgumentException(
+						"Словарь имён несовместим с режимом совместного доступа.");
+			}
+			// Наличие записи подтверждается по файлу, поэтому записи должны
+			// дописываться в файлы немедленно и только этим процессом.
+			if (options.deduplication && (options.lockStripes > 0 || options.commitWindowRecords > 0)) {
+				throw new IllegalArgumentException(
+						"Подавление повторов несовместимо с режимами совместного доступа и групповой фиксации.");
+			}
+			// Уплотняемые файлы удаляются, поэтому записи должны дописываться
+			// в них только этим процессом и немедленно.
+			if (options.compaction && (options.lockStripes > 0 || options.commitWindowRecords > 0
+					|| options.deduplication)) {
+				throw new IllegalArgumentException("Уплотнение несовместимо с режимами совместного доступа,"
+						+ " групповой фиксации и подавления повторов.");
+			}
 			this.dataDir = prepareDir(pathToDataDir);
-			this.getAsString = getAsString != null ? getAsString : UserData::toString;
+			if (options.shardedLayout) {
+				ShardedLayout.enable(dataDir);
+			}
+			this.codec = codec;
+			this.locks = options.lockStripes > 0 ? new StripedLocks(options.lockStripes) : null;
+			this.lockFiles = locks != null;
+			this.directoryIndex = new DirectoryIndex(dataDir, lockFiles);
+			this.writerPool = options.maxOpenFiles > 0
+					? new WriterPool(options.maxOpenFiles, options.flushThresholdBytes, options.flushIntervalMillis,
+							lockFiles, codec)
+					: null;
+			this.journal = options.commitWindowRecords > 0
+					? new GroupCommitJournal(dataDir, new JournalSink(), options.commitWindowMillis,
+							options.commitWindowRecords, options.checkpointBytes)
+					: null;
+			this.indexes = options.secondaryIndexes ? RecordIndexes.openForWriting(dataDir) : null;
+			if (indexes == null) {
+				RecordIndexes.markChanged(dataDir);
+			}
+			this.names = options.nameDictionary ? PersistentNameDictionary.open(dataDir.resolve(NAMES_FILE)) : null;
+			this.duplicates = options.deduplication ? new DuplicateFilter(dataDir, codec) : null;
+			this.compactor = options.compaction ? new SegmentCompactor(dataDir, codec,
+					SegmentCompactor.DEFAULT_MAX_FILE_BYTES, SegmentCompactor.DEFAULT_SEGMENT_BYTES) : null;
+			this.coldAgeMillis = options.coldAgeMillis;
+			this.writeLock = options.compaction ? new ReentrantLock() : null;
+			if (options.compactionIntervalMillis > 0) {
+				this.compaction = Executors.newSingleThreadScheduledExecutor(runnable -> {
+					var thread = new Thread(runnable, "segment-compactor");
+					thread.setDaemon(true);
+					return thread;
+				});
+				this.compaction.scheduleWithFixedDelay(this::compactQuietly, options.compactionIntervalMillis,
+						options.compactionIntervalMillis, TimeUnit.MILLISECONDS);
+			} else {
+				this.compaction = null;
+			}
+		} catch (RuntimeException e) {
+			throw new Exception(e);
+		}
+	}
+
+	/**
+	 * @return Словарь имён директории данных, либо null, если словарь имён
+	 *         не используется.
+	 */
+	public NameDictionary getNameDictionary() {
+		return names;
+	}
+
+	/**
+	 * Уплотняет небольшие файлы фамилий, не изменявшиеся заданное в
+	 * параметрах время, в новый сегмент (SegmentCompactor). Сохранение
+	 * данных приостанавливается лишь на время завершения уплотнения.
+	 * 
+	 * @return Число уплотнённых файлов.
+	 * @throws IllegalStateException если уплотнение не включено.
+	 * @throws Exception             если уплотнение не удалось.
+	 */
+	public int compact() throws Exception {
+		if (compactor == null) {
+			throw new IllegalStateException("Уплотнение не включено.");
+		}
+		try {
+			synchronized (compactor) {
+				return compactor.compact(coldAgeMillis, writeLock, new CompactionWriter());
+			}
 		} catch (RuntimeException e) {
 			throw new Exception(e);
 		}
@@ -45,46 +212,446 @@ public class UserDataSaver implements Saver<UserData> {
 	 *                   выполнения.
 	 */
 	public String save(UserData userData) throws Exception {
+		long started = IngestionMetrics.ENABLED ? System.nanoTime() : 0;
+		var event = new SlowSaveEvent();
+		event.begin();
+		try {
+			Path pathToFile = resolveAndAppend(userData.getLastName(), List.of(userData), event);
+			if (journal != null) {
+				var record = codec.encode(userData);
+				journal.commit(List.of(pathToFile), List.of(record));
+				index(pathToFile, userData, record);
+			}
+			saved(event, started, 1, 1, pathToFile);
+			return pathToFile.toAbsolutePath().toString();
+
+		} catch (IOException e) {
+			invalidateIndexes();
+			throw e;
+		} catch (RuntimeException e) {
+			invalidateIndexes();
+			throw new Exception(e);
+		}
+	}
+
+	/**
+	 * Сохраняет пакет экземпляров данных, группируя их по файлам,
+	 * соответствующим фамилиям пользователей: каждый файл открывается
+	 * однократно на весь пакет, порядок дописывания данных в файл
+	 * соответствует порядку экземпляров в пакете.
+	 * 
+	 * @param userDataList Пакет экземпляров данных.
+	 * @throws PartialSaveException если сохранение прервано ошибкой
+	 *                              ввода-вывода или иным исключением времени
+	 *                              выполнения; сохранёнными отмечаются
+	 *                              экземпляры файлов, дописывание в которые
+	 *                              завершилось до ошибки (в режиме
+	 *                              групповой фиксации -- ни один).
+	 */
+	@Override
+	public List<String> saveAll(List<UserData> userDataList) throws Exception {
+		long started = IngestionMetrics.ENABLED ? System.nanoTime() : 0;
+		var event = new SlowSaveEvent();
+		event.begin();
+		var savedPaths = new String[userDataList.size()];
 		try {
-			String lastName = userData.getLastName();
-			Path pathToFile = findFileByNameCaseInsensitive(lastName, dataDir);
-			if (pathToFile == null) {
-				pathToFile = dataDir.resolve(lastName);
+			var groups = new LinkedHashMap<Object, List<Integer>>();
+			for (int i = 0; i < userDataList.size(); ++i) {
+				groups.computeIfAbsent(groupKey(userDataList.get(i).getLastName()), k -> new ArrayList<>()).add(i);
 			}
 
-			var file = pathToFile.toFile();
+			var pathsByName = new HashMap<Object, Path>();
+			Path pathToFile = null;
+			for (var group : groups.entrySet()) {
+				var indices = group.getValue();
+				var items = new ArrayList<UserData>(indices.size());
+				for (int index : indices) {
+					items.add(userDataList.get(index));
+				}
+				pathToFile = resolveAndAppend(items.get(0).getLastName(), items, event);
+				pathsByName.put(group.getKey(), pathToFile);
+				if (journal == null) {
+					var savedPath = pathToFile.toAbsolutePath().toString();
+					for (int index : indices) {
+						savedPaths[index] = savedPath;
+					}
+				}
+			}
 
-			try (FileWriter fileWriter = new FileWriter(file, StandardCharsets.UTF_8, true)) {
-				if (file.length() > 0) {
-					fileWriter.write(System.lineSeparator());
+			var files = new ArrayList<Path>(userDataList.size());
+			for (var userData : userDataList) {
+				files.add(pathsByName.get(groupKey(userData.getLastName())));
+			}
+
+			if (journal != null) {
+				// Записи фиксируются в журнале одной группой в исходном порядке.
+				var records = new ArrayList<byte[]>(userDataList.size());
+				for (var userData : userDataList) {
+					records.add(codec.encode(userData));
+				}
+				journal.commit(files, records);
+				for (int i = 0; i < records.size(); ++i) {
+					index(files.get(i), userDataList.get(i), records.get(i));
 				}
-				fileWriter.write(getAsString.apply(userData));
 			}
 
-			return pathToFile.toAbsolutePath().toString();
+			var paths = new ArrayList<String>(files.size());
+			for (var file : files) {
+				paths.add(file.toAbsolutePath().toString());
+			}
+			saved(event, started, userDataList.size(), groups.size(), pathToFile);
+			return paths;
 
-		} catch (RuntimeException e) {
-			throw new Exception(e);
+		} catch (IOException | RuntimeException e) {
+			invalidateIndexes();
+			throw new PartialSaveException(e, savedPaths);
 		}
 	}
 
 	/**
-	 * Нечувствительный к регистру поиск по указанному пути существующего файла
-	 * или директории по имени.
+	 * Сбрасывает на диск буферы файлов, если файлы удерживаются открытыми
+	 * (Options.withWriterPool).
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (writerPool != null) {
+			writerPool.flush();
+		}
+	}
+
+	/**
+	 * Сбрасывает на диск буферизованные данные, закрывает открытые файлы,
+	 * сохраняет вторичные индексы и освобождает ресурсы, используемые для
+	 * отслеживания изменений директории данных. Повторный вызов не выполняет
+	 * никаких действий.
+	 *
+	 * @throws IOException если не удалось сохранить буферизованные данные или
+	 *                     освободить ресурсы, а также если периодическое
+	 *                     уплотнение завершилось ошибкой.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (compaction != null) {
+			// Уплотнение, выполняемое в момент закрытия, завершается
+			// независимо от прерывания закрывающего потока.
+			compaction.shutdown();
+			boolean interrupted = false;
+			while (true) {
+				try {
+					compaction.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		try {
+			try {
+				if (journal != null) {
+					journal.close();
+				}
+			} finally {
+				if (writerPool != null) {
+					writerPool.close();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			invalidateIndexes();
+			throw e;
+		} finally {
+			try {
+				// Фильтры сохраняются после сброса буферов, когда длины
+				// файлов окончательны.
+				if (duplicates != null) {
+					duplicates.close();
+				}
+			} finally {
+				try {
+					if (indexes != null) {
+						indexes.close();
+					} else {
+						RecordIndexes.markChanged(dataDir);
+					}
+				} finally {
+					try {
+						if (names != null) {
+							names.close();
+						}
+					} finally {
+						directoryIndex.close();
+					}
+				}
+			}
+		}
+		if (compactionFailure != null) {
+			throw compactionFailure;
+		}
+	}
+
+	/**
+	 * Находит (при необходимости -- создаёт) файл, соответствующий фамилии, и,
+	 * если не используется журнал, дописывает в него данные. В режиме
+	 * совместного доступа операция выполняется под блокировкой, общей для
+	 * всех фамилий, совпадающих без учёта регистра.
 	 * 
-	 * @param fileName Имя файла.
-	 * @param baseDir  Путь к директории для поиска.
-	 * @return Объект, представляющий системно-зависимый путь к файлу,
-	 *         либо null, если файла или директории с таким именем не найдено.
-	 * @throws IOException
-	 * @throws SecurityException
+	 * @return Путь к файлу.
 	 */
-	private static Path findFileByNameCaseInsensitive(final String fileName, Path baseDir) throws IOException {
-		assert fileName != null && !fileName.isBlank();
+	private Path resolveAndAppend(String lastName, List<UserData> items, SlowSaveEvent event) throws IOException {
+		var lock = locks != null ? locks.lockFor(lastName) : null;
+		if (lock != null) {
+			lock.lock();
+		}
+		try {
+			// Длительности этапов замеряются, если включены метрики либо
+			// ведётся запись событий JFR.
+			boolean timed = IngestionMetrics.ENABLED || event.isEnabled();
+			long started = timed ? System.nanoTime() : 0;
+			Path pathToFile = resolveFile(lastName);
+			if (timed) {
+				long now = System.nanoTime();
+				event.lookupNanos += now - started;
+				if (IngestionMetrics.ENABLED) {
+					IngestionMetrics.get().lookedUp(now - started);
+				}
+				started = now;
+			}
+			if (journal == null) {
+				long bytes = appendLocked(pathToFile, items);
+				if (timed) {
+					long elapsed = System.nanoTime() - started;
+					event.writeNanos += elapsed;
+					if (IngestionMetrics.ENABLED) {
+						IngestionMetrics.get().written(elapsed, bytes);
+					}
+				}
+			}
+			return pathToFile;
 
-		try (var resultAsStream = Files.find(baseDir, 1,
-				(path, attr) -> path.getFileName().toString().equalsIgnoreCase(fileName))) {
-			return resultAsStream.findAny().orElse(null);
+		} finally {
+			if (lock != null) {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * @return Ключ группировки фамилий, совпадающих без учёта регистра:
+	 *         нормализованный идентификатор словаря имён, либо, если словарь
+	 *         не используется, фамилия в свёрнутом регистре.
+	 */
+	private Object groupKey(String lastName) {
+		return names != null ? names.normalizedId(names.idOf(lastName)) : StringUtils.foldCase(lastName);
+	}
+
+	private Path resolveFile(String lastName) throws IOException {
+		if (locks != null) {
+			return directoryIndex.findOrCreate(lastName);
+		}
+
+		// Путь к файлу не запоминается вне индекса директории: индекс
+		// обнаруживает файлы, удалённые или перенесённые в сегменты
+		// (ShardedLayout.reshard) другими процессами.
+		Path pathToFile = directoryIndex.find(lastName);
+		if (pathToFile == null) {
+			// Файл создаётся и регистрируется в индексе до дописывания
+			// записей (в режиме групповой фиксации -- до переноса записей из
+			// журнала), чтобы фамилии, отличающиеся лишь регистром, не
+			// создали разных файлов.
+			pathToFile = directoryIndex.newFilePath(lastName);
+			try {
+				Files.createFile(pathToFile);
+			} catch (FileAlreadyExistsException e) {
+				// файл уже создан
+			}
+			pathToFile = directoryIndex.put(pathToFile);
+		}
+		return pathToFile;
+	}
+
+	/**
+	 * Дописывает данные в файл, при включённом уплотнении -- под
+	 * блокировкой записи.
+	 * 
+	 * @return Число байт дописанных записей.
+	 */
+	private long appendLocked(Path pathToFile, List<UserData> items) throws IOException {
+		if (writeLock == null) {
+			return append(pathToFile, items);
+		}
+		writeLock.lock();
+		try {
+			return append(pathToFile, items);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * @return Число байт дописанных записей.
+	 */
+	private long append(Path pathToFile, List<UserData> items) throws IOException {
+		var records = new ArrayList<byte[]>(items.size());
+		var appended = duplicates != null ? new ArrayList<UserData>(items.size()) : items;
+		long bytes = 0;
+		for (var userData : items) {
+			var record = codec.encode(userData);
+			if (duplicates != null) {
+				if (isDuplicate(pathToFile, record, records)) {
+					continue;
+				}
+				appended.add(userData);
+			}
+			records.add(record);
+			bytes += record.length;
+		}
+
+		if (writerPool != null) {
+			for (int i = 0; i < records.size(); ++i) {
+				writerPool.append(pathToFile, records.get(i));
+				index(pathToFile, appended.get(i), records.get(i));
+			}
+		} else {
+			RecordFiles.append(pathToFile, records, codec, lockFiles);
+			for (int i = 0; i < records.size(); ++i) {
+				index(pathToFile, appended.get(i), records.get(i));
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Проверяет, имеется ли запись в файле либо среди записей, ожидающих
+	 * дописывания в него; запись, которой нет, учитывается как дописываемая.
+	 */
+	private boolean isDuplicate(Path pathToFile, byte[] record, List<byte[]> pending) throws IOException {
+		if (duplicates.mightContain(pathToFile, record)) {
+			for (var other : pending) {
+				if (Arrays.equals(other, record)) {
+					return true;
+				}
+			}
+			if (writerPool != null) {
+				writerPool.flush(pathToFile);
+			}
+			if (duplicates.contains(pathToFile, record)) {
+				return true;
+			}
+		}
+		duplicates.add(pathToFile, record);
+		return false;
+	}
+
+	/**
+	 * Учитывает завершённое сохранение в метриках и, если оно длилось дольше
+	 * порога, записывает событие JFR.
+	 */
+	private static void saved(SlowSaveEvent event, long started, int records, int files, Path lastFile) {
+		if (IngestionMetrics.ENABLED) {
+			IngestionMetrics.get().saved(System.nanoTime() - started);
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.records = records;
+			event.files = files;
+			event.file = lastFile != null ? lastFile.toAbsolutePath().toString() : null;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Добавляет во вторичные индексы запись, дописанную (либо зафиксированную
+	 * в журнале для дописывания) в файл данных.
+	 */
+	private void index(Path pathToFile, UserData userData, byte[] record) throws IOException {
+		if (indexes != null) {
+			indexes.add(pathToFile, userData.getPhoneNumber(), userData.getBirthDate(), record.length);
+		}
+	}
+
+	private void invalidateIndexes() {
+		if (indexes != null) {
+			indexes.invalidate();
+		}
+	}
+
+	private void appendRecord(Path pathToFile, byte[] record) throws IOException {
+		long started = IngestionMetrics.ENABLED ? System.nanoTime() : 0;
+		if (writerPool != null) {
+			writerPool.append(pathToFile, record);
+		} else {
+			RecordFiles.append(pathToFile, List.of(record), codec, lockFiles);
+		}
+		if (IngestionMetrics.ENABLED) {
+			IngestionMetrics.get().written(System.nanoTime() - started, record.length);
+		}
+	}
+
+	/**
+	 * Периодическое уплотнение; ошибка уплотнения прекращает его и
+	 * сообщается при закрытии объекта сервиса.
+	 */
+	private void compactQuietly() {
+		if (compactionFailure != null) {
+			return;
+		}
+		try {
+			compact();
+		} catch (IOException e) {
+			compactionFailure = e;
+		} catch (Exception e) {
+			compactionFailure = new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Действия сервиса сохранения при завершении уплотнения, выполняемые
+	 * под блокировкой записи.
+	 */
+	private class CompactionWriter implements SegmentCompactor.Writer {
+
+		@Override
+		public void release(Path file) throws IOException {
+			if (writerPool != null) {
+				writerPool.release(file);
+			}
+		}
+
+		@Override
+		public void compacted(List<Path> files, Path segment) throws IOException {
+			for (var file : files) {
+				directoryIndex.remove(file);
+			}
+			if (indexes != null) {
+				for (var file : files) {
+					indexes.remove(file);
+				}
+				indexes.addFile(segment);
+			}
+		}
+	}
+
+	/**
+	 * Перенос записей, зафиксированных в журнале, в файлы данных.
+	 */
+	private class JournalSink implements GroupCommitJournal.Sink {
+
+		@Override
+		public void append(Path file, byte[] record) throws IOException {
+			appendRecord(file, record);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (writerPool != null) {
+				writerPool.flush();
+			}
 		}
 	}
 
@@ -124,4 +691,180 @@ public class UserDataSaver implements Saver<UserData> {
 					String.format("По заданному пути '%s' не удалось создать директорию.", pathToDir));
 		}
 	}
+
+	/**
+	 * Дополнительные параметры сохранения данных.
+	 */
+	public static class Options {
+		private static final long DEFAULT_CHECKPOINT_BYTES = 64L * 1024 * 1024;
+
+		private int maxOpenFiles;
+		private int flushThresholdBytes;
+		private long flushIntervalMillis;
+		private long commitWindowMillis;
+		private int commitWindowRecords;
+		private long checkpointBytes = DEFAULT_CHECKPOINT_BYTES;
+		private int lockStripes;
+		private boolean secondaryIndexes;
+		private boolean nameDictionary;
+		private boolean deduplication;
+		private boolean shardedLayout;
+		private boolean compaction;
+		private long compactionIntervalMillis;
+		private long coldAgeMillis;
+
+		/**
+		 * Включает режим удержания открытых файлов: вместо открытия и закрытия
+		 * файла при каждом сохранении файлы удерживаются открытыми в пуле
+		 * с вытеснением давно не использовавшихся, а записи буферизуются.
+		 * Буферизованные данные сбрасываются на диск при заполнении буфера,
+		 * периодически и при закрытии объекта сервиса сохранения.
+		 * 
+		 * @param maxOpenFiles        Наибольшее число одновременно открытых
+		 *                            файлов.
+		 * @param flushThresholdBytes Размер буфера каждого из файлов, байт.
+		 * @param flushIntervalMillis Интервал периодического сброса буферов на
+		 *                            диск, мс; 0 -- без периодического сброса.
+		 * @return Этот же объект параметров.
+		 */
+		public Options withWriterPool(int maxOpenFiles, int flushThresholdBytes, long flushIntervalMillis) {
+			if (maxOpenFiles < 1 || flushThresholdBytes < 1 || flushIntervalMillis < 0) {
+				throw new IllegalArgumentException();
+			}
+			this.maxOpenFiles = maxOpenFiles;
+			this.flushThresholdBytes = flushThresholdBytes;
+			this.flushIntervalMillis = flushIntervalMillis;
+			return this;
+		}
+
+		/**
+		 * Включает режим групповой фиксации: записи дописываются в журнал
+		 * упреждающей записи в директории данных и сбрасываются на диск
+		 * (fsync) группами, а в файлы данных переносятся асинхронно.
+		 * Сохранение завершается после фиксации записи в журнале; при
+		 * следующем создании объекта сервиса незавершённый перенос записей
+		 * восстанавливается по журналу.
+		 * 
+		 * @param commitWindowMillis  Наибольшее время накопления группы записей
+		 *                            перед фиксацией, мс.
+		 * @param commitWindowRecords Число записей, при накоплении которого
+		 *                            группа фиксируется немедленно.
+		 * @return Этот же объект параметров.
+		 */
+		public Options withGroupCommit(long commitWindowMillis, int commitWindowRecords) {
+			if (commitWindowMillis < 0 || commitWindowRecords < 1) {
+				throw new IllegalArgumentException();
+			}
+			this.commitWindowMillis = commitWindowMillis;
+			this.commitWindowRecords = commitWindowRecords;
+			return this;
+		}
+
+		/**
+		 * Включает режим совместного доступа: объект сервиса допускает
+		 * одновременное использование несколькими потоками, а директория
+		 * данных -- одновременную запись несколькими процессами.
+		 * <p>
+		 * Сохранения в файлы фамилий, совпадающих без учёта регистра,
+		 * взаимно исключаются блокировкой из набора полос, так что сохранения
+		 * в разные файлы, как правило, не конкурируют. Между процессами запись
+		 * в файлы и создание новых файлов согласуются блокировками файлов
+		 * (FileLock).
+		 * 
+		 * @param lockStripes Число полос блокировок.
+		 * @return Этот же объект параметров.
+		 */
+		public Options withConcurrentAccess(int lockStripes) {
+			if (lockStripes < 1) {
+				throw new IllegalArgumentException();
+			}
+			this.lockStripes = lockStripes;
+			return this;
+		}
+	
+		/**
+		 * Включает поддержку вторичных индексов по номеру телефона и дате
+		 * рождения: при создании объекта сервиса индексы дополняются (либо
+		 * перестраиваются) по файлам данных, а далее -- по мере сохранения
+		 * данных. Индексы предполагают строковое представление данных
+		 * UserData.toString() и несовместимы с режимом совместного доступа.
+		 * 
+		 * @return Этот же объект параметров.
+		 */
+		public Options withSecondaryIndexes() {
+			this.secondaryIndexes = true;
+			return this;
+		}
+
+		/**
+		 * Включает словарь имён директории данных (файл .names): фамилиям,
+		 * именам и отчествам назначаются идентификаторы, сохраняемые между
+		 * запусками, а файлы фамилий находятся по нормализованному
+		 * идентификатору фамилии. Словарь доступен методом getNameDictionary
+		 * для использования при разборе данных и несовместим с режимом
+		 * совместного доступа.
+		 * 
+		 * @return Этот же объект параметров.
+		 */
+		public Options withNameDictionary() {
+			this.nameDictionary = true;
+			return this;
+		}
+
+		/**
+		 * Включает подавление повторов: запись, уже имеющаяся в файле
+		 * фамилии, повторно не дописывается. Наличие записи проверяется по
+		 * фильтру Блума файла, хранимому в памяти (и в поддиректории .bloom
+		 * директории данных между запусками), и лишь при положительном ответе
+		 * фильтра -- по записям файла. Режим несовместим с режимами
+		 * совместного доступа и групповой фиксации.
+		 * 
+		 * @return Этот же объект параметров.
+		 */
+		public Options withDeduplication() {
+			this.deduplication = true;
+			return this;
+		}
+
+		/**
+		 * Делает директорию данных сегментированной (ShardedLayout): новые
+		 * файлы фамилий создаются в двухуровневых поддиректориях,
+		 * определяемых хешем фамилии, так что число файлов в каждой
+		 * директории остаётся небольшим. Сегментированная директория
+		 * остаётся таковой и для последующих объектов сервиса; файлы,
+		 * созданные ранее на верхнем уровне, используются до их переноса
+		 * (ShardedLayout.reshard).
+		 * 
+		 * @return Этот же объект параметров.
+		 */
+		public Options withShardedLayout() {
+			this.shardedLayout = true;
+			return this;
+		}
+
+		/**
+		 * Включает уплотнение: содержимое небольших файлов фамилий, не
+		 * изменявшихся заданное время, переносится в большие сегменты с
+		 * индексом фамилий (SegmentCompactor), а сами файлы удаляются;
+		 * новые записи фамилии дописываются в новый файл фамилии. Уплотнение
+		 * выполняется в фоне с заданным интервалом, а также методом compact.
+		 * Режим несовместим с режимами совместного доступа, групповой
+		 * фиксации и подавления повторов.
+		 * 
+		 * @param intervalMillis Интервал фонового уплотнения, мс; 0 -- без
+		 *                       фонового уплотнения.
+		 * @param coldAgeMillis  Время, в течение которого уплотняемый файл
+		 *                       не изменялся, мс.
+		 * @return Этот же объект параметров.
+		 */
+		public Options withCompaction(long intervalMillis, long coldAgeMillis) {
+			if (intervalMillis < 0 || coldAgeMillis < 0) {
+				throw new IllegalArgumentException();
+			}
+			this.compaction = true;
+			this.compactionIntervalMillis = intervalMillis;
+			this.coldAgeMillis = coldAgeMillis;
+			return this;
+		}
+	}
 }
@@ -0,0 +1,388 @@
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+
+import entities.Gender;
+import entities.NameDictionary;
+import entities.UserData;
+import entities.UserDataView;
+import exceptions.IssueKind;
+import exceptions.ParseException;
+
+/**
+ * Синтаксический разборщик пользовательских данных, классифицирующий каждое
+ * разделённое пробельными символами поле (пол, дата формата dd.MM.yyyy,
+ * последовательность цифр, имя) за один линейный проход по строке,
+ * без регулярных выражений и промежуточных копий строки.
+ * <p>
+ * Результаты разбора, включая род проблемы и наименование поля в
+ * ParseException, совпадают с результатами UserDataParser. Строки с полями,
+ * которые не удаётся однозначно отнести ни к одному из видов (например,
+ * содержащими знаки препинания), передаются на разбор эталонной реализации
+ * UserDataParser.
+ * <p>
+ * Помимо разбора в новый экземпляр UserData поддерживается разбор
+ * произвольной последовательности символов в многократно используемое
+ * представление UserDataView: при успешном разборе регулярной строки память
+ * не выделяется.
+ * <p>
+ * Если задан словарь имён, фамилия, имя и отчество разобранных данных --
+ * экземпляры строк словаря: повторяющиеся имена не дублируются в памяти, а
+ * для имён, уже имеющихся в словаре, новые строки не создаются.
+ */
+public class UserDataScanningParser implements Parser<UserData> {
+
+	private static final int DATE_LENGTH = 10;
+
+	private final UserDataParser fallback = new UserDataParser();
+	private final NameDictionary names;
+
+	private CharSequence input;
+	private boolean irregular;
+
+	// Границы первых трёх имён; прочие имена только подсчитываются.
+	private final int[] nameStarts = new int[3];
+	private final int[] nameEnds = new int[3];
+	private int namesCount;
+
+	private int genderPos;
+	private int gendersCount;
+
+	private int datePos;
+	private int datesCount;
+
+	private int phoneNumberStart;
+	private int phoneNumberEnd;
+	private int phoneNumbersCount;
+
+	public UserDataScanningParser() {
+		this(null);
+	}
+
+	/**
+	 * @param names Словарь имён, общий для всех пользователей словаря, либо
+	 *              null.
+	 */
+	public UserDataScanningParser(NameDictionary names) {
+		this.names = names;
+	}
+
+	public int setInput(String input) {
+		return setInput((CharSequence) input);
+	}
+
+	/**
+	 * Задаёт входную последовательность символов для последующего разбора
+	 * методом parse() либо parse(UserDataView). Последовательность не
+	 * копируется и не должна изменяться до завершения разбора.
+	 *
+	 * @see Parser#setInput(String)
+	 */
+	public int setInput(CharSequence input) {
+		if (input == null) {
+			// не должно произойти при должном использовании метода клиентской частью
+			throw new NullPointerException();
+		}
+
+		this.input = input;
+		return scan(input) - UserDataParser.REQUIRED_DATA_ITEMS;
+	}
+
+	public UserData parse() throws ParseException {
+		if (irregular) {
+			fallback.setInput(input.toString());
+			return intern(fallback.parse());
+		}
+
+		validate();
+		return newUserData();
+	}
+
+	/**
+	 * Выполняет разбор без выбрасывания исключения: проблема разбора
+	 * регулярной строки описывается заранее созданным исключением
+	 * (ParseException.preallocated), которое не выбрасывается.
+	 */
+	@Override
+	public ParseResult<UserData> tryParse() {
+		if (irregular) {
+			fallback.setInput(input.toString());
+			var result = fallback.tryParse();
+			if (result.isValid()) {
+				intern(result.getValue());
+			}
+			return result;
+		}
+
+		var issue = findIssue();
+		return issue == null ? ParseResult.of(newUserData()) : ParseResult.issue(issue);
+	}
+
+	private UserData newUserData() {
+		var userData = new UserData();
+		userData.setGender(genderOf(input.charAt(genderPos)));
+		userData.setBirthDate(LocalDate.of(year(input, datePos), month(input, datePos), day(input, datePos)));
+		userData.setPhoneNumber(input.subSequence(phoneNumberStart, phoneNumberEnd).toString());
+		userData.setFirstName(name(nameStarts[1], nameEnds[1]));
+		userData.setMiddleName(name(nameStarts[2], nameEnds[2]));
+		userData.setLastName(name(nameStarts[0], nameEnds[0]));
+		return userData;
+	}
+
+	private String name(int start, int end) {
+		return names != null ? names.intern(input, start, end) : input.subSequence(start, end).toString();
+	}
+
+	private UserData intern(UserData userData) {
+		if (names != null) {
+			userData.setLastName(names.intern(userData.getLastName()));
+			userData.setFirstName(names.intern(userData.getFirstName()));
+			userData.setMiddleName(names.intern(userData.getMiddleName()));
+		}
+		return userData;
+	}
+
+	/**
+	 * Выполняет разбор входной последовательности символов, заданной методом
+	 * setInput, в заданное представление. Представление ссылается на входную
+	 * последовательность символов; строки полей не создаются.
+	 *
+	 * @param target Заполняемое представление.
+	 * @throws ParseException если формат строки задан некорректно и
+	 *                        преобразование невозможно.
+	 */
+	public void parse(UserDataView target) throws ParseException {
+		if (irregular) {
+			fallback.setInput(input.toString());
+			var userData = fallback.parse();
+			target.reset(input);
+			target.setField(UserDataView.LAST_NAME, userData.getLastName());
+			target.setField(UserDataView.FIRST_NAME, userData.getFirstName());
+			target.setField(UserDataView.MIDDLE_NAME, userData.getMiddleName());
+			target.setField(UserDataView.PHONE_NUMBER, userData.getPhoneNumber());
+			var birthDate = userData.getBirthDate();
+			target.setBirthDate(birthDate.getYear(), birthDate.getMonthValue(), birthDate.getDayOfMonth());
+			target.setGender(userData.getGender());
+			return;
+		}
+
+		validate();
+		target.reset(input);
+		target.setField(UserDataView.LAST_NAME, nameStarts[0], nameEnds[0]);
+		target.setField(UserDataView.FIRST_NAME, nameStarts[1], nameEnds[1]);
+		target.setField(UserDataView.MIDDLE_NAME, nameStarts[2], nameEnds[2]);
+		target.setField(UserDataView.PHONE_NUMBER, phoneNumberStart, phoneNumberEnd);
+		target.setBirthDate(year(input, datePos), month(input, datePos), day(input, datePos));
+		target.setGender(genderOf(input.charAt(genderPos)));
+	}
+
+	private void validate() throws ParseException {
+		var issue = findIssue();
+		if (issue != null) {
+			throw issue;
+		}
+	}
+
+	/**
+	 * @return Исключение, описывающее проблему разбора регулярной строки,
+	 *         либо null, если строка корректна.
+	 */
+	private ParseException findIssue() {
+		// Все поля строки классифицированы, поэтому нераспознанного остатка
+		// (wrongValue) быть не может. Порядок проверок тот же, что и в
+		// UserDataParser.
+		if (namesCount == 0) {
+			return ParseException.preallocated(UserDataParser.LAST_NAME, IssueKind.MISSING_DATA);
+		} else if (namesCount == 1) {
+			return ParseException.preallocated(UserDataParser.FIRST_NAME, IssueKind.MISSING_DATA);
+		} else if (namesCount == 2) {
+			return ParseException.preallocated(UserDataParser.MIDDLE_NAME, IssueKind.MISSING_DATA);
+		} else if (namesCount != 3) {
+			return ParseException.preallocated(UserDataParser.MIDDLE_NAME, IssueKind.AMBIGUOUS_DATA);
+		}
+
+		if (gendersCount == 0) {
+			return ParseException.preallocated(UserDataParser.GENDER, IssueKind.MISSING_DATA);
+		} else if (gendersCount != 1) {
+			return ParseException.preallocated(UserDataParser.GENDER, IssueKind.AMBIGUOUS_DATA);
+		}
+
+		if (datesCount == 0) {
+			return ParseException.preallocated(UserDataParser.BIRTH_DATE, IssueKind.MISSING_DATA);
+		} else if (datesCount != 1) {
+			return ParseException.preallocated(UserDataParser.BIRTH_DATE, IssueKind.AMBIGUOUS_DATA);
+		}
+
+		if (phoneNumbersCount == 0) {
+			return ParseException.preallocated(UserDataParser.PHONE_NUMBER, IssueKind.MISSING_DATA);
+		} else if (phoneNumbersCount != 1) {
+			return ParseException.preallocated(UserDataParser.PHONE_NUMBER, IssueKind.AMBIGUOUS_DATA);
+		}
+
+		return checkDate(input, datePos);
+	}
+
+	/**
+	 * Однопроходная классификация полей строки.
+	 *
+	 * @return Количество полей, подсчитанное так же, как это делает
+	 *         input.split("\\s+").length.
+	 */
+	private int scan(CharSequence input) {
+		irregular = false;
+		namesCount = 0;
+		gendersCount = 0;
+		datesCount = 0;
+		phoneNumbersCount = 0;
+
+		final int length = input.length();
+		if (length == 0) {
+			return 1;
+		}
+
+		// String.split сохраняет пустую первую подстроку, если строка
+		// начинается с разделителя.
+		int itemsCount = isWhitespace(input.charAt(0)) ? 1 : 0;
+		int tokensCount = 0;
+
+		int i = 0;
+		while (i < length) {
+			while (i < length && isWhitespace(input.charAt(i))) {
+				++i;
+			}
+			if (i == length) {
+				break;
+			}
+
+			int start = i;
+			while (i < length && !isWhitespace(input.charAt(i))) {
+				++i;
+			}
+			classify(input, start, i);
+			++tokensCount;
+		}
+
+		// Строка из одних разделителей даёт пустой массив.
+		return tokensCount == 0 ? 0 : itemsCount + tokensCount;
+	}
+
+	private void classify(CharSequence input, int start, int end) {
+		if (irregular) {
+			return;
+		}
+
+		int length = end - start;
+		char first = input.charAt(start);
+
+		if (length == 1 && (first == 'f' || first == 'm' || first == 'F' || first == 'M')) {
+			genderPos = start;
+			++gendersCount;
+
+		} else if (isAsciiDigit(first)) {
+			if (isDigitsOnly(input, start, end)) {
+				phoneNumberStart = start;
+				phoneNumberEnd = end;
+				++phoneNumbersCount;
+			} else if (length == DATE_LENGTH && isDateShaped(input, start)) {
+				datePos = start;
+				++datesCount;
+			} else {
+				irregular = true;
+			}
+
+		} else if (isLettersOnly(input, start, end)) {
+			if (namesCount < nameStarts.length) {
+				nameStarts[namesCount] = start;
+				nameEnds[namesCount] = end;
+			}
+			++namesCount;
+
+		} else {
+			irregular = true;
+		}
+	}
+
+	private static boolean isWhitespace(char c) {
+		// Набор символов класса \s регулярных выражений (без
+		// UNICODE_CHARACTER_CLASS), используемого в UserDataParser.setInput.
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static boolean isAsciiDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isDigitsOnly(CharSequence str, int start, int end) {
+		for (int i = start; i < end; ++i) {
+			if (!isAsciiDigit(str.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isLettersOnly(CharSequence str, int start, int end) {
+		for (int i = start; i < end; ++i) {
+			if (!Character.isLetter(str.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDateShaped(CharSequence str, int pos) {
+		return isAsciiDigit(str.charAt(pos)) && isAsciiDigit(str.charAt(pos + 1))
+				&& str.charAt(pos + 2) == '.'
+				&& isAsciiDigit(str.charAt(pos + 3)) && isAsciiDigit(str.charAt(pos + 4))
+				&& str.charAt(pos + 5) == '.'
+				&& isAsciiDigit(str.charAt(pos + 6)) && isAsciiDigit(str.charAt(pos + 7))
+				&& isAsciiDigit(str.charAt(pos + 8)) && isAsciiDigit(str.charAt(pos + 9));
+	}
+
+	private static Gender genderOf(char c) {
+		return c == 'm' || c == 'M' ? Gender.MALE : Gender.FEMALE;
+	}
+
+	private static int digitsValue(CharSequence str, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; ++i) {
+			value = value * 10 + (str.charAt(i) - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Проверка даты формата dd.MM.uuuu, эквивалентная проверке
+	 * LocalDate.parse(str, UserDataParser.DATE_FORMATTER) со стилем
+	 * разрешения SMART: допускается день месяца в пределах 1..31.
+	 *
+	 * @return Исключение, описывающее некорректную дату, либо null.
+	 */
+	private static ParseException checkDate(CharSequence str, int pos) {
+		int day = digitsValue(str, pos, pos + 2);
+		int month = month(str, pos);
+		if (day < 1 || day > 31 || month < 1 || month > 12) {
+			return ParseException.stackless(UserDataParser.BIRTH_DATE, IssueKind.WRONG_FORMAT,
+					str.subSequence(pos, pos + DATE_LENGTH).toString());
+		}
+		return null;
+	}
+
+	private static int year(CharSequence str, int pos) {
+		return digitsValue(str, pos + 6, pos + DATE_LENGTH);
+	}
+
+	private static int month(CharSequence str, int pos) {
+		return digitsValue(str, pos + 3, pos + 5);
+	}
+
+	/**
+	 * @return День месяца проверенной даты; превышающий длину месяца
+	 *         приводится к последнему дню месяца (как при стиле разрешения
+	 *         SMART).
+	 */
+	private static int day(CharSequence str, int pos) {
+		int day = digitsValue(str, pos, pos + 2);
+		return Math.min(day, Month.of(month(str, pos)).length(Year.isLeap(year(str, pos))));
+	}
+}
@@ -0,0 +1,174 @@
+package entities;
+
+import java.time.LocalDate;
+
+/**
+ * Компактное представление пользовательских данных из примитивных значений:
+ * имена -- идентификаторы строк словаря имён (NameDictionary), дата
+ * рождения -- номер дня от 01.01.1970 (epoch day), номер телефона -- число
+ * и количество ведущих нулей, пол -- порядковый номер значения Gender.
+ * <p>
+ * Номер телефона, не представимый числом (содержащий символы, отличные от
+ * цифр ASCII, более 18 значащих цифр или более 127 ведущих нулей),
+ * хранится как строка словаря: количество ведущих нулей равно
+ * PHONE_NUMBER_IN_DICTIONARY, а число -- идентификатор строки.
+ * <p>
+ * Преобразование из UserData и обратно выполняется без потерь при
+ * использовании одного и того же словаря имён.
+ */
+public final class CompactUserData {
+
+	public static final byte PHONE_NUMBER_IN_DICTIONARY = -1;
+
+	private static final int MAX_PACKED_DIGITS = 18;
+	private static final Gender[] GENDERS = Gender.values();
+
+	private final int lastName;
+	private final int firstName;
+	private final int middleName;
+	private final int birthDate;
+	private final long phoneNumber;
+	private final byte phoneLeadingZeros;
+	private final byte gender;
+
+	public CompactUserData(int lastName, int firstName, int middleName, int birthDate, long phoneNumber,
+			byte phoneLeadingZeros, byte gender) {
+		this.lastName = lastName;
+		this.firstName = firstName;
+		this.middleName = middleName;
+		this.birthDate = birthDate;
+		this.phoneNumber = phoneNumber;
+		this.phoneLeadingZeros = phoneLeadingZeros;
+		this.gender = gender;
+	}
+
+	/**
+	 * Создаёт компактное представление, добавляя имена (и, при
+	 * необходимости, номер телефона) в словарь.
+	 */
+	public static CompactUserData of(UserData userData, NameDictionary dictionary) {
+		var phoneNumber = userData.getPhoneNumber();
+		byte leadingZeros = phoneLeadingZeros(phoneNumber);
+		return new CompactUserData(
+				dictionary.idOf(userData.getLastName()),
+				dictionary.idOf(userData.getFirstName()),
+				dictionary.idOf(userData.getMiddleName()),
+				(int) userData.getBirthDate().toEpochDay(),
+				leadingZeros != PHONE_NUMBER_IN_DICTIONARY
+						? phoneValue(phoneNumber, leadingZeros)
+						: dictionary.idOf(phoneNumber),
+				leadingZeros,
+				(byte) userData.getGender().ordinal());
+	}
+
+	public UserData toUserData(NameDictionary dictionary) {
+		var userData = new UserData();
+		userData.setLastName(dictionary.name(lastName));
+		userData.setFirstName(dictionary.name(firstName));
+		userData.setMiddleName(dictionary.name(middleName));
+		userData.setBirthDate(LocalDate.ofEpochDay(birthDate));
+		userData.setPhoneNumber(phoneNumber(phoneNumber, phoneLeadingZeros, dictionary));
+		userData.setGender(gender(gender));
+		return userData;
+	}
+
+	public int getLastName() {
+		return lastName;
+	}
+
+	public int getFirstName() {
+		return firstName;
+	}
+
+	public int getMiddleName() {
+		return middleName;
+	}
+
+	/**
+	 * @return Дата рождения -- номер дня от 01.01.1970.
+	 */
+	public int getBirthDate() {
+		return birthDate;
+	}
+
+	public long getPhoneNumber() {
+		return phoneNumber;
+	}
+
+	public byte getPhoneLeadingZeros() {
+		return phoneLeadingZeros;
+	}
+
+	public byte getGender() {
+		return gender;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CompactUserData other)) {
+			return false;
+		}
+		return lastName == other.lastName && firstName == other.firstName && middleName == other.middleName
+				&& birthDate == other.birthDate && phoneNumber == other.phoneNumber
+				&& phoneLeadingZeros == other.phoneLeadingZeros && gender == other.gender;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = lastName;
+		hash = 31 * hash + firstName;
+		hash = 31 * hash + middleName;
+		hash = 31 * hash + birthDate;
+		hash = 31 * hash + Long.hashCode(phoneNumber);
+		hash = 31 * hash + phoneLeadingZeros;
+		return 31 * hash + gender;
+	}
+
+	/**
+	 * @return Количество ведущих нулей номера телефона, либо
+	 *         PHONE_NUMBER_IN_DICTIONARY, если номер не представим числом.
+	 */
+	public static byte phoneLeadingZeros(String phoneNumber) {
+		int zeros = 0;
+		while (zeros < phoneNumber.length() && phoneNumber.charAt(zeros) == '0') {
+			++zeros;
+		}
+		if (zeros > Byte.MAX_VALUE || phoneNumber.length() - zeros > MAX_PACKED_DIGITS) {
+			return PHONE_NUMBER_IN_DICTIONARY;
+		}
+		for (int i = zeros; i < phoneNumber.length(); ++i) {
+			char c = phoneNumber.charAt(i);
+			if (c < '0' || c > '9') {
+				return PHONE_NUMBER_IN_DICTIONARY;
+			}
+		}
+		return (byte) zeros;
+	}
+
+	/**
+	 * @return Числовое значение значащих цифр номера телефона.
+	 */
+	public static long phoneValue(String phoneNumber, int leadingZeros) {
+		long value = 0;
+		for (int i = leadingZeros; i < phoneNumber.length(); ++i) {
+			value = value * 10 + (phoneNumber.charAt(i) - '0');
+		}
+		return value;
+	}
+
+	static String phoneNumber(long value, byte leadingZeros, NameDictionary dictionary) {
+		if (leadingZeros == PHONE_NUMBER_IN_DICTIONARY) {
+			return dictionary.name((int) value);
+		}
+		var zeros = "0".repeat(leadingZeros);
+		// Значащие цифры, если они есть, начинаются с ненулевой цифры.
+		return value == 0 ? zeros : zeros + value;
+	}
+
+	static Gender gender(byte ordinal) {
+		return GENDERS[ordinal];
+	}
+}
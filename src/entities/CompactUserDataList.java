@@ -0,0 +1,189 @@
+package entities;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Коллекция пользовательских данных в компактном столбцовом представлении:
+ * каждое из полей CompactUserData всех записей хранится в отдельном массиве
+ * примитивных значений (26 байт на запись без учёта словаря имён).
+ * <p>
+ * Строки имён хранятся в словаре имён, общем для всех записей коллекции.
+ * Коллекция не допускает одновременного изменения несколькими потоками.
+ */
+public final class CompactUserDataList {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final NameDictionary dictionary;
+	private int size;
+
+	private int[] lastNames;
+	private int[] firstNames;
+	private int[] middleNames;
+	private int[] birthDates;
+	private long[] phoneNumbers;
+	private byte[] phoneLeadingZeros;
+	private byte[] genders;
+
+	public CompactUserDataList(NameDictionary dictionary) {
+		this(dictionary, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param dictionary Словарь имён записей коллекции.
+	 * @param capacity   Начальная ёмкость коллекции, записей.
+	 */
+	public CompactUserDataList(NameDictionary dictionary, int capacity) {
+		if (dictionary == null) {
+			throw new NullPointerException();
+		}
+		if (capacity < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.dictionary = dictionary;
+		this.lastNames = new int[capacity];
+		this.firstNames = new int[capacity];
+		this.middleNames = new int[capacity];
+		this.birthDates = new int[capacity];
+		this.phoneNumbers = new long[capacity];
+		this.phoneLeadingZeros = new byte[capacity];
+		this.genders = new byte[capacity];
+	}
+
+	public NameDictionary getDictionary() {
+		return dictionary;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Добавляет запись, добавляя её имена в словарь имён коллекции.
+	 *
+	 * @return Индекс добавленной записи.
+	 */
+	public int add(UserData userData) {
+		return add(CompactUserData.of(userData, dictionary));
+	}
+
+	/**
+	 * Добавляет запись, идентификаторы имён которой получены из словаря имён
+	 * коллекции.
+	 *
+	 * @return Индекс добавленной записи.
+	 */
+	public int add(CompactUserData userData) {
+		return add(userData.getLastName(), userData.getFirstName(), userData.getMiddleName(),
+				userData.getBirthDate(), userData.getPhoneNumber(), userData.getPhoneLeadingZeros(),
+				userData.getGender());
+	}
+
+	private int add(int lastName, int firstName, int middleName, int birthDate, long phoneNumber,
+			byte leadingZeros, byte gender) {
+		if (size == lastNames.length) {
+			grow();
+		}
+		lastNames[size] = lastName;
+		firstNames[size] = firstName;
+		middleNames[size] = middleName;
+		birthDates[size] = birthDate;
+		phoneNumbers[size] = phoneNumber;
+		phoneLeadingZeros[size] = leadingZeros;
+		genders[size] = gender;
+		return size++;
+	}
+
+	/**
+	 * @return Запись с заданным индексом в виде UserData.
+	 */
+	public UserData get(int index) {
+		checkIndex(index);
+		var userData = new UserData();
+		userData.setLastName(dictionary.name(lastNames[index]));
+		userData.setFirstName(dictionary.name(firstNames[index]));
+		userData.setMiddleName(dictionary.name(middleNames[index]));
+		userData.setBirthDate(LocalDate.ofEpochDay(birthDates[index]));
+		userData.setPhoneNumber(
+				CompactUserData.phoneNumber(phoneNumbers[index], phoneLeadingZeros[index], dictionary));
+		userData.setGender(CompactUserData.gender(genders[index]));
+		return userData;
+	}
+
+	/**
+	 * @return Запись с заданным индексом в компактном представлении.
+	 */
+	public CompactUserData getCompact(int index) {
+		checkIndex(index);
+		return new CompactUserData(lastNames[index], firstNames[index], middleNames[index], birthDates[index],
+				phoneNumbers[index], phoneLeadingZeros[index], genders[index]);
+	}
+
+	public int lastName(int index) {
+		checkIndex(index);
+		return lastNames[index];
+	}
+
+	public int firstName(int index) {
+		checkIndex(index);
+		return firstNames[index];
+	}
+
+	public int middleName(int index) {
+		checkIndex(index);
+		return middleNames[index];
+	}
+
+	/**
+	 * @return Дата рождения записи -- номер дня от 01.01.1970.
+	 */
+	public int birthDate(int index) {
+		checkIndex(index);
+		return birthDates[index];
+	}
+
+	public long phoneNumber(int index) {
+		checkIndex(index);
+		return phoneNumbers[index];
+	}
+
+	public byte phoneLeadingZeros(int index) {
+		checkIndex(index);
+		return phoneLeadingZeros[index];
+	}
+
+	public byte gender(int index) {
+		checkIndex(index);
+		return genders[index];
+	}
+
+	/**
+	 * Уменьшает ёмкость массивов до числа записей.
+	 */
+	public void trimToSize() {
+		resize(size);
+	}
+
+	private void grow() {
+		// Рост в полтора раза, как у ArrayList.
+		int capacity = lastNames.length;
+		resize(Math.max(DEFAULT_CAPACITY, capacity + (capacity >> 1)));
+	}
+
+	private void resize(int capacity) {
+		lastNames = Arrays.copyOf(lastNames, capacity);
+		firstNames = Arrays.copyOf(firstNames, capacity);
+		middleNames = Arrays.copyOf(middleNames, capacity);
+		birthDates = Arrays.copyOf(birthDates, capacity);
+		phoneNumbers = Arrays.copyOf(phoneNumbers, capacity);
+		phoneLeadingZeros = Arrays.copyOf(phoneLeadingZeros, capacity);
+		genders = Arrays.copyOf(genders, capacity);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(index);
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package entities;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import utils.StringUtils;
+
+/**
+ * Словарь имён: сопоставляет каждой различной строке (фамилии, имени,
+ * отчеству) целочисленный идентификатор -- порядковый номер добавления
+ * строки в словарь -- и хранит единственный экземпляр каждой строки.
+ * <p>
+ * Строкам, совпадающим без учёта регистра, кроме собственных
+ * идентификаторов сопоставляется общий нормализованный идентификатор --
+ * идентификатор первой добавленной из них. Идентификаторы определяются
+ * порядком добавления строк, поэтому словарь, восстановленный добавлением
+ * строк в том же порядке (см. storage.PersistentNameDictionary), назначает
+ * те же идентификаторы.
+ * <p>
+ * Словарь допускает одновременное использование несколькими потоками: поиск
+ * имеющихся строк выполняется без блокировок, добавление новых -- под
+ * блокировкой словаря. Поиск строки, заданной фрагментом
+ * последовательности символов, не выделяет памяти.
+ */
+public class NameDictionary {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * Элемент цепочки хеш-таблицы. Элементы не изменяются после создания.
+	 */
+	private static final class Entry {
+		final String name;
+		final int hash;
+		final int id;
+		final Entry next;
+
+		Entry(String name, int hash, int id, Entry next) {
+			this.name = name;
+			this.hash = hash;
+			this.id = id;
+			this.next = next;
+		}
+	}
+
+	// Таблица заменяется целиком при расширении; читающие потоки, не
+	// нашедшие строку в устаревшей таблице, повторяют поиск под блокировкой.
+	private volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+	private volatile String[] names = new String[INITIAL_CAPACITY];
+	private volatile int[] normalizedIds = new int[INITIAL_CAPACITY];
+	private volatile int size;
+
+	// Изменяется только под блокировкой словаря.
+	private final HashMap<String, Integer> idsByFoldedName = new HashMap<>();
+
+	/**
+	 * @return Идентификатор строки; строка, отсутствующая в словаре,
+	 *         добавляется в него.
+	 */
+	public int idOf(String name) {
+		var entry = find(table, name, 0, name.length(), name.hashCode());
+		return entry != null ? entry.id : add(name, 0, name.length(), name.hashCode()).id;
+	}
+
+	/**
+	 * @return Идентификатор фрагмента последовательности символов; фрагмент,
+	 *         отсутствующий в словаре, добавляется в него.
+	 */
+	public int idOf(CharSequence chars, int start, int end) {
+		int hash = hash(chars, start, end);
+		var entry = find(table, chars, start, end, hash);
+		return entry != null ? entry.id : add(chars, start, end, hash).id;
+	}
+
+	/**
+	 * @return Экземпляр строки словаря, равной заданной; строка,
+	 *         отсутствующая в словаре, добавляется в него.
+	 */
+	public String intern(String name) {
+		var entry = find(table, name, 0, name.length(), name.hashCode());
+		return entry != null ? entry.name : add(name, 0, name.length(), name.hashCode()).name;
+	}
+
+	/**
+	 * @return Экземпляр строки словаря, равной фрагменту последовательности
+	 *         символов; фрагмент, отсутствующий в словаре, добавляется в
+	 *         него. Новая строка создаётся только при добавлении.
+	 */
+	public String intern(CharSequence chars, int start, int end) {
+		int hash = hash(chars, start, end);
+		var entry = find(table, chars, start, end, hash);
+		return entry != null ? entry.name : add(chars, start, end, hash).name;
+	}
+
+	/**
+	 * @return Идентификатор строки, либо -1, если строки нет в словаре.
+	 */
+	public int find(String name) {
+		var entry = find(table, name, 0, name.length(), name.hashCode());
+		if (entry == null) {
+			synchronized (this) {
+				entry = find(table, name, 0, name.length(), name.hashCode());
+			}
+		}
+		return entry != null ? entry.id : -1;
+	}
+
+	/**
+	 * @return Нормализованный идентификатор строк словаря, совпадающих с
+	 *         заданной без учёта регистра, либо -1, если таких строк нет.
+	 */
+	public synchronized int findNormalized(String name) {
+		var id = idsByFoldedName.get(StringUtils.foldCase(name));
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * @return Строка с заданным идентификатором.
+	 * @throws IndexOutOfBoundsException если идентификатор не назначен.
+	 */
+	public String name(int id) {
+		checkId(id);
+		return names[id];
+	}
+
+	/**
+	 * @return Нормализованный идентификатор строки с заданным
+	 *         идентификатором -- общий для всех строк словаря, совпадающих
+	 *         с ней без учёта регистра.
+	 * @throws IndexOutOfBoundsException если идентификатор не назначен.
+	 */
+	public int normalizedId(int id) {
+		checkId(id);
+		return normalizedIds[id];
+	}
+
+	/**
+	 * @return Число строк словаря.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Вызывается под блокировкой словаря при добавлении каждой новой строки,
+	 * в порядке назначения идентификаторов. Реализация по умолчанию не
+	 * выполняет никаких действий.
+	 */
+	protected void added(int id, String name) {
+	}
+
+	private synchronized Entry add(CharSequence chars, int start, int end, int hash) {
+		var entry = find(table, chars, start, end, hash);
+		if (entry != null) {
+			return entry;
+		}
+
+		int id = size;
+		var name = chars.subSequence(start, end).toString();
+		added(id, name);
+
+		if (id == names.length) {
+			// Массивы публикуются после копирования, поэтому читающие потоки
+			// видят все назначенные ранее строки.
+			names = Arrays.copyOf(names, id * 2);
+			normalizedIds = Arrays.copyOf(normalizedIds, id * 2);
+		}
+		names[id] = name;
+		var normalizedId = idsByFoldedName.putIfAbsent(StringUtils.foldCase(name), id);
+		normalizedIds[id] = normalizedId != null ? normalizedId : id;
+		size = id + 1;
+
+		var buckets = table;
+		if (size > buckets.length() - (buckets.length() >> 2)) {
+			buckets = rehash(buckets);
+		}
+		int bucket = hash & (buckets.length() - 1);
+		entry = new Entry(name, hash, id, buckets.get(bucket));
+		buckets.set(bucket, entry);
+		return entry;
+	}
+
+	private AtomicReferenceArray<Entry> rehash(AtomicReferenceArray<Entry> buckets) {
+		var resized = new AtomicReferenceArray<Entry>(buckets.length() * 2);
+		for (int i = 0; i < buckets.length(); ++i) {
+			for (var entry = buckets.get(i); entry != null; entry = entry.next) {
+				int bucket = entry.hash & (resized.length() - 1);
+				resized.set(bucket, new Entry(entry.name, entry.hash, entry.id, resized.get(bucket)));
+			}
+		}
+		table = resized;
+		return resized;
+	}
+
+	private static Entry find(AtomicReferenceArray<Entry> buckets, CharSequence chars, int start, int end,
+			int hash) {
+		for (var entry = buckets.get(hash & (buckets.length() - 1)); entry != null; entry = entry.next) {
+			if (entry.hash == hash && equals(entry.name, chars, start, end)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	private static boolean equals(String name, CharSequence chars, int start, int end) {
+		if (name.length() != end - start) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); ++i) {
+			if (name.charAt(i) != chars.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Хеш-код фрагмента, равный String.hashCode() строки фрагмента.
+	 */
+	private static int hash(CharSequence chars, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; ++i) {
+			hash = 31 * hash + chars.charAt(i);
+		}
+		return hash;
+	}
+
+	private void checkId(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException(id);
+		}
+	}
+}
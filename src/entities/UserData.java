@@ -5,6 +5,8 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 
 public class UserData implements Serializable{
+
+	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.uuuu");
 	
 	private String firstName;
 	private String middleName;
@@ -65,12 +67,11 @@ public class UserData implements Serializable{
 	public String toString() {
 		final String leftBrace = "<";
 		final String rightBrace = ">";
-		final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd.MM.uuuu");
 		StringBuilder sb = new StringBuilder()
 				.append(leftBrace).append(lastName).append(rightBrace)
 				.append(leftBrace).append(firstName).append(rightBrace)
 				.append(leftBrace).append(middleName).append(rightBrace)
-				.append(leftBrace).append(birthDate.format(dateFormatter)).append(rightBrace)
+				.append(leftBrace).append(birthDate.format(DATE_FORMATTER)).append(rightBrace)
 				.append(leftBrace).append(phoneNumber).append(rightBrace)
 				.append(leftBrace).append(gender.toString()).append(rightBrace);
 		return sb.toString();
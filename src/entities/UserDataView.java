@@ -0,0 +1,175 @@
+package entities;
+
+import java.time.LocalDate;
+
+/**
+ * Многократно используемое представление пользовательских данных,
+ * разобранных из строки: хранит не строки, а границы полей в исходной
+ * последовательности символов. Строки имени и номера телефона создаются
+ * (и запоминаются) только при обращении к ним, дата рождения хранится
+ * числами.
+ * <p>
+ * Представление действительно, пока не изменены исходная
+ * последовательность символов и само представление (очередным разбором).
+ */
+public final class UserDataView {
+
+	public static final int LAST_NAME = 0;
+	public static final int FIRST_NAME = 1;
+	public static final int MIDDLE_NAME = 2;
+	public static final int PHONE_NUMBER = 3;
+	private static final int TEXT_FIELDS_COUNT = 4;
+
+	private CharSequence source;
+	private final int[] starts = new int[TEXT_FIELDS_COUNT];
+	private final int[] ends = new int[TEXT_FIELDS_COUNT];
+	// Строки полей, созданные при обращении либо заданные явно.
+	private final String[] strings = new String[TEXT_FIELDS_COUNT];
+
+	private int birthYear;
+	private int birthMonth;
+	private int birthDay;
+	private Gender gender;
+
+	/**
+	 * Очищает представление и задаёт исходную последовательность символов
+	 * для последующего задания границ полей.
+	 */
+	public void reset(CharSequence source) {
+		this.source = source;
+		for (int i = 0; i < TEXT_FIELDS_COUNT; ++i) {
+			starts[i] = 0;
+			ends[i] = 0;
+			strings[i] = null;
+		}
+		birthYear = 0;
+		birthMonth = 0;
+		birthDay = 0;
+		gender = null;
+	}
+
+	/**
+	 * Задаёт границы текстового поля (LAST_NAME, FIRST_NAME, MIDDLE_NAME,
+	 * PHONE_NUMBER) в исходной последовательности символов.
+	 */
+	public void setField(int field, int start, int end) {
+		starts[field] = start;
+		ends[field] = end;
+		strings[field] = null;
+	}
+
+	/**
+	 * Задаёт значение текстового поля готовой строкой.
+	 */
+	public void setField(int field, String value) {
+		starts[field] = 0;
+		ends[field] = value.length();
+		strings[field] = value;
+	}
+
+	public void setBirthDate(int year, int month, int day) {
+		this.birthYear = year;
+		this.birthMonth = month;
+		this.birthDay = day;
+	}
+
+	public void setGender(Gender gender) {
+		this.gender = gender;
+	}
+
+	public String getLastName() {
+		return string(LAST_NAME);
+	}
+
+	public String getFirstName() {
+		return string(FIRST_NAME);
+	}
+
+	public String getMiddleName() {
+		return string(MIDDLE_NAME);
+	}
+
+	public String getPhoneNumber() {
+		return string(PHONE_NUMBER);
+	}
+
+	/**
+	 * @return Длина текстового поля в символах.
+	 */
+	public int length(int field) {
+		return ends[field] - starts[field];
+	}
+
+	/**
+	 * @return Символ текстового поля с заданным индексом.
+	 */
+	public char charAt(int field, int index) {
+		var string = strings[field];
+		return string != null ? string.charAt(index) : source.charAt(starts[field] + index);
+	}
+
+	/**
+	 * @return true, если значение текстового поля совпадает с заданной
+	 *         последовательностью символов. Строка поля не создаётся.
+	 */
+	public boolean fieldEquals(int field, CharSequence value) {
+		int length = length(field);
+		if (value.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; ++i) {
+			if (charAt(field, i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getBirthYear() {
+		return birthYear;
+	}
+
+	public int getBirthMonth() {
+		return birthMonth;
+	}
+
+	public int getBirthDay() {
+		return birthDay;
+	}
+
+	public LocalDate getBirthDate() {
+		return LocalDate.of(birthYear, birthMonth, birthDay);
+	}
+
+	public Gender getGender() {
+		return gender;
+	}
+
+	/**
+	 * Заполняет заданный экземпляр пользовательских данных значениями
+	 * представления.
+	 */
+	public void copyTo(UserData userData) {
+		userData.setLastName(getLastName());
+		userData.setFirstName(getFirstName());
+		userData.setMiddleName(getMiddleName());
+		userData.setBirthDate(getBirthDate());
+		userData.setPhoneNumber(getPhoneNumber());
+		userData.setGender(gender);
+	}
+
+	public UserData toUserData() {
+		var userData = new UserData();
+		copyTo(userData);
+		return userData;
+	}
+
+	private String string(int field) {
+		var string = strings[field];
+		if (string == null) {
+			string = source.subSequence(starts[field], ends[field]).toString();
+			strings[field] = string;
+		}
+		return string;
+	}
+}
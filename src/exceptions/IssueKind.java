@@ -4,5 +4,6 @@ public enum IssueKind {
 	UNSPECIFIED,
 	MISSING_DATA,
 	AMBIGUOUS_DATA,
-	WRONG_FORMAT
+	WRONG_FORMAT,
+	WRONG_ITEMS_COUNT
 }
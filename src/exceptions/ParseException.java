@@ -1,7 +1,13 @@
 package exceptions;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 public class ParseException extends Exception {
 
+	// Заранее созданные исключения без трассировки стека, по наименованию
+	// поля данных и роду проблемы.
+	private static final ConcurrentHashMap<String, ParseException[]> PREALLOCATED = new ConcurrentHashMap<>();
+
 	private final String dataItemName;
 	private final IssueKind issueKind;
 	private final String wrongValue;
@@ -16,6 +22,42 @@ public class ParseException extends Exception {
 		this.wrongValue = wrongValue != null ? wrongValue : "";
 	}
 
+	/**
+	 * Исключение без трассировки стека и без подавленных исключений. Такие
+	 * исключения дёшевы в создании; их состояние не изменяется после
+	 * создания, поэтому один экземпляр может выбрасываться многократно.
+	 */
+	protected ParseException(String dataItemName, IssueKind issueKind, String wrongValue,
+			boolean writableStackTrace) {
+		super(null, null, false, writableStackTrace);
+		this.dataItemName = dataItemName != null ? dataItemName : "";
+		this.issueKind = issueKind;
+		this.wrongValue = wrongValue != null ? wrongValue : "";
+	}
+
+	/**
+	 * @return Новое исключение без трассировки стека.
+	 */
+	public static ParseException stackless(String dataItemName, IssueKind issueKind, String wrongValue) {
+		return new ParseException(dataItemName, issueKind, wrongValue, false);
+	}
+
+	/**
+	 * @return Заранее созданное (общее для всех вызовов с теми же
+	 *         аргументами) исключение без трассировки стека и некорректных
+	 *         данных.
+	 */
+	public static ParseException preallocated(String dataItemName, IssueKind issueKind) {
+		var byKind = PREALLOCATED.computeIfAbsent(dataItemName != null ? dataItemName : "", name -> {
+			var exceptions = new ParseException[IssueKind.values().length];
+			for (var kind : IssueKind.values()) {
+				exceptions[kind.ordinal()] = new ParseException(name, kind, "", false);
+			}
+			return exceptions;
+		});
+		return byKind[issueKind.ordinal()];
+	}
+
 	/**
 	 * @return Наименование поля данных, к которому относится возникшая
 	 *         проблема при синтаксическом анализе строки,
@@ -0,0 +1,55 @@
+package exceptions;
+
+/**
+ * Исключение пакетного сохранения, прерванного ошибкой: сообщает, какие
+ * экземпляры пакета были сохранены до ошибки и в какие файлы. Экземпляры, не
+ * отмеченные как сохранённые, не сохранены либо сохранены не полностью.
+ * Причина исключения -- исключение, прервавшее сохранение.
+ */
+public class PartialSaveException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String[] savedPaths;
+
+	/**
+	 * @param cause      Исключение, прервавшее сохранение.
+	 * @param savedPaths Полные пути к файлам сохранённых экземпляров в
+	 *                   порядке экземпляров пакета; null -- экземпляр не
+	 *                   сохранён.
+	 */
+	public PartialSaveException(Throwable cause, String[] savedPaths) {
+		super(cause != null ? cause.getMessage() : null, cause);
+		this.savedPaths = savedPaths.clone();
+	}
+
+	/**
+	 * @param index Индекс экземпляра в пакете.
+	 * @return true, если экземпляр был сохранён до ошибки.
+	 */
+	public boolean isSaved(int index) {
+		return getSavedPath(index) != null;
+	}
+
+	/**
+	 * @param index Индекс экземпляра в пакете.
+	 * @return Полный путь к файлу, в который сохранён экземпляр, либо null,
+	 *         если экземпляр не сохранён.
+	 */
+	public String getSavedPath(int index) {
+		return index < savedPaths.length ? savedPaths[index] : null;
+	}
+
+	/**
+	 * @return Число экземпляров пакета, сохранённых до ошибки.
+	 */
+	public int getSavedCount() {
+		int count = 0;
+		for (var path : savedPaths) {
+			if (path != null) {
+				++count;
+			}
+		}
+		return count;
+	}
+}
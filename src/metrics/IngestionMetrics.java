@@ -0,0 +1,160 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import exceptions.IssueKind;
+
+/**
+ * Метрики разбора и сохранения данных: гистограммы длительностей разбора,
+ * сохранения, поиска файла фамилии и дописывания записей, счётчики проблем
+ * разбора по родам проблем и полям данных, объём записанных данных.
+ * <p>
+ * Метрики собираются, только если приложение запущено с системным
+ * свойством -Duserdata.metrics=true. Признак ENABLED -- константа, поэтому
+ * проверки вида {@code if (IngestionMetrics.ENABLED)} при выключенных
+ * метриках исключаются JIT-компилятором вместе с замерами времени.
+ * Единственный экземпляр метрик публикуется через JMX под именем
+ * {@value #OBJECT_NAME}.
+ */
+public final class IngestionMetrics implements IngestionMetricsMXBean {
+
+	public static final String ENABLED_PROPERTY = "userdata.metrics";
+	public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+	public static final String OBJECT_NAME = "userdata:type=IngestionMetrics";
+
+	private static final IssueKind[] ISSUE_KINDS = IssueKind.values();
+	private static final IngestionMetrics INSTANCE = new IngestionMetrics();
+
+	private final LatencyHistogram parseLatency = new LatencyHistogram();
+	private final LatencyHistogram saveLatency = new LatencyHistogram();
+	private final LatencyHistogram lookupLatency = new LatencyHistogram();
+	private final LatencyHistogram writeLatency = new LatencyHistogram();
+	private final AtomicLongArray issueCounts = new AtomicLongArray(ISSUE_KINDS.length);
+	private final ConcurrentHashMap<String, LongAdder> dataItemIssueCounts = new ConcurrentHashMap<>();
+	private final LongAdder bytesWritten = new LongAdder();
+
+	private IngestionMetrics() {
+	}
+
+	public static IngestionMetrics get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Публикует метрики через JMX на платформенном сервере MBean; повторная
+	 * публикация не выполняется.
+	 *
+	 * @throws JMException если не удалось опубликовать метрики.
+	 */
+	public static synchronized void register() throws JMException {
+		var server = ManagementFactory.getPlatformMBeanServer();
+		var name = new ObjectName(OBJECT_NAME);
+		if (!server.isRegistered(name)) {
+			server.registerMBean(INSTANCE, name);
+		}
+	}
+
+	public void parsed(long nanos) {
+		parseLatency.record(nanos);
+	}
+
+	/**
+	 * Учитывает проблему разбора.
+	 *
+	 * @param dataItemName Наименование поля данных, либо пустая строка.
+	 */
+	public void issue(IssueKind issueKind, String dataItemName) {
+		issueCounts.incrementAndGet(issueKind.ordinal());
+		dataItemIssueCounts.computeIfAbsent(dataItemName != null ? dataItemName : "", k -> new LongAdder())
+				.increment();
+	}
+
+	public void saved(long nanos) {
+		saveLatency.record(nanos);
+	}
+
+	public void lookedUp(long nanos) {
+		lookupLatency.record(nanos);
+	}
+
+	public void written(long nanos, long bytes) {
+		writeLatency.record(nanos);
+		bytesWritten.add(bytes);
+	}
+
+	@Override
+	public LatencySnapshot getParseLatency() {
+		return parseLatency.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getSaveLatency() {
+		return saveLatency.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getLookupLatency() {
+		return lookupLatency.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getWriteLatency() {
+		return writeLatency.snapshot();
+	}
+
+	@Override
+	public Map<String, Long> getIssueCounts() {
+		var counts = new LinkedHashMap<String, Long>();
+		for (var issueKind : ISSUE_KINDS) {
+			counts.put(issueKind.name(), issueCounts.get(issueKind.ordinal()));
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Long> getDataItemIssueCounts() {
+		var counts = new TreeMap<String, Long>();
+		dataItemIssueCounts.forEach((name, count) -> counts.put(name, count.sum()));
+		return counts;
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	@Override
+	public void reset() {
+		parseLatency.reset();
+		saveLatency.reset();
+		lookupLatency.reset();
+		writeLatency.reset();
+		for (int i = 0; i < issueCounts.length(); ++i) {
+			issueCounts.set(i, 0);
+		}
+		dataItemIssueCounts.clear();
+		bytesWritten.reset();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Разбор: %s"
+				+ "\nСохранение: %s"
+				+ "\nПоиск файла: %s"
+				+ "\nДописывание: %s"
+				+ "\nЗаписано байт: %d"
+				+ "\nПроблемы разбора: %s"
+				+ "\nПроблемы разбора по полям: %s",
+				getParseLatency(), getSaveLatency(), getLookupLatency(), getWriteLatency(), getBytesWritten(),
+				getIssueCounts(), getDataItemIssueCounts());
+	}
+}
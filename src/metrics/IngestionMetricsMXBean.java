@@ -0,0 +1,54 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * Интерфейс управления метриками разбора и сохранения данных
+ * (IngestionMetrics), публикуемый через JMX.
+ */
+public interface IngestionMetricsMXBean {
+
+	/**
+	 * @return Длительности разбора строк (Parser.parse/tryParse).
+	 */
+	LatencySnapshot getParseLatency();
+
+	/**
+	 * @return Длительности сохранения (Saver.save, а также Saver.saveAll --
+	 *         в пересчёте на пакет).
+	 */
+	LatencySnapshot getSaveLatency();
+
+	/**
+	 * @return Длительности поиска (при необходимости -- создания) файла
+	 *         фамилии в директории данных.
+	 */
+	LatencySnapshot getLookupLatency();
+
+	/**
+	 * @return Длительности дописывания записей в файлы данных.
+	 */
+	LatencySnapshot getWriteLatency();
+
+	/**
+	 * @return Число проблем разбора по родам проблем (IssueKind).
+	 */
+	Map<String, Long> getIssueCounts();
+
+	/**
+	 * @return Число проблем разбора по наименованиям полей данных; проблемы,
+	 *         не относящиеся к отдельному полю, учитываются под пустым
+	 *         наименованием.
+	 */
+	Map<String, Long> getDataItemIssueCounts();
+
+	/**
+	 * @return Число байт записей, дописанных в файлы данных.
+	 */
+	long getBytesWritten();
+
+	/**
+	 * Обнуляет все метрики.
+	 */
+	void reset();
+}
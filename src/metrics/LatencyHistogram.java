@@ -0,0 +1,72 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма длительностей операций с интервалами, растущими степенями
+ * двойки: интервал i > 0 содержит длительности от 2^(i-1) до 2^i - 1 нс,
+ * интервал 0 -- нулевые длительности.
+ * <p>
+ * Гистограмма допускает одновременное пополнение несколькими потоками без
+ * блокировок; перцентили оцениваются верхней границей интервала, то есть с
+ * точностью до двух раз.
+ */
+public final class LatencyHistogram {
+
+	private static final int BUCKETS = Long.SIZE;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Учитывает длительность операции.
+	 *
+	 * @param nanos Длительность, нс; отрицательные значения учитываются как 0.
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(nanos, 0);
+		counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+		totalNanos.add(nanos);
+		if (nanos > maxNanos.get()) {
+			maxNanos.accumulateAndGet(nanos, Math::max);
+		}
+	}
+
+	/**
+	 * @return Снимок текущего состояния гистограммы.
+	 */
+	public LatencySnapshot snapshot() {
+		var snapshot = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		return new LatencySnapshot(count, totalNanos.sum(), maxNanos.get(),
+				percentile(snapshot, count, 0.5), percentile(snapshot, count, 0.9),
+				percentile(snapshot, count, 0.99));
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; ++i) {
+			counts.set(i, 0);
+		}
+		totalNanos.reset();
+		maxNanos.set(0);
+	}
+
+	private static long percentile(long[] counts, long count, double fraction) {
+		long rank = (long) Math.ceil(count * fraction);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += counts[i];
+			if (seen >= rank && seen > 0) {
+				return i == 0 ? 0 : i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+			}
+		}
+		return 0;
+	}
+}
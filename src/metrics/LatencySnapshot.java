@@ -0,0 +1,69 @@
+package metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Снимок гистограммы длительностей операций (LatencyHistogram). В атрибутах
+ * MXBean представляется составным значением (CompositeData).
+ */
+public final class LatencySnapshot {
+
+	private final long count;
+	private final long totalNanos;
+	private final long maxNanos;
+	private final long p50Nanos;
+	private final long p90Nanos;
+	private final long p99Nanos;
+
+	@ConstructorProperties({ "count", "totalNanos", "maxNanos", "p50Nanos", "p90Nanos", "p99Nanos" })
+	public LatencySnapshot(long count, long totalNanos, long maxNanos, long p50Nanos, long p90Nanos,
+			long p99Nanos) {
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.p50Nanos = p50Nanos;
+		this.p90Nanos = p90Nanos;
+		this.p99Nanos = p99Nanos;
+	}
+
+	/**
+	 * @return Число учтённых операций.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return Суммарная длительность операций, нс.
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * @return Медиана длительности (верхняя граница интервала гистограммы),
+	 *         нс.
+	 */
+	public long getP50Nanos() {
+		return p50Nanos;
+	}
+
+	public long getP90Nanos() {
+		return p90Nanos;
+	}
+
+	public long getP99Nanos() {
+		return p99Nanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d оп., среднее %.1f мкс, p50 <= %.1f мкс, p90 <= %.1f мкс, p99 <= %.1f мкс,"
+				+ " макс. %.1f мкс", count, count > 0 ? totalNanos / 1e3 / count : 0, p50Nanos / 1e3,
+				p90Nanos / 1e3, p99Nanos / 1e3, maxNanos / 1e3);
+	}
+}
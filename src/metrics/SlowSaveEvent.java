@@ -0,0 +1,49 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Событие JFR медленного сохранения данных: записывается, если сохранение
+ * (Saver.save либо пакет Saver.saveAll) длилось дольше порога, по
+ * умолчанию -- 20 мс; порог задаётся настройкой записи JFR
+ * {@code userdata.SlowSave#threshold}.
+ * <p>
+ * Когда запись JFR не ведётся, проверка shouldCommit() сводится к чтению
+ * признака, а поля события не заполняются.
+ */
+@Name("userdata.SlowSave")
+@Label("Slow Save")
+@Category("UserData")
+@Description("Сохранение данных, длившееся дольше порога")
+@Threshold("20 ms")
+@StackTrace(false)
+public final class SlowSaveEvent extends jdk.jfr.Event {
+
+	@Label("Records")
+	@Description("Число сохранённых записей")
+	public int records;
+
+	@Label("Files")
+	@Description("Число файлов фамилий, в которые сохранены записи")
+	public int files;
+
+	@Label("Lookup Time")
+	@Description("Суммарная длительность поиска файлов фамилий")
+	@Timespan(Timespan.NANOSECONDS)
+	public long lookupNanos;
+
+	@Label("Write Time")
+	@Description("Суммарная длительность дописывания записей в файлы")
+	@Timespan(Timespan.NANOSECONDS)
+	public long writeNanos;
+
+	@Label("Last File")
+	@Description("Путь к последнему из файлов, в которые сохранены записи")
+	public String file;
+}
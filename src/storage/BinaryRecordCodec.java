@@ -0,0 +1,340 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import entities.Gender;
+import entities.UserData;
+
+/**
+ * Компактный двоичный формат хранения записей.
+ * <p>
+ * Файл начинается с заголовка: сигнатура (байт 0 и символы "UDB") и байт
+ * версии формата. Записи следуют друг за другом без разделителей:
+ *
+ * <pre>
+ * varint длина | Фамилия | Имя | Отчество | int Дата_рождения | Номер_телефона | byte Пол
+ * </pre>
+ *
+ * где varint -- беззнаковое целое переменной длины (по 7 бит в байте,
+ * младшие -- первыми), длина -- число байтов записи, следующих за ней.
+ * <ul>
+ * <li>Имя: varint (длина в байтах &lt;&lt; 1 | признак), затем байты. При
+ * признаке 1 каждый символ занимает один байт: байты 0x00-0x7F -- символы
+ * ASCII, байты 0x80-0xFF -- символы U+0400-U+047F (кириллица); при признаке
+ * 0 -- кодировка UTF-8.</li>
+ * <li>Дата рождения: номер дня от 01.01.1970 (epoch day).</li>
+ * <li>Номер телефона: varint (число цифр &lt;&lt; 1 | признак), затем при
+ * признаке 0 -- цифры по две в байте (старшая тетрада -- первая, нечётное
+ * число цифр дополняется тетрадой 0xF), что сохраняет ведущие нули; при
+ * признаке 1 (номер содержит не ASCII-цифры) -- длина и байты UTF-8.</li>
+ * <li>Пол: символ 'm' или 'f'.</li>
+ * </ul>
+ */
+public final class BinaryRecordCodec implements RecordCodec {
+
+	static final byte[] MAGIC = { 0, 'U', 'D', 'B' };
+	public static final byte VERSION = 1;
+	public static final int HEADER_LENGTH = MAGIC.length + 1;
+
+	private static final byte[] HEADER = { MAGIC[0], MAGIC[1], MAGIC[2], MAGIC[3], VERSION };
+	private static final byte[] NO_SEPARATOR = new byte[0];
+
+	private static final int COMPACT = 1;
+	private static final char COMPACT_CYRILLIC_FIRST = '\u0400';
+	private static final int COMPACT_CYRILLIC_COUNT = 0x80;
+	private static final int PADDING_NIBBLE = 0xF;
+	private static final int INITIAL_RECORD_BYTES = 64;
+
+	@Override
+	public byte[] header() {
+		return HEADER.clone();
+	}
+
+	@Override
+	public byte[] separator() {
+		return NO_SEPARATOR;
+	}
+
+	@Override
+	public byte[] encode(UserData userData) {
+		var body = new Output(INITIAL_RECORD_BYTES);
+		writeName(body, userData.getLastName());
+		writeName(body, userData.getFirstName());
+		writeName(body, userData.getMiddleName());
+		body.writeInt((int) userData.getBirthDate().toEpochDay());
+		writePhoneNumber(body, userData.getPhoneNumber());
+		body.write(userData.getGender().toString().charAt(0));
+
+		var record = new Output(body.size + 5);
+		record.writeVarint(body.size);
+		record.write(body.bytes, body.size);
+		return Arrays.copyOf(record.bytes, record.size);
+	}
+
+	/**
+	 * Проверяет заголовок файла, начинающийся с текущей позиции буфера, и
+	 * устанавливает позицию буфера за ним.
+	 *
+	 * @throws IOException если буфер не начинается с заголовка двоичного
+	 *                     формата или версия формата не поддерживается.
+	 */
+	public static void readHeader(ByteBuffer buffer) throws IOException {
+		if (!hasMagic(buffer)) {
+			throw new IOException("Данные не являются файлом двоичного формата.");
+		}
+		buffer.position(buffer.position() + MAGIC.length);
+		if (!buffer.hasRemaining()) {
+			throw new IOException("Заголовок файла двоичного формата оборван.");
+		}
+		byte version = buffer.get();
+		if (version != VERSION) {
+			throw new IOException(String.format("Версия двоичного формата %d не поддерживается.", version));
+		}
+	}
+
+	/**
+	 * @return true, если данные буфера, начиная с текущей позиции, начинаются
+	 *         с сигнатуры двоичного формата. Позиция буфера не изменяется.
+	 */
+	public static boolean hasMagic(ByteBuffer buffer) {
+		if (buffer.remaining() < MAGIC.length) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; ++i) {
+			if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Определяет длину записи, начинающейся с текущей позиции буфера, не
+	 * изменяя позиции.
+	 *
+	 * @return Число байтов записи, включая префикс длины, либо -1, если
+	 *         префикс длины записи в буфере оборван.
+	 * @throws IOException если префикс длины повреждён.
+	 */
+	public static int recordLength(ByteBuffer buffer) throws IOException {
+		int value = 0;
+		int position = buffer.position();
+		for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+			if (position == buffer.limit()) {
+				return -1;
+			}
+			int b = buffer.get(position++) & 0xFF;
+			value |= (b & 0x7F) << shift;
+			if (b < 0x80) {
+				int length = position - buffer.position() + value;
+				if (value < 0 || length < 0) {
+					break;
+				}
+				return length;
+			}
+		}
+		throw new IOException("Длина в записи двоичного формата повреждена.");
+	}
+
+	/**
+	 * Декодирует запись, начинающуюся с текущей позиции буфера, и
+	 * устанавливает позицию буфера за ней.
+	 *
+	 * @throws IOException если запись оборвана или повреждена.
+	 */
+	public UserData decode(ByteBuffer buffer) throws IOException {
+		try {
+			int length = readVarint(buffer);
+			if (length > buffer.remaining()) {
+				throw new IOException("Запись двоичного формата оборвана.");
+			}
+			int end = buffer.position() + length;
+
+			var userData = new UserData();
+			userData.setLastName(readName(buffer));
+			userData.setFirstName(readName(buffer));
+			userData.setMiddleName(readName(buffer));
+			userData.setBirthDate(LocalDate.ofEpochDay(buffer.getInt()));
+			userData.setPhoneNumber(readPhoneNumber(buffer));
+			userData.setGender(readGender(buffer.get()));
+
+			if (buffer.position() != end) {
+				throw new IOException("Запись двоичного формата повреждена.");
+			}
+			return userData;
+
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Запись двоичного формата оборвана или повреждена.", e);
+		}
+	}
+
+	private static void writeName(Output out, String name) {
+		boolean compact = true;
+		for (int i = 0; i < name.length() && compact; ++i) {
+			char c = name.charAt(i);
+			compact = c < 0x80
+					|| (c >= COMPACT_CYRILLIC_FIRST && c < COMPACT_CYRILLIC_FIRST + COMPACT_CYRILLIC_COUNT);
+		}
+
+		if (compact) {
+			out.writeVarint(name.length() << 1 | COMPACT);
+			for (int i = 0; i < name.length(); ++i) {
+				char c = name.charAt(i);
+				out.write(c < 0x80 ? c : 0x80 + (c - COMPACT_CYRILLIC_FIRST));
+			}
+		} else {
+			var bytes = name.getBytes(StandardCharsets.UTF_8);
+			out.writeVarint(bytes.length << 1);
+			out.write(bytes, bytes.length);
+		}
+	}
+
+	private static String readName(ByteBuffer buffer) throws IOException {
+		int prefix = readVarint(buffer);
+		int length = prefix >>> 1;
+		if (length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		if ((prefix & COMPACT) == 0) {
+			var bytes = new byte[length];
+			buffer.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		var chars = new char[length];
+		for (int i = 0; i < length; ++i) {
+			int b = buffer.get() & 0xFF;
+			chars[i] = b < 0x80 ? (char) b : (char) (COMPACT_CYRILLIC_FIRST + (b - 0x80));
+		}
+		return new String(chars);
+	}
+
+	private static void writePhoneNumber(Output out, String phoneNumber) {
+		boolean packed = true;
+		for (int i = 0; i < phoneNumber.length() && packed; ++i) {
+			char c = phoneNumber.charAt(i);
+			packed = c >= '0' && c <= '9';
+		}
+
+		if (!packed) {
+			var bytes = phoneNumber.getBytes(StandardCharsets.UTF_8);
+			out.writeVarint(bytes.length << 1 | 1);
+			out.write(bytes, bytes.length);
+			return;
+		}
+
+		int digits = phoneNumber.length();
+		out.writeVarint(digits << 1);
+		for (int i = 0; i < digits; i += 2) {
+			int high = phoneNumber.charAt(i) - '0';
+			int low = i + 1 < digits ? phoneNumber.charAt(i + 1) - '0' : PADDING_NIBBLE;
+			out.write(high << 4 | low);
+		}
+	}
+
+	private static String readPhoneNumber(ByteBuffer buffer) throws IOException {
+		int prefix = readVarint(buffer);
+		int length = prefix >>> 1;
+		if ((prefix & 1) != 0) {
+			if (length > buffer.remaining()) {
+				throw new BufferUnderflowException();
+			}
+			var bytes = new byte[length];
+			buffer.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		if ((length + 1) / 2 > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		var digits = new char[length];
+		for (int i = 0; i < length; i += 2) {
+			int b = buffer.get() & 0xFF;
+			digits[i] = digit(b >>> 4);
+			if (i + 1 < length) {
+				digits[i + 1] = digit(b & 0xF);
+			}
+		}
+		return new String(digits);
+	}
+
+	private static char digit(int nibble) throws IOException {
+		if (nibble > 9) {
+			throw new IOException("Номер телефона в записи двоичного формата повреждён.");
+		}
+		return (char) ('0' + nibble);
+	}
+
+	private static Gender readGender(byte b) throws IOException {
+		if (b == 'm') {
+			return Gender.MALE;
+		} else if (b == 'f') {
+			return Gender.FEMALE;
+		}
+		throw new IOException("Пол в записи двоичного формата повреждён.");
+	}
+
+	private static int readVarint(ByteBuffer buffer) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+			int b = buffer.get() & 0xFF;
+			value |= (b & 0x7F) << shift;
+			if (b < 0x80) {
+				if (value < 0) {
+					break;
+				}
+				return value;
+			}
+		}
+		throw new IOException("Длина в записи двоичного формата повреждена.");
+	}
+
+	/**
+	 * Расширяемый буфер байтов записи.
+	 */
+	private static final class Output {
+		byte[] bytes;
+		int size;
+
+		Output(int capacity) {
+			this.bytes = new byte[capacity];
+		}
+
+		void write(int b) {
+			ensureCapacity(1);
+			bytes[size++] = (byte) b;
+		}
+
+		void write(byte[] source, int length) {
+			ensureCapacity(length);
+			System.arraycopy(source, 0, bytes, size, length);
+			size += length;
+		}
+
+		void writeInt(int value) {
+			ensureCapacity(Integer.BYTES);
+			for (int shift = 24; shift >= 0; shift -= 8) {
+				bytes[size++] = (byte) (value >>> shift);
+			}
+		}
+
+		void writeVarint(int value) {
+			while ((value & ~0x7F) != 0) {
+				write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write(value);
+		}
+
+		private void ensureCapacity(int extra) {
+			if (size + extra > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+			}
+		}
+	}
+}
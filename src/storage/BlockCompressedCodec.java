@@ -0,0 +1,466 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import entities.UserData;
+
+/**
+ * Формат хранения, сжатый блоками: записи текстового формата
+ * (TextRecordCodec) сжимаются независимыми блоками Deflate с
+ * предустановленным словарём (CompressionDictionary).
+ * <p>
+ * Файл начинается с заголовка: сигнатура (байт 0 и символы "UDZ"), байт
+ * версии формата и идентификатор словаря (int). Далее следуют блоки:
+ *
+ * <pre>
+ * varint длина_данных | varint длина_сжатых_данных | сжатые_данные
+ * </pre>
+ *
+ * где varint -- беззнаковое целое переменной длины (как в
+ * BinaryRecordCodec). Данные блока -- записи текстового формата с
+ * разделителями между ними; каждое дописывание в файл добавляет новый блок.
+ * Заголовки блоков образуют индекс блоков файла: переход к следующему блоку
+ * не требует распаковки, поэтому чтение можно начинать с любого блока
+ * (например, с участка сегмента уплотнённых данных) и разделять файл между
+ * потоками по границам блоков. Блок, оборванный в конце файла (запись
+ * которого не завершена), не читается и отсекается перед дописыванием
+ * следующего блока.
+ * <p>
+ * Словарь восполняет недостаток контекста в небольших блоках: дописывание
+ * единственной записи сжимается примерно втрое, а блоки из десятков записей
+ * (например, при уплотнении, SegmentCompactor) -- в пять и более раз.
+ */
+public final class BlockCompressedCodec implements RecordCodec {
+
+	static final byte[] MAGIC = { 0, 'U', 'D', 'Z' };
+	public static final byte VERSION = 1;
+	public static final int HEADER_LENGTH = MAGIC.length + 1 + Integer.BYTES;
+	// Две длины по 5 байт varint.
+	static final int MAX_BLOCK_HEADER_LENGTH = 10;
+
+	// Наибольшее число файлов, последние проверенные блоки которых
+	// запоминаются.
+	private static final int MAX_VERIFIED_FILES = 4096;
+
+	private final TextRecordCodec records;
+	private final CompressionDictionary dictionary;
+	private final byte[] header;
+	private final Map<Object, BlockChainEnd> verifiedEnds = new LinkedHashMap<>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, BlockChainEnd> eldest) {
+			return size() > MAX_VERIFIED_FILES;
+		}
+	};
+
+	/**
+	 * @param records    Текстовый формат записей блоков.
+	 * @param dictionary Словарь сжатия; должен храниться в директории данных
+	 *                   (CompressionDictionary.storeIfAbsent), чтобы файлы
+	 *                   можно было прочитать.
+	 */
+	public BlockCompressedCodec(TextRecordCodec records, CompressionDictionary dictionary) {
+		this.records = records;
+		this.dictionary = dictionary;
+		this.header = ByteBuffer.allocate(HEADER_LENGTH)
+				.put(MAGIC).put(VERSION).putInt(dictionary.getId())
+				.array();
+	}
+
+	@Override
+	public byte[] header() {
+		return header.clone();
+	}
+
+	/**
+	 * @return Разделитель записей внутри блока.
+	 */
+	@Override
+	public byte[] separator() {
+		return records.separator();
+	}
+
+	@Override
+	public byte[] encode(UserData userData) {
+		return records.encode(userData);
+	}
+
+	/**
+	 * Сжимает данные, содержащие одну или несколько записей с разделителями
+	 * между ними, в блок.
+	 *
+	 * @return Заголовок и сжатые данные блока.
+	 */
+	ByteBuffer compress(ByteBuffer[] data) {
+		long length = 0;
+		for (var buffer : data) {
+			length += buffer.remaining();
+		}
+		if (length > Integer.MAX_VALUE - MAX_BLOCK_HEADER_LENGTH) {
+			throw new IllegalArgumentException("Слишком большой блок данных.");
+		}
+		var raw = new byte[(int) length];
+		int position = 0;
+		for (var buffer : data) {
+			int remaining = buffer.remaining();
+			buffer.get(raw, position, remaining);
+			position += remaining;
+		}
+
+		// Сжатые данные записываются с запасом для заголовка блока, длина
+		// которого становится известна после сжатия.
+		var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setDictionary(dictionary.bytes());
+			deflater.setInput(raw);
+			deflater.finish();
+			var block = new byte[MAX_BLOCK_HEADER_LENGTH + raw.length / 2 + 64];
+			int size = MAX_BLOCK_HEADER_LENGTH;
+			while (!deflater.finished()) {
+				if (size == block.length) {
+					block = Arrays.copyOf(block, block.length * 2);
+				}
+				size += deflater.deflate(block, size, block.length - size);
+			}
+
+			int compressedLength = size - MAX_BLOCK_HEADER_LENGTH;
+			int start = MAX_BLOCK_HEADER_LENGTH - varintLength(raw.length) - varintLength(compressedLength);
+			var out = ByteBuffer.wrap(block, start, size - start);
+			writeVarint(out, raw.length);
+			writeVarint(out, compressedLength);
+			return out.position(start);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * @return true, если данные буфера, начиная с текущей позиции, начинаются
+	 *         с сигнатуры формата. Позиция буфера не изменяется.
+	 */
+	public static boolean hasMagic(ByteBuffer buffer) {
+		if (buffer.remaining() < MAGIC.length) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; ++i) {
+			if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Последовательное чтение блоков файла сжатого формата. Не допускает
+	 * одновременного использования несколькими потоками.
+	 */
+	static final class BlockReader implements AutoCloseable {
+		private final Path file;
+		private final FileChannel channel;
+		private final long end;
+		private final byte[] dictionary;
+		private final Inflater inflater = new Inflater(true);
+		private final BlockHeader blockHeader = new BlockHeader();
+		private byte[] compressed = new byte[0];
+		private byte[] raw = new byte[0];
+		private long position;
+		private long blockOffset = -1;
+
+		/**
+		 * @param file    Путь к файлу (для сообщений об ошибках и поиска
+		 *                словаря).
+		 * @param channel Открытый на чтение файл; не закрывается читателем.
+		 * @param from    Смещение первого читаемого блока; 0 -- первый блок
+		 *                файла.
+		 * @param to      Смещение, начиная с которого блоки не читаются.
+		 * @throws IOException если непустой файл не является файлом сжатого
+		 *                     формата или словарь сжатия не найден.
+		 */
+		BlockReader(Path file, FileChannel channel, long from, long to) throws IOException {
+			this.file = file;
+			this.channel = channel;
+			this.end = Math.min(to, channel.size());
+			if (channel.size() == 0) {
+				// Файл создан, но записи в него ещё не дописывались.
+				this.dictionary = null;
+				return;
+			}
+
+			var header = ByteBuffer.allocate(HEADER_LENGTH);
+			readFully(channel, header, 0);
+			header.flip();
+			if (header.remaining() < HEADER_LENGTH || !hasMagic(header)) {
+				throw new IOException(String.format("Файл '%s' не является файлом сжатого формата.", file));
+			}
+			byte version = header.get(MAGIC.length);
+			if (version != VERSION) {
+				throw new IOException(String.format("Версия сжатого формата %d не поддерживается.", version));
+			}
+			this.dictionary = CompressionDictionary.find(file, header.getInt(MAGIC.length + 1)).bytes();
+			this.position = Math.max(from, HEADER_LENGTH);
+		}
+
+		/**
+		 * @return Смещение в файле последнего прочитанного блока.
+		 */
+		long blockOffset() {
+			return blockOffset;
+		}
+
+		/**
+		 * Распаковывает следующий блок.
+		 *
+		 * @return Буфер с данными блока, действительный до следующего вызова,
+		 *         либо null, если блоков больше нет.
+		 * @throws IOException в том числе если блок повреждён.
+		 */
+		ByteBuffer next() throws IOException {
+			if (!blockHeader.read(channel, position, end)) {
+				return null;
+			}
+			int rawLength = blockHeader.rawLength;
+			int compressedLength = blockHeader.compressedLength;
+			long dataOffset = position + blockHeader.length;
+
+			// Распаковщику без обёртки zlib требуется дополнительный байт
+			// входных данных.
+			if (compressed.length < compressedLength + 1) {
+				compressed = new byte[compressedLength + 1];
+			}
+			var input = ByteBuffer.wrap(compressed, 0, compressedLength);
+			readFully(channel, input, dataOffset);
+			if (input.hasRemaining()) {
+				throw corrupted(null);
+			}
+			if (raw.length < rawLength + 1) {
+				raw = new byte[rawLength + 1];
+			}
+			inflater.reset();
+			inflater.setDictionary(dictionary);
+			inflater.setInput(compressed, 0, compressedLength + 1);
+			int produced = 0;
+			try {
+				while (!inflater.finished() && produced <= rawLength) {
+					int inflated = inflater.inflate(raw, produced, rawLength + 1 - produced);
+					if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+						break;
+					}
+					produced += inflated;
+				}
+			} catch (DataFormatException e) {
+				throw corrupted(e);
+			}
+			if (!inflater.finished() || produced != rawLength) {
+				throw corrupted(null);
+			}
+
+			blockOffset = position;
+			position = dataOffset + compressedLength;
+			return ByteBuffer.wrap(raw, 0, rawLength);
+		}
+
+		@Override
+		public void close() {
+			inflater.end();
+		}
+
+		private IOException corrupted(Exception cause) {
+			return new IOException(String.format("Блок файла '%s' со смещением %d повреждён.", file, position), cause);
+		}
+	}
+
+	/**
+	 * Читает индекс блоков файла сжатого формата -- переходя по заголовкам
+	 * блоков, без распаковки.
+	 *
+	 * @return Смещения блоков файла, завершённых к моменту чтения.
+	 * @throws IOException в том числе если заголовок блока повреждён.
+	 */
+	static List<Long> blockOffsets(FileChannel channel) throws IOException {
+		var offsets = new ArrayList<Long>();
+		long size = channel.size();
+		var blockHeader = new BlockHeader();
+		long position = HEADER_LENGTH;
+		while (blockHeader.read(channel, position, size)) {
+			offsets.add(position);
+			position += blockHeader.length + blockHeader.compressedLength;
+		}
+		return offsets;
+	}
+
+	/**
+	 * Находит конец последнего завершённого блока файла, переходя по
+	 * заголовкам блоков от заданного смещения, -- для отсечения блока,
+	 * оборванного в конце файла (например, при сбое во время дописывания),
+	 * перед дописыванием нового.
+	 *
+	 * @param from Смещение начала блока (либо конца файла); HEADER_LENGTH --
+	 *             первый блок файла.
+	 * @return Смещение конца последнего завершённого блока.
+	 * @throws IOException если заголовок блока повреждён.
+	 */
+	static long completeLength(FileChannel channel, long from) throws IOException {
+		long size = channel.size();
+		var blockHeader = new BlockHeader();
+		long position = from;
+		while (blockHeader.read(channel, position, size)) {
+			position += blockHeader.length + blockHeader.compressedLength;
+		}
+		return position;
+	}
+
+	/**
+	 * Находит конец последнего завершённого блока файла (completeLength),
+	 * начиная проверку с конца, проверенного предыдущим вызовом для того же
+	 * файла, если последний проверенный блок не изменился с тех пор, -- так
+	 * что дописывание не просматривает заголовки всех блоков файла.
+	 *
+	 * @param fileKey Идентификатор файла (BasicFileAttributes.fileKey) либо
+	 *                null.
+	 */
+	long completeLength(FileChannel channel, Object fileKey) throws IOException {
+		long from = HEADER_LENGTH;
+		if (fileKey != null) {
+			BlockChainEnd verified;
+			synchronized (verifiedEnds) {
+				verified = verifiedEnds.get(fileKey);
+			}
+			if (verified != null && verified.isValid(channel)) {
+				from = verified.end;
+			}
+		}
+		return completeLength(channel, from);
+	}
+
+	/**
+	 * Запоминает блок, дописанный в конец файла, как последний проверенный
+	 * блок файла (completeLength).
+	 */
+	void appended(Object fileKey, long blockOffset, long end) {
+		if (fileKey != null) {
+			synchronized (verifiedEnds) {
+				verifiedEnds.put(fileKey, new BlockChainEnd(blockOffset, end));
+			}
+		}
+	}
+
+	/**
+	 * Последний блок проверенной части файла.
+	 */
+	private static final class BlockChainEnd {
+		final long blockOffset;
+		final long end;
+
+		BlockChainEnd(long blockOffset, long end) {
+			this.blockOffset = blockOffset;
+			this.end = end;
+		}
+
+		/**
+		 * @return true, если блок по-прежнему находится в файле и
+		 *         заканчивается на проверенном конце.
+		 */
+		boolean isValid(FileChannel channel) throws IOException {
+			var blockHeader = new BlockHeader();
+			return end <= channel.size() && blockHeader.read(channel, blockOffset, end)
+					&& blockOffset + blockHeader.length + blockHeader.compressedLength == end;
+		}
+	}
+
+	/**
+	 * Заголовок блока.
+	 */
+	private static final class BlockHeader {
+		private final ByteBuffer buffer = ByteBuffer.allocate(MAX_BLOCK_HEADER_LENGTH);
+		int rawLength;
+		int compressedLength;
+		// Длина самого заголовка.
+		int length;
+
+		/**
+		 * Читает заголовок блока, начинающегося с заданного смещения.
+		 *
+		 * @param end Смещение конца читаемых данных.
+		 * @return false, если блок не завершён к смещению end.
+		 * @throws IOException если заголовок повреждён.
+		 */
+		boolean read(FileChannel channel, long offset, long end) throws IOException {
+			if (offset >= end) {
+				return false;
+			}
+			buffer.clear().limit((int) Math.min(MAX_BLOCK_HEADER_LENGTH, end - offset));
+			readFully(channel, buffer, offset);
+			buffer.flip();
+			rawLength = readVarint(buffer);
+			compressedLength = rawLength < 0 ? -1 : readVarint(buffer);
+			if (compressedLength < 0) {
+				if (buffer.limit() == MAX_BLOCK_HEADER_LENGTH) {
+					throw new IOException(String.format("Заголовок блока со смещением %d повреждён.", offset));
+				}
+				return false;
+			}
+			length = buffer.position();
+			return offset + length + compressedLength <= end;
+		}
+	}
+
+	/**
+	 * @return Значение varint, начинающегося с текущей позиции буфера, либо
+	 *         отрицательное значение, если varint оборван или превышает
+	 *         наибольшее значение int.
+	 */
+	private static int readVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < Integer.SIZE && buffer.hasRemaining(); shift += 7) {
+			int b = buffer.get() & 0xFF;
+			value |= (b & 0x7F) << shift;
+			if (b < 0x80) {
+				return value;
+			}
+		}
+		return -1;
+	}
+
+	private static void writeVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static int varintLength(int value) {
+		int length = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			++length;
+		}
+		return length;
+	}
+
+	/**
+	 * Читает данные файла, начиная с заданного смещения, пока буфер не
+	 * заполнится либо файл не закончится.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, offset);
+			if (read < 0) {
+				return;
+			}
+			offset += read;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Фильтр Блума для байтовых представлений записей: отвечает, что запись
+ * заведомо не добавлялась, либо что она, возможно, добавлялась (с
+ * вероятностью ложного срабатывания не более 2%).
+ * <p>
+ * Фильтр масштабируемый: когда число добавленных записей достигает ёмкости
+ * текущей ступени, добавляется новая ступень вдвое большей ёмкости, так что
+ * доля ложных срабатываний не растёт с числом записей, а перестраивать
+ * фильтр по исходным данным не требуется. Фильтр не допускает одновременного
+ * использования несколькими потоками.
+ */
+public final class BloomFilter {
+
+	static final int MIN_CAPACITY = 64;
+
+	// Для вероятности ложного срабатывания 1%: 9,6 бита на запись и 7
+	// хеш-функций. Каждая следующая ступень -- с вдвое меньшей вероятностью
+	// (на 1,44 бита на запись и на одну хеш-функцию больше), чтобы суммарная
+	// вероятность по всем ступеням оставалась не более 2%.
+	private static final double BITS_PER_ITEM = 9.6;
+	private static final int HASHES = 7;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static final class Stage {
+		final long[] bits;
+		final long capacity;
+		final int hashes;
+		long count;
+
+		Stage(long capacity, int hashes, long[] bits) {
+			this.capacity = capacity;
+			this.hashes = hashes;
+			this.bits = bits;
+		}
+
+		boolean mightContain(long hash1, long hash2) {
+			long size = bits.length * (long) Long.SIZE;
+			for (int i = 0; i < hashes; ++i) {
+				long bit = Long.remainderUnsigned(hash1 + i * hash2, size);
+				if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		void add(long hash1, long hash2) {
+			long size = bits.length * (long) Long.SIZE;
+			for (int i = 0; i < hashes; ++i) {
+				long bit = Long.remainderUnsigned(hash1 + i * hash2, size);
+				bits[(int) (bit >>> 6)] |= 1L << bit;
+			}
+			++count;
+		}
+	}
+
+	private final List<Stage> stages = new ArrayList<>();
+
+	/**
+	 * @param expectedItems Ожидаемое число записей -- ёмкость первой ступени.
+	 */
+	public BloomFilter(long expectedItems) {
+		addStage(Math.max(MIN_CAPACITY, expectedItems));
+	}
+
+	private BloomFilter() {
+	}
+
+	/**
+	 * @return false, если запись заведомо не добавлялась в фильтр.
+	 */
+	public boolean mightContain(byte[] record) {
+		long hash1 = hash(record);
+		long hash2 = mix(hash1 ^ FNV_PRIME) | 1;
+		for (var stage : stages) {
+			if (stage.mightContain(hash1, hash2)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void add(byte[] record) {
+		var stage = stages.get(stages.size() - 1);
+		if (stage.count >= stage.capacity) {
+			stage = addStage(stage.capacity * 2);
+		}
+		long hash1 = hash(record);
+		stage.add(hash1, mix(hash1 ^ FNV_PRIME) | 1);
+	}
+
+	/**
+	 * @return Число добавленных записей.
+	 */
+	public long count() {
+		long count = 0;
+		for (var stage : stages) {
+			count += stage.count;
+		}
+		return count;
+	}
+
+	/**
+	 * Записывает фильтр в поток данных.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(stages.size());
+		for (var stage : stages) {
+			out.writeLong(stage.capacity);
+			out.writeInt(stage.hashes);
+			out.writeLong(stage.count);
+			out.writeInt(stage.bits.length);
+			for (long word : stage.bits) {
+				out.writeLong(word);
+			}
+		}
+	}
+
+	/**
+	 * Читает фильтр, записанный методом writeTo.
+	 *
+	 * @throws IOException если данные оборваны или повреждены.
+	 */
+	public static BloomFilter readFrom(DataInput in) throws IOException {
+		var filter = new BloomFilter();
+		int stagesCount = in.readInt();
+		if (stagesCount < 1 || stagesCount > Long.SIZE) {
+			throw new IOException("Данные фильтра Блума повреждены.");
+		}
+		for (int i = 0; i < stagesCount; ++i) {
+			long capacity = in.readLong();
+			int hashes = in.readInt();
+			long count = in.readLong();
+			int words = in.readInt();
+			if (capacity < MIN_CAPACITY || capacity > Integer.MAX_VALUE || hashes != HASHES + i || count < 0
+					|| count > capacity || words != words(capacity, i)) {
+				throw new IOException("Данные фильтра Блума повреждены.");
+			}
+			var bits = new long[words];
+			for (int j = 0; j < words; ++j) {
+				bits[j] = in.readLong();
+			}
+			var stage = new Stage(capacity, hashes, bits);
+			stage.count = count;
+			filter.stages.add(stage);
+		}
+		return filter;
+	}
+
+	private Stage addStage(long capacity) {
+		int level = stages.size();
+		if (capacity > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Превышена ёмкость фильтра Блума.");
+		}
+		var stage = new Stage(capacity, HASHES + level, new long[words(capacity, level)]);
+		stages.add(stage);
+		return stage;
+	}
+
+	/**
+	 * @return Размер битового массива ступени заданного уровня, 64-битных
+	 *         слов.
+	 */
+	private static int words(long capacity, int level) {
+		double bitsPerItem = BITS_PER_ITEM + level * 1.44;
+		return (int) Math.ceil(capacity * bitsPerItem / Long.SIZE);
+	}
+
+	/**
+	 * @return Перемешанный 64-битный хеш FNV-1a байтов записи.
+	 */
+	private static long hash(byte[] record) {
+		long hash = FNV_OFFSET_BASIS;
+		for (byte b : record) {
+			hash ^= b & 0xFF;
+			hash *= FNV_PRIME;
+		}
+		return mix(hash);
+	}
+
+	/**
+	 * Перемешивание битов (финализатор MurmurHash3); применяется и для
+	 * получения второй хеш-функции двойного хеширования.
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		return hash ^ (hash >>> 33);
+	}
+}
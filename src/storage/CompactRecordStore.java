@@ -0,0 +1,118 @@
+package storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import entities.CompactUserData;
+import entities.CompactUserDataList;
+import entities.NameDictionary;
+import entities.UserData;
+
+/**
+ * Хранилище записей пользовательских данных в куче в компактном столбцовом
+ * представлении (CompactUserDataList): около 26 байт на запись и по одному
+ * экземпляру каждой различной строки имени в словаре имён.
+ * <p>
+ * Запросы выполняются просмотром массивов нужного поля: по фамилии -- без
+ * учёта регистра, сравнением нормализованных идентификаторов словаря, по
+ * номеру телефона -- сравнением числовых значений номера, по дате рождения
+ * -- сравнением номеров дней. Объекты UserData создаются только для
+ * найденных записей, которые возвращаются в порядке добавления. Хранилище
+ * не допускает одновременного использования несколькими потоками.
+ * <p>
+ * Хранилище, однократно загруженное из директории данных (load), отвечает
+ * на запросы без обращения к файлам (App --query --resident --columnar).
+ */
+public final class CompactRecordStore implements QueryEngine {
+
+	private final CompactUserDataList records = new CompactUserDataList(new NameDictionary());
+
+	/**
+	 * Загружает все записи директории данных (UserDataReader) в новое
+	 * хранилище.
+	 *
+	 * @param dataDir Путь к директории данных.
+	 */
+	public static CompactRecordStore load(Path dataDir) throws IOException {
+		var store = new CompactRecordStore();
+		try (var stream = UserDataReader.stream(dataDir)) {
+			stream.forEachOrdered(store::add);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		store.records.trimToSize();
+		return store;
+	}
+
+	/**
+	 * @return Число записей в хранилище.
+	 */
+	public int size() {
+		return records.size();
+	}
+
+	/**
+	 * Добавляет запись.
+	 *
+	 * @return Индекс добавленной записи.
+	 */
+	public int add(UserData userData) {
+		return records.add(userData);
+	}
+
+	@Override
+	public List<UserData> findByLastName(String lastName) {
+		var dictionary = records.getDictionary();
+		int normalizedId = dictionary.findNormalized(lastName);
+		var found = new ArrayList<UserData>();
+		if (normalizedId < 0) {
+			return found;
+		}
+		for (int i = 0; i < records.size(); ++i) {
+			if (dictionary.normalizedId(records.lastName(i)) == normalizedId) {
+				found.add(records.get(i));
+			}
+		}
+		return found;
+	}
+
+	@Override
+	public List<UserData> findByPhoneNumber(String phoneNumber) {
+		var found = new ArrayList<UserData>();
+		byte leadingZeros = CompactUserData.phoneLeadingZeros(phoneNumber);
+		long value;
+		if (leadingZeros != CompactUserData.PHONE_NUMBER_IN_DICTIONARY) {
+			value = CompactUserData.phoneValue(phoneNumber, leadingZeros);
+		} else {
+			// Номер, не представимый числом, хранится как строка словаря.
+			value = records.getDictionary().find(phoneNumber);
+			if (value < 0) {
+				return found;
+			}
+		}
+		for (int i = 0; i < records.size(); ++i) {
+			if (records.phoneNumber(i) == value && records.phoneLeadingZeros(i) == leadingZeros) {
+				found.add(records.get(i));
+			}
+		}
+		return found;
+	}
+
+	@Override
+	public List<UserData> findByBirthDate(LocalDate from, LocalDate to) {
+		var found = new ArrayList<UserData>();
+		long fromDay = from.toEpochDay();
+		long toDay = to.toEpochDay();
+		for (int i = 0; i < records.size(); ++i) {
+			int day = records.birthDate(i);
+			if (day >= fromDay && day <= toDay) {
+				found.add(records.get(i));
+			}
+		}
+		return found;
+	}
+}
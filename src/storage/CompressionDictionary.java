@@ -0,0 +1,244 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Adler32;
+
+/**
+ * Предустановленный словарь сжатия (Deflater.setDictionary) для формата,
+ * сжатого блоками (BlockCompressedCodec).
+ * <p>
+ * Словарь обучается на образцах записей: из образцов жадно отбираются
+ * записи, содержащие больше всего ещё не покрытых словарём частых
+ * 8-байтовых последовательностей (встречающихся не менее чем в двух
+ * образцах), пока словарь не достигнет наибольшего размера. Чем ценнее
+ * запись, тем ближе к концу словаря она помещается: ссылки на конец словаря
+ * кодируются короче.
+ * <p>
+ * Словарь директории данных хранится в служебном файле .dictionary и не
+ * изменяется после создания: сжатые файлы ссылаются на него по
+ * идентификатору (контрольной сумме Adler-32).
+ */
+public final class CompressionDictionary {
+
+	static final String DICTIONARY_FILE = ".dictionary";
+
+	/**
+	 * Наибольший размер словаря, байт. Словарь устанавливается перед сжатием
+	 * каждого блока за время, пропорциональное его размеру, а словарь размера
+	 * окна Deflate (32 КиБ) сжимает записи лишь на несколько процентов лучше.
+	 */
+	public static final int MAX_BYTES = 8 * 1024;
+
+	private static final int GRAM_BYTES = Long.BYTES;
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	// Загруженные словари по путям файлов словарей; файлы словарей не
+	// изменяются, поэтому словари не перечитываются.
+	private static final Map<Path, CompressionDictionary> LOADED = new ConcurrentHashMap<>();
+
+	private final byte[] bytes;
+	private final int id;
+
+	private CompressionDictionary(byte[] bytes) {
+		this.bytes = bytes;
+		var adler = new Adler32();
+		adler.update(bytes);
+		this.id = (int) adler.getValue();
+	}
+
+	/**
+	 * @return Идентификатор словаря -- контрольная сумма Adler-32 его байтов.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return Размер словаря, байт.
+	 */
+	public int size() {
+		return bytes.length;
+	}
+
+	byte[] bytes() {
+		return bytes;
+	}
+
+	/**
+	 * Обучает словарь на образцах записей.
+	 *
+	 * @param samples   Байтовые представления записей.
+	 * @param separator Разделитель записей, помещаемый между образцами в
+	 *                  словаре.
+	 */
+	public static CompressionDictionary train(List<byte[]> samples, byte[] separator) {
+		// Образцы без повторов и число образцов, содержащих каждую
+		// 8-байтовую последовательность.
+		var distinct = new ArrayList<byte[]>();
+		var seen = new HashSet<ByteBuffer>();
+		for (var sample : samples) {
+			if (seen.add(ByteBuffer.wrap(sample))) {
+				distinct.add(sample);
+			}
+		}
+		var grams = new ArrayList<long[]>(distinct.size());
+		var frequencies = new HashMap<Long, Integer>();
+		for (var sample : distinct) {
+			var sampleGrams = gramsOf(sample);
+			grams.add(sampleGrams);
+			for (long gram : sampleGrams) {
+				frequencies.merge(gram, 1, Integer::sum);
+			}
+		}
+
+		// Жадный отбор с отложенным пересчётом оценок: оценка образца лишь
+		// убывает по мере покрытия, поэтому образец, оценка которого после
+		// пересчёта не меньше наибольшей из прочих, -- лучший.
+		var covered = new HashSet<Long>();
+		var queue = new PriorityQueue<long[]>((a, b) -> Long.compare(b[1], a[1]));
+		for (int i = 0; i < distinct.size(); ++i) {
+			queue.add(new long[] { i, score(grams.get(i), frequencies, covered) });
+		}
+		var selected = new ArrayList<byte[]>();
+		int size = 0;
+		while (!queue.isEmpty() && size < MAX_BYTES) {
+			var candidate = queue.poll();
+			int sample = (int) candidate[0];
+			long score = score(grams.get(sample), frequencies, covered);
+			if (score == 0) {
+				continue;
+			}
+			if (!queue.isEmpty() && score < queue.peek()[1]) {
+				candidate[1] = score;
+				queue.add(candidate);
+				continue;
+			}
+			selected.add(distinct.get(sample));
+			for (long gram : grams.get(sample)) {
+				covered.add(gram);
+			}
+			size += distinct.get(sample).length + separator.length;
+		}
+
+		Collections.reverse(selected);
+		var dictionary = ByteBuffer.allocate(size);
+		for (var sample : selected) {
+			dictionary.put(sample).put(separator);
+		}
+		int length = Math.min(dictionary.position(), MAX_BYTES);
+		return new CompressionDictionary(
+				Arrays.copyOfRange(dictionary.array(), dictionary.position() - length, dictionary.position()));
+	}
+
+	/**
+	 * @return Словарь директории данных, либо null, если словарь не создан.
+	 */
+	public static CompressionDictionary load(Path dataDir) throws IOException {
+		var file = dataDir.resolve(DICTIONARY_FILE).toAbsolutePath();
+		var dictionary = LOADED.get(file);
+		if (dictionary == null) {
+			try {
+				dictionary = new CompressionDictionary(Files.readAllBytes(file));
+			} catch (NoSuchFileException e) {
+				return null;
+			}
+			LOADED.putIfAbsent(file, dictionary);
+		}
+		return dictionary;
+	}
+
+	/**
+	 * Сохраняет словарь в директории данных, если словарь директории ещё не
+	 * создан.
+	 *
+	 * @return Словарь директории данных: этот словарь либо созданный ранее.
+	 */
+	public CompressionDictionary storeIfAbsent(Path dataDir) throws IOException {
+		Files.createDirectories(dataDir);
+		var file = dataDir.resolve(DICTIONARY_FILE);
+		var temp = dataDir.resolve(DICTIONARY_FILE + TEMP_SUFFIX + '-' + ProcessHandle.current().pid());
+		try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE)) {
+			var buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		// Словарь появляется атомарно и не заменяет существующий.
+		try {
+			Files.createLink(file, temp);
+		} catch (FileAlreadyExistsException e) {
+			// словарь создан другим процессом
+		} catch (UnsupportedOperationException e) {
+			if (!Files.exists(file)) {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		return load(dataDir);
+	}
+
+	/**
+	 * Находит словарь, которым сжат файл данных: просматриваются директория
+	 * файла и объемлющие её директории (файл может находиться в
+	 * поддиректории директории данных).
+	 *
+	 * @param id Идентификатор словаря, указанный в заголовке файла.
+	 * @throws IOException если словарь не найден.
+	 */
+	static CompressionDictionary find(Path file, int id) throws IOException {
+		for (var dir = file.toAbsolutePath().getParent(); dir != null; dir = dir.getParent()) {
+			var dictionary = load(dir);
+			if (dictionary != null && dictionary.id == id) {
+				return dictionary;
+			}
+		}
+		throw new IOException(String.format("Словарь сжатия файла '%s' не найден.", file));
+	}
+
+	/**
+	 * @return Различные 8-байтовые последовательности образца.
+	 */
+	private static long[] gramsOf(byte[] sample) {
+		var grams = new HashSet<Long>();
+		for (int i = 0; i + GRAM_BYTES <= sample.length; ++i) {
+			grams.add(ByteBuffer.wrap(sample, i, GRAM_BYTES).getLong());
+		}
+		return grams.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	/**
+	 * @return Суммарная частота частых последовательностей образца, не
+	 *         покрытых словарём.
+	 */
+	private static long score(long[] grams, Map<Long, Integer> frequencies, Set<Long> covered) {
+		long score = 0;
+		for (long gram : grams) {
+			int frequency = frequencies.get(gram);
+			if (frequency > 1 && !covered.contains(gram)) {
+				score += frequency;
+			}
+		}
+		return score;
+	}
+}
@@ -0,0 +1,362 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import utils.StringUtils;
+
+/**
+ * Индекс имён файлов директории для нечувствительного к регистру поиска
+ * файла по имени за O(1).
+ * <p>
+ * Индекс строится однократно при создании объекта и далее поддерживается в
+ * актуальном состоянии: явно -- методами put и remove при создании и
+ * удалении файла владельцем индекса, и с помощью WatchService -- при
+ * изменении содержимого директории другими процессами. Служебные файлы и
+ * директории (имена которых начинаются с точки) не индексируются. Если
+ * отслеживание изменений прекращается (например, директория стала
+ * недоступна), поиск выполняется просмотром директории.
+ * <p>
+ * В сегментированной директории данных (ShardedLayout) новые файлы
+ * создаются в директориях сегментов, а файл, не найденный в индексе,
+ * ищется в директории своего сегмента и далее находится по индексу. Изменения
+ * директорий сегментов не отслеживаются (их может быть 65 536), а
+ * уведомления об изменениях директории приходят с задержкой, поэтому в
+ * сегментированной директории, а также в директории, совместно изменяемой
+ * несколькими процессами, существование найденного по индексу файла
+ * проверяется при каждом поиске. Индекс переходит к сегментированному
+ * размещению, как только директория становится сегментированной, в том
+ * числе другим процессом.
+ */
+public final class DirectoryIndex implements AutoCloseable {
+
+	static final String REGISTRY_FILE = ".created";
+	// Объём конца файла-реестра, в котором ищется конец последней
+	// завершённой записи; превышает длину любой записи.
+	private static final int REGISTRY_TAIL_BYTES = 64 * 1024;
+
+	// Файлы создаются под блокировкой файла-реестра, которая принадлежит
+	// процессу, поэтому создание файлов всеми индексами процесса
+	// взаимно исключается.
+	private static final Object CREATING = new Object();
+
+	private final Path dir;
+	private final boolean shared;
+	private final ConcurrentHashMap<String, Path> entries = new ConcurrentHashMap<>();
+	private final WatchService watchService;
+	private final Thread watcher;
+	private volatile boolean watching = true;
+	private volatile boolean sharded;
+	// Смещение в файле-реестре, до которого зарегистрированные файлы
+	// отражены в индексе; изменяется под блокировкой CREATING.
+	private long registryPosition;
+
+	/**
+	 * Создаёт индекс директории, файлы которой удаляются и переносятся только
+	 * владельцем индекса.
+	 *
+	 * @param dir Путь к существующей директории.
+	 * @throws IOException если не удалось прочитать содержимое директории или
+	 *                     зарегистрировать её для отслеживания изменений.
+	 */
+	public DirectoryIndex(Path dir) throws IOException {
+		this(dir, false);
+	}
+
+	/**
+	 * @param dir    Путь к существующей директории.
+	 * @param shared Директория совместно изменяется несколькими процессами.
+	 * @throws IOException если не удалось прочитать содержимое директории или
+	 *                     зарегистрировать её для отслеживания изменений.
+	 */
+	public DirectoryIndex(Path dir, boolean shared) throws IOException {
+		this.dir = dir;
+		this.shared = shared;
+		this.watchService = dir.getFileSystem().newWatchService();
+		dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+		this.sharded = ShardedLayout.isSharded(dir);
+		// Файлы, зарегистрированные до построения индекса, отражены в нём.
+		this.registryPosition = registeredLength(dir.resolve(REGISTRY_FILE));
+		rebuild();
+
+		this.watcher = new Thread(this::watch, "directory-index-watcher");
+		this.watcher.setDaemon(true);
+		this.watcher.start();
+	}
+
+	/**
+	 * Нечувствительный к регистру поиск файла или директории по имени.
+	 *
+	 * @param fileName Имя файла.
+	 * @return Путь к файлу, либо null, если файла или директории с таким
+	 *         именем не найдено.
+	 * @throws IOException если индекс не поддерживается и не удалось
+	 *                     прочитать содержимое директории.
+	 */
+	public Path find(String fileName) throws IOException {
+		assert fileName != null && !fileName.isBlank();
+
+		if (!watching) {
+			return scan(fileName);
+		}
+		var name = StringUtils.foldCase(fileName);
+		var found = entries.get(name);
+		if (found != null && (sharded || shared) && !Files.exists(found)) {
+			// Файл мог быть удалён или перенесён в сегмент другим процессом
+			// раньше, чем придёт уведомление; изменения директорий сегментов
+			// не отслеживаются вовсе.
+			entries.remove(name, found);
+			found = null;
+			if (!sharded) {
+				sharded = ShardedLayout.isSharded(dir);
+			}
+		}
+		if (found == null && sharded) {
+			found = ShardedLayout.findInShard(dir, fileName);
+			if (found != null) {
+				found = put(found);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @param fileName Имя нового файла.
+	 * @return Путь, по которому следует создать новый файл: в директории
+	 *         сегмента (создаваемой при необходимости), если директория
+	 *         сегментирована, иначе -- в самой директории.
+	 */
+	public Path newFilePath(String fileName) throws IOException {
+		if (!sharded) {
+			// Уведомление о сегментировании директории другим процессом
+			// могло ещё не прийти, а файлы верхнего уровня полностью
+			// перенесённой директории не просматриваются при поиске.
+			sharded = ShardedLayout.isSharded(dir);
+		}
+		if (!sharded) {
+			return dir.resolve(fileName);
+		}
+		return ShardedLayout.createShard(dir, fileName).resolve(fileName);
+	}
+
+	/**
+	 * Нечувствительный к регистру поиск файла по имени с созданием файла, если
+	 * такового не найдено, согласованный с другими процессами, работающими с
+	 * той же директорией.
+	 * <p>
+	 * Создание файла выполняется под блокировкой (FileLock) файла-реестра
+	 * REGISTRY_FILE директории, в который дописывается путь созданного файла
+	 * относительно директории. Перед поиском под блокировкой индекс
+	 * дополняется файлами, зарегистрированными другими процессами с момента
+	 * предыдущего чтения реестра. Это исключает создание двумя процессами
+	 * файлов с именами, отличающимися лишь регистром, даже если индекс одного
+	 * из процессов ещё не получил уведомление о файле, созданном другим.
+	 * Блокировка файла принадлежит процессу, поэтому потоки процесса создают
+	 * файлы поочерёдно.
+	 *
+	 * @param fileName Имя файла.
+	 * @return Путь к существующему либо созданному файлу.
+	 */
+	public Path findOrCreate(String fileName) throws IOException {
+		var found = find(fileName);
+		if (found != null) {
+			return found;
+		}
+
+		synchronized (CREATING) {
+			try (var channel = FileChannel.open(dir.resolve(REGISTRY_FILE), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				// Блокировка снимается закрытием канала.
+				channel.lock();
+				readRegistry(channel);
+
+				var file = find(fileName);
+				if (file != null) {
+					return file;
+				}
+				file = newFilePath(fileName);
+				try {
+					Files.createFile(file);
+				} catch (FileAlreadyExistsException e) {
+					// файл уже создан
+				}
+
+				var bytes = ByteBuffer.wrap((dir.relativize(file) + "\n").getBytes(StandardCharsets.UTF_8));
+				while (bytes.hasRemaining()) {
+					registryPosition += channel.write(bytes, registryPosition);
+				}
+				return put(file);
+			}
+		}
+	}
+
+	/**
+	 * Регистрирует в индексе созданный файл. Если файл с тем же (без учёта
+	 * регистра) именем уже зарегистрирован, индекс не изменяется.
+	 *
+	 * @param file Путь к файлу в индексируемой директории.
+	 * @return Путь к файлу, зарегистрированному в индексе под этим именем.
+	 */
+	public Path put(Path file) {
+		var existing = entries.putIfAbsent(StringUtils.foldCase(file.getFileName().toString()), file);
+		return existing != null ? existing : file;
+	}
+
+	/**
+	 * Исключает из индекса файл, удалённый либо перенесённый владельцем
+	 * индекса.
+	 *
+	 * @param file Путь к файлу в индексируемой директории.
+	 */
+	public void remove(Path file) {
+		entries.remove(StringUtils.foldCase(file.getFileName().toString()), file);
+	}
+
+	/**
+	 * @return Количество файлов в индексе.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+		watcher.interrupt();
+	}
+
+	private Path scan(final String fileName) throws IOException {
+		if (sharded) {
+			var found = ShardedLayout.findInShard(dir, fileName);
+			if (found != null) {
+				return found;
+			}
+		}
+		try (var resultAsStream = Files.find(dir, 1,
+				(path, attr) -> path.getFileName().toString().equalsIgnoreCase(fileName))) {
+			return resultAsStream.findAny().orElse(null);
+		}
+	}
+
+	/**
+	 * @return Длина завершённых записей файла-реестра: смещение, следующее за
+	 *         последним переводом строки.
+	 */
+	private static long registeredLength(Path registry) throws IOException {
+		if (!Files.exists(registry)) {
+			return 0;
+		}
+		try (var channel = FileChannel.open(registry, StandardOpenOption.READ)) {
+			long size = channel.size();
+			var tail = ByteBuffer.allocate((int) Math.min(size, REGISTRY_TAIL_BYTES));
+			while (tail.hasRemaining()) {
+				if (channel.read(tail, size - tail.capacity() + tail.position()) < 0) {
+					break;
+				}
+			}
+			for (int i = tail.position() - 1; i >= 0; --i) {
+				if (tail.get(i) == '\n') {
+					return size - tail.capacity() + i + 1;
+				}
+			}
+			return size - tail.capacity();
+		}
+	}
+
+	/**
+	 * Дополняет индекс существующими файлами, зарегистрированными в реестре
+	 * после предыдущего чтения, и отбрасывает неполную последнюю запись,
+	 * оставленную аварийно завершённым процессом; вызывается под блокировкой
+	 * реестра.
+	 */
+	private void readRegistry(FileChannel channel) throws IOException {
+		var registered = ByteBuffer.allocate((int) Math.max(0, channel.size() - registryPosition));
+		while (registered.hasRemaining()) {
+			if (channel.read(registered, registryPosition + registered.position()) < 0) {
+				break;
+			}
+		}
+		int start = 0;
+		for (int i = 0; i < registered.position(); ++i) {
+			if (registered.get(i) == '\n') {
+				var file = dir.resolve(new String(registered.array(), start, i - start, StandardCharsets.UTF_8));
+				if (Files.exists(file)) {
+					put(file);
+				}
+				start = i + 1;
+			}
+		}
+		registryPosition += start;
+		channel.truncate(registryPosition);
+	}
+
+	private void rebuild() throws IOException {
+		// Индекс обновляется на месте, без очистки, чтобы параллельный поиск
+		// не получил ложный отрицательный результат.
+		var listed = new HashSet<Path>();
+		try (var stream = Files.list(dir)) {
+			stream.filter(DirectoryIndex::isIndexed).forEach(file -> listed.add(put(file)));
+		}
+		entries.values().removeIf(file -> !listed.contains(file));
+	}
+
+	/**
+	 * @return false для служебных файлов и директорий сегментов, которые не
+	 *         индексируются.
+	 */
+	private static boolean isIndexed(Path file) {
+		var name = file.getFileName().toString();
+		return !name.startsWith(".") && !(ShardedLayout.isShardName(name) && Files.isDirectory(file));
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					var kind = event.kind();
+					if (kind == StandardWatchEventKinds.OVERFLOW) {
+						rebuild();
+						continue;
+					}
+
+					var file = dir.resolve((Path) event.context());
+					if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+						if (file.getFileName().toString().equals(ShardedLayout.MARKER_FILE)) {
+							sharded = true;
+						}
+						if (isIndexed(file)) {
+							put(file);
+						}
+					} else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+						remove(file);
+					}
+				}
+				if (!key.reset()) {
+					// Директория стала недоступна: индекс более не
+					// поддерживается.
+					break;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// индекс закрыт
+		} catch (IOException e) {
+			// индекс не удалось перестроить
+		}
+		watching = false;
+		entries.clear();
+	}
+}
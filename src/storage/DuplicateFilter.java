@@ -0,0 +1,253 @@
+package storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Выявление записей, уже имеющихся в файлах данных, с помощью фильтров
+ * Блума -- по одному на файл данных.
+ * <p>
+ * Фильтр файла строится при первом обращении к файлу: загружается из
+ * поддиректории .bloom директории данных, если сохранённый фильтр
+ * соответствует текущей длине файла, иначе -- по записям файла. Фильтры
+ * изменённых файлов сохраняются при закрытии вместе с длиной файла, так что
+ * фильтр файла, дописанного в обход сервиса (или при сбое), при следующем
+ * обращении перестраивается.
+ * <p>
+ * Отрицательный ответ фильтра окончателен; положительный подтверждается
+ * сравнением с записями файла, поэтому ложные срабатывания фильтра не
+ * приводят к потере записей. Перед подтверждением буферизованные записи
+ * файла должны быть сброшены в файл.
+ */
+public final class DuplicateFilter implements AutoCloseable {
+
+	static final String FILTERS_DIR = ".bloom";
+
+	private static final int FORMAT_VERSION = 1;
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final Path dataDir;
+	private final RecordCodec codec;
+	private final Map<Path, BloomFilter> filters = new HashMap<>();
+	private final Set<Path> changed = new HashSet<>();
+
+	/**
+	 * @param dataDir Директория данных.
+	 * @param codec   Формат хранения записей в файлах данных.
+	 */
+	public DuplicateFilter(Path dataDir, RecordCodec codec) {
+		this.dataDir = dataDir;
+		this.codec = codec;
+	}
+
+	/**
+	 * @return false, если записи заведомо нет в файле.
+	 */
+	public synchronized boolean mightContain(Path file, byte[] record) throws IOException {
+		return filterOf(file).mightContain(record);
+	}
+
+	/**
+	 * Проверяет наличие записи в файле сравнением с записями файла.
+	 */
+	public boolean contains(Path file, byte[] record) throws IOException {
+		var found = new boolean[1];
+		var expected = ByteBuffer.wrap(record);
+		forEachRecord(file, existing -> found[0] |= existing.equals(expected));
+		return found[0];
+	}
+
+	/**
+	 * Учитывает запись, дописываемую в файл.
+	 */
+	public synchronized void add(Path file, byte[] record) throws IOException {
+		filterOf(file).add(record);
+		changed.add(file);
+	}
+
+	/**
+	 * Сохраняет фильтры файлов, изменённых с момента их загрузки. Длины
+	 * файлов должны быть окончательными, то есть буферизованные записи --
+	 * сброшены в файлы.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		IOException failure = null;
+		for (var file : changed) {
+			try {
+				save(file, filters.get(file));
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		changed.clear();
+		filters.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private BloomFilter filterOf(Path file) throws IOException {
+		var filter = filters.get(file);
+		if (filter == null) {
+			filter = load(file);
+			if (filter == null) {
+				filter = build(file);
+				changed.add(file);
+			}
+			filters.put(file, filter);
+		}
+		return filter;
+	}
+
+	/**
+	 * @return Сохранённый фильтр файла, либо null, если фильтр не сохранялся
+	 *         или не соответствует файлу.
+	 */
+	private BloomFilter load(Path file) throws IOException {
+		var filterFile = filterFileOf(file);
+		long length = fileLength(file);
+		try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(filterFile)))) {
+			if (in.readInt() != FORMAT_VERSION || in.readLong() != length) {
+				return null;
+			}
+			return BloomFilter.readFrom(in);
+
+		} catch (IOException e) {
+			// Отсутствующий либо повреждённый фильтр перестраивается.
+			return null;
+		}
+	}
+
+	private BloomFilter build(Path file) throws IOException {
+		var records = new int[1];
+		forEachRecord(file, record -> ++records[0]);
+		var filter = new BloomFilter(records[0] * 2L);
+		forEachRecord(file, record -> {
+			var bytes = new byte[record.remaining()];
+			record.get(bytes);
+			filter.add(bytes);
+		});
+		return filter;
+	}
+
+	private void save(Path file, BloomFilter filter) throws IOException {
+		var filterFile = filterFileOf(file);
+		Files.createDirectories(filterFile.getParent());
+		var temp = filterFile.resolveSibling(filterFile.getFileName() + TEMP_SUFFIX);
+		try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(fileLength(file));
+			filter.writeTo(out);
+		}
+		Files.move(temp, filterFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private Path filterFileOf(Path file) {
+		return dataDir.resolve(FILTERS_DIR).resolve(dataDir.relativize(file));
+	}
+
+	private static long fileLength(Path file) throws IOException {
+		try {
+			return Files.size(file);
+		} catch (NoSuchFileException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Передаёт обработчику байтовые представления всех записей файла (в
+	 * виде буферов, ограниченных записью).
+	 */
+	private void forEachRecord(Path file, Consumer<ByteBuffer> action) throws IOException {
+		if (codec instanceof BlockCompressedCodec) {
+			// Записи сжатого файла разбираются по блокам.
+			try (var channel = FileChannel.open(file, StandardOpenOption.READ);
+					var blocks = new BlockCompressedCodec.BlockReader(file, channel, 0, Long.MAX_VALUE)) {
+				ByteBuffer block;
+				while ((block = blocks.next()) != null) {
+					forEachSeparated(block, codec.separator(), action);
+				}
+			} catch (NoSuchFileException e) {
+				// файл ещё не создан
+			}
+			return;
+		}
+
+		ByteBuffer data;
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size == 0) {
+				return;
+			}
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(String.format("Файл '%s' слишком велик для проверки записей.", file));
+			}
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} catch (NoSuchFileException e) {
+			return;
+		}
+
+		var header = codec.header();
+		if (header.length > 0) {
+			BinaryRecordCodec.readHeader(data);
+			while (data.hasRemaining()) {
+				int length = BinaryRecordCodec.recordLength(data);
+				if (length < 0 || length > data.remaining()) {
+					throw new IOException(String.format("Файл '%s' содержит оборванную запись.", file));
+				}
+				action.accept(data.slice(data.position(), length));
+				data.position(data.position() + length);
+			}
+			return;
+		}
+		forEachSeparated(data, codec.separator(), action);
+	}
+
+	/**
+	 * Передаёт обработчику записи текстового формата, разделённые
+	 * разделителем.
+	 */
+	private static void forEachSeparated(ByteBuffer data, byte[] separator, Consumer<ByteBuffer> action) {
+		if (separator.length == 0) {
+			action.accept(data);
+			return;
+		}
+		int start = 0;
+		int limit = data.limit();
+		for (int i = 0; i + separator.length <= limit; ++i) {
+			if (startsWith(data, i, separator)) {
+				action.accept(data.slice(start, i - start));
+				i += separator.length - 1;
+				start = i + 1;
+			}
+		}
+		action.accept(data.slice(start, limit - start));
+	}
+
+	private static boolean startsWith(ByteBuffer data, int offset, byte[] prefix) {
+		for (int i = 0; i < prefix.length; ++i) {
+			if (data.get(offset + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
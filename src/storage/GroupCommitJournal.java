@@ -0,0 +1,442 @@
+package storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Режим сохранения с групповой фиксацией: записи сначала дописываются в
+ * журнал упреждающей записи (WriteAheadLog) и фиксируются в нём группами,
+ * а затем асинхронно, отдельным потоком, переносятся в целевые файлы.
+ * Запись считается сохранённой (подтверждённой) после её фиксации в журнале.
+ * <p>
+ * Для восстановления после сбоя перед первым с момента последней контрольной
+ * точки изменением каждого целевого файла в журнале фиксируется его исходная
+ * длина. При восстановлении такие файлы усекаются до исходной длины (что
+ * устраняет и оборванные сбоем строки), после чего все записи журнала,
+ * следующие за последней контрольной точкой, переносятся в файлы повторно.
+ * <p>
+ * Контрольная точка выполняется при превышении заданного объёма текущего
+ * сегмента журнала и при закрытии: перенесённые данные сбрасываются на диск
+ * (fsync целевых файлов), после чего устаревшие сегменты журнала удаляются.
+ * <p>
+ * Журнал требует монопольного использования директории: на время работы
+ * директория блокируется (FileLock файла .wal.lock) от использования другими
+ * процессами в режиме групповой фиксации.
+ */
+public final class GroupCommitJournal implements AutoCloseable {
+
+	/**
+	 * Получатель записей, переносимых из журнала в целевые файлы.
+	 */
+	public interface Sink {
+		void append(Path file, byte[] record) throws IOException;
+
+		void flush() throws IOException;
+	}
+
+	private static final byte RECORD = 1;
+	private static final byte PRE_LENGTH = 2;
+	private static final byte CHECKPOINT = 3;
+
+	private static final String LOCK_FILE = ".wal.lock";
+	private static final long NO_FILE = -1;
+	// Ограничение числа зафиксированных, но ещё не перенесённых записей.
+	private static final long MAX_UNAPPLIED_RECORDS = 64 * 1024;
+
+	private final Path dir;
+	private final FileLock dirLock;
+	private final Sink sink;
+	private final long checkpointBytes;
+	private final WriteAheadLog log;
+	private final LinkedBlockingQueue<List<WriteAheadLog.Entry>> committed = new LinkedBlockingQueue<>();
+	private final Thread applier;
+	// Фиксации удерживают блокировку чтения, закрытие -- блокировку записи:
+	// закрытие дожидается завершения начатых фиксаций.
+	private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+	private boolean closed;
+
+	// Файлы, изменённые с момента последней контрольной точки (только поток
+	// переноса).
+	private final Set<String> touched = new HashSet<>();
+	private volatile IOException applyFailure;
+	private long appliedSeq;
+
+	/**
+	 * Восстанавливает незавершённый перенос записей журнала, если таковой
+	 * имеется, и открывает журнал.
+	 *
+	 * @param dir                 Директория целевых файлов и сегментов
+	 *                            журнала.
+	 * @param sink                Получатель переносимых записей.
+	 * @param commitWindowMillis  Наибольшее время накопления группы записей
+	 *                            перед фиксацией, мс.
+	 * @param commitWindowRecords Число записей, при накоплении которого группа
+	 *                            фиксируется немедленно.
+	 * @param checkpointBytes     Объём сегмента журнала, при превышении
+	 *                            которого выполняется контрольная точка.
+	 */
+	public GroupCommitJournal(Path dir, Sink sink, long commitWindowMillis, int commitWindowRecords,
+			long checkpointBytes) throws IOException {
+		this.dir = dir;
+		this.dirLock = lockDir(dir);
+		this.sink = sink;
+		this.checkpointBytes = checkpointBytes;
+
+		try {
+			long lastSeq = recover();
+			this.appliedSeq = lastSeq;
+			this.log = new WriteAheadLog(dir, lastSeq + 1, commitWindowMillis, commitWindowRecords,
+					this::onCommitted);
+		} catch (IOException | RuntimeException e) {
+			dirLock.channel().close();
+			throw e;
+		}
+
+		this.applier = new Thread(this::applyLoop, "wal-applier");
+		this.applier.setDaemon(true);
+		this.applier.start();
+	}
+
+	/**
+	 * Фиксирует в журнале записи для дописывания в целевые файлы. Метод
+	 * возвращает управление после фиксации всех записей.
+	 *
+	 * @param files   Пути к целевым файлам в директории журнала (либо в её
+	 *                поддиректориях).
+	 * @param records Байтовые представления записей, в соответствии с
+	 *                путями.
+	 * @throws IOException если фиксация или перенос записей завершились
+	 *                     ошибкой, либо журнал закрыт.
+	 */
+	public void commit(List<Path> files, List<byte[]> records) throws IOException {
+		commitLock.readLock().lock();
+		try {
+			if (closed) {
+				throw new IOException("Журнал упреждающей записи закрыт.");
+			}
+			awaitApplyCapacity();
+			long seq = 0;
+			for (int i = 0; i < records.size(); ++i) {
+				seq = log.append(RECORD, encodeRecord(dir.relativize(files.get(i)).toString(), records.get(i)));
+			}
+			log.awaitCommitted(seq);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} finally {
+			commitLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Прекращает приём записей, дожидается завершения начатых фиксаций и
+	 * переноса всех зафиксированных записей в целевые файлы, выполняет
+	 * контрольную точку и удаляет сегменты журнала. Если перенос не удался,
+	 * сегменты сохраняются для восстановления при следующем запуске.
+	 */
+	@Override
+	public void close() throws IOException {
+		commitLock.writeLock().lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		} finally {
+			commitLock.writeLock().unlock();
+		}
+
+		// Начатые фиксации завершены, и все подтверждённые записи уже
+		// переданы потоку переноса (onCommitted вызывается до подтверждения),
+		// поэтому признак завершения следует за ними. Журнал остаётся открытым
+		// до завершения переноса: поток переноса фиксирует в нём исходные
+		// длины файлов и контрольные точки.
+		boolean deleted = false;
+		try {
+			committed.add(List.of());
+			try {
+				applier.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+			rethrowApplyFailure();
+
+			checkpointFiles();
+			log.closeAndDelete();
+			deleted = true;
+		} finally {
+			try {
+				if (!deleted) {
+					log.close();
+				}
+			} finally {
+				dirLock.channel().close();
+			}
+		}
+	}
+
+	private static FileLock lockDir(Path dir) throws IOException {
+		var channel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		FileLock lock;
+		try {
+			lock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			lock = null;
+		}
+		if (lock == null) {
+			channel.close();
+			throw new IOException(String.format(
+					"Директория '%s' уже используется другим журналом упреждающей записи.", dir));
+		}
+		return lock;
+	}
+
+	private synchronized void awaitApplyCapacity() throws IOException, InterruptedException {
+		while (committedBacklog() > MAX_UNAPPLIED_RECORDS) {
+			rethrowApplyFailure();
+			wait(10);
+		}
+		rethrowApplyFailure();
+	}
+
+	private long committedBacklog() {
+		long records = 0;
+		for (var batch : committed) {
+			records += batch.size();
+		}
+		return records;
+	}
+
+	private void onCommitted(List<WriteAheadLog.Entry> batch) {
+		var records = new ArrayList<WriteAheadLog.Entry>(batch.size());
+		for (var entry : batch) {
+			if (entry.type == RECORD) {
+				records.add(entry);
+			}
+		}
+		if (!records.isEmpty()) {
+			committed.add(records);
+		}
+	}
+
+	private void applyLoop() {
+		try {
+			while (true) {
+				var batch = committed.take();
+				if (batch.isEmpty()) {
+					// все зафиксированные записи перенесены, журнал закрыт
+					return;
+				}
+				apply(batch);
+				synchronized (this) {
+					notifyAll();
+				}
+
+				if (log.segmentBytes() > checkpointBytes) {
+					checkpoint();
+				}
+			}
+		} catch (IOException e) {
+			applyFailure = e;
+		} catch (InterruptedException | RuntimeException e) {
+			applyFailure = new IOException(e);
+		}
+	}
+
+	private void apply(List<WriteAheadLog.Entry> batch) throws IOException, InterruptedException {
+		var decoded = new ArrayList<FileRecord>(batch.size());
+		long preLengthSeq = 0;
+		for (var entry : batch) {
+			var fileRecord = decodeRecord(entry.body);
+			decoded.add(fileRecord);
+
+			String fileName = fileRecord.fileName;
+			if (touched.add(fileName)) {
+				var file = dir.resolve(fileName);
+				long length = Files.exists(file) ? Files.size(file) : NO_FILE;
+				preLengthSeq = log.append(PRE_LENGTH, encodePreLength(entry.seq, fileName, length));
+			}
+		}
+		if (preLengthSeq != 0) {
+			log.awaitCommitted(preLengthSeq);
+		}
+
+		for (var fileRecord : decoded) {
+			sink.append(dir.resolve(fileRecord.fileName), fileRecord.record);
+		}
+		appliedSeq = batch.get(batch.size() - 1).seq;
+	}
+
+	private void checkpoint() throws IOException, InterruptedException {
+		log.rotate();
+		checkpointFiles();
+		long checkpointSeq = log.append(CHECKPOINT, encodeLong(appliedSeq));
+		log.awaitCommitted(checkpointSeq);
+		log.deleteSegmentsUpTo(appliedSeq);
+	}
+
+	private void checkpointFiles() throws IOException {
+		sink.flush();
+		for (var fileName : touched) {
+			var file = dir.resolve(fileName);
+			if (Files.exists(file)) {
+				try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+					channel.force(true);
+				}
+			}
+		}
+		touched.clear();
+	}
+
+	/**
+	 * Восстанавливает целевые файлы по сегментам журнала, оставшимся после
+	 * предыдущего запуска, и удаляет эти сегменты.
+	 *
+	 * @return Наибольший порядковый номер записи журнала.
+	 */
+	private long recover() throws IOException {
+		var entries = WriteAheadLog.readAll(dir);
+		if (entries.isEmpty()) {
+			WriteAheadLog.deleteAll(dir);
+			return 0;
+		}
+
+		long checkpointSeq = 0;
+		long lastSeq = 0;
+		for (var entry : entries) {
+			lastSeq = Math.max(lastSeq, entry.seq);
+			if (entry.type == CHECKPOINT) {
+				checkpointSeq = Math.max(checkpointSeq, decodeLong(entry.body));
+			}
+		}
+
+		var originalLengths = new LinkedHashMap<String, Long>();
+		var records = new ArrayList<FileRecord>();
+		for (var entry : entries) {
+			if (entry.type == PRE_LENGTH) {
+				try (var in = new DataInputStream(new ByteArrayInputStream(entry.body))) {
+					long protectedSeq = in.readLong();
+					String fileName = in.readUTF();
+					long length = in.readLong();
+					if (protectedSeq > checkpointSeq) {
+						originalLengths.putIfAbsent(fileName, length);
+					}
+				}
+			} else if (entry.type == RECORD && entry.seq > checkpointSeq) {
+				records.add(decodeRecord(entry.body));
+			}
+		}
+
+		for (var original : originalLengths.entrySet()) {
+			var file = dir.resolve(original.getKey());
+			long length = original.getValue();
+			if (length == NO_FILE) {
+				Files.deleteIfExists(file);
+			} else if (Files.exists(file)) {
+				try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+					channel.truncate(length);
+				}
+			}
+		}
+
+		for (var fileRecord : records) {
+			touched.add(fileRecord.fileName);
+			sink.append(dir.resolve(fileRecord.fileName), fileRecord.record);
+		}
+		checkpointFiles();
+		WriteAheadLog.deleteAll(dir);
+		return lastSeq;
+	}
+
+	private void rethrowApplyFailure() throws IOException {
+		var failure = applyFailure;
+		if (failure != null) {
+			throw new IOException("Не удалось перенести записи журнала в файлы данных.", failure);
+		}
+	}
+
+	private static byte[] encodeRecord(String fileName, byte[] record) {
+		return encode(out -> {
+			out.writeUTF(fileName);
+			out.writeInt(record.length);
+			out.write(record);
+		});
+	}
+
+	private static FileRecord decodeRecord(byte[] body) {
+		try (var in = new DataInputStream(new ByteArrayInputStream(body))) {
+			var fileName = in.readUTF();
+			var record = new byte[in.readInt()];
+			in.readFully(record);
+			return new FileRecord(fileName, record);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static byte[] encodePreLength(long protectedSeq, String fileName, long length) {
+		return encode(out -> {
+			out.writeLong(protectedSeq);
+			out.writeUTF(fileName);
+			out.writeLong(length);
+		});
+	}
+
+	private static byte[] encodeLong(long value) {
+		return encode(out -> out.writeLong(value));
+	}
+
+	private static long decodeLong(byte[] body) {
+		long value = 0;
+		for (int i = 0; i < Long.BYTES; ++i) {
+			value = (value << 8) | (body[i] & 0xFF);
+		}
+		return value;
+	}
+
+	private interface BodyWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private static byte[] encode(BodyWriter writer) {
+		var bytes = new ByteArrayOutputStream();
+		try (var out = new DataOutputStream(bytes)) {
+			writer.write(out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Запись журнала, переносимая в целевой файл.
+	 */
+	private static final class FileRecord {
+		final String fileName;
+		final byte[] record;
+
+		FileRecord(String fileName, byte[] record) {
+			this.fileName = fileName;
+			this.record = record;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Predicate;
+
+import entities.UserData;
+
+/**
+ * Поиск записей пользовательских данных в директории данных, заполняемой
+ * UserDataSaver.
+ * <p>
+ * Поиск по номеру телефона и дате рождения выполняется по вторичным
+ * индексам (RecordIndexes), если они соответствуют текущему содержимому
+ * директории, а найденных записей немного: читаются только записи, на
+ * которые указывают индексы. В противном случае файлы данных отображаются
+ * в память (MappedByteBuffer) и просматриваются параллельно целиком.
+ * <p>
+ * Записи разбираются непосредственно из байтов файлов с помощью
+ * RecordScanner; экземпляры UserData создаются только для найденных
+ * записей.
+ */
+public final class MappedQueryEngine implements QueryEngine {
+
+	private static final int RECORD_BUFFER_BYTES = 512;
+
+	// Если по индексу найдено больше этой доли всех записей, выборочное
+	// чтение записей медленнее последовательного просмотра файлов.
+	private static final int INDEX_SELECTIVITY_DIVISOR = 16;
+
+	private final Path dataDir;
+
+	/**
+	 * @param dataDir Путь к директории данных.
+	 */
+	public MappedQueryEngine(Path dataDir) {
+		this.dataDir = dataDir;
+	}
+
+	/**
+	 * Поиск записей по фамилии без учёта регистра: в файлах фамилии, затем
+	 * -- в участках сегментов уплотнённых данных.
+	 */
+	@Override
+	public List<UserData> findByLastName(String lastName) throws IOException {
+		var found = new ArrayList<>(scan(RecordFiles.findDataFiles(dataDir, lastName), scanner -> true));
+		// Записи фамилии, перенесённые при уплотнении в сегменты.
+		for (var entry : SegmentStore.find(dataDir, lastName)) {
+			RecordFiles.scan(entry.getSegment(), entry.getOffset(), entry.getOffset() + entry.getLength(),
+					scanner -> found.add(scanner.toUserData()));
+		}
+		return found;
+	}
+
+	/**
+	 * Поиск записей по номеру телефона.
+	 */
+	@Override
+	public List<UserData> findByPhoneNumber(String phoneNumber) throws IOException {
+		var phone = phoneNumber.getBytes(StandardCharsets.UTF_8);
+		Predicate<RecordScanner> filter = scanner -> scanner.fieldEquals(RecordScanner.PHONE_NUMBER, phone);
+
+		var indexes = RecordIndexes.openForReading(dataDir);
+		if (indexes != null) {
+			return read(indexes.findByPhoneNumber(phoneNumber), filter);
+		}
+		return scan(RecordFiles.listDataFiles(dataDir), filter);
+	}
+
+	/**
+	 * Поиск записей с датой рождения в заданном диапазоне, включая границы.
+	 */
+	@Override
+	public List<UserData> findByBirthDate(LocalDate from, LocalDate to) throws IOException {
+		int fromKey = RecordScanner.birthDateKey(from);
+		int toKey = RecordScanner.birthDateKey(to);
+		Predicate<RecordScanner> filter = scanner -> {
+			int key = scanner.birthDateKey();
+			return key >= fromKey && key <= toKey;
+		};
+
+		var indexes = RecordIndexes.openForReading(dataDir);
+		if (indexes != null) {
+			var locations = indexes.findByBirthDate(from, to);
+			if (locations.size() <= indexes.recordCount() / INDEX_SELECTIVITY_DIVISOR) {
+				return read(locations, filter);
+			}
+		}
+		return scan(RecordFiles.listDataFiles(dataDir), filter);
+	}
+
+	private static List<UserData> scan(List<Path> files, Predicate<RecordScanner> filter) throws IOException {
+		return parallel(files, file -> {
+			var found = new ArrayList<UserData>();
+			RecordFiles.scan(file, 0, scanner -> {
+				if (filter.test(scanner)) {
+					found.add(scanner.toUserData());
+				}
+			});
+			return found;
+		});
+	}
+
+	/**
+	 * Читает записи по найденным в индексе местоположениям, упорядоченным по
+	 * файлам, и отбирает соответствующие условию поиска.
+	 */
+	private static List<UserData> read(List<RecordIndexes.Location> locations, Predicate<RecordScanner> filter)
+			throws IOException {
+		var offsetsByFile = new LinkedHashMap<Path, List<Long>>();
+		for (var location : locations) {
+			offsetsByFile.computeIfAbsent(location.getFile(), k -> new ArrayList<>()).add(location.getOffset());
+		}
+
+		return parallel(new ArrayList<>(offsetsByFile.keySet()), file -> {
+			var found = new ArrayList<UserData>();
+			var reader = new RecordReader();
+			try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				for (long offset : offsetsByFile.get(file)) {
+					if (reader.read(channel, offset) && filter.test(reader.scanner)) {
+						found.add(reader.scanner.toUserData());
+					}
+				}
+			}
+			return found;
+		});
+	}
+
+	private static List<UserData> parallel(List<Path> files, FileQuery query) throws IOException {
+		try {
+			return files.parallelStream()
+					.flatMap(file -> {
+						try {
+							return query.apply(file).stream();
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					})
+					.toList();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Чтение отдельных записей файла по смещениям.
+	 */
+	private static final class RecordReader {
+		final RecordScanner scanner = new RecordScanner();
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_BUFFER_BYTES);
+
+		/**
+		 * Читает запись, начинающуюся с заданного смещения, и устанавливает
+		 * на неё разбор.
+		 *
+		 * @return false, если по заданному смещению нет корректной записи.
+		 */
+		boolean read(FileChannel channel, long offset) throws IOException {
+			while (true) {
+				buffer.clear();
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, offset + buffer.position()) < 0) {
+						break;
+					}
+				}
+				buffer.flip();
+
+				scanner.reset(buffer, offset);
+				if (scanner.next()) {
+					return scanner.recordStart() == 0;
+				}
+				if (buffer.limit() < buffer.capacity()) {
+					return false;
+				}
+				// запись не уместилась в буфер
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private interface FileQuery {
+		List<UserData> apply(Path file) throws IOException;
+	}
+}
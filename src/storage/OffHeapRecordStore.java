@@ -0,0 +1,373 @@
+package storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import entities.UserData;
+
+/**
+ * Хранилище записей пользовательских данных вне кучи: записи и индексы
+ * размещаются в прямых буферах (ByteBuffer.allocateDirect), так что число
+ * объектов в куче не зависит от числа записей и паузы сборки мусора не
+ * растут с объёмом данных.
+ * <p>
+ * Записи хранятся в двоичном формате (BinaryRecordCodec) в страницах
+ * записей размером SLAB_BYTES; адрес записи -- её смещение в
+ * последовательности страниц. Перед записью хранятся два адреса -- ссылки на
+ * предыдущие записи с той же фамилией и с тем же номером телефона, а
+ * индексы по фамилии (без учёта регистра) и по номеру телефона -- открытые
+ * хеш-таблицы с линейным пробированием, отображающие 64-битный хеш ключа на
+ * адрес последней записи с этим ключом. Записи с совпавшими хешами
+ * различных ключей отсеиваются при поиске сравнением ключей.
+ * <p>
+ * Накладные расходы -- 16 байт ссылок на запись и от 21 до 43 байт
+ * элементов индексов на различный ключ. Объём прямой памяти ограничен
+ * параметром JVM -XX:MaxDirectMemorySize (по умолчанию -- наибольшим размером
+ * кучи). Память освобождается сборщиком мусора после того, как хранилище
+ * становится недостижимым. Хранилище не допускает одновременного
+ * использования несколькими потоками.
+ * <p>
+ * Хранилище, однократно загруженное из директории данных (load), отвечает
+ * на запросы без обращения к файлам (App --query --resident). Найденные
+ * записи возвращаются в порядке добавления.
+ */
+public final class OffHeapRecordStore implements QueryEngine {
+
+	public static final int SLAB_BYTES = 16 * 1024 * 1024;
+
+	private static final int LINKS_BYTES = 2 * Long.BYTES;
+	private static final int LAST_NAME_LINK = 0;
+	private static final int PHONE_NUMBER_LINK = Long.BYTES;
+	private static final long NO_RECORD = -1;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final BinaryRecordCodec codec = new BinaryRecordCodec();
+	private final List<ByteBuffer> slabs = new ArrayList<>();
+	private final HashIndex lastNameIndex = new HashIndex();
+	private final HashIndex phoneNumberIndex = new HashIndex();
+	private long size;
+
+	/**
+	 * Загружает все записи директории данных (UserDataReader) в новое
+	 * хранилище.
+	 *
+	 * @param dataDir  Путь к директории данных.
+	 * @param distinct Пропускать ли повторы записей (addIfAbsent).
+	 */
+	public static OffHeapRecordStore load(Path dataDir, boolean distinct) throws IOException {
+		var store = new OffHeapRecordStore();
+		try (var records = UserDataReader.stream(dataDir)) {
+			records.forEach(distinct ? store::addIfAbsent : store::add);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return store;
+	}
+
+	/**
+	 * @return Число записей в хранилище.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return Объём выделенной хранилищем прямой памяти, байт.
+	 */
+	public long memoryBytes() {
+		return (long) slabs.size() * SLAB_BYTES + lastNameIndex.memoryBytes() + phoneNumberIndex.memoryBytes();
+	}
+
+	/**
+	 * Добавляет запись.
+	 *
+	 * @return Адрес добавленной записи.
+	 * @throws IllegalArgumentException если запись превышает размер страницы
+	 *                                  записей.
+	 */
+	public long add(UserData userData) {
+		return add(userData, codec.encode(userData));
+	}
+
+	/**
+	 * Добавляет запись, если в хранилище нет такой же записи.
+	 *
+	 * @return false, если такая запись уже есть.
+	 */
+	public boolean addIfAbsent(UserData userData) {
+		var record = codec.encode(userData);
+		for (long address = phoneNumberIndex.head(phoneNumberHash(userData.getPhoneNumber())); address != NO_RECORD;
+				address = link(address, PHONE_NUMBER_LINK)) {
+			if (recordEquals(address, record)) {
+				return false;
+			}
+		}
+		add(userData, record);
+		return true;
+	}
+
+	/**
+	 * @return Запись по адресу, полученному при её добавлении.
+	 */
+	public UserData get(long address) {
+		var slab = slabs.get((int) (address / SLAB_BYTES)).duplicate();
+		slab.position((int) (address % SLAB_BYTES) + LINKS_BYTES);
+		try {
+			return codec.decode(slab);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(String.format("По адресу %d нет записи.", address), e);
+		}
+	}
+
+	/**
+	 * Поиск записей по фамилии без учёта регистра.
+	 *
+	 * @return Найденные записи в порядке добавления.
+	 */
+	@Override
+	public List<UserData> findByLastName(String lastName) {
+		var found = new ArrayList<UserData>();
+		for (long address = lastNameIndex.head(lastNameHash(lastName)); address != NO_RECORD;
+				address = link(address, LAST_NAME_LINK)) {
+			var userData = get(address);
+			if (userData.getLastName().equalsIgnoreCase(lastName)) {
+				found.add(userData);
+			}
+		}
+		// Цепочка записей ключа ведёт от последней записи к первой.
+		Collections.reverse(found);
+		return found;
+	}
+
+	/**
+	 * Поиск записей по номеру телефона.
+	 *
+	 * @return Найденные записи в порядке добавления.
+	 */
+	@Override
+	public List<UserData> findByPhoneNumber(String phoneNumber) {
+		var found = new ArrayList<UserData>();
+		for (long address = phoneNumberIndex.head(phoneNumberHash(phoneNumber)); address != NO_RECORD;
+				address = link(address, PHONE_NUMBER_LINK)) {
+			var userData = get(address);
+			if (userData.getPhoneNumber().equals(phoneNumber)) {
+				found.add(userData);
+			}
+		}
+		Collections.reverse(found);
+		return found;
+	}
+
+	/**
+	 * Поиск записей с датой рождения в заданном диапазоне, включая границы;
+	 * индекса по дате рождения нет, записи просматриваются все.
+	 *
+	 * @return Найденные записи в порядке добавления.
+	 */
+	@Override
+	public List<UserData> findByBirthDate(LocalDate from, LocalDate to) {
+		var found = new ArrayList<UserData>();
+		forEach(userData -> {
+			var birthDate = userData.getBirthDate();
+			if (!birthDate.isBefore(from) && !birthDate.isAfter(to)) {
+				found.add(userData);
+			}
+		});
+		return found;
+	}
+
+	/**
+	 * Передаёт обработчику все записи в порядке добавления.
+	 */
+	public void forEach(Consumer<UserData> action) {
+		for (var slab : slabs) {
+			var records = slab.duplicate().flip();
+			while (records.remaining() > LINKS_BYTES) {
+				records.position(records.position() + LINKS_BYTES);
+				try {
+					action.accept(codec.decode(records));
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+	}
+
+	private long add(UserData userData, byte[] record) {
+		int length = LINKS_BYTES + record.length;
+		if (length > SLAB_BYTES) {
+			throw new IllegalArgumentException(
+					String.format("Запись длиной %d байт не умещается в страницу записей.", record.length));
+		}
+		if (slabs.isEmpty() || slabs.get(slabs.size() - 1).remaining() < length) {
+			slabs.add(ByteBuffer.allocateDirect(SLAB_BYTES));
+		}
+		var slab = slabs.get(slabs.size() - 1);
+		long address = (long) (slabs.size() - 1) * SLAB_BYTES + slab.position();
+
+		slab.putLong(lastNameIndex.push(lastNameHash(userData.getLastName()), address));
+		slab.putLong(phoneNumberIndex.push(phoneNumberHash(userData.getPhoneNumber()), address));
+		slab.put(record);
+		++size;
+		return address;
+	}
+
+	private long link(long address, int link) {
+		return slabs.get((int) (address / SLAB_BYTES)).getLong((int) (address % SLAB_BYTES) + link);
+	}
+
+	private boolean recordEquals(long address, byte[] record) {
+		var slab = slabs.get((int) (address / SLAB_BYTES));
+		int start = (int) (address % SLAB_BYTES) + LINKS_BYTES;
+		if (slab.position() - start < record.length) {
+			return false;
+		}
+		for (int i = 0; i < record.length; ++i) {
+			if (slab.get(start + i) != record[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Хеш фамилии, совпадающий для фамилий, равных без учёта
+	 *         регистра (String.equalsIgnoreCase).
+	 */
+	private static long lastNameHash(String lastName) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < lastName.length(); ++i) {
+			char c = Character.toLowerCase(Character.toUpperCase(lastName.charAt(i)));
+			hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+			hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	private static long phoneNumberHash(String phoneNumber) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < phoneNumber.length(); ++i) {
+			hash = (hash ^ phoneNumber.charAt(i)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Открытая хеш-таблица вне кучи, отображающая хеш ключа на адрес
+	 * последней добавленной записи с этим ключом. Элемент таблицы -- хеш и
+	 * адрес, увеличенный на единицу (0 -- пустой элемент); таблица размещается
+	 * в страницах по PAGE_ENTRIES элементов и удваивается при заполнении на
+	 * три четверти.
+	 */
+	private static final class HashIndex {
+		private static final int ENTRY_BYTES = 2 * Long.BYTES;
+		private static final int PAGE_SHIFT = 22;
+		private static final int PAGE_ENTRIES = 1 << PAGE_SHIFT;
+		private static final int INITIAL_CAPACITY = 1024;
+
+		private ByteBuffer[] pages;
+		private long capacity;
+		private long size;
+
+		HashIndex() {
+			allocate(INITIAL_CAPACITY);
+		}
+
+		long memoryBytes() {
+			return capacity * ENTRY_BYTES;
+		}
+
+		/**
+		 * @return Адрес последней записи с ключом, имеющим заданный хеш, либо
+		 *         NO_RECORD.
+		 */
+		long head(long hash) {
+			for (long slot = slot(hash);; slot = (slot + 1) & (capacity - 1)) {
+				long address = address(slot);
+				if (address == 0) {
+					return NO_RECORD;
+				}
+				if (hash(slot) == hash) {
+					return address - 1;
+				}
+			}
+		}
+
+		/**
+		 * Делает запись по заданному адресу последней записью ключа.
+		 *
+		 * @return Адрес предыдущей последней записи ключа либо NO_RECORD.
+		 */
+		long push(long hash, long address) {
+			long slot = slot(hash);
+			for (long stored; (stored = address(slot)) != 0; slot = (slot + 1) & (capacity - 1)) {
+				if (hash(slot) == hash) {
+					put(slot, hash, address);
+					return stored - 1;
+				}
+			}
+			put(slot, hash, address);
+			if (++size * 4 > capacity * 3) {
+				grow();
+			}
+			return NO_RECORD;
+		}
+
+		private void grow() {
+			var oldPages = pages;
+			long oldCapacity = capacity;
+			allocate(capacity * 2);
+			for (long slot = 0; slot < oldCapacity; ++slot) {
+				var page = oldPages[(int) (slot >>> PAGE_SHIFT)];
+				int offset = (int) (slot & (PAGE_ENTRIES - 1)) * ENTRY_BYTES;
+				long address = page.getLong(offset + Long.BYTES);
+				if (address != 0) {
+					long hash = page.getLong(offset);
+					long newSlot = slot(hash);
+					while (address(newSlot) != 0) {
+						newSlot = (newSlot + 1) & (capacity - 1);
+					}
+					put(newSlot, hash, address - 1);
+				}
+			}
+		}
+
+		private void allocate(long capacity) {
+			this.capacity = capacity;
+			int entries = (int) Math.min(capacity, PAGE_ENTRIES);
+			pages = new ByteBuffer[(int) (capacity / entries)];
+			for (int i = 0; i < pages.length; ++i) {
+				pages[i] = ByteBuffer.allocateDirect(entries * ENTRY_BYTES);
+			}
+		}
+
+		private long slot(long hash) {
+			return (hash ^ (hash >>> 32)) & (capacity - 1);
+		}
+
+		private long hash(long slot) {
+			return pages[(int) (slot >>> PAGE_SHIFT)].getLong((int) (slot & (PAGE_ENTRIES - 1)) * ENTRY_BYTES);
+		}
+
+		private long address(long slot) {
+			return pages[(int) (slot >>> PAGE_SHIFT)]
+					.getLong((int) (slot & (PAGE_ENTRIES - 1)) * ENTRY_BYTES + Long.BYTES);
+		}
+
+		private void put(long slot, long hash, long address) {
+			var page = pages[(int) (slot >>> PAGE_SHIFT)];
+			int offset = (int) (slot & (PAGE_ENTRIES - 1)) * ENTRY_BYTES;
+			page.putLong(offset, hash);
+			page.putLong(offset + Long.BYTES, address + 1);
+		}
+	}
+}
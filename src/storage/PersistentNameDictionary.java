@@ -0,0 +1,158 @@
+package storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import entities.NameDictionary;
+
+/**
+ * Словарь имён, сохраняемый в файле: строки дописываются в файл в порядке
+ * назначения идентификаторов, а при открытии словарь восстанавливается
+ * добавлением строк файла в том же порядке, так что идентификаторы строк
+ * сохраняются между запусками.
+ * <p>
+ * Формат записи файла:
+ *
+ * <pre>
+ * int длина | байты строки в UTF-8
+ * </pre>
+ *
+ * Записи буферизуются и сбрасываются в файл при заполнении буфера, методом
+ * flush и при закрытии. Оборванная при сбое запись в конце файла при
+ * открытии отбрасывается; строки, не сохранённые из-за сбоя, при следующем
+ * запуске получат идентификаторы заново. Файл блокируется (FileLock) на всё
+ * время использования словаря.
+ */
+public final class PersistentNameDictionary extends NameDictionary implements AutoCloseable {
+
+	private static final int BUFFER_BYTES = 64 * 1024;
+
+	private final Path file;
+	private final FileChannel channel;
+	// Буфер записей, ещё не сброшенных в файл (монитор словаря).
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+	private boolean loading;
+
+	private PersistentNameDictionary(Path file) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			FileLock lock;
+			try {
+				lock = channel.tryLock();
+			} catch (OverlappingFileLockException e) {
+				lock = null;
+			}
+			if (lock == null) {
+				throw new IOException(String.format("Файл словаря имён '%s' уже используется.", file));
+			}
+			load();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Открывает словарь, сохранённый в заданном файле; несуществующий файл
+	 * создаётся.
+	 */
+	public static PersistentNameDictionary open(Path file) throws IOException {
+		return new PersistentNameDictionary(file);
+	}
+
+	/**
+	 * Сбрасывает в файл буферизованные строки.
+	 */
+	public synchronized void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			if (channel.isOpen()) {
+				flush();
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @throws UncheckedIOException если не удалось сбросить буфер в файл.
+	 */
+	@Override
+	protected void added(int id, String name) {
+		if (loading) {
+			return;
+		}
+		var bytes = name.getBytes(StandardCharsets.UTF_8);
+		try {
+			if (buffer.remaining() < Integer.BYTES + bytes.length) {
+				flush();
+				if (buffer.capacity() < Integer.BYTES + bytes.length) {
+					buffer = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		buffer.putInt(bytes.length).put(bytes);
+	}
+
+	private synchronized void load() throws IOException {
+		loading = true;
+		try {
+			long size = channel.size();
+			var length = ByteBuffer.allocate(Integer.BYTES);
+			var record = ByteBuffer.allocate(BUFFER_BYTES);
+			long position = 0;
+			while (position + Integer.BYTES <= size) {
+				read(length.clear(), position);
+				int nameLength = length.getInt(0);
+				if (nameLength < 0 || position + Integer.BYTES + nameLength > size) {
+					break;
+				}
+				if (record.capacity() < nameLength) {
+					record = ByteBuffer.allocate(nameLength);
+				}
+				record.clear().limit(nameLength);
+				read(record, position + Integer.BYTES);
+				var name = new String(record.array(), 0, nameLength, StandardCharsets.UTF_8);
+				// Строка, уже имеющаяся в словаре, не получает нового
+				// идентификатора.
+				int id = size();
+				if (idOf(name) != id) {
+					throw new IOException(String.format("Файл словаря имён '%s' повреждён.", file));
+				}
+				position += Integer.BYTES + nameLength;
+			}
+			// Оборванная запись отбрасывается.
+			channel.truncate(position);
+			channel.position(position);
+		} finally {
+			loading = false;
+		}
+	}
+
+	private void read(ByteBuffer target, long position) throws IOException {
+		while (target.hasRemaining()) {
+			if (channel.read(target, position + target.position()) < 0) {
+				throw new IOException(String.format("Файл словаря имён '%s' оборван.", file));
+			}
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package storage;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+import entities.UserData;
+
+/**
+ * Поиск сохранённых записей пользовательских данных.
+ */
+public interface QueryEngine {
+
+	/**
+	 * Поиск записей по фамилии без учёта регистра.
+	 */
+	List<UserData> findByLastName(String lastName) throws IOException;
+
+	/**
+	 * Поиск записей по номеру телефона.
+	 */
+	List<UserData> findByPhoneNumber(String phoneNumber) throws IOException;
+
+	/**
+	 * Поиск записей с датой рождения в заданном диапазоне, включая границы.
+	 */
+	List<UserData> findByBirthDate(LocalDate from, LocalDate to) throws IOException;
+}
@@ -0,0 +1,485 @@
+package storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import entities.Gender;
+
+/**
+ * Параллельный подсчёт сводной статистики по всем записям директории данных:
+ * числа записей по полу, гистограммы годов рождения, распределения префиксов
+ * номеров телефонов и числа записей по фамилиям.
+ * <p>
+ * Файлы данных разбиваются на участки (большие файлы -- по границам строк
+ * либо блоков формата, сжатого блоками), которые обрабатываются задачами
+ * ForkJoinPool: задача делит свой диапазон участков пополам по объёму, пока
+ * он не станет достаточно мал, и сливает частичные результаты подзадач.
+ * Записи разбираются RecordScanner непосредственно из байтов файлов в
+ * счётчики -- массивы примитивов и открытую хеш-таблицу фамилий, поэтому
+ * объекты создаются лишь для впервые встреченных задачей фамилий.
+ * <p>
+ * Как и поиск, подсчёт поддерживает текстовый формат и формат, сжатый
+ * блоками.
+ */
+public final class RecordAggregator {
+
+	public static final int MAX_PHONE_PREFIX_DIGITS = 4;
+
+	// Объём данных, обрабатываемый задачей без разделения; файлы большего
+	// размера разбиваются на участки такого объёма.
+	private static final long LEAF_BYTES = 4L * 1024 * 1024;
+	private static final int LINE_SEARCH_BYTES = 4096;
+	private static final int YEARS_COUNT = 10_000;
+	private static final int[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10_000 };
+
+	private final Path dataDir;
+	private final int phonePrefixDigits;
+
+	/**
+	 * @param dataDir           Путь к директории данных.
+	 * @param phonePrefixDigits Число первых цифр номера телефона, по которым
+	 *                          группируются номера, -- от 1 до
+	 *                          MAX_PHONE_PREFIX_DIGITS.
+	 */
+	public RecordAggregator(Path dataDir, int phonePrefixDigits) {
+		if (phonePrefixDigits < 1 || phonePrefixDigits > MAX_PHONE_PREFIX_DIGITS) {
+			throw new IllegalArgumentException(String.format(
+					"Число цифр префикса номера телефона должно быть от 1 до %d.", MAX_PHONE_PREFIX_DIGITS));
+		}
+		this.dataDir = dataDir;
+		this.phonePrefixDigits = phonePrefixDigits;
+	}
+
+	/**
+	 * Подсчитывает статистику по записям директории данных, используя общий
+	 * пул ForkJoinPool.
+	 *
+	 * @throws IOException в том числе если файл данных записан в двоичном
+	 *                     формате.
+	 */
+	public Aggregates aggregate() throws IOException {
+		var ranges = new ArrayList<Range>();
+		for (var file : RecordFiles.listDataFiles(dataDir)) {
+			split(file, ranges);
+		}
+		// Суммарные объёмы участков, предшествующих каждому участку.
+		var offsets = new long[ranges.size() + 1];
+		for (int i = 0; i < ranges.size(); ++i) {
+			offsets[i + 1] = offsets[i] + ranges.get(i).to - ranges.get(i).from;
+		}
+
+		try {
+			return ForkJoinPool.commonPool().invoke(new AggregationTask(ranges, offsets, 0, ranges.size()))
+					.toAggregates();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Разбивает файл данных на участки, начинающиеся на границах записей.
+	 */
+	private static void split(Path file, List<Range> ranges) throws IOException {
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			var header = RecordFiles.headerOf(channel);
+			if (size <= LEAF_BYTES || BinaryRecordCodec.hasMagic(ByteBuffer.wrap(header))) {
+				ranges.add(new Range(file, 0, size));
+				return;
+			}
+
+			var blockOffsets = header.length > 0 ? BlockCompressedCodec.blockOffsets(channel) : null;
+			long from = 0;
+			while (size - from > LEAF_BYTES) {
+				long to = blockOffsets != null
+						? nextBlock(blockOffsets, from + LEAF_BYTES, size)
+						: nextLine(channel, from + LEAF_BYTES, size);
+				if (to >= size) {
+					break;
+				}
+				ranges.add(new Range(file, from, to));
+				from = to;
+			}
+			ranges.add(new Range(file, from, size));
+		}
+	}
+
+	/**
+	 * @return Смещение первого блока, начинающегося не ранее заданного
+	 *         смещения, либо размер файла.
+	 */
+	private static long nextBlock(List<Long> blockOffsets, long offset, long size) {
+		int index = Collections.binarySearch(blockOffsets, offset);
+		if (index < 0) {
+			index = -index - 1;
+		}
+		return index < blockOffsets.size() ? blockOffsets.get(index) : size;
+	}
+
+	/**
+	 * @return Смещение начала первой строки, начинающейся после заданного
+	 *         смещения, либо размер файла.
+	 */
+	private static long nextLine(FileChannel channel, long offset, long size) throws IOException {
+		var buffer = ByteBuffer.allocate(LINE_SEARCH_BYTES);
+		while (offset < size) {
+			buffer.clear();
+			int read = channel.read(buffer, offset);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; ++i) {
+				if (buffer.get(i) == '\n') {
+					return offset + i + 1;
+				}
+			}
+			offset += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Сводная статистика по записям директории данных.
+	 */
+	public static final class Aggregates {
+		private final long recordCount;
+		private final Map<Gender, Long> genderCounts;
+		private final SortedMap<Integer, Long> birthYearCounts;
+		private final SortedMap<String, Long> phonePrefixCounts;
+		private final Map<String, Long> lastNameCounts;
+
+		Aggregates(long recordCount, Map<Gender, Long> genderCounts, SortedMap<Integer, Long> birthYearCounts,
+				SortedMap<String, Long> phonePrefixCounts, Map<String, Long> lastNameCounts) {
+			this.recordCount = recordCount;
+			this.genderCounts = genderCounts;
+			this.birthYearCounts = birthYearCounts;
+			this.phonePrefixCounts = phonePrefixCounts;
+			this.lastNameCounts = lastNameCounts;
+		}
+
+		public long getRecordCount() {
+			return recordCount;
+		}
+
+		/**
+		 * @return Числа записей по полу.
+		 */
+		public Map<Gender, Long> getGenderCounts() {
+			return genderCounts;
+		}
+
+		/**
+		 * @return Ненулевые числа записей по годам рождения в порядке
+		 *         возрастания годов.
+		 */
+		public SortedMap<Integer, Long> getBirthYearCounts() {
+			return birthYearCounts;
+		}
+
+		/**
+		 * @return Ненулевые числа записей по префиксам номеров телефонов
+		 *         (номер короче префикса -- по всему номеру).
+		 */
+		public SortedMap<String, Long> getPhonePrefixCounts() {
+			return phonePrefixCounts;
+		}
+
+		/**
+		 * @return Числа записей по фамилиям, объединённым без учёта регистра
+		 *         (под одним из написаний), в порядке убывания.
+		 */
+		public Map<String, Long> getLastNameCounts() {
+			return lastNameCounts;
+		}
+	}
+
+	/**
+	 * Участок файла данных от смещения from до смещения to.
+	 */
+	private static final class Range {
+		final Path file;
+		final long from;
+		final long to;
+
+		Range(Path file, long from, long to) {
+			this.file = file;
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	/**
+	 * Подсчёт по участкам ranges[from, to).
+	 */
+	private final class AggregationTask extends RecursiveTask<Counters> {
+		// Задачи не сериализуются: ForkJoinTask сериализуем лишь формально.
+		private static final long serialVersionUID = 1L;
+
+		private final transient List<Range> ranges;
+		private final long[] offsets;
+		private final int from;
+		private final int to;
+
+		AggregationTask(List<Range> ranges, long[] offsets, int from, int to) {
+			this.ranges = ranges;
+			this.offsets = offsets;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Counters compute() {
+			if (to - from <= 1 || offsets[to] - offsets[from] <= LEAF_BYTES) {
+				var counters = new Counters(phonePrefixDigits);
+				for (int i = from; i < to; ++i) {
+					var range = ranges.get(i);
+					try {
+						RecordFiles.scan(range.file, range.from, range.to, counters::add);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				return counters;
+			}
+
+			// Участки делятся на две части примерно равного объёма.
+			int middle = Arrays.binarySearch(offsets, from + 1, to, (offsets[from] + offsets[to]) / 2);
+			if (middle < 0) {
+				middle = -middle - 1;
+			}
+			middle = Math.min(middle, to - 1);
+
+			var left = new AggregationTask(ranges, offsets, from, middle);
+			left.fork();
+			var counters = new AggregationTask(ranges, offsets, middle, to).compute();
+			counters.addAll(left.join());
+			return counters;
+		}
+	}
+
+	/**
+	 * Частичные результаты подсчёта.
+	 */
+	private static final class Counters {
+		private final int phonePrefixDigits;
+		private long recordCount;
+		private final long[] genderCounts = new long[Gender.values().length];
+		private final long[] birthYearCounts = new long[YEARS_COUNT];
+		// Префикс из n цифр со значением v учитывается в элементе 10^n + v.
+		private final long[] phonePrefixCounts;
+		private final LastNameCounts lastNameCounts = new LastNameCounts();
+
+		Counters(int phonePrefixDigits) {
+			this.phonePrefixDigits = phonePrefixDigits;
+			this.phonePrefixCounts = new long[2 * POWERS_OF_TEN[phonePrefixDigits]];
+		}
+
+		void add(RecordScanner scanner) {
+			++recordCount;
+			++genderCounts[scanner.gender().ordinal()];
+			int year = scanner.birthYear();
+			if (year >= 0 && year < YEARS_COUNT) {
+				++birthYearCounts[year];
+			}
+			int prefix = phonePrefix(scanner);
+			if (prefix >= 0) {
+				++phonePrefixCounts[prefix];
+			}
+			lastNameCounts.add(scanner);
+		}
+
+		void addAll(Counters other) {
+			recordCount += other.recordCount;
+			addAll(genderCounts, other.genderCounts);
+			addAll(birthYearCounts, other.birthYearCounts);
+			addAll(phonePrefixCounts, other.phonePrefixCounts);
+			lastNameCounts.addAll(other.lastNameCounts);
+		}
+
+		Aggregates toAggregates() {
+			var genders = new EnumMap<Gender, Long>(Gender.class);
+			for (var gender : Gender.values()) {
+				genders.put(gender, genderCounts[gender.ordinal()]);
+			}
+
+			var years = new TreeMap<Integer, Long>();
+			for (int year = 0; year < YEARS_COUNT; ++year) {
+				if (birthYearCounts[year] > 0) {
+					years.put(year, birthYearCounts[year]);
+				}
+			}
+
+			var prefixes = new TreeMap<String, Long>();
+			for (int digits = 1; digits <= phonePrefixDigits; ++digits) {
+				for (int value = 0; value < POWERS_OF_TEN[digits]; ++value) {
+					long count = phonePrefixCounts[POWERS_OF_TEN[digits] + value];
+					if (count > 0) {
+						prefixes.put(String.format("%0" + digits + "d", value), count);
+					}
+				}
+			}
+
+			return new Aggregates(recordCount, Collections.unmodifiableMap(genders),
+					Collections.unmodifiableSortedMap(years), Collections.unmodifiableSortedMap(prefixes),
+					Collections.unmodifiableMap(lastNameCounts.toMap()));
+		}
+
+		/**
+		 * @return Индекс счётчика префикса номера телефона текущей записи,
+		 *         либо -1, если номер пуст или содержит не только цифры.
+		 */
+		private int phonePrefix(RecordScanner scanner) {
+			int digits = Math.min(scanner.length(RecordScanner.PHONE_NUMBER), phonePrefixDigits);
+			if (digits == 0) {
+				return -1;
+			}
+			int value = 0;
+			for (int i = 0; i < digits; ++i) {
+				int digit = scanner.byteAt(RecordScanner.PHONE_NUMBER, i) - '0';
+				if (digit < 0 || digit > 9) {
+					return -1;
+				}
+				value = value * 10 + digit;
+			}
+			return POWERS_OF_TEN[digits] + value;
+		}
+
+		private static void addAll(long[] counts, long[] other) {
+			for (int i = 0; i < counts.length; ++i) {
+				counts[i] += other[i];
+			}
+		}
+	}
+
+	/**
+	 * Числа записей по фамилиям -- открытая хеш-таблица с линейным
+	 * пробированием, ключи которой -- байты фамилий. Запись, фамилия которой
+	 * уже есть в таблице, учитывается без создания объектов.
+	 */
+	private static final class LastNameCounts {
+		private static final int INITIAL_CAPACITY = 256;
+
+		private long[] hashes = new long[INITIAL_CAPACITY];
+		private byte[][] names = new byte[INITIAL_CAPACITY][];
+		private long[] counts = new long[INITIAL_CAPACITY];
+		private int size;
+		// Элемент фамилии предыдущей записи: записи файла фамилии (и участка
+		// сегмента) имеют одну фамилию, и хеш для них не вычисляется.
+		private int lastSlot = -1;
+
+		void add(RecordScanner scanner) {
+			if (lastSlot >= 0 && scanner.fieldEquals(RecordScanner.LAST_NAME, names[lastSlot])) {
+				++counts[lastSlot];
+				return;
+			}
+			long hash = scanner.fieldHash(RecordScanner.LAST_NAME);
+			int mask = names.length - 1;
+			int slot = slot(hash, mask);
+			for (; names[slot] != null; slot = (slot + 1) & mask) {
+				if (hashes[slot] == hash && scanner.fieldEquals(RecordScanner.LAST_NAME, names[slot])) {
+					++counts[slot];
+					lastSlot = slot;
+					return;
+				}
+			}
+			lastSlot = insert(slot, hash, scanner.bytes(RecordScanner.LAST_NAME), 1);
+		}
+
+		void addAll(LastNameCounts other) {
+			for (int i = 0; i < other.names.length; ++i) {
+				if (other.names[i] != null) {
+					add(other.hashes[i], other.names[i], other.counts[i]);
+				}
+			}
+		}
+
+		/**
+		 * @return Числа записей по фамилиям, объединённым без учёта регистра,
+		 *         в порядке убывания.
+		 */
+		Map<String, Long> toMap() {
+			var byName = new TreeMap<String, Long>(String.CASE_INSENSITIVE_ORDER);
+			for (int i = 0; i < names.length; ++i) {
+				if (names[i] != null) {
+					byName.merge(new String(names[i], StandardCharsets.UTF_8), counts[i], Long::sum);
+				}
+			}
+			var entries = new ArrayList<>(byName.entrySet());
+			entries.sort(Map.Entry.<String, Long>comparingByValue().reversed()
+					.thenComparing(Map.Entry.comparingByKey(String.CASE_INSENSITIVE_ORDER)));
+			var sorted = new LinkedHashMap<String, Long>();
+			for (var entry : entries) {
+				sorted.put(entry.getKey(), entry.getValue());
+			}
+			return sorted;
+		}
+
+		private void add(long hash, byte[] name, long count) {
+			int mask = names.length - 1;
+			int slot = slot(hash, mask);
+			for (; names[slot] != null; slot = (slot + 1) & mask) {
+				if (hashes[slot] == hash && Arrays.equals(names[slot], name)) {
+					counts[slot] += count;
+					return;
+				}
+			}
+			insert(slot, hash, name, count);
+		}
+
+		/**
+		 * @return Элемент, в котором находится добавленная фамилия.
+		 */
+		private int insert(int slot, long hash, byte[] name, long count) {
+			hashes[slot] = hash;
+			names[slot] = name;
+			counts[slot] = count;
+			if (++size * 2 > names.length) {
+				grow();
+				return -1;
+			}
+			return slot;
+		}
+
+		private void grow() {
+			var oldHashes = hashes;
+			var oldNames = names;
+			var oldCounts = counts;
+			lastSlot = -1;
+			hashes = new long[oldNames.length * 2];
+			names = new byte[oldNames.length * 2][];
+			counts = new long[oldNames.length * 2];
+			int mask = names.length - 1;
+			for (int i = 0; i < oldNames.length; ++i) {
+				if (oldNames[i] != null) {
+					int slot = slot(oldHashes[i], mask);
+					while (names[slot] != null) {
+						slot = (slot + 1) & mask;
+					}
+					hashes[slot] = oldHashes[i];
+					names[slot] = oldNames[i];
+					counts[slot] = oldCounts[i];
+				}
+			}
+		}
+
+		private static int slot(long hash, int mask) {
+			return (int) (hash ^ (hash >>> 32)) & mask;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package storage;
+
+import entities.UserData;
+
+/**
+ * Формат хранения записей пользовательских данных в файлах данных:
+ * представление записи в виде байтов и обрамление записей в файле.
+ */
+public interface RecordCodec {
+
+	/**
+	 * @return Заголовок, записываемый в начало каждого нового файла данных;
+	 *         пустой массив, если формат не предусматривает заголовка.
+	 */
+	byte[] header();
+
+	/**
+	 * @return Разделитель, записываемый перед каждой записью файла, кроме
+	 *         первой; пустой массив, если записи не разделяются.
+	 */
+	byte[] separator();
+
+	/**
+	 * @return Байтовое представление записи.
+	 */
+	byte[] encode(UserData userData);
+}
@@ -0,0 +1,400 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Дописывание записей в файлы данных и перечисление файлов данных.
+ * <p>
+ * Обрамление записей в файле определяется форматом хранения (RecordCodec):
+ * заголовок формата записывается в начало нового файла, а разделитель --
+ * перед каждой записью, кроме первой в файле. Служебные файлы и директории в
+ * директории данных имеют имена, начинающиеся с точки.
+ */
+public final class RecordFiles {
+
+	static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+	private static final long MAX_WINDOW_BYTES = 1L << 30;
+	private static final byte[] NO_PREFIX = new byte[0];
+	// Идентификатор отсутствующего файла.
+	private static final Object NO_FILE = new Object();
+
+	/**
+	 * Перечисляет файлы данных в директории данных: файлы фамилий и файлы
+	 * данных сегментов уплотнённых данных (SegmentStore).
+	 */
+	public static List<Path> listDataFiles(Path dataDir) throws IOException {
+		var files = new ArrayList<>(listSurnameFiles(dataDir));
+		files.addAll(SegmentStore.listSegments(dataDir));
+		return files;
+	}
+
+	/**
+	 * Перечисляет файлы фамилий в директории данных, пропуская служебные; в
+	 * сегментированной директории (ShardedLayout) -- в том числе файлы
+	 * директорий сегментов.
+	 */
+	public static List<Path> listSurnameFiles(Path dataDir) throws IOException {
+		if (ShardedLayout.isSharded(dataDir)) {
+			return ShardedLayout.listDataFiles(dataDir);
+		}
+		try (var stream = Files.list(dataDir)) {
+			return stream.filter(file -> !file.getFileName().toString().startsWith("."))
+					.filter(Files::isRegularFile)
+					.sorted()
+					.toList();
+		}
+	}
+
+	/**
+	 * Нечувствительный к регистру поиск файлов данных по имени: в
+	 * сегментированной директории просматриваются директория сегмента имени
+	 * и, если директория не отмечена как полностью перенесённая
+	 * (ShardedLayout.isMigrated), верхний уровень (файлы, ещё не перенесённые
+	 * в сегменты).
+	 */
+	public static List<Path> findDataFiles(Path dataDir, String fileName) throws IOException {
+		boolean sharded = ShardedLayout.isSharded(dataDir);
+		List<Path> topLevel = List.of();
+		if (!sharded || !ShardedLayout.isMigrated(dataDir)) {
+			try (var stream = Files.list(dataDir)) {
+				topLevel = stream.filter(file -> file.getFileName().toString().equalsIgnoreCase(fileName)).toList();
+			}
+		}
+		var found = new ArrayList<Path>();
+		if (sharded) {
+			var file = ShardedLayout.findInShard(dataDir, fileName);
+			if (file != null && Files.isRegularFile(file)) {
+				found.add(file);
+			}
+		}
+		// Файл верхнего уровня проверяется после поиска в сегменте, так что
+		// файл, перенесённый в сегмент во время поиска, находится однократно.
+		for (var file : topLevel) {
+			if (Files.isRegularFile(file) && (found.isEmpty() || !Files.isSameFile(file, found.get(0)))) {
+				found.add(file);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Разбирает записи файла текстового формата, начиная с заданного
+	 * смещения, передавая каждую корректную запись обработчику. Файл
+	 * отображается в память; файл, превышающий размер окна отображения,
+	 * отображается по частям, разделённым по границам строк.
+	 *
+	 * @throws IOException в том числе если файл записан в двоичном формате.
+	 */
+	public static void scan(Path file, long fromOffset, RecordVisitor visitor) throws IOException {
+		scan(file, fromOffset, Long.MAX_VALUE, visitor);
+	}
+
+	/**
+	 * Разбирает записи участка файла текстового формата (например, участка
+	 * сегмента уплотнённых данных), начинающегося и заканчивающегося на
+	 * границах записей. Файл формата, сжатого блоками (BlockCompressedCodec),
+	 * разбирается по блокам, а участок должен начинаться и заканчиваться на
+	 * границах блоков. Смещение записи такого файла (RecordScanner.recordOffset)
+	 * -- сумма смещения блока в файле и смещения записи в данных блока, то
+	 * есть не является смещением в файле.
+	 *
+	 * @throws IOException в том числе если файл записан в двоичном формате.
+	 */
+	public static void scan(Path file, long fromOffset, long toOffset, RecordVisitor visitor) throws IOException {
+		var scanner = new RecordScanner();
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			var header = headerOf(channel);
+			if (BinaryRecordCodec.hasMagic(ByteBuffer.wrap(header))) {
+				throw new IOException(String.format("Файл '%s' записан в двоичном формате.", file));
+			}
+			if (header.length > 0) {
+				try (var blocks = new BlockCompressedCodec.BlockReader(file, channel, fromOffset, toOffset)) {
+					ByteBuffer block;
+					while ((block = blocks.next()) != null) {
+						scanner.reset(block, blocks.blockOffset());
+						while (scanner.next()) {
+							visitor.visit(scanner);
+						}
+					}
+				}
+				return;
+			}
+
+			long size = Math.min(channel.size(), toOffset);
+			long offset = fromOffset;
+			while (offset < size) {
+				long length = Math.min(size - offset, MAX_WINDOW_BYTES);
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+				if (offset + length < size) {
+					buffer.limit(lastLineEnd(buffer, file));
+				}
+
+				scanner.reset(buffer, offset);
+				while (scanner.next()) {
+					visitor.visit(scanner);
+				}
+				offset += buffer.limit();
+			}
+		}
+	}
+
+	/**
+	 * Открывает файл на дозапись, при необходимости создавая его. Файл
+	 * открывается и на чтение -- для проверки его формата; данные
+	 * дописываются методом append.
+	 */
+	public static FileChannel openForAppend(Path file) throws IOException {
+		return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Дописывает записи в файл, открывая и закрывая его.
+	 *
+	 * @param file     Путь к файлу.
+	 * @param records  Байтовые представления записей.
+	 * @param codec    Формат хранения записей.
+	 * @param lockFile Признак необходимости блокировки файла (FileLock) на
+	 *                 время дописывания -- для совместной записи в файл
+	 *                 несколькими процессами.
+	 */
+	public static void append(Path file, List<byte[]> records, RecordCodec codec, boolean lockFile)
+			throws IOException {
+		if (records.isEmpty()) {
+			return;
+		}
+
+		var separator = codec.separator();
+		var bytes = new ArrayList<ByteBuffer>(records.size() * 2);
+		for (int i = 0; i < records.size(); ++i) {
+			if (i > 0 && separator.length > 0) {
+				bytes.add(ByteBuffer.wrap(separator));
+			}
+			bytes.add(ByteBuffer.wrap(records.get(i)));
+		}
+
+		var data = bytes.toArray(new ByteBuffer[0]);
+		while (true) {
+			try (var target = AppendTarget.open(file)) {
+				if (append(target, data, codec, lockFile)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Дописывает в открытый на дозапись файл данные, содержащие одну или
+	 * несколько записей с разделителями между ними. Перед данными
+	 * записывается заголовок формата, если файл пуст, либо разделитель, если
+	 * нет и формат не предусматривает заголовка, -- проверка выполняется под
+	 * блокировкой файла, если таковая требуется. В формате, сжатом блоками,
+	 * данные дописываются отдельным блоком.
+	 * <p>
+	 * Проверяется также, что путь к файлу по-прежнему ведёт к открытому
+	 * файлу: перенос файла в сегмент (ShardedLayout.reshard) может дописать
+	 * его записи в другой файл и удалить его, а файл, удалённый вне
+	 * приложения, может оставаться открытым в пуле файлов (WriterPool). В
+	 * таком случае данные не дописываются, а файл следует открыть заново. При
+	 * блокировке файла проверка выполняется под блокировкой и не может
+	 * разойтись с дописыванием. Блок сжатого
+	 * формата, оборванный в конце файла, отсекается; данные, дописанные
+	 * частично из-за ошибки записи, отсекаются, а позиции буферов data
+	 * остаются неопределёнными.
+	 *
+	 * @return false, если файл удалён или заменён после открытия.
+	 * @throws IOException в том числе если непустой файл записан в ином
+	 *                     формате.
+	 */
+	static boolean append(AppendTarget target, ByteBuffer[] data, RecordCodec codec, boolean lockFile)
+			throws IOException {
+		if (codec instanceof BlockCompressedCodec compressed) {
+			// Сжатие выполняется до блокировки файла.
+			data = new ByteBuffer[] { compressed.compress(data) };
+		}
+		var channel = target.channel;
+		var header = codec.header();
+		var lock = lockFile ? channel.lock() : null;
+		try {
+			if (!target.isCurrent()) {
+				return false;
+			}
+			byte[] prefix;
+			if (channel.size() == 0) {
+				prefix = header;
+			} else {
+				// Дописывание записей в файл иного формата (либо сжатого с
+				// иным словарём) сделало бы его нечитаемым.
+				if (!Arrays.equals(headerOf(channel), header)) {
+					throw new IOException("Формат файла данных не соответствует формату записей.");
+				}
+				prefix = header.length > 0 ? NO_PREFIX : codec.separator();
+				if (codec instanceof BlockCompressedCodec compressed) {
+					// Блок, оборванный сбоем предыдущего дописывания, сделал
+					// бы нечитаемым и дописываемый блок.
+					long complete = compressed.completeLength(channel, target.fileKey);
+					if (complete < channel.size()) {
+						channel.truncate(complete);
+					}
+				}
+			}
+
+			var buffers = data;
+			if (prefix.length > 0) {
+				buffers = new ByteBuffer[data.length + 1];
+				buffers[0] = ByteBuffer.wrap(prefix);
+				System.arraycopy(data, 0, buffers, 1, data.length);
+			}
+			long start = channel.size();
+			channel.position(start);
+			long remaining = 0;
+			for (var buffer : buffers) {
+				remaining += buffer.remaining();
+			}
+			long blockOffset = start + prefix.length;
+			try {
+				while (remaining > 0) {
+					remaining -= channel.write(buffers);
+				}
+			} catch (IOException e) {
+				// Данные, дописанные частично, отсекаются, чтобы повторное
+				// дописывание не оставило в файле оборванной записи.
+				try {
+					channel.truncate(start);
+				} catch (IOException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+				throw e;
+			}
+			if (codec instanceof BlockCompressedCodec compressed) {
+				compressed.appended(target.fileKey, blockOffset, channel.position());
+			}
+			return true;
+		} finally {
+			if (lock != null) {
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * @return Заголовок формата, которым начинается файл: двоичного
+	 *         (BinaryRecordCodec) либо сжатого блоками (BlockCompressedCodec)
+	 *         формата; пустой массив для файла текстового формата.
+	 */
+	static byte[] headerOf(FileChannel channel) throws IOException {
+		var start = ByteBuffer.allocate(BlockCompressedCodec.HEADER_LENGTH);
+		while (start.hasRemaining()) {
+			if (channel.read(start, start.position()) < 0) {
+				break;
+			}
+		}
+		start.flip();
+		int length = 0;
+		if (BinaryRecordCodec.hasMagic(start)) {
+			length = BinaryRecordCodec.HEADER_LENGTH;
+		} else if (BlockCompressedCodec.hasMagic(start)) {
+			length = BlockCompressedCodec.HEADER_LENGTH;
+		}
+		return Arrays.copyOf(start.array(), Math.min(length, start.limit()));
+	}
+
+	/**
+	 * @return true, если файл начинается с сигнатуры двоичного формата.
+	 */
+	static boolean isBinary(FileChannel channel) throws IOException {
+		var start = ByteBuffer.allocate(BinaryRecordCodec.MAGIC.length);
+		while (start.hasRemaining()) {
+			if (channel.read(start, start.position()) < 0) {
+				break;
+			}
+		}
+		start.flip();
+		return BinaryRecordCodec.hasMagic(start);
+	}
+
+	private static int lastLineEnd(ByteBuffer buffer, Path file) throws IOException {
+		for (int i = buffer.limit() - 1; i >= 0; --i) {
+			if (buffer.get(i) == '\n') {
+				return i + 1;
+			}
+		}
+		throw new IOException(String.format("Файл '%s' содержит слишком длинную строку.", file));
+	}
+
+	/**
+	 * Файл, открытый на дозапись, и его идентификатор (fileKey) -- для
+	 * проверки того, что путь к файлу по-прежнему ведёт к открытому файлу.
+	 */
+	static final class AppendTarget implements AutoCloseable {
+		final Path file;
+		final FileChannel channel;
+		private final Object fileKey;
+
+		private AppendTarget(Path file, FileChannel channel, Object fileKey) {
+			this.file = file;
+			this.channel = channel;
+			this.fileKey = fileKey;
+		}
+
+		/**
+		 * Открывает файл на дозапись (openForAppend), при необходимости
+		 * создавая его. Идентификатор файла определяется до и после открытия;
+		 * если они различаются (файл создан при открытии либо заменён во
+		 * время открытия), файл открывается повторно.
+		 */
+		static AppendTarget open(Path file) throws IOException {
+			while (true) {
+				var before = fileKey(file);
+				var channel = openForAppend(file);
+				var after = fileKey(file);
+				if (after != NO_FILE && Objects.equals(before, after)) {
+					return new AppendTarget(file, channel, after);
+				}
+				channel.close();
+			}
+		}
+
+		/**
+		 * @return false, если файл удалён или путь к нему ведёт к другому
+		 *         файлу. Для файловых систем, не предоставляющих
+		 *         идентификаторов файлов, -- всегда true.
+		 */
+		boolean isCurrent() throws IOException {
+			return fileKey == null || fileKey.equals(fileKey(file));
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+		private static Object fileKey(Path file) throws IOException {
+			try {
+				return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+			} catch (NoSuchFileException e) {
+				return NO_FILE;
+			}
+		}
+	}
+
+	/**
+	 * Обработчик записей, разбираемых из файла.
+	 */
+	@FunctionalInterface
+	public interface RecordVisitor {
+		void visit(RecordScanner scanner) throws IOException;
+	}
+}
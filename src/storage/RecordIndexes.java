@@ -0,0 +1,475 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Вторичные индексы директории данных: по номеру телефона и по дате
+ * рождения. Индексы отображают ключ на местоположение записи -- файл данных
+ * и смещение записи в нём -- и хранятся в поддиректории .index директории
+ * данных.
+ * <p>
+ * Индексы поддерживаются единственным пишущим процессом: при открытии на
+ * запись индексы дополняются записями, дописанными в файлы данных без их
+ * участия, либо, если предыдущий пишущий процесс не завершил работу
+ * корректно, перестраиваются по файлам данных полностью. Далее индексы
+ * дополняются по мере дописывания записей, смещения которых отслеживаются
+ * по длинам файлов.
+ * <p>
+ * Индексы, открытые на чтение, используются только если они соответствуют
+ * текущему содержимому директории данных. Соответствие проверяется без
+ * обращения к файлам данных, по поколению директории данных: случайной
+ * отметке, которую заменяют пишущий процесс индексов при открытии и
+ * процессы, дописывающие записи без участия индексов (markChanged), при
+ * начале и завершении работы. Индексы считаются соответствующими, если при
+ * их закрытии поколение не изменилось другими процессами и с тех пор
+ * осталось прежним. Найденные по индексам
+ * местоположения следует проверять по содержимому записей: ключ индекса
+ * телефонов -- хеш номера.
+ */
+public final class RecordIndexes implements AutoCloseable {
+
+	static final String INDEX_DIR = ".index";
+
+	private static final String FILES_NAME = "files";
+	private static final String WRITER_MARKER_NAME = "writer";
+	private static final String LOCK_NAME = "lock";
+	private static final String GENERATION_NAME = "generation";
+	private static final String INDEXED_GENERATION_NAME = "indexed-generation";
+	private static final String PHONE_NUMBER_INDEX = "phone";
+	private static final String BIRTH_DATE_INDEX = "birth-date";
+
+	private static final int MEMTABLE_ENTRIES = 256 * 1024;
+	private static final int MAX_RUNS = 8;
+
+	// Местоположение записи упаковывается в long: номер файла и смещение.
+	private static final int OFFSET_BITS = 40;
+	private static final long MAX_OFFSET = (1L << OFFSET_BITS) - 1;
+	private static final int MAX_FILES = 1 << 23;
+	// Длина удалённого файла в списке индексированных файлов.
+	private static final long REMOVED = -1;
+
+	private final Path dataDir;
+	private final Path indexDir;
+	private final SecondaryIndex phoneNumberIndex;
+	private final SecondaryIndex birthDateIndex;
+	private final List<FileState> filesById = new ArrayList<>();
+	private final Map<String, FileState> filesByName = new HashMap<>();
+	private final FileChannel lockChannel;
+	// Поколение директории данных, установленное при открытии на запись.
+	private String generation;
+	private boolean invalid;
+
+	private RecordIndexes(Path dataDir, FileChannel lockChannel) throws IOException {
+		this.dataDir = dataDir;
+		this.indexDir = dataDir.resolve(INDEX_DIR);
+		this.lockChannel = lockChannel;
+		// Индексы, открытые на чтение, не накапливают пар в памяти.
+		int memtableEntries = lockChannel != null ? MEMTABLE_ENTRIES : 0;
+		this.phoneNumberIndex = new SecondaryIndex(indexDir, PHONE_NUMBER_INDEX, memtableEntries, MAX_RUNS);
+		this.birthDateIndex = new SecondaryIndex(indexDir, BIRTH_DATE_INDEX, memtableEntries, MAX_RUNS);
+		loadFiles();
+	}
+
+	/**
+	 * Открывает индексы на запись, при необходимости дополняя или
+	 * перестраивая их по файлам данных.
+	 *
+	 * @param dataDir Путь к директории данных.
+	 * @throws IOException если индексы уже открыты на запись (другим
+	 *                     процессом либо в этом же процессе) либо произошла
+	 *                     ошибка ввода-вывода.
+	 */
+	public static RecordIndexes openForWriting(Path dataDir) throws IOException {
+		return openForWriting(dataDir, false);
+	}
+
+	/**
+	 * Полностью перестраивает индексы по файлам данных.
+	 */
+	public static void rebuild(Path dataDir) throws IOException {
+		openForWriting(dataDir, true).close();
+	}
+
+	/**
+	 * Открывает индексы на чтение.
+	 *
+	 * @param dataDir Путь к директории данных.
+	 * @return Индексы, либо null, если индексы отсутствуют, открыты на запись
+	 *         или не соответствуют текущему содержимому директории данных.
+	 */
+	public static RecordIndexes openForReading(Path dataDir) throws IOException {
+		var indexDir = dataDir.resolve(INDEX_DIR);
+		if (!Files.exists(indexDir.resolve(FILES_NAME)) || Files.exists(indexDir.resolve(WRITER_MARKER_NAME))) {
+			return null;
+		}
+		var generation = readGeneration(indexDir.resolve(GENERATION_NAME));
+		if (generation == null || !generation.equals(readGeneration(indexDir.resolve(INDEXED_GENERATION_NAME)))) {
+			return null;
+		}
+		return new RecordIndexes(dataDir, null);
+	}
+
+	/**
+	 * Отмечает изменение файлов данных без участия индексов: ранее
+	 * сохранённые индексы не используются для чтения, пока не будут дополнены
+	 * при следующем открытии на запись. Процесс, дописывающий записи без
+	 * участия индексов, вызывает метод при начале и при завершении работы.
+	 *
+	 * @param dataDir Путь к директории данных.
+	 */
+	public static void markChanged(Path dataDir) throws IOException {
+		var indexDir = dataDir.resolve(INDEX_DIR);
+		if (Files.isDirectory(indexDir)) {
+			nextGeneration(indexDir);
+		}
+	}
+
+	/**
+	 * Добавляет в индексы запись, дописываемую в файл данных вслед за всеми
+	 * ранее добавленными.
+	 *
+	 * @param file         Путь к файлу данных.
+	 * @param phoneNumber  Номер телефона.
+	 * @param birthDate    Дата рождения.
+	 * @param recordLength Длина записи в файле, байт.
+	 */
+	public void add(Path file, String phoneNumber, LocalDate birthDate, int recordLength) throws IOException {
+		var state = fileState(nameOf(file));
+		long offset = state.length > 0 ? state.length + RecordFiles.LINE_SEPARATOR.length : 0;
+		if (offset > MAX_OFFSET) {
+			throw new IOException(String.format("Файл '%s' слишком велик для индексирования.", file));
+		}
+		state.length = offset + recordLength;
+
+		long location = location(state, offset);
+		phoneNumberIndex.add(RecordScanner.hash(phoneNumber.getBytes(StandardCharsets.UTF_8)), location);
+		birthDateIndex.add(RecordScanner.birthDateKey(birthDate), location);
+	}
+
+	/**
+	 * Индексирует записи файла данных, созданного без участия индексов
+	 * (например, сегмента уплотнённых данных).
+	 */
+	public void addFile(Path file) throws IOException {
+		catchUp(file);
+	}
+
+	/**
+	 * Исключает из индексов записи удалённого файла данных: найденные по
+	 * индексам местоположения более не указывают на файл, а одноимённый файл,
+	 * созданный впоследствии, индексируется как новый.
+	 */
+	public void remove(Path file) {
+		var state = filesByName.remove(nameOf(file));
+		if (state != null) {
+			state.length = REMOVED;
+		}
+	}
+
+	/**
+	 * Помечает индексы как не соответствующие файлам данных (например, после
+	 * ошибки дописывания): при следующем открытии на запись они будут
+	 * перестроены.
+	 */
+	public void invalidate() {
+		invalid = true;
+	}
+
+	/**
+	 * @return Число индексированных записей.
+	 */
+	public long recordCount() {
+		return birthDateIndex.size();
+	}
+
+	/**
+	 * Поиск местоположений записей по номеру телефона. Среди найденных могут
+	 * оказаться записи с другим номером, имеющим тот же хеш.
+	 */
+	public List<Location> findByPhoneNumber(String phoneNumber) {
+		long key = RecordScanner.hash(phoneNumber.getBytes(StandardCharsets.UTF_8));
+		var found = new ArrayList<Location>();
+		phoneNumberIndex.lookup(key, key, location -> addLocation(found, location));
+		return sorted(found);
+	}
+
+	/**
+	 * Поиск местоположений записей с датой рождения в заданном диапазоне,
+	 * включая границы.
+	 */
+	public List<Location> findByBirthDate(LocalDate from, LocalDate to) {
+		var found = new ArrayList<Location>();
+		birthDateIndex.lookup(RecordScanner.birthDateKey(from), RecordScanner.birthDateKey(to),
+				location -> addLocation(found, location));
+		return sorted(found);
+	}
+
+	/**
+	 * Сохраняет индексы, открытые на запись.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (lockChannel == null) {
+			return;
+		}
+		try {
+			phoneNumberIndex.flush();
+			birthDateIndex.flush();
+			saveFiles();
+			if (!invalid) {
+				// Записи, дописанные другими процессами после открытия,
+				// индексируются при следующем открытии на запись.
+				if (generation.equals(readGeneration(indexDir.resolve(GENERATION_NAME)))) {
+					writeGeneration(indexDir, INDEXED_GENERATION_NAME, generation);
+				}
+				Files.deleteIfExists(indexDir.resolve(WRITER_MARKER_NAME));
+			}
+		} finally {
+			lockChannel.close();
+		}
+	}
+
+	private static RecordIndexes openForWriting(Path dataDir, boolean rebuild) throws IOException {
+		var indexDir = Files.createDirectories(dataDir.resolve(INDEX_DIR));
+		var lockChannel = FileChannel.open(indexDir.resolve(LOCK_NAME), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		try {
+			FileLock lock;
+			try {
+				lock = lockChannel.tryLock();
+			} catch (OverlappingFileLockException e) {
+				// индексы открыты на запись в этом же процессе
+				lock = null;
+			}
+			if (lock == null) {
+				throw new IOException(
+						String.format("Индексы директории '%s' используются другим процессом.", dataDir));
+			}
+
+			var indexes = new RecordIndexes(dataDir, lockChannel);
+			// Поколение заменяется до просмотра файлов данных: записи,
+			// дописанные после просмотра, изменят его снова.
+			indexes.generation = nextGeneration(indexDir);
+			var marker = indexDir.resolve(WRITER_MARKER_NAME);
+			// Индексы, которые пишущий процесс не закрыл, могут содержать
+			// ссылки на недописанные записи либо не содержать части записей.
+			rebuild = rebuild || Files.exists(marker);
+			var dataFiles = RecordFiles.listDataFiles(dataDir);
+			int indexedFiles = 0;
+			for (var file : dataFiles) {
+				var state = indexes.filesByName.get(indexes.nameOf(file));
+				if (state != null) {
+					++indexedFiles;
+					if (Files.size(file) < state.length) {
+						rebuild = true;
+					}
+				}
+			}
+			// Индексы ссылаются на файлы, удалённые или перенесённые (например,
+			// при переходе к сегментированному размещению).
+			if (indexedFiles < indexes.filesByName.size()) {
+				rebuild = true;
+			}
+			if (rebuild) {
+				indexes.clear();
+			}
+
+			if (!Files.exists(marker)) {
+				Files.createFile(marker);
+			}
+			for (var file : dataFiles) {
+				indexes.catchUp(file);
+			}
+			return indexes;
+
+		} catch (IOException | RuntimeException e) {
+			lockChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Индексирует записи, дописанные в файл данных после последнего
+	 * индексирования.
+	 */
+	private void catchUp(Path file) throws IOException {
+		var state = fileState(nameOf(file));
+		long size = Files.size(file);
+		if (size <= state.length) {
+			return;
+		}
+
+		RecordFiles.scan(file, state.length, scanner -> {
+			long offset = scanner.recordOffset();
+			if (offset > MAX_OFFSET) {
+				throw new IOException(String.format("Файл '%s' слишком велик для индексирования.", file));
+			}
+			long location = location(state, offset);
+			phoneNumberIndex.add(scanner.fieldHash(RecordScanner.PHONE_NUMBER), location);
+			birthDateIndex.add(scanner.birthDateKey(), location);
+		});
+		state.length = size;
+	}
+
+	private void clear() throws IOException {
+		phoneNumberIndex.clear();
+		birthDateIndex.clear();
+		filesById.clear();
+		filesByName.clear();
+	}
+
+	private FileState fileState(String fileName) throws IOException {
+		var state = filesByName.get(fileName);
+		if (state == null) {
+			if (filesById.size() == MAX_FILES) {
+				throw new IOException("Слишком много файлов данных для индексирования.");
+			}
+			state = new FileState(filesById.size(), fileName, 0);
+			filesById.add(state);
+			filesByName.put(fileName, state);
+		}
+		return state;
+	}
+
+	/**
+	 * @return Имя файла данных в индексах -- путь относительно директории
+	 *         данных.
+	 */
+	private String nameOf(Path file) {
+		return dataDir.relativize(file).toString();
+	}
+
+	private static long location(FileState state, long offset) {
+		return ((long) state.id << OFFSET_BITS) | offset;
+	}
+
+	private void addLocation(List<Location> found, long location) {
+		var state = filesById.get((int) (location >>> OFFSET_BITS));
+		if (state.length != REMOVED) {
+			found.add(new Location(dataDir.resolve(state.name), location & MAX_OFFSET));
+		}
+	}
+
+	private static List<Location> sorted(List<Location> locations) {
+		locations.sort(Comparator.comparing(Location::getFile).thenComparingLong(Location::getOffset));
+		return locations;
+	}
+
+	/**
+	 * Загружает список индексированных файлов: по строке "путь\tдлина" на
+	 * файл (путь -- относительно директории данных, длина -1 -- файл
+	 * удалён), номер файла -- номер строки.
+	 */
+	private void loadFiles() throws IOException {
+		var file = indexDir.resolve(FILES_NAME);
+		if (!Files.exists(file)) {
+			return;
+		}
+		for (var line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			int tab = line.lastIndexOf('\t');
+			if (tab < 0) {
+				throw new IOException(String.format("Файл индекса '%s' повреждён.", file));
+			}
+			var state = new FileState(filesById.size(), line.substring(0, tab),
+					Long.parseLong(line.substring(tab + 1)));
+			filesById.add(state);
+			if (state.length != REMOVED) {
+				filesByName.put(state.name, state);
+			}
+		}
+	}
+
+	private void saveFiles() throws IOException {
+		var lines = new ArrayList<String>(filesById.size());
+		for (var state : filesById) {
+			lines.add(state.name + '\t' + state.length);
+		}
+		var file = indexDir.resolve(FILES_NAME);
+		var temp = indexDir.resolve(FILES_NAME + ".tmp");
+		Files.write(temp, lines, StandardCharsets.UTF_8);
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Устанавливает новое поколение директории данных.
+	 */
+	private static String nextGeneration(Path indexDir) throws IOException {
+		var generation = UUID.randomUUID().toString();
+		writeGeneration(indexDir, GENERATION_NAME, generation);
+		return generation;
+	}
+
+	private static void writeGeneration(Path indexDir, String name, String generation) throws IOException {
+		// Временный файл уникален: поколение могут заменять несколько
+		// процессов одновременно.
+		var temp = Files.createTempFile(indexDir, name, ".tmp");
+		try {
+			Files.writeString(temp, generation, StandardCharsets.UTF_8);
+			Files.move(temp, indexDir.resolve(name), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+	}
+
+	/**
+	 * @return Поколение, либо null, если файл отсутствует.
+	 */
+	private static String readGeneration(Path file) throws IOException {
+		try {
+			return Files.readString(file, StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	private static final class FileState {
+		final int id;
+		final String name;
+		long length;
+
+		FileState(int id, String name, long length) {
+			this.id = id;
+			this.name = name;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Местоположение записи: файл данных и смещение записи в нём.
+	 */
+	public static final class Location {
+		private final Path file;
+		private final long offset;
+
+		Location(Path file, long offset) {
+			this.file = file;
+			this.offset = offset;
+		}
+
+		public Path getFile() {
+			return file;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+
+import entities.Gender;
+import entities.UserData;
+
+/**
+ * Последовательный разбор записей пользовательских данных в текстовом формате
+ * UserData.toString()
+ *
+ * <pre>
+ * &lt;Фамилия&gt;&lt;Имя&gt;&lt;Отчество&gt;&lt;dd.MM.yyyy&gt;&lt;Номер_телефона&gt;&lt;Пол&gt;
+ * </pre>
+ *
+ * непосредственно из байтов буфера (в том числе отображённого в память
+ * файла), без создания строк для каждой записи: для текущей записи
+ * доступны границы полей в буфере, а строки и экземпляр UserData создаются
+ * только по запросу.
+ * <p>
+ * Записи разделяются символами перевода строки; некорректные строки, в том
+ * числе с несуществующей датой рождения либо с полом, отличным от m, f, M
+ * и F, пропускаются.
+ */
+public final class RecordScanner {
+
+	public static final int LAST_NAME = 0;
+	public static final int FIRST_NAME = 1;
+	public static final int MIDDLE_NAME = 2;
+	public static final int BIRTH_DATE = 3;
+	public static final int PHONE_NUMBER = 4;
+	public static final int GENDER = 5;
+	public static final int FIELDS_COUNT = 6;
+
+	private static final byte LEFT_BRACE = '<';
+	private static final byte RIGHT_BRACE = '>';
+	private static final int DATE_LENGTH = 10;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final int[] starts = new int[FIELDS_COUNT];
+	private final int[] ends = new int[FIELDS_COUNT];
+
+	private ByteBuffer buffer;
+	private long baseOffset;
+	private int position;
+	private int limit;
+	private int recordStart;
+
+	/**
+	 * Начинает разбор записей буфера от его текущей позиции до предела.
+	 * Позиция буфера не изменяется.
+	 */
+	public RecordScanner reset(ByteBuffer buffer) {
+		return reset(buffer, 0);
+	}
+
+	/**
+	 * Начинает разбор записей буфера, содержащего часть файла, начинающуюся
+	 * с заданного смещения в файле.
+	 */
+	public RecordScanner reset(ByteBuffer buffer, long baseOffset) {
+		this.buffer = buffer;
+		this.baseOffset = baseOffset;
+		this.position = buffer.position();
+		this.limit = buffer.limit();
+		return this;
+	}
+
+	/**
+	 * Переходит к следующей корректной записи.
+	 *
+	 * @return false, если записей больше нет.
+	 */
+	public boolean next() {
+		while (position < limit) {
+			byte b = buffer.get(position);
+			if (b == '\n' || b == '\r') {
+				++position;
+				continue;
+			}
+
+			recordStart = position;
+			if (scanRecord()) {
+				return true;
+			}
+			skipLine();
+		}
+		return false;
+	}
+
+	/**
+	 * @return Смещение начала текущей записи в буфере.
+	 */
+	public int recordStart() {
+		return recordStart;
+	}
+
+	/**
+	 * @return Смещение за концом текущей записи в буфере.
+	 */
+	public int recordEnd() {
+		return position;
+	}
+
+	/**
+	 * @return Смещение начала текущей записи в файле.
+	 */
+	public long recordOffset() {
+		return baseOffset + recordStart;
+	}
+
+	public int start(int field) {
+		return starts[field];
+	}
+
+	public int end(int field) {
+		return ends[field];
+	}
+
+	public int length(int field) {
+		return ends[field] - starts[field];
+	}
+
+	public byte byteAt(int field, int index) {
+		return buffer.get(starts[field] + index);
+	}
+
+	/**
+	 * Сравнивает значение поля текущей записи с заданными байтами.
+	 */
+	public boolean fieldEquals(int field, byte[] value) {
+		int start = starts[field];
+		if (ends[field] - start != value.length) {
+			return false;
+		}
+		for (int i = 0; i < value.length; ++i) {
+			if (buffer.get(start + i) != value[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Хеш значения поля текущей записи, совпадающий с хешем
+	 *         UTF-8-представления значения, вычисленным методом hash.
+	 */
+	public long fieldHash(int field) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = starts[field]; i < ends[field]; ++i) {
+			hash = (hash ^ (buffer.get(i) & 0xff)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * @return Дата рождения текущей записи в виде числа yyyyMMdd, пригодного
+	 *         для сравнения дат.
+	 */
+	public int birthDateKey() {
+		int start = starts[BIRTH_DATE];
+		return digits(start + 6, 4) * 10000 + digits(start + 3, 2) * 100 + digits(start, 2);
+	}
+
+	public int birthYear() {
+		return digits(starts[BIRTH_DATE] + 6, 4);
+	}
+
+	public int birthMonth() {
+		return digits(starts[BIRTH_DATE] + 3, 2);
+	}
+
+	public int birthDay() {
+		return digits(starts[BIRTH_DATE], 2);
+	}
+
+	public LocalDate birthDate() {
+		return LocalDate.of(birthYear(), birthMonth(), birthDay());
+	}
+
+	public Gender gender() {
+		byte g = buffer.get(starts[GENDER]);
+		return g == 'm' || g == 'M' ? Gender.MALE : Gender.FEMALE;
+	}
+
+	public byte[] bytes(int field) {
+		var bytes = new byte[length(field)];
+		buffer.get(starts[field], bytes);
+		return bytes;
+	}
+
+	public String string(int field) {
+		return new String(bytes(field), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return Новый экземпляр UserData, соответствующий текущей записи.
+	 */
+	public UserData toUserData() {
+		var userData = new UserData();
+		userData.setLastName(string(LAST_NAME));
+		userData.setFirstName(string(FIRST_NAME));
+		userData.setMiddleName(string(MIDDLE_NAME));
+		userData.setBirthDate(birthDate());
+		userData.setPhoneNumber(string(PHONE_NUMBER));
+		userData.setGender(gender());
+		return userData;
+	}
+
+	/**
+	 * Вычисляет 64-битный хеш (FNV-1a) байтов значения поля.
+	 */
+	public static long hash(byte[] value) {
+		long hash = FNV_OFFSET_BASIS;
+		for (byte b : value) {
+			hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Создаёт ключ yyyyMMdd для сравнения даты с датами записей.
+	 */
+	public static int birthDateKey(LocalDate date) {
+		return date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+	}
+
+	private boolean scanRecord() {
+		int pos = position;
+		for (int field = 0; field < FIELDS_COUNT; ++field) {
+			if (pos >= limit || buffer.get(pos) != LEFT_BRACE) {
+				return false;
+			}
+			int start = ++pos;
+			while (pos < limit) {
+				byte b = buffer.get(pos);
+				if (b == RIGHT_BRACE) {
+					break;
+				}
+				if (b == LEFT_BRACE || b == '\n' || b == '\r') {
+					return false;
+				}
+				++pos;
+			}
+			if (pos >= limit) {
+				return false;
+			}
+			starts[field] = start;
+			ends[field] = pos++;
+		}
+
+		if (!isValidDate(starts[BIRTH_DATE], ends[BIRTH_DATE]) || length(GENDER) != 1
+				|| !isValidGender(buffer.get(starts[GENDER]))) {
+			return false;
+		}
+		position = pos;
+		return true;
+	}
+
+	/**
+	 * Проверяет, что поле содержит существующую дату в формате dd.MM.yyyy, --
+	 * так что методы даты рождения не завершаются ошибкой.
+	 */
+	private boolean isValidDate(int start, int end) {
+		if (end - start != DATE_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < DATE_LENGTH; ++i) {
+			byte b = buffer.get(start + i);
+			boolean valid = i == 2 || i == 5 ? b == '.' : b >= '0' && b <= '9';
+			if (!valid) {
+				return false;
+			}
+		}
+		int year = digits(start + 6, 4);
+		int month = digits(start + 3, 2);
+		int day = digits(start, 2);
+		return month >= 1 && month <= 12 && day >= 1 && day <= Month.of(month).length(Year.isLeap(year));
+	}
+
+	private static boolean isValidGender(byte g) {
+		return g == 'm' || g == 'f' || g == 'M' || g == 'F';
+	}
+
+	private void skipLine() {
+		while (position < limit && buffer.get(position) != '\n') {
+			++position;
+		}
+	}
+
+	private int digits(int from, int count) {
+		int value = 0;
+		for (int i = from; i < from + count; ++i) {
+			value = value * 10 + (buffer.get(i) - '0');
+		}
+		return value;
+	}
+}
@@ -0,0 +1,353 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.LongConsumer;
+
+/**
+ * Вторичный индекс: упорядоченное отображение ключей на значения (оба --
+ * long), допускающее повторяющиеся ключи.
+ * <p>
+ * Добавляемые пары накапливаются в памяти и по заполнении буфера
+ * записываются в новый файл-серию, упорядоченный по ключу. Поиск по ключу
+ * или диапазону ключей выполняется двоичным поиском в каждой из
+ * отображённых в память серий; при превышении заданного числа серий они
+ * сливаются в одну.
+ * <p>
+ * Объект не допускает одновременного использования несколькими потоками.
+ */
+final class SecondaryIndex {
+
+	private static final String RUN_SUFFIX = ".run";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int ENTRY_LONGS = 2;
+	private static final int ENTRY_BYTES = ENTRY_LONGS * Long.BYTES;
+	private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private final Path dir;
+	private final String name;
+	private final int maxRuns;
+	private final long[] keys;
+	private final long[] values;
+	private int size;
+
+	// Серии в порядке создания.
+	private final List<Run> runs = new ArrayList<>();
+	private long nextRunNumber = 1;
+
+	/**
+	 * Открывает индекс, загружая существующие серии.
+	 *
+	 * @param dir              Директория файлов индексов.
+	 * @param name             Имя индекса -- префикс имён файлов-серий.
+	 * @param memtableCapacity Число пар, накапливаемых в памяти перед записью
+	 *                         серии.
+	 * @param maxRuns          Число серий, при превышении которого серии
+	 *                         сливаются.
+	 */
+	SecondaryIndex(Path dir, String name, int memtableCapacity, int maxRuns) throws IOException {
+		this.dir = dir;
+		this.name = name;
+		this.maxRuns = maxRuns;
+		this.keys = new long[memtableCapacity];
+		this.values = new long[memtableCapacity];
+
+		for (var file : listFiles()) {
+			var fileName = file.getFileName().toString();
+			if (fileName.endsWith(TEMP_SUFFIX)) {
+				Files.delete(file);
+				continue;
+			}
+			long number = Long.parseLong(
+					fileName.substring(name.length() + 1, fileName.length() - RUN_SUFFIX.length()));
+			nextRunNumber = Math.max(nextRunNumber, number + 1);
+			runs.add(Run.open(file));
+		}
+	}
+
+	void add(long key, long value) throws IOException {
+		if (size == keys.length) {
+			flush();
+		}
+		keys[size] = key;
+		values[size] = value;
+		++size;
+	}
+
+	/**
+	 * @return Число пар индекса.
+	 */
+	long size() {
+		long count = size;
+		for (var run : runs) {
+			count += run.count;
+		}
+		return count;
+	}
+
+	/**
+	 * Передаёт обработчику значения всех пар с ключами в заданном диапазоне,
+	 * включая границы.
+	 */
+	void lookup(long fromKey, long toKey, LongConsumer consumer) {
+		for (var run : runs) {
+			run.lookup(fromKey, toKey, consumer);
+		}
+		for (int i = 0; i < size; ++i) {
+			if (keys[i] >= fromKey && keys[i] <= toKey) {
+				consumer.accept(values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Записывает накопленные в памяти пары в новую серию.
+	 */
+	void flush() throws IOException {
+		if (size == 0) {
+			return;
+		}
+		sort(keys, values, 0, size);
+		var file = writeRun(new MemtableCursor(size));
+		runs.add(Run.open(file));
+		size = 0;
+
+		if (runs.size() > maxRuns) {
+			merge();
+		}
+	}
+
+	/**
+	 * Удаляет все пары индекса.
+	 */
+	void clear() throws IOException {
+		size = 0;
+		runs.clear();
+		for (var file : listFiles()) {
+			Files.delete(file);
+		}
+	}
+
+	private void merge() throws IOException {
+		var queue = new PriorityQueue<RunCursor>((a, b) -> Long.compare(a.key(), b.key()));
+		for (var run : runs) {
+			var cursor = new RunCursor(run);
+			if (cursor.hasNext()) {
+				queue.add(cursor);
+			}
+		}
+
+		var merged = writeRun(new Cursor() {
+			@Override
+			public boolean hasNext() {
+				return !queue.isEmpty();
+			}
+
+			@Override
+			public void next(long[] entry) {
+				var cursor = queue.poll();
+				cursor.next(entry);
+				if (cursor.hasNext()) {
+					queue.add(cursor);
+				}
+			}
+		});
+
+		for (var run : runs) {
+			Files.delete(run.file);
+		}
+		runs.clear();
+		runs.add(Run.open(merged));
+	}
+
+	private Path writeRun(Cursor cursor) throws IOException {
+		var file = dir.resolve(String.format("%s-%012d%s", name, nextRunNumber++, RUN_SUFFIX));
+		var temp = dir.resolve(file.getFileName() + TEMP_SUFFIX);
+
+		try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			var buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+			var entry = new long[ENTRY_LONGS];
+			while (cursor.hasNext()) {
+				if (buffer.remaining() < ENTRY_BYTES) {
+					write(channel, buffer);
+				}
+				cursor.next(entry);
+				buffer.putLong(entry[0]).putLong(entry[1]);
+			}
+			write(channel, buffer);
+			channel.force(false);
+		}
+		Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+		return file;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private List<Path> listFiles() throws IOException {
+		var prefix = name + "-";
+		try (var stream = Files.list(dir)) {
+			return stream.filter(file -> file.getFileName().toString().startsWith(prefix))
+					.sorted()
+					.toList();
+		}
+	}
+
+	/**
+	 * Упорядочивает пары по ключу (быстрая сортировка с сортировкой
+	 * вставками коротких отрезков).
+	 */
+	private static void sort(long[] keys, long[] values, int from, int to) {
+		while (to - from > INSERTION_SORT_THRESHOLD) {
+			long pivot = keys[(from + to) >>> 1];
+			int i = from;
+			int j = to - 1;
+			while (i <= j) {
+				while (keys[i] < pivot) {
+					++i;
+				}
+				while (keys[j] > pivot) {
+					--j;
+				}
+				if (i <= j) {
+					swap(keys, values, i++, j--);
+				}
+			}
+			// Рекурсия -- по меньшему отрезку, чтобы ограничить глубину стека.
+			if (j + 1 - from < to - i) {
+				sort(keys, values, from, j + 1);
+				from = i;
+			} else {
+				sort(keys, values, i, to);
+				to = j + 1;
+			}
+		}
+		for (int i = from + 1; i < to; ++i) {
+			for (int j = i; j > from && keys[j - 1] > keys[j]; --j) {
+				swap(keys, values, j - 1, j);
+			}
+		}
+	}
+
+	private static void swap(long[] keys, long[] values, int i, int j) {
+		long key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		long value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+
+	private interface Cursor {
+		boolean hasNext();
+
+		void next(long[] entry);
+	}
+
+	private final class MemtableCursor implements Cursor {
+		private final int count;
+		private int position;
+
+		MemtableCursor(int count) {
+			this.count = count;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return position < count;
+		}
+
+		@Override
+		public void next(long[] entry) {
+			entry[0] = keys[position];
+			entry[1] = values[position];
+			++position;
+		}
+	}
+
+	private static final class RunCursor implements Cursor {
+		private final LongBuffer entries;
+		private final int count;
+		private int position;
+
+		RunCursor(Run run) {
+			this.entries = run.entries;
+			this.count = run.count;
+		}
+
+		long key() {
+			return entries.get(position * ENTRY_LONGS);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return position < count;
+		}
+
+		@Override
+		public void next(long[] entry) {
+			entry[0] = entries.get(position * ENTRY_LONGS);
+			entry[1] = entries.get(position * ENTRY_LONGS + 1);
+			++position;
+		}
+	}
+
+	/**
+	 * Отображённая в память серия: последовательность пар (ключ, значение),
+	 * упорядоченная по ключу.
+	 */
+	private static final class Run {
+		final Path file;
+		final LongBuffer entries;
+		final int count;
+
+		private Run(Path file, LongBuffer entries, int count) {
+			this.file = file;
+			this.entries = entries;
+			this.count = count;
+		}
+
+		static Run open(Path file) throws IOException {
+			try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				long size = channel.size();
+				if (size % ENTRY_BYTES != 0 || size / ENTRY_BYTES > Integer.MAX_VALUE / ENTRY_LONGS) {
+					throw new IOException(String.format("Файл индекса '%s' повреждён.", file));
+				}
+				var entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).asLongBuffer();
+				return new Run(file, entries, (int) (size / ENTRY_BYTES));
+			}
+		}
+
+		void lookup(long fromKey, long toKey, LongConsumer consumer) {
+			// Двоичный поиск первой пары с ключом, не меньшим fromKey.
+			int low = 0;
+			int high = count;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (entries.get(middle * ENTRY_LONGS) < fromKey) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			for (int i = low; i < count && entries.get(i * ENTRY_LONGS) <= toKey; ++i) {
+				consumer.accept(entries.get(i * ENTRY_LONGS + 1));
+			}
+		}
+	}
+}
@@ -0,0 +1,390 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import utils.StringUtils;
+
+/**
+ * Уплотнение директории данных: содержимое небольших файлов фамилий, не
+ * изменявшихся заданное время, переносится в новый сегмент (SegmentStore),
+ * а сами файлы удаляются. Последующие записи фамилии дописываются в новый
+ * файл фамилии, так что сегменты не изменяются. Блоки файла формата,
+ * сжатого блоками (BlockCompressedCodec), -- обычно по одной-две записи --
+ * сжимаются в сегменте заново одним блоком, что сжимает их существенно
+ * лучше.
+ * <p>
+ * Содержимое файлов копируется в сегмент без блокировки записи; под
+ * блокировкой записи, предоставляемой пишущим процессом, копируются записи,
+ * дописанные за время копирования, публикуется сегмент и удаляются файлы
+ * фамилий. Перед публикацией сегмента список удаляемых файлов сохраняется
+ * в файле .pending, так что уплотнение, прерванное сбоем, завершается (либо
+ * отменяется) при следующем создании объекта.
+ * <p>
+ * Уплотнение допускает одновременную запись только процессом, которому
+ * принадлежит блокировка записи.
+ */
+public final class SegmentCompactor {
+
+	/**
+	 * Наибольший размер уплотняемого файла фамилии по умолчанию, байт.
+	 */
+	public static final long DEFAULT_MAX_FILE_BYTES = 64 * 1024;
+	/**
+	 * Размер сегмента по умолчанию, при достижении которого в сегмент более
+	 * не добавляются файлы, байт.
+	 */
+	public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String PENDING_SUFFIX = ".pending";
+	// Уплотнение единственного файла не сокращает числа файлов.
+	private static final int MIN_FILES = 2;
+
+	/**
+	 * Действия пишущего процесса, выполняемые под блокировкой записи.
+	 */
+	public interface Writer {
+		/**
+		 * Сбрасывает буферизованные записи файла фамилии на диск и
+		 * закрывает файл, если он удерживается открытым.
+		 */
+		void release(Path file) throws IOException;
+
+		/**
+		 * Вызывается после публикации сегмента и удаления уплотнённых
+		 * файлов фамилий.
+		 */
+		void compacted(List<Path> files, Path segment) throws IOException;
+	}
+
+	private final Path dataDir;
+	private final Path segmentsDir;
+	private final byte[] header;
+	// Записи (блоки) форматов с заголовком следуют без разделителей.
+	private final boolean hasHeader;
+	// Формат, сжатый блоками, либо null.
+	private final BlockCompressedCodec compressed;
+	private final long maxFileBytes;
+	private final long segmentBytes;
+	private int nextSegmentNumber = 1;
+
+	/**
+	 * @param dataDir      Директория данных.
+	 * @param codec        Формат хранения записей; файлы иного формата не
+	 *                     уплотняются.
+	 * @param maxFileBytes Наибольший размер уплотняемого файла фамилии, байт.
+	 * @param segmentBytes Размер сегмента, при достижении которого в сегмент
+	 *                     более не добавляются файлы, байт.
+	 * @throws IOException если не удалось завершить прерванное уплотнение.
+	 */
+	public SegmentCompactor(Path dataDir, RecordCodec codec, long maxFileBytes, long segmentBytes)
+			throws IOException {
+		if (maxFileBytes < 1 || segmentBytes < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.dataDir = dataDir;
+		this.segmentsDir = dataDir.resolve(SegmentStore.SEGMENTS_DIR);
+		this.header = codec.header();
+		this.hasHeader = header.length > 0;
+		this.compressed = codec instanceof BlockCompressedCodec blocks ? blocks : null;
+		this.maxFileBytes = maxFileBytes;
+		this.segmentBytes = segmentBytes;
+		recover();
+	}
+
+	/**
+	 * Уплотняет файлы фамилий, не изменявшиеся заданное время, в новый
+	 * сегмент.
+	 *
+	 * @param coldAgeMillis Время, в течение которого файл не изменялся, мс.
+	 * @param writeLock     Блокировка записи в файлы фамилий.
+	 * @param writer        Действия пишущего процесса.
+	 * @return Число уплотнённых файлов.
+	 */
+	public int compact(long coldAgeMillis, Lock writeLock, Writer writer) throws IOException {
+		long coldBefore = System.currentTimeMillis() - coldAgeMillis;
+		var files = new ArrayList<Path>();
+		long total = 0;
+		for (var file : RecordFiles.listSurnameFiles(dataDir)) {
+			if (total >= segmentBytes) {
+				break;
+			}
+			try {
+				long size = Files.size(file);
+				if (size <= maxFileBytes && Files.getLastModifiedTime(file).toMillis() < coldBefore) {
+					files.add(file);
+					total += size;
+				}
+			} catch (NoSuchFileException e) {
+				// файл удалён
+			}
+		}
+		if (files.size() < MIN_FILES) {
+			return 0;
+		}
+
+		Files.createDirectories(segmentsDir);
+		var name = String.format("%s%012d", SegmentStore.SEGMENT_PREFIX, nextSegmentNumber++);
+		var segment = segmentsDir.resolve(name + SegmentStore.DATA_SUFFIX);
+		var temp = segmentsDir.resolve(name + SegmentStore.DATA_SUFFIX + TEMP_SUFFIX);
+		var builder = new SegmentBuilder(temp);
+		boolean published = false;
+		try {
+			// Файлы копируются без блокировки записи.
+			var copied = new long[files.size()];
+			for (int i = 0; i < files.size(); ++i) {
+				copied[i] = builder.copy(files.get(i), 0);
+			}
+
+			writeLock.lock();
+			try {
+				var compacted = new ArrayList<Path>(files.size());
+				var lengths = new ArrayList<Long>(files.size());
+				for (int i = 0; i < files.size(); ++i) {
+					var file = files.get(i);
+					if (copied[i] < 0) {
+						continue;
+					}
+					writer.release(file);
+					long length = builder.copy(file, copied[i]);
+					if (length < 0) {
+						throw new IOException(String.format("Файл '%s' изменён во время уплотнения.", file));
+					}
+					compacted.add(file);
+					lengths.add(length);
+				}
+
+				builder.finish(segment);
+				var pending = segmentsDir.resolve(name + PENDING_SUFFIX);
+				writePending(pending, compacted, lengths);
+				Files.move(segmentsDir.resolve(name + SegmentStore.INDEX_SUFFIX + TEMP_SUFFIX),
+						SegmentStore.indexOf(segment), StandardCopyOption.ATOMIC_MOVE);
+				published = true;
+				for (var file : compacted) {
+					Files.deleteIfExists(file);
+				}
+				Files.delete(pending);
+				writer.compacted(compacted, segment);
+				return compacted.size();
+
+			} finally {
+				writeLock.unlock();
+			}
+
+		} catch (IOException | RuntimeException e) {
+			// Опубликованный сегмент не отменяется: удаление уплотнённых
+			// файлов завершается при следующем создании объекта.
+			if (!published) {
+				builder.abort(segment);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Завершает уплотнение, прерванное после сохранения списка удаляемых
+	 * файлов: если сегмент опубликован, файлы удаляются. Неопубликованные и
+	 * незавершённые файлы сегментов удаляются.
+	 */
+	private void recover() throws IOException {
+		if (!Files.isDirectory(segmentsDir)) {
+			return;
+		}
+		var names = new ArrayList<Path>();
+		try (var stream = Files.newDirectoryStream(segmentsDir)) {
+			stream.forEach(names::add);
+		}
+		names.sort(null);
+
+		for (var file : names) {
+			var fileName = file.getFileName().toString();
+			if (fileName.endsWith(TEMP_SUFFIX)) {
+				Files.deleteIfExists(file);
+				continue;
+			}
+			if (fileName.startsWith(SegmentStore.SEGMENT_PREFIX)) {
+				int end = fileName.indexOf('.');
+				nextSegmentNumber = Math.max(nextSegmentNumber,
+						Integer.parseInt(fileName.substring(SegmentStore.SEGMENT_PREFIX.length(), end)) + 1);
+			}
+			if (fileName.endsWith(SegmentStore.DATA_SUFFIX) && !Files.exists(SegmentStore.indexOf(file))) {
+				// Сегмент не опубликован.
+				Files.delete(file);
+				continue;
+			}
+			if (!fileName.endsWith(PENDING_SUFFIX)) {
+				continue;
+			}
+
+			var name = fileName.substring(0, fileName.length() - PENDING_SUFFIX.length());
+			var segment = segmentsDir.resolve(name + SegmentStore.DATA_SUFFIX);
+			if (Files.exists(SegmentStore.indexOf(segment))) {
+				for (var line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+					int tab = line.lastIndexOf('\t');
+					var compacted = dataDir.resolve(line.substring(0, tab));
+					// Файл, дописанный после уплотнения, сохраняется.
+					if (Files.exists(compacted) && Files.size(compacted) == Long.parseLong(line.substring(tab + 1))) {
+						Files.delete(compacted);
+					}
+				}
+			} else {
+				Files.deleteIfExists(segment);
+			}
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Сохраняет список уплотнённых файлов: по строке "путь\tдлина" на файл,
+	 * путь -- относительно директории данных.
+	 */
+	private void writePending(Path pending, List<Path> files, List<Long> lengths) throws IOException {
+		var lines = new ArrayList<String>(files.size());
+		for (int i = 0; i < files.size(); ++i) {
+			lines.add(dataDir.relativize(files.get(i)).toString() + '\t' + lengths.get(i));
+		}
+		try (var channel = FileChannel.open(pending, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			var bytes = ByteBuffer.wrap(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Построение файла данных сегмента и таблицы его участков.
+	 */
+	private final class SegmentBuilder {
+		final Path temp;
+		final FileChannel channel;
+		final List<byte[]> keys = new ArrayList<>();
+		final List<Long> offsets = new ArrayList<>();
+		final List<Long> lengths = new ArrayList<>();
+
+		SegmentBuilder(Path temp) throws IOException {
+			this.temp = temp;
+			this.channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		}
+
+		/**
+		 * Копирует в сегмент записи файла фамилии, начиная с заданного
+		 * смещения, в виде отдельного участка.
+		 *
+		 * @return Длина скопированной части файла, либо -1, если файл
+		 *         отсутствует, записан в ином формате или стал короче
+		 *         заданного смещения.
+		 */
+		long copy(Path file, long from) throws IOException {
+			try (var in = FileChannel.open(file, StandardOpenOption.READ)) {
+				long size = in.size();
+				if (size < from || (size > 0 && !Arrays.equals(RecordFiles.headerOf(in), header))) {
+					return -1;
+				}
+				long start = from;
+				if (from == 0 && hasHeader) {
+					start = Math.min(size, header.length);
+				} else if (from > 0 && !hasHeader) {
+					// Записи, дописанные в непустой файл, предваряются
+					// разделителем.
+					start = Math.min(size, from + RecordFiles.LINE_SEPARATOR.length);
+				}
+				if (start < size) {
+					append(file, in, start, size);
+				}
+				return size;
+
+			} catch (NoSuchFileException e) {
+				return -1;
+			}
+		}
+
+		private void append(Path file, FileChannel in, long from, long to) throws IOException {
+			long position = channel.size();
+			if (position == 0 && hasHeader) {
+				write(ByteBuffer.wrap(header));
+			} else if (position > 0 && !hasHeader) {
+				write(ByteBuffer.wrap(RecordFiles.LINE_SEPARATOR));
+			}
+			long offset = channel.size();
+			if (compressed != null) {
+				write(recompress(file, in, from, to));
+			} else {
+				long transferred = from;
+				while (transferred < to) {
+					transferred += in.transferTo(transferred, to - transferred, channel.position(channel.size()));
+				}
+			}
+			keys.add(StringUtils.foldCase(file.getFileName().toString()).getBytes(StandardCharsets.UTF_8));
+			offsets.add(offset);
+			lengths.add(channel.size() - offset);
+		}
+
+		/**
+		 * Распаковывает блоки участка файла сжатого формата и сжимает их
+		 * данные одним блоком.
+		 */
+		private ByteBuffer recompress(Path file, FileChannel in, long from, long to) throws IOException {
+			var data = new ArrayList<ByteBuffer>();
+			var separator = ByteBuffer.wrap(compressed.separator());
+			try (var blocks = new BlockCompressedCodec.BlockReader(file, in, from, to)) {
+				ByteBuffer block;
+				while ((block = blocks.next()) != null) {
+					if (!data.isEmpty()) {
+						data.add(separator.duplicate());
+					}
+					data.add(ByteBuffer.wrap(Arrays.copyOfRange(block.array(), block.position(), block.limit())));
+				}
+			}
+			return compressed.compress(data.toArray(new ByteBuffer[0]));
+		}
+
+		private void write(ByteBuffer bytes) throws IOException {
+			channel.position(channel.size());
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		}
+
+		/**
+		 * Сбрасывает файл данных сегмента на диск, переименовывает его и
+		 * записывает индекс во временный файл.
+		 */
+		void finish(Path segment) throws IOException {
+			channel.force(true);
+			channel.close();
+			Files.move(temp, segment, StandardCopyOption.ATOMIC_MOVE);
+			var name = segment.getFileName().toString();
+			SegmentStore.writeIndex(
+					segment.resolveSibling(name.substring(0, name.length() - SegmentStore.DATA_SUFFIX.length())
+							+ SegmentStore.INDEX_SUFFIX + TEMP_SUFFIX),
+					keys, offsets, lengths);
+		}
+
+		void abort(Path segment) {
+			try {
+				channel.close();
+				Files.deleteIfExists(temp);
+				Files.deleteIfExists(segment);
+				var name = segment.getFileName().toString();
+				name = name.substring(0, name.length() - SegmentStore.DATA_SUFFIX.length());
+				Files.deleteIfExists(segment.resolveSibling(name + SegmentStore.INDEX_SUFFIX + TEMP_SUFFIX));
+				Files.deleteIfExists(segment.resolveSibling(name + PENDING_SUFFIX));
+			} catch (IOException e) {
+				// временный файл удаляется при следующем создании объекта
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import utils.StringUtils;
+
+/**
+ * Сегменты уплотнённых данных: большие файлы в поддиректории .segments
+ * директории данных, в которые SegmentCompactor переносит содержимое
+ * небольших давно не изменявшихся файлов фамилий.
+ * <p>
+ * Сегмент состоит из файла данных (.dat) и файла индекса (.idx). Файл данных
+ * сам является файлом данных того же формата, что и файлы фамилий: в
+ * текстовом формате -- содержимое файлов фамилий, разделённое переводом
+ * строки, в двоичном -- заголовок формата и записи файлов фамилий, поэтому
+ * просмотр всех записей не отличает сегменты от файлов фамилий. Индекс
+ * сегмента -- упорядоченная по фамилии в свёрнутом регистре таблица
+ * участков файла данных, содержащих записи фамилии:
+ *
+ * <pre>
+ * int сигнатура, int версия, int число участков
+ * участки: long смещение, long длина, int смещение ключа, int длина ключа
+ * ключи: фамилии в свёрнутом регистре, UTF-8
+ * </pre>
+ *
+ * Сегмент считается опубликованным, когда имеются оба его файла; файл
+ * индекса появляется последним. Сегменты не изменяются после публикации.
+ */
+public final class SegmentStore {
+
+	static final String SEGMENTS_DIR = ".segments";
+	static final String DATA_SUFFIX = ".dat";
+	static final String INDEX_SUFFIX = ".idx";
+	static final String SEGMENT_PREFIX = "segment-";
+
+	static final int INDEX_MAGIC = 0x55445349;
+	static final int INDEX_VERSION = 1;
+	static final int INDEX_HEADER_BYTES = 3 * Integer.BYTES;
+	static final int INDEX_ENTRY_BYTES = 2 * Long.BYTES + 2 * Integer.BYTES;
+
+	/**
+	 * Участок файла данных сегмента, содержащий записи фамилии.
+	 */
+	public static final class Entry {
+		private final Path segment;
+		private final long offset;
+		private final long length;
+
+		Entry(Path segment, long offset, long length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * @return Путь к файлу данных сегмента.
+		 */
+		public Path getSegment() {
+			return segment;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public long getLength() {
+			return length;
+		}
+	}
+
+	/**
+	 * Перечисляет файлы данных опубликованных сегментов в порядке их
+	 * создания.
+	 */
+	public static List<Path> listSegments(Path dataDir) throws IOException {
+		var segments = new ArrayList<Path>();
+		try (var stream = Files.newDirectoryStream(dataDir.resolve(SEGMENTS_DIR), "*" + DATA_SUFFIX)) {
+			for (var segment : stream) {
+				if (Files.exists(indexOf(segment))) {
+					segments.add(segment);
+				}
+			}
+		} catch (NoSuchFileException e) {
+			// уплотнение не выполнялось
+		}
+		segments.sort(null);
+		return segments;
+	}
+
+	/**
+	 * Нечувствительный к регистру поиск участков сегментов, содержащих
+	 * записи фамилии, -- двоичным поиском по индексам сегментов.
+	 *
+	 * @return Участки в порядке создания сегментов.
+	 */
+	public static List<Entry> find(Path dataDir, String lastName) throws IOException {
+		var key = StringUtils.foldCase(lastName).getBytes(StandardCharsets.UTF_8);
+		var found = new ArrayList<Entry>();
+		for (var segment : listSegments(dataDir)) {
+			ByteBuffer index;
+			try (var channel = FileChannel.open(indexOf(segment), StandardOpenOption.READ)) {
+				index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			int count = entriesCount(index, segment);
+
+			// Первый участок с ключом, не меньшим искомого.
+			int low = 0;
+			int high = count;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (compareKey(index, middle, key) < 0) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			for (int i = low; i < count && compareKey(index, i, key) == 0; ++i) {
+				int entry = INDEX_HEADER_BYTES + i * INDEX_ENTRY_BYTES;
+				found.add(new Entry(segment, index.getLong(entry), index.getLong(entry + Long.BYTES)));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @return Путь к файлу индекса сегмента.
+	 */
+	static Path indexOf(Path segment) {
+		var name = segment.getFileName().toString();
+		return segment.resolveSibling(name.substring(0, name.length() - DATA_SUFFIX.length()) + INDEX_SUFFIX);
+	}
+
+	/**
+	 * Записывает индекс сегмента.
+	 *
+	 * @param keys    Фамилии участков в свёрнутом регистре, UTF-8.
+	 * @param offsets Смещения участков.
+	 * @param lengths Длины участков.
+	 */
+	static void writeIndex(Path file, List<byte[]> keys, List<Long> offsets, List<Long> lengths)
+			throws IOException {
+		int count = keys.size();
+		var order = new Integer[count];
+		for (int i = 0; i < count; ++i) {
+			order[i] = i;
+		}
+		// Участки одной фамилии сохраняют порядок следования в сегменте.
+		Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys.get(a), keys.get(b)));
+
+		int keysBytes = 0;
+		for (var key : keys) {
+			keysBytes += key.length;
+		}
+		var buffer = ByteBuffer.allocate(INDEX_HEADER_BYTES + count * INDEX_ENTRY_BYTES + keysBytes);
+		buffer.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putInt(count);
+		int keyOffset = INDEX_HEADER_BYTES + count * INDEX_ENTRY_BYTES;
+		for (int i : order) {
+			buffer.putLong(offsets.get(i)).putLong(lengths.get(i)).putInt(keyOffset).putInt(keys.get(i).length);
+			keyOffset += keys.get(i).length;
+		}
+		for (int i : order) {
+			buffer.put(keys.get(i));
+		}
+		buffer.flip();
+
+		try (var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+	}
+
+	private static int entriesCount(ByteBuffer index, Path segment) throws IOException {
+		if (index.limit() < INDEX_HEADER_BYTES || index.getInt(0) != INDEX_MAGIC
+				|| index.getInt(Integer.BYTES) != INDEX_VERSION) {
+			throw new IOException(String.format("Индекс сегмента '%s' повреждён.", segment));
+		}
+		int count = index.getInt(2 * Integer.BYTES);
+		if (count < 0 || INDEX_HEADER_BYTES + (long) count * INDEX_ENTRY_BYTES > index.limit()) {
+			throw new IOException(String.format("Индекс сегмента '%s' повреждён.", segment));
+		}
+		return count;
+	}
+
+	/**
+	 * Сравнивает ключ участка с заданным как беззнаковые последовательности
+	 * байт (что для UTF-8 совпадает с порядком символов).
+	 */
+	private static int compareKey(ByteBuffer index, int entryNumber, byte[] key) {
+		int entry = INDEX_HEADER_BYTES + entryNumber * INDEX_ENTRY_BYTES;
+		int keyOffset = index.getInt(entry + 2 * Long.BYTES);
+		int keyLength = index.getInt(entry + 2 * Long.BYTES + Integer.BYTES);
+		int length = Math.min(keyLength, key.length);
+		for (int i = 0; i < length; ++i) {
+			int difference = (index.get(keyOffset + i) & 0xFF) - (key[i] & 0xFF);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return keyLength - key.length;
+	}
+}
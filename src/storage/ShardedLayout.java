@@ -0,0 +1,379 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import utils.StringUtils;
+
+/**
+ * Сегментированное размещение файлов фамилий в директории данных: файл
+ * фамилии помещается в двухуровневую поддиректорию сегмента, определяемую
+ * хешем фамилии в свёрнутом регистре, например ab/cd/Гусев. Фамилии,
+ * совпадающие без учёта регистра, попадают в один сегмент, поэтому поиск
+ * файла без учёта регистра просматривает лишь директорию сегмента.
+ * <p>
+ * Директория данных верхнего уровня содержит не более 256 директорий
+ * сегментов (и служебные файлы), каждая из них -- не более 256 поддиректорий,
+ * а файлы фамилий распределяются по 65 536 директориям равномерно.
+ * <p>
+ * Размещение определяется директорией данных: сегментированная директория
+ * содержит служебный файл .sharded. Файлы фамилий, остающиеся на верхнем
+ * уровне сегментированной директории (ещё не перенесённые в сегменты),
+ * продолжают использоваться до переноса (метод reshard). Служебный файл
+ * .migrated отмечает директорию, на верхнем уровне которой файлов фамилий
+ * нет: сегментированную до их создания либо после переноса. Поиск в такой
+ * директории не просматривает верхний уровень; файл, созданный на верхнем
+ * уровне процессом, ещё не обнаружившим сегментирование, находится после
+ * повторного переноса.
+ */
+public final class ShardedLayout {
+
+	static final String MARKER_FILE = ".sharded";
+	static final String MIGRATED_FILE = ".migrated";
+
+	private static final int FNV_OFFSET_BASIS = 0x811c9dc5;
+	private static final int FNV_PRIME = 0x01000193;
+	private static final String RESHARD_TEMP_PREFIX = ".reshard-";
+
+	/**
+	 * @return true, если директория данных сегментирована.
+	 */
+	public static boolean isSharded(Path dataDir) {
+		return Files.exists(dataDir.resolve(MARKER_FILE));
+	}
+
+	/**
+	 * @return true, если на верхнем уровне сегментированной директории
+	 *         данных нет файлов фамилий, не перенесённых в сегменты.
+	 */
+	public static boolean isMigrated(Path dataDir) {
+		return Files.exists(dataDir.resolve(MIGRATED_FILE));
+	}
+
+	/**
+	 * Делает директорию данных сегментированной: новые файлы фамилий
+	 * создаются в директориях сегментов. Существующие файлы верхнего уровня
+	 * не переносятся.
+	 */
+	public static void enable(Path dataDir) throws IOException {
+		try {
+			Files.createFile(dataDir.resolve(MARKER_FILE));
+		} catch (FileAlreadyExistsException e) {
+			// директория уже сегментирована
+			return;
+		}
+		if (!hasTopLevelFiles(dataDir)) {
+			markMigrated(dataDir);
+		}
+	}
+
+	/**
+	 * @param fileName Имя файла фамилии.
+	 * @return Путь к директории сегмента, в которой размещается файл.
+	 */
+	public static Path shardOf(Path dataDir, String fileName) {
+		int hash = hash(StringUtils.foldCase(fileName));
+		return dataDir.resolve(String.format("%02x", hash >>> 24))
+				.resolve(String.format("%02x", (hash >>> 16) & 0xFF));
+	}
+
+	/**
+	 * @return true, если имя является именем директории сегмента (любого
+	 *         уровня).
+	 */
+	public static boolean isShardName(String name) {
+		return name.length() == 2 && isHexDigit(name.charAt(0)) && isHexDigit(name.charAt(1));
+	}
+
+	/**
+	 * Нечувствительный к регистру поиск файла в директории его сегмента.
+	 *
+	 * @return Путь к файлу, либо null, если файла не найдено.
+	 */
+	public static Path findInShard(Path dataDir, String fileName) throws IOException {
+		try (var stream = Files.newDirectoryStream(shardOf(dataDir, fileName))) {
+			for (var file : stream) {
+				if (file.getFileName().toString().equalsIgnoreCase(fileName)) {
+					return file;
+				}
+			}
+		} catch (NoSuchFileException e) {
+			// сегмент ещё не создан
+		}
+		return null;
+	}
+
+	/**
+	 * Создаёт директорию сегмента файла. Файл фамилии верхнего уровня,
+	 * занимающий место директории сегмента, предварительно переносится в
+	 * собственный сегмент.
+	 *
+	 * @return Путь к директории сегмента.
+	 */
+	public static Path createShard(Path dataDir, String fileName) throws IOException {
+		var shard = shardOf(dataDir, fileName);
+		var top = shard.getParent();
+		if (Files.isRegularFile(top)) {
+			var aside = dataDir.resolve(RESHARD_TEMP_PREFIX + top.getFileName());
+			move(top, aside);
+			Files.createDirectories(shard);
+			reshard(dataDir, aside, top.getFileName().toString());
+		} else {
+			Files.createDirectories(shard);
+		}
+		return shard;
+	}
+
+	/**
+	 * Перечисляет файлы данных сегментированной директории: файлы
+	 * сегментов и файлы верхнего уровня, ещё не перенесённые в сегменты.
+	 * Файл, перенесённый в сегмент во время перечисления, перечисляется
+	 * однократно.
+	 */
+	static List<Path> listDataFiles(Path dataDir) throws IOException {
+		var topLevel = new ArrayList<Path>();
+		var files = new ArrayList<Path>();
+		try (var stream = Files.newDirectoryStream(dataDir, ShardedLayout::isDataEntry)) {
+			for (var entry : stream) {
+				if (!isShardName(entry.getFileName().toString()) || !Files.isDirectory(entry)) {
+					topLevel.add(entry);
+					continue;
+				}
+				try (var shards = Files.newDirectoryStream(entry, ShardedLayout::isShard)) {
+					for (var shard : shards) {
+						try (var shardFiles = Files.newDirectoryStream(shard, ShardedLayout::isDataEntry)) {
+							for (var file : shardFiles) {
+								if (Files.isRegularFile(file)) {
+									files.add(file);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+
+		// Файлы верхнего уровня проверяются после просмотра сегментов: файл,
+		// перенесённый в сегмент после просмотра верхнего уровня, заменяется
+		// файлом сегмента.
+		var listed = new HashSet<>(files);
+		for (var file : topLevel) {
+			var moved = shardOf(dataDir, file.getFileName().toString()).resolve(file.getFileName());
+			if (Files.isRegularFile(file)) {
+				if (!listed.contains(moved) || !Files.isSameFile(file, moved)) {
+					files.add(file);
+				}
+			} else if (!listed.contains(moved) && Files.isRegularFile(moved)) {
+				files.add(moved);
+			}
+		}
+		files.sort(null);
+		return files;
+	}
+
+	/**
+	 * Переносит файлы фамилий верхнего уровня директории данных в
+	 * директории их сегментов, предварительно делая директорию
+	 * сегментированной. Перенос выполняется переименованием файлов, поэтому
+	 * данные остаются доступными для чтения и записи во время переноса;
+	 * файл, имеющий в сегменте одноимённый (без учёта регистра) файл,
+	 * дописывается в него и удаляется. Повторный вызов переносит файлы,
+	 * появившиеся на верхнем уровне после предыдущего.
+	 *
+	 * @return Число перенесённых файлов.
+	 */
+	public static int reshard(Path dataDir) throws IOException {
+		enable(dataDir);
+		int moved = 0;
+		try (var stream = Files.newDirectoryStream(dataDir)) {
+			for (var file : stream) {
+				var name = file.getFileName().toString();
+				if (name.startsWith(RESHARD_TEMP_PREFIX)) {
+					// Файл, отложенный прерванным переносом.
+					name = name.substring(RESHARD_TEMP_PREFIX.length());
+				} else if (name.startsWith(".") || !Files.isRegularFile(file)) {
+					continue;
+				}
+				if (Files.isRegularFile(file)) {
+					reshard(dataDir, file, name);
+					++moved;
+				}
+			}
+		}
+		// Файлы, созданные на верхнем уровне во время переноса, оставляют
+		// директорию неперенесённой до следующего вызова.
+		if (!hasTopLevelFiles(dataDir)) {
+			markMigrated(dataDir);
+		}
+		return moved;
+	}
+
+	private static boolean hasTopLevelFiles(Path dataDir) throws IOException {
+		try (var stream = Files.newDirectoryStream(dataDir, ShardedLayout::isDataEntry)) {
+			for (var entry : stream) {
+				if (Files.isRegularFile(entry)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static void markMigrated(Path dataDir) throws IOException {
+		try {
+			Files.createFile(dataDir.resolve(MIGRATED_FILE));
+		} catch (FileAlreadyExistsException e) {
+			// отметка уже создана
+		}
+	}
+
+	/**
+	 * Переносит файл в директорию сегмента, дописывая его в одноимённый
+	 * (без учёта регистра) файл сегмента, если таковой имеется.
+	 */
+	private static void reshard(Path dataDir, Path file, String fileName) throws IOException {
+		createShard(dataDir, fileName);
+		var existing = findInShard(dataDir, fileName);
+		var target = existing != null ? existing : shardOf(dataDir, fileName).resolve(fileName);
+		if (existing == null) {
+			try {
+				move(file, target);
+				moveFilter(dataDir, dataDir.resolve(fileName), target);
+				return;
+			} catch (FileAlreadyExistsException e) {
+				// файл создан в сегменте одновременно с переносом
+			}
+		}
+		merge(file, target);
+		Files.deleteIfExists(dataDir.resolve(DuplicateFilter.FILTERS_DIR).resolve(fileName));
+	}
+
+	/**
+	 * Дописывает записи файла в файл того же формата и удаляет исходный
+	 * файл. Оба файла блокируются (FileLock), так что дописывание
+	 * согласовано с записью в режиме совместного доступа. Исходный файл
+	 * удаляется под блокировкой: запись, ожидавшая блокировки исходного
+	 * файла, обнаруживает его удаление и открывает файл заново
+	 * (RecordFiles.append).
+	 */
+	private static void merge(Path source, Path target) throws IOException {
+		// Блокировки снимаются закрытием каналов.
+		try (var in = FileChannel.open(source, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				var out = RecordFiles.openForAppend(target)) {
+			out.lock();
+			in.lock();
+
+			long size = in.size();
+			if (size > 0) {
+				var header = RecordFiles.headerOf(in);
+				if (out.size() > 0 && !Arrays.equals(RecordFiles.headerOf(out), header)) {
+					throw new IOException(String.format("Форматы файлов '%s' и '%s' не совпадают.", source, target));
+				}
+				if (BlockCompressedCodec.hasMagic(ByteBuffer.wrap(header))) {
+					// Блоки, оборванные в конце файлов, не переносятся.
+					size = BlockCompressedCodec.completeLength(in, header.length);
+					if (out.size() > 0) {
+						out.truncate(BlockCompressedCodec.completeLength(out, header.length));
+					}
+				}
+				long from = 0;
+				if (out.size() > 0) {
+					// Заголовок формата уже записан в целевой файл; записи
+					// текстового формата разделяются переводом строки.
+					if (header.length > 0) {
+						from = header.length;
+					} else {
+						write(out, ByteBuffer.wrap(RecordFiles.LINE_SEPARATOR));
+					}
+				}
+				long position = from;
+				while (position < size) {
+					position += in.transferTo(position, size - position, out.position(out.size()));
+				}
+				out.force(true);
+			}
+			Files.delete(source);
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer bytes) throws IOException {
+		channel.position(channel.size());
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+	}
+
+	/**
+	 * Переносит сохранённый фильтр Блума файла (DuplicateFilter) вслед за
+	 * файлом.
+	 */
+	private static void moveFilter(Path dataDir, Path file, Path target) throws IOException {
+		var filtersDir = dataDir.resolve(DuplicateFilter.FILTERS_DIR);
+		var filter = filtersDir.resolve(dataDir.relativize(file));
+		if (Files.exists(filter)) {
+			var targetFilter = filtersDir.resolve(dataDir.relativize(target));
+			Files.createDirectories(targetFilter.getParent());
+			Files.move(filter, targetFilter, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Переименовывает файл, не заменяя существующий: создаётся жёсткая
+	 * ссылка на файл (что атомарно и завершается ошибкой, если файл
+	 * существует), после чего исходное имя удаляется. Файл, открытый
+	 * другими процессами, остаётся тем же файлом.
+	 *
+	 * @throws FileAlreadyExistsException если целевой файл существует.
+	 */
+	private static void move(Path file, Path target) throws IOException {
+		try {
+			Files.createLink(target, file);
+		} catch (UnsupportedOperationException e) {
+			Files.move(file, target);
+			return;
+		}
+		Files.delete(file);
+	}
+
+	/**
+	 * @return Хеш FNV-1a байтов имени (UTF-8), перемешанный финализатором
+	 *         MurmurHash3. Хеш определяет размещение файлов и не должен
+	 *         изменяться.
+	 */
+	private static int hash(String foldedName) {
+		int hash = FNV_OFFSET_BASIS;
+		for (byte b : foldedName.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xFF;
+			hash *= FNV_PRIME;
+		}
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean isDataEntry(Path entry) {
+		return !entry.getFileName().toString().startsWith(".");
+	}
+
+	private static boolean isShard(Path entry) {
+		return isShardName(entry.getFileName().toString()) && Files.isDirectory(entry);
+	}
+
+	private static boolean isHexDigit(char c) {
+		return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+	}
+}
@@ -0,0 +1,39 @@
+package storage;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import utils.StringUtils;
+
+/**
+ * Набор блокировок, распределяемых по именам файлов без учёта регистра:
+ * одному имени всегда соответствует одна и та же блокировка, а операции над
+ * файлами, попавшими в разные полосы, не блокируют друг друга.
+ */
+public final class StripedLocks {
+
+	private final ReentrantLock[] stripes;
+
+	/**
+	 * @param stripesCount Число полос; округляется вверх до степени двойки.
+	 */
+	public StripedLocks(int stripesCount) {
+		if (stripesCount < 1) {
+			throw new IllegalArgumentException();
+		}
+		int size = Integer.highestOneBit(stripesCount - 1) << 1;
+		stripes = new ReentrantLock[Math.max(size, 1)];
+		for (int i = 0; i < stripes.length; ++i) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * @param name Имя файла.
+	 * @return Блокировка, соответствующая имени без учёта регистра.
+	 */
+	public ReentrantLock lockFor(String name) {
+		int hash = StringUtils.foldCase(name).hashCode();
+		hash ^= hash >>> 16;
+		return stripes[hash & (stripes.length - 1)];
+	}
+}
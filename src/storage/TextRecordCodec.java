@@ -0,0 +1,40 @@
+package storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+import entities.UserData;
+
+/**
+ * Текстовый формат хранения записей: строковое представление записи в
+ * кодировке UTF-8, записи разделяются системным разделителем строк.
+ */
+public final class TextRecordCodec implements RecordCodec {
+
+	private static final byte[] NO_HEADER = new byte[0];
+
+	private final Function<UserData, String> getAsString;
+
+	/**
+	 * @param getAsString Функция приведения экземпляра пользовательских данных
+	 *                    к строковому представлению.
+	 */
+	public TextRecordCodec(Function<UserData, String> getAsString) {
+		this.getAsString = getAsString;
+	}
+
+	@Override
+	public byte[] header() {
+		return NO_HEADER;
+	}
+
+	@Override
+	public byte[] separator() {
+		return RecordFiles.LINE_SEPARATOR;
+	}
+
+	@Override
+	public byte[] encode(UserData userData) {
+		return getAsString.apply(userData).getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,482 @@
+package storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import entities.UserData;
+
+/**
+ * Последовательное чтение записей пользовательских данных из файла данных
+ * или из всех файлов директории данных в виде ленивого потока
+ * Stream&lt;UserData&gt;.
+ * <p>
+ * Файлы читаются через FileChannel блоками фиксированного размера, записи
+ * разбираются по мере чтения, так что объём используемой памяти не зависит
+ * от размера файлов. Поддерживаются текстовый, двоичный (BinaryRecordCodec)
+ * и сжатый блоками (BlockCompressedCodec) форматы; некорректные строки
+ * текстового формата пропускаются.
+ * <p>
+ * Поток допускает параллельную обработку: разделяется по файлам, а файл
+ * текстового формата -- по диапазонам байтов, границы которых выравниваются
+ * по границам строк (сжатого формата -- по границам блоков).
+ * <p>
+ * Поток следует закрывать (например, в конструкции try-with-resources):
+ * при закрытии закрываются файлы, чтение которых не было завершено.
+ */
+public final class UserDataReader {
+
+	private static final int BUFFER_BYTES = 64 * 1024;
+	// Диапазон байтов файла, меньше которого файл не разделяется.
+	private static final long MIN_SPLIT_BYTES = 1024 * 1024;
+	// Оценка средней длины записи для оценки числа записей.
+	private static final int ESTIMATED_RECORD_BYTES = 64;
+
+	/**
+	 * Создаёт поток записей файла данных либо всех файлов данных директории
+	 * данных.
+	 *
+	 * @param path Путь к файлу или директории данных.
+	 */
+	public static Stream<UserData> stream(Path path) throws IOException {
+		var spliterator = spliterator(path);
+		return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+	}
+
+	/**
+	 * Создаёт разделяемый итератор записей файла данных либо всех файлов
+	 * данных директории данных. Файлы, открытые итератором и итераторами,
+	 * отделёнными от него, закрываются по завершении их чтения либо методом
+	 * close.
+	 *
+	 * @param path Путь к файлу или директории данных.
+	 */
+	public static RecordSpliterator spliterator(Path path) throws IOException {
+		var files = Files.isDirectory(path) ? RecordFiles.listDataFiles(path) : List.of(path);
+		var sizes = new long[files.size()];
+		for (int i = 0; i < sizes.length; ++i) {
+			sizes[i] = Files.size(files.get(i));
+		}
+		return new RecordSpliterator(files, sizes, 0, files.size(), ConcurrentHashMap.newKeySet());
+	}
+
+	/**
+	 * Разделяемый итератор записей набора файлов данных.
+	 */
+	public static final class RecordSpliterator implements Spliterator<UserData>, AutoCloseable {
+		private final List<Path> files;
+		private final long[] sizes;
+		private final Set<FileChannel> openChannels;
+		private int nextFile;
+		private final int endFile;
+		private FileRangeReader current;
+
+		private RecordSpliterator(List<Path> files, long[] sizes, int fromFile, int toFile,
+				Set<FileChannel> openChannels) {
+			this.files = files;
+			this.sizes = sizes;
+			this.nextFile = fromFile;
+			this.endFile = toFile;
+			this.openChannels = openChannels;
+		}
+
+		private RecordSpliterator(FileRangeReader current, Set<FileChannel> openChannels) {
+			this(List.of(), new long[0], 0, 0, openChannels);
+			this.current = current;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super UserData> action) {
+			try {
+				while (true) {
+					if (current == null) {
+						if (nextFile == endFile) {
+							return false;
+						}
+						current = new FileRangeReader(files.get(nextFile), 0, sizes[nextFile], openChannels);
+						++nextFile;
+					}
+
+					var userData = current.next();
+					if (userData != null) {
+						action.accept(userData);
+						return true;
+					}
+					current = null;
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public Spliterator<UserData> trySplit() {
+			if (current == null && endFile - nextFile > 1) {
+				int middle = (nextFile + endFile) >>> 1;
+				var prefix = new RecordSpliterator(files, sizes, nextFile, middle, openChannels);
+				nextFile = middle;
+				return prefix;
+			}
+
+			if (current == null && endFile - nextFile == 1) {
+				current = new FileRangeReader(files.get(nextFile), 0, sizes[nextFile], openChannels);
+				++nextFile;
+			}
+			if (current != null) {
+				try {
+					var prefix = current.trySplit();
+					return prefix != null ? new RecordSpliterator(prefix, openChannels) : null;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public long estimateSize() {
+			long bytes = current != null ? current.remainingBytes() : 0;
+			for (int i = nextFile; i < endFile; ++i) {
+				bytes += sizes[i];
+			}
+			return bytes / ESTIMATED_RECORD_BYTES;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | NONNULL;
+		}
+
+		/**
+		 * Закрывает все файлы, открытые этим итератором и итераторами,
+		 * отделёнными от него.
+		 */
+		@Override
+		public void close() {
+			IOException failure = null;
+			for (var channel : openChannels) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					failure = e;
+				}
+				openChannels.remove(channel);
+			}
+			if (failure != null) {
+				throw new UncheckedIOException(failure);
+			}
+		}
+	}
+
+	/**
+	 * Чтение записей, начинающихся в заданном диапазоне байтов файла.
+	 */
+	private static final class FileRangeReader {
+		private final Path file;
+		private final Set<FileChannel> openChannels;
+		private long start;
+		private final long end;
+
+		private FileChannel channel;
+		private Boolean binary;
+		private boolean compressed;
+		// Смещения блоков файла сжатого формата.
+		private List<Long> blockOffsets;
+		private BlockCompressedCodec.BlockReader blocks;
+		private boolean finished;
+
+		private ByteBuffer buffer;
+		// Смещение начала буфера в файле и границы данных в буфере.
+		private long bufferOffset;
+		private int dataEnd;
+		private int scanEnd;
+		private boolean endOfFile;
+		private boolean skipPartialLine;
+
+		private final RecordScanner scanner = new RecordScanner();
+		private final BinaryRecordCodec codec = new BinaryRecordCodec();
+
+		FileRangeReader(Path file, long start, long end, Set<FileChannel> openChannels) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+			this.openChannels = openChannels;
+		}
+
+		long remainingBytes() {
+			return Math.max(0, end - Math.max(start, bufferOffset));
+		}
+
+		/**
+		 * Отделяет первую половину диапазона, если чтение ещё не начато, а
+		 * файл текстового либо сжатого формата и достаточно велик.
+		 */
+		FileRangeReader trySplit() throws IOException {
+			if (channel != null || finished || end - start < 2 * MIN_SPLIT_BYTES || isBinary()) {
+				return null;
+			}
+			long middle = start + (end - start) / 2;
+			if (compressed) {
+				middle = blockBoundary(middle);
+				if (middle < 0) {
+					return null;
+				}
+			}
+			var prefix = new FileRangeReader(file, start, middle, openChannels);
+			prefix.binary = false;
+			prefix.compressed = compressed;
+			prefix.blockOffsets = blockOffsets;
+			start = middle;
+			return prefix;
+		}
+
+		/**
+		 * @return Смещение блока, ближайшего к заданному смещению и лежащего
+		 *         строго внутри диапазона, либо -1, если такого блока нет.
+		 */
+		private long blockBoundary(long offset) {
+			long boundary = -1;
+			for (long blockOffset : blockOffsets) {
+				if (blockOffset <= start) {
+					continue;
+				}
+				if (blockOffset >= end) {
+					break;
+				}
+				if (boundary < 0 || Math.abs(blockOffset - offset) < Math.abs(boundary - offset)) {
+					boundary = blockOffset;
+				}
+			}
+			return boundary;
+		}
+
+		/**
+		 * @return Следующая запись диапазона, либо null, если записей больше
+		 *         нет.
+		 */
+		UserData next() throws IOException {
+			if (finished) {
+				return null;
+			}
+			if (channel == null) {
+				open();
+			}
+
+			if (compressed) {
+				return nextCompressed();
+			}
+			while (true) {
+				if (binary) {
+					var userData = nextBinary();
+					if (userData != null) {
+						return userData;
+					}
+				} else if (scanner.next()) {
+					// Запись, начинающаяся за пределами диапазона, относится к
+					// следующему диапазону.
+					if (scanner.recordOffset() >= end) {
+						finish();
+						return null;
+					}
+					return scanner.toUserData();
+				}
+
+				if (!fill()) {
+					finish();
+					return null;
+				}
+			}
+		}
+
+		private boolean isBinary() throws IOException {
+			if (binary == null) {
+				try (var probe = FileChannel.open(file, StandardOpenOption.READ)) {
+					detectFormat(probe);
+				}
+			}
+			return binary;
+		}
+
+		/**
+		 * Определяет формат файла, а для файла сжатого формата -- читает
+		 * индекс блоков.
+		 */
+		private void detectFormat(FileChannel channel) throws IOException {
+			var header = RecordFiles.headerOf(channel);
+			binary = BinaryRecordCodec.hasMagic(ByteBuffer.wrap(header));
+			compressed = BlockCompressedCodec.hasMagic(ByteBuffer.wrap(header));
+			if (compressed) {
+				blockOffsets = BlockCompressedCodec.blockOffsets(channel);
+			}
+		}
+
+		private void open() throws IOException {
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+			openChannels.add(channel);
+			if (binary == null) {
+				detectFormat(channel);
+			}
+			if (compressed) {
+				blocks = new BlockCompressedCodec.BlockReader(file, channel, start, end);
+				scanner.reset(ByteBuffer.allocate(0));
+				return;
+			}
+			buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+			if (binary) {
+				readMore();
+				buffer.limit(dataEnd).position(0);
+				BinaryRecordCodec.readHeader(buffer);
+				return;
+			}
+			if (start > 0) {
+				// Строка, в которой находится начало диапазона, относится к
+				// предыдущему диапазону, если не начинается ровно с него.
+				bufferOffset = start - 1;
+				skipPartialLine = true;
+			}
+			scanner.reset(buffer.limit(0));
+		}
+
+		/**
+		 * @return Следующая запись файла сжатого формата, либо null, если
+		 *         записей больше нет.
+		 */
+		private UserData nextCompressed() throws IOException {
+			while (!scanner.next()) {
+				var block = blocks.next();
+				if (block == null) {
+					finish();
+					return null;
+				}
+				scanner.reset(block);
+			}
+			return scanner.toUserData();
+		}
+
+		private UserData nextBinary() throws IOException {
+			int length = BinaryRecordCodec.recordLength(buffer);
+			if (length < 0 || length > buffer.remaining()) {
+				return null;
+			}
+			return codec.decode(buffer);
+		}
+
+		/**
+		 * Перемещает неразобранный остаток данных в начало буфера и дочитывает
+		 * файл.
+		 *
+		 * @return false, если данных для разбора больше нет.
+		 */
+		private boolean fill() throws IOException {
+			int consumed = binary ? buffer.position() : scanEnd;
+			if (endOfFile && consumed == dataEnd) {
+				return false;
+			}
+			compact(consumed);
+			if (!binary && bufferOffset >= end && !skipPartialLine) {
+				return false;
+			}
+
+			while (true) {
+				if (dataEnd == buffer.capacity()) {
+					// запись (строка) не умещается в буфер
+					buffer = ByteBuffer.wrap(Arrays.copyOf(buffer.array(), buffer.capacity() * 2));
+				}
+				readMore();
+
+				if (binary) {
+					buffer.limit(dataEnd).position(0);
+					if (endOfFile && dataEnd > 0) {
+						int length = BinaryRecordCodec.recordLength(buffer);
+						if (length < 0 || length > dataEnd) {
+							throw new IOException(String.format("Файл '%s' содержит оборванную запись.", file));
+						}
+					}
+					return dataEnd > 0 || !endOfFile;
+				}
+
+				if (skipPartialLine) {
+					int lineEnd = indexOfNewLine(0, dataEnd);
+					if (lineEnd < 0) {
+						compact(dataEnd);
+						if (endOfFile) {
+							return false;
+						}
+						continue;
+					}
+					skipPartialLine = false;
+					compact(lineEnd + 1);
+				}
+
+				int lastLineEnd = lastIndexOfNewLine(dataEnd);
+				if (lastLineEnd >= 0 || endOfFile) {
+					scanEnd = endOfFile ? dataEnd : lastLineEnd + 1;
+					scanner.reset(buffer.limit(scanEnd).position(0), bufferOffset);
+					return scanEnd > 0 || !endOfFile;
+				}
+			}
+		}
+
+		private void compact(int consumed) {
+			System.arraycopy(buffer.array(), consumed, buffer.array(), 0, dataEnd - consumed);
+			bufferOffset += consumed;
+			dataEnd -= consumed;
+			scanEnd = 0;
+			buffer.limit(dataEnd).position(0);
+		}
+
+		private void readMore() throws IOException {
+			buffer.limit(buffer.capacity()).position(dataEnd);
+			int read = channel.read(buffer, bufferOffset + dataEnd);
+			if (read < 0) {
+				endOfFile = true;
+			} else {
+				dataEnd += read;
+			}
+		}
+
+		private int indexOfNewLine(int from, int to) {
+			var bytes = buffer.array();
+			for (int i = from; i < to; ++i) {
+				if (bytes[i] == '\n') {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private int lastIndexOfNewLine(int to) {
+			var bytes = buffer.array();
+			for (int i = to - 1; i >= 0; --i) {
+				if (bytes[i] == '\n') {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private void finish() throws IOException {
+			finished = true;
+			if (blocks != null) {
+				blocks.close();
+			}
+			if (channel != null) {
+				openChannels.remove(channel);
+				channel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,410 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал упреждающей записи (write-ahead log) с групповой фиксацией.
+ * <p>
+ * Записи журнала дописываются последовательно в файлы-сегменты и
+ * фиксируются (сбрасываются на диск с помощью fsync) группами: фиксация
+ * выполняется отдельным потоком, как только накоплено заданное число записей
+ * либо истекло заданное время с момента поступления первой записи группы.
+ * Одна операция fsync, таким образом, приходится на всю группу записей.
+ * <p>
+ * Каждой записи присваивается возрастающий порядковый номер. Формат записи в
+ * сегменте:
+ *
+ * <pre>
+ * int длина | int CRC32 | byte тип | long номер | тело
+ * </pre>
+ *
+ * (длина и CRC32 относятся к части "тип | номер | тело"). Оборванная при
+ * сбое запись в конце последнего сегмента при чтении отбрасывается.
+ * <p>
+ * Создание и удаление сегментов фиксируется сбросом на диск директории
+ * журнала, чтобы при отключении питания сегмент с подтверждёнными записями
+ * не исчез вместе с записью о нём в директории.
+ */
+public final class WriteAheadLog implements AutoCloseable {
+
+	static final String SEGMENT_PREFIX = ".wal-";
+
+	// В Windows директорию нельзя открыть как файл для сброса на диск.
+	private static final boolean FORCE_DIRECTORIES = !System.getProperty("os.name").startsWith("Windows");
+
+	private static final int FRAME_HEADER_BYTES = Integer.BYTES * 2;
+	private static final int ENTRY_HEADER_BYTES = 1 + Long.BYTES;
+
+	private final Path dir;
+	private final long commitWindowNanos;
+	private final int commitWindowRecords;
+	private final Consumer<List<Entry>> onCommitted;
+	private final Thread committer;
+
+	// Состояние очереди фиксации (монитор this).
+	private ArrayList<Entry> pending = new ArrayList<>();
+	private long lastAssignedSeq;
+	private long committedSeq;
+	private IOException failure;
+	private boolean closing;
+
+	// Состояние сегментов (монитор segmentLock).
+	private final Object segmentLock = new Object();
+	private final TreeMap<Long, Path> closedSegments = new TreeMap<>();
+	private long segmentNumber;
+	private Path segment;
+	private FileChannel channel;
+	private long segmentBytes;
+	private long lastWrittenSeq;
+
+	/**
+	 * Открывает новый сегмент журнала.
+	 *
+	 * @param dir                 Директория сегментов журнала.
+	 * @param firstSeq            Порядковый номер, с которого начинается
+	 *                            нумерация записей.
+	 * @param commitWindowMillis  Наибольшее время ожидания накопления группы
+	 *                            записей перед фиксацией, мс.
+	 * @param commitWindowRecords Число записей, при накоплении которого группа
+	 *                            фиксируется, не дожидаясь истечения времени.
+	 * @param onCommitted         Обработчик зафиксированных групп записей;
+	 *                            вызывается потоком фиксации в порядке
+	 *                            номеров записей.
+	 */
+	public WriteAheadLog(Path dir, long firstSeq, long commitWindowMillis, int commitWindowRecords,
+			Consumer<List<Entry>> onCommitted) throws IOException {
+		if (commitWindowMillis < 0 || commitWindowRecords < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.dir = dir;
+		this.commitWindowNanos = commitWindowMillis * 1_000_000;
+		this.commitWindowRecords = commitWindowRecords;
+		this.onCommitted = onCommitted;
+		this.lastAssignedSeq = firstSeq - 1;
+		this.committedSeq = firstSeq - 1;
+		this.lastWrittenSeq = firstSeq - 1;
+		this.segmentNumber = nextSegmentNumber(dir);
+		openSegment();
+
+		this.committer = new Thread(this::commitLoop, "wal-committer");
+		this.committer.setDaemon(true);
+		this.committer.start();
+	}
+
+	/**
+	 * Добавляет запись в очередь фиксации.
+	 *
+	 * @return Порядковый номер записи.
+	 * @throws IOException если предыдущая фиксация завершилась ошибкой.
+	 */
+	public synchronized long append(byte type, byte[] body) throws IOException {
+		if (closing) {
+			throw new IllegalStateException("Журнал закрыт.");
+		}
+		rethrowFailure();
+
+		var entry = new Entry(type, ++lastAssignedSeq, body);
+		pending.add(entry);
+		if (pending.size() == 1 || pending.size() >= commitWindowRecords) {
+			notifyAll();
+		}
+		return entry.seq;
+	}
+
+	/**
+	 * Ожидает фиксации записи с заданным порядковым номером.
+	 *
+	 * @throws IOException если фиксация завершилась ошибкой.
+	 */
+	public synchronized void awaitCommitted(long seq) throws IOException, InterruptedException {
+		while (committedSeq < seq) {
+			rethrowFailure();
+			wait();
+		}
+	}
+
+	/**
+	 * @return Объём записей в текущем сегменте, байт.
+	 */
+	public long segmentBytes() {
+		synchronized (segmentLock) {
+			return segmentBytes;
+		}
+	}
+
+	/**
+	 * Закрывает текущий сегмент и открывает новый: последующие записи
+	 * дописываются в новый сегмент.
+	 */
+	public void rotate() throws IOException {
+		synchronized (segmentLock) {
+			channel.close();
+			closedSegments.put(lastWrittenSeq, segment);
+			++segmentNumber;
+			openSegment();
+		}
+	}
+
+	/**
+	 * Удаляет закрытые сегменты, все записи которых имеют порядковые номера,
+	 * не превышающие заданного.
+	 */
+	public void deleteSegmentsUpTo(long seq) throws IOException {
+		synchronized (segmentLock) {
+			var obsolete = closedSegments.headMap(seq, true);
+			if (obsolete.isEmpty()) {
+				return;
+			}
+			for (var file : obsolete.values()) {
+				Files.deleteIfExists(file);
+			}
+			obsolete.clear();
+			forceDirectory(dir);
+		}
+	}
+
+	/**
+	 * Фиксирует все записи очереди и завершает поток фиксации. Сегменты
+	 * журнала при этом не удаляются.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			closing = true;
+			notifyAll();
+		}
+		try {
+			committer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (segmentLock) {
+			channel.close();
+		}
+		synchronized (this) {
+			rethrowFailure();
+		}
+	}
+
+	/**
+	 * Закрывает журнал и удаляет все его сегменты.
+	 */
+	public void closeAndDelete() throws IOException {
+		close();
+		synchronized (segmentLock) {
+			deleteSegmentsUpTo(Long.MAX_VALUE);
+			Files.deleteIfExists(segment);
+			forceDirectory(dir);
+		}
+	}
+
+	/**
+	 * Читает все записи всех сегментов журнала в заданной директории в
+	 * порядке их записи. Чтение останавливается на первой повреждённой
+	 * (оборванной) записи последнего сегмента.
+	 *
+	 * @throws IOException в том числе если повреждён сегмент, отличный от
+	 *                     последнего: такой сегмент был закрыт после
+	 *                     фиксации всех его записей и не может быть оборван
+	 *                     сбоем.
+	 */
+	public static List<Entry> readAll(Path dir) throws IOException {
+		var entries = new ArrayList<Entry>();
+		var segments = listSegments(dir);
+		for (int i = 0; i < segments.size(); ++i) {
+			var file = segments.get(i);
+			if (!readSegment(file, entries)) {
+				if (i < segments.size() - 1) {
+					throw new IOException(String.format("Сегмент журнала '%s' повреждён.", file));
+				}
+				break;
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Читает записи сегмента журнала до первой повреждённой записи.
+	 *
+	 * @return false, если сегмент содержит повреждённую (оборванную) запись.
+	 */
+	private static boolean readSegment(Path file, List<Entry> entries) throws IOException {
+		var bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+		var crc = new CRC32();
+		while (bytes.remaining() >= FRAME_HEADER_BYTES) {
+			int length = bytes.getInt();
+			int checksum = bytes.getInt();
+			if (length < ENTRY_HEADER_BYTES || length > bytes.remaining()) {
+				return false;
+			}
+			crc.reset();
+			crc.update(bytes.array(), bytes.position(), length);
+			if ((int) crc.getValue() != checksum) {
+				return false;
+			}
+			byte type = bytes.get();
+			long seq = bytes.getLong();
+			var body = new byte[length - ENTRY_HEADER_BYTES];
+			bytes.get(body);
+			entries.add(new Entry(type, seq, body));
+		}
+		return !bytes.hasRemaining();
+	}
+
+	/**
+	 * Удаляет все сегменты журнала в заданной директории.
+	 */
+	public static void deleteAll(Path dir) throws IOException {
+		var segments = listSegments(dir);
+		for (var file : segments) {
+			Files.deleteIfExists(file);
+		}
+		if (!segments.isEmpty()) {
+			forceDirectory(dir);
+		}
+	}
+
+	/**
+	 * Сбрасывает на диск директорию -- записи о созданных и удалённых в ней
+	 * файлах.
+	 */
+	static void forceDirectory(Path dir) throws IOException {
+		if (!FORCE_DIRECTORIES) {
+			return;
+		}
+		try (var channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+
+	private static List<Path> listSegments(Path dir) throws IOException {
+		try (var stream = Files.list(dir)) {
+			return stream.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX))
+					.sorted()
+					.toList();
+		}
+	}
+
+	private static long nextSegmentNumber(Path dir) throws IOException {
+		long max = 0;
+		for (var file : listSegments(dir)) {
+			var name = file.getFileName().toString();
+			max = Math.max(max, Long.parseLong(name.substring(SEGMENT_PREFIX.length())));
+		}
+		return max + 1;
+	}
+
+	private void openSegment() throws IOException {
+		segment = dir.resolve(String.format("%s%012d", SEGMENT_PREFIX, segmentNumber));
+		channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		segmentBytes = 0;
+		// Запись о сегменте в директории сбрасывается на диск до
+		// подтверждения записей сегмента.
+		forceDirectory(dir);
+	}
+
+	private void commitLoop() {
+		while (true) {
+			List<Entry> batch;
+			synchronized (this) {
+				try {
+					while (pending.isEmpty() && !closing) {
+						wait();
+					}
+					long deadline = System.nanoTime() + commitWindowNanos;
+					long remaining;
+					while (pending.size() < commitWindowRecords && !closing
+							&& (remaining = deadline - System.nanoTime()) > 0) {
+						wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+					}
+				} catch (InterruptedException e) {
+					closing = true;
+				}
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch = pending;
+				pending = new ArrayList<>();
+			}
+
+			try {
+				write(batch);
+			} catch (IOException e) {
+				synchronized (this) {
+					failure = e;
+					closing = true;
+					notifyAll();
+				}
+				return;
+			}
+
+			// Обработчик вызывается до оповещения ожидающих фиксации, чтобы
+			// подтверждённые записи гарантированно были переданы обработчику.
+			onCommitted.accept(batch);
+			synchronized (this) {
+				committedSeq = batch.get(batch.size() - 1).seq;
+				notifyAll();
+			}
+		}
+	}
+
+	private void write(List<Entry> batch) throws IOException {
+		int size = 0;
+		for (var entry : batch) {
+			size += FRAME_HEADER_BYTES + ENTRY_HEADER_BYTES + entry.body.length;
+		}
+
+		var buffer = ByteBuffer.allocate(size);
+		var crc = new CRC32();
+		for (var entry : batch) {
+			int start = buffer.position();
+			buffer.position(start + FRAME_HEADER_BYTES);
+			buffer.put(entry.type).putLong(entry.seq).put(entry.body);
+			crc.reset();
+			crc.update(buffer.array(), start + FRAME_HEADER_BYTES, ENTRY_HEADER_BYTES + entry.body.length);
+			buffer.putInt(start, ENTRY_HEADER_BYTES + entry.body.length);
+			buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+		}
+		buffer.flip();
+
+		synchronized (segmentLock) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+			segmentBytes += size;
+			lastWrittenSeq = batch.get(batch.size() - 1).seq;
+		}
+	}
+
+	private void rethrowFailure() throws IOException {
+		if (failure != null) {
+			throw new IOException("Не удалось зафиксировать записи журнала.", failure);
+		}
+	}
+
+	/**
+	 * Запись журнала.
+	 */
+	public static final class Entry {
+		public final byte type;
+		public final long seq;
+		public final byte[] body;
+
+		Entry(byte type, long seq, byte[] body) {
+			this.type = type;
+			this.seq = seq;
+			this.body = body;
+		}
+	}
+}
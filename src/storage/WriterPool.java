@@ -0,0 +1,320 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import entities.UserData;
+
+/**
+ * Пул открытых на дозапись файлов с буферизацией записей.
+ * <p>
+ * Одновременно открытыми удерживаются не более заданного числа файлов; при
+ * превышении закрывается файл, к которому дольше всего не обращались (LRU).
+ * Буфер файла сбрасывается на диск при заполнении до заданного порога, по
+ * истечении заданного интервала времени, при вытеснении файла из пула и при
+ * закрытии пула. Буфер, который не удалось сбросить, сохраняется вместе с
+ * открытым файлом и сбрасывается повторно при следующем сбросе, так что
+ * ошибка записи не приводит к потере принятых записей; ошибка
+ * периодического сброса проявляется при следующем сбросе по требованию или
+ * при заполнении буфера.
+ * <p>
+ * Пул допускает использование несколькими потоками: дописывание в разные
+ * файлы выполняется без взаимной блокировки. При включённой блокировке
+ * файлов каждый сброс буфера выполняется под блокировкой файла (FileLock),
+ * что допускает совместную запись в файлы несколькими процессами.
+ */
+public final class WriterPool implements AutoCloseable {
+
+	private final int maxOpenFiles;
+	private final int flushThresholdBytes;
+	private final boolean lockFiles;
+	private final RecordCodec codec;
+	private final LinkedHashMap<Path, PooledWriter> writers;
+	private final ScheduledExecutorService flusher;
+
+	private boolean closed;
+
+	/**
+	 * @param maxOpenFiles        Наибольшее число одновременно открытых файлов.
+	 * @param flushThresholdBytes Размер буфера файла, при заполнении которого
+	 *                            буфер сбрасывается на диск.
+	 * @param flushIntervalMillis Интервал периодического сброса буферов всех
+	 *                            файлов на диск, мс; 0 -- без периодического
+	 *                            сброса.
+	 */
+	public WriterPool(int maxOpenFiles, int flushThresholdBytes, long flushIntervalMillis) {
+		this(maxOpenFiles, flushThresholdBytes, flushIntervalMillis, false, new TextRecordCodec(UserData::toString));
+	}
+
+	/**
+	 * @param maxOpenFiles        Наибольшее число одновременно открытых файлов.
+	 * @param flushThresholdBytes Размер буфера файла, при заполнении которого
+	 *                            буфер сбрасывается на диск.
+	 * @param flushIntervalMillis Интервал периодического сброса буферов всех
+	 *                            файлов на диск, мс; 0 -- без периодического
+	 *                            сброса.
+	 * @param lockFiles           Признак блокировки файлов при сбросе буферов.
+	 * @param codec               Формат хранения записей, определяющий
+	 *                            обрамление записей в файлах.
+	 */
+	public WriterPool(int maxOpenFiles, int flushThresholdBytes, long flushIntervalMillis, boolean lockFiles,
+			RecordCodec codec) {
+		if (maxOpenFiles < 1 || flushThresholdBytes < 1 || flushIntervalMillis < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.maxOpenFiles = maxOpenFiles;
+		this.flushThresholdBytes = flushThresholdBytes;
+		this.lockFiles = lockFiles;
+		this.codec = codec;
+		this.writers = new LinkedHashMap<>(16, 0.75f, true);
+
+		if (flushIntervalMillis > 0) {
+			this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				var thread = new Thread(runnable, "writer-pool-flusher");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+					TimeUnit.MILLISECONDS);
+		} else {
+			this.flusher = null;
+		}
+	}
+
+	/**
+	 * Дописывает запись в файл, при необходимости открывая (создавая) его.
+	 *
+	 * @param file   Путь к файлу.
+	 * @param record Байтовое представление записи.
+	 * @throws IOException если не удалось открыть файл или сбросить буфер на
+	 *                     диск; запись в таком случае не принимается.
+	 */
+	public void append(Path file, byte[] record) throws IOException {
+		while (true) {
+			var writer = acquire(file);
+			synchronized (writer) {
+				// файл мог быть вытеснен из пула другим потоком
+				if (!writer.closed) {
+					writer.append(record);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Сбрасывает на диск буфер заданного файла, если файл открыт в пуле.
+	 */
+	public void flush(Path file) throws IOException {
+		PooledWriter writer;
+		synchronized (this) {
+			writer = writers.get(file);
+		}
+		if (writer != null) {
+			synchronized (writer) {
+				writer.flush();
+			}
+		}
+	}
+
+	/**
+	 * Сбрасывает на диск буфер заданного файла и закрывает файл, если он
+	 * открыт в пуле (например, перед удалением файла).
+	 */
+	public synchronized void release(Path file) throws IOException {
+		var writer = writers.get(file);
+		if (writer != null) {
+			// Файл, буфер которого не удалось сбросить, остаётся в пуле.
+			synchronized (writer) {
+				writer.close();
+			}
+			writers.remove(file);
+		}
+	}
+
+	/**
+	 * Сбрасывает буферы всех открытых файлов на диск.
+	 */
+	public void flush() throws IOException {
+		for (var writer : snapshot()) {
+			synchronized (writer) {
+				writer.flush();
+			}
+		}
+	}
+
+	/**
+	 * Сбрасывает буферы на диск и закрывает все открытые файлы. Файлы,
+	 * буферы которых не удалось сбросить, остаются открытыми: повторный вызов
+	 * повторяет их сброс, а при отсутствии таких файлов не выполняет никаких
+	 * действий.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (flusher != null) {
+			flusher.shutdown();
+		}
+
+		List<PooledWriter> toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = new ArrayList<>(writers.values());
+		}
+
+		IOException failure = null;
+		for (var writer : toClose) {
+			try {
+				synchronized (writer) {
+					writer.close();
+				}
+				synchronized (this) {
+					writers.values().remove(writer);
+				}
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private synchronized PooledWriter acquire(Path file) throws IOException {
+		if (closed) {
+			throw new IllegalStateException("Пул файлов закрыт.");
+		}
+
+		var writer = writers.get(file);
+		if (writer == null) {
+			writer = new PooledWriter(RecordFiles.AppendTarget.open(file), flushThresholdBytes, codec, lockFiles);
+			writers.put(file, writer);
+			evictExcess();
+		}
+		return writer;
+	}
+
+	private synchronized List<PooledWriter> snapshot() {
+		return new ArrayList<>(writers.values());
+	}
+
+	private void evictExcess() throws IOException {
+		Iterator<Map.Entry<Path, PooledWriter>> iterator = writers.entrySet().iterator();
+		while (writers.size() > maxOpenFiles && iterator.hasNext()) {
+			var eldest = iterator.next().getValue();
+			// Файл, буфер которого не удалось сбросить, остаётся в пуле.
+			synchronized (eldest) {
+				eldest.close();
+			}
+			iterator.remove();
+		}
+	}
+
+	private void flushQuietly() {
+		for (var writer : snapshot()) {
+			try {
+				synchronized (writer) {
+					writer.flush();
+				}
+			} catch (IOException e) {
+				// Буфер сохраняется и сбрасывается повторно.
+			}
+		}
+	}
+
+	private static final class PooledWriter {
+		private final Path file;
+		// null, если файл не удалось открыть заново.
+		private RecordFiles.AppendTarget target;
+		private final ByteBuffer buffer;
+		private final RecordCodec codec;
+		private final byte[] separator;
+		private final boolean lockFile;
+		private boolean closed;
+
+		PooledWriter(RecordFiles.AppendTarget target, int bufferSize, RecordCodec codec, boolean lockFile) {
+			this.file = target.file;
+			this.target = target;
+			this.buffer = ByteBuffer.allocate(bufferSize);
+			this.codec = codec;
+			this.separator = codec.separator();
+			this.lockFile = lockFile;
+		}
+
+		void append(byte[] record) throws IOException {
+			// Заголовок или разделитель перед первой записью буфера
+			// добавляется при сбросе буфера, в зависимости от того, пуст ли
+			// файл к тому моменту.
+			int separatorLength = buffer.position() > 0 ? separator.length : 0;
+			if (separatorLength + record.length > buffer.remaining()) {
+				flush();
+				separatorLength = 0;
+			}
+
+			if (record.length > buffer.capacity()) {
+				write(new ByteBuffer[] { ByteBuffer.wrap(record) });
+				return;
+			}
+			if (separatorLength > 0) {
+				buffer.put(separator);
+			}
+			buffer.put(record);
+		}
+
+		/**
+		 * Сбрасывает буфер в файл. Если сбросить буфер не удалось, данные
+		 * остаются в буфере (как в BufferedOutputStream).
+		 */
+		void flush() throws IOException {
+			if (closed || buffer.position() == 0) {
+				return;
+			}
+			buffer.flip();
+			int end = buffer.limit();
+			try {
+				write(new ByteBuffer[] { buffer });
+			} catch (IOException | RuntimeException e) {
+				buffer.limit(buffer.capacity()).position(end);
+				throw e;
+			}
+			buffer.clear();
+		}
+
+		/**
+		 * Дописывает данные в файл, открывая файл заново, если он удалён
+		 * или заменён после открытия (RecordFiles.append). Данные,
+		 * дописанные при ошибке лишь частично, отсекаются.
+		 */
+		private void write(ByteBuffer[] data) throws IOException {
+			while (target == null || !RecordFiles.append(target, data, codec, lockFile)) {
+				if (target != null) {
+					target.close();
+					target = null;
+				}
+				target = RecordFiles.AppendTarget.open(file);
+			}
+		}
+
+		/**
+		 * Сбрасывает буфер и закрывает файл; если сбросить буфер не
+		 * удалось, файл остаётся открытым.
+		 */
+		void close() throws IOException {
+			flush();
+			closed = true;
+			if (target != null) {
+				target.close();
+			}
+		}
+	}
+}
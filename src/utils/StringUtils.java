@@ -0,0 +1,28 @@
+package utils;
+
+public final class StringUtils {
+
+	/**
+	 * Приводит строку к ключу сравнения без учёта регистра: две строки
+	 * равны согласно String.equalsIgnoreCase тогда и только тогда, когда
+	 * равны их ключи.
+	 * 
+	 * @param str Исходная строка. Недопустимо null-значение.
+	 * @return Ключ сравнения без учёта регистра.
+	 */
+	public static String foldCase(String str) {
+		int length = str.length();
+		char[] folded = null;
+		for (int i = 0; i < length; ++i) {
+			char c = str.charAt(i);
+			char f = Character.toLowerCase(Character.toUpperCase(c));
+			if (f != c && folded == null) {
+				folded = str.toCharArray();
+			}
+			if (folded != null) {
+				folded[i] = f;
+			}
+		}
+		return folded == null ? str : new String(folded);
+	}
+}
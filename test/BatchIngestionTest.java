@@ -0,0 +1,168 @@
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import entities.UserData;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class BatchIngestionTest {
+
+	/**
+	 * Сервис сохранения, запоминающий сохранённые записи и отказывающий в
+	 * сохранении записей с фамилией Петров.
+	 */
+	private static final class FailingSaver implements Saver<UserData> {
+		final List<String> saved = Collections.synchronizedList(new ArrayList<>());
+		// Записи сохраняются пакетами (Saver.saveAll), так что записи пакета,
+		// следующие за несохранённой, также не сохраняются.
+		final boolean batched;
+
+		FailingSaver(boolean batched) {
+			this.batched = batched;
+		}
+
+		@Override
+		public String save(UserData data) throws Exception {
+			if (data.getLastName().equals("Петров")) {
+				throw new Exception(new java.io.IOException("диск заполнен"));
+			}
+			saved.add(data.getLastName() + ":" + data.getPhoneNumber());
+			return data.getLastName();
+		}
+	}
+
+	private static List<String> input() {
+		var lines = new ArrayList<String>();
+		for (int i = 0; i < 3 * BatchIngestion.MAX_PENDING_LINES; ++i) {
+			lines.add(TestData.line(i % 1000 == 500 ? "Петров" : "Иванов", Integer.toString(i)));
+			if (i % 1000 == 700) {
+				lines.add("Сидоров");
+				lines.add("");
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Проверяет, что каждая принятая строка либо сохранена, либо записана в
+	 * файл отклонённых строк как не сохранённая, а строки обоих видов
+	 * следуют в порядке входного файла.
+	 */
+	private static void assertReport(List<String> lines, FailingSaver saver, BatchIngestion.Report report,
+			List<String> rejects) {
+		var expectedSaved = new ArrayList<String>();
+		var expectedRejects = new ArrayList<String>();
+		int next = 0;
+		for (int i = 0; i < lines.size(); ++i) {
+			var line = lines.get(i);
+			if (line.equals("Сидоров")) {
+				expectedRejects.add((i + 1) + "\tWRONG_ITEMS_COUNT\t\t-5\t" + line);
+			} else if (!line.isEmpty()) {
+				var record = line.split(" ")[0] + ":" + line.split(" ")[4];
+				if (next < saver.saved.size() && saver.saved.get(next).equals(record)) {
+					expectedSaved.add(record);
+					++next;
+				} else {
+					assertTrue(!line.startsWith("Иванов") || saver.batched, "не сохранена строка " + (i + 1));
+					expectedRejects.add((i + 1) + "\tUNSPECIFIED\t\tдиск заполнен\t" + line);
+				}
+			}
+		}
+		assertEquals(expectedSaved, saver.saved);
+		assertEquals(expectedRejects, rejects);
+		assertEquals(lines.size(), report.getLinesRead());
+		assertEquals(expectedSaved.size(), report.getAccepted());
+		assertEquals(lines.size() - expectedSaved.size() - report.getSkipped(),
+				report.getRejected() + report.getSaveFailures());
+	}
+
+	@Test
+	public void savesLinesAndWritesRejectsInLineOrder() throws Exception {
+		try (var dir = new TempDir()) {
+			var lines = input();
+			Files.write(dir.resolve("in.txt"), lines, StandardCharsets.UTF_8);
+
+			var saver = new FailingSaver(false);
+			var report = new BatchIngestion(new UserDataScanningParser(), saver)
+					.run(dir.resolve("in.txt"), dir.resolve("rejects.txt"));
+
+			assertReport(lines, saver, report, Files.readAllLines(dir.resolve("rejects.txt"), StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void asyncSavingBoundsLinesPendingBehindRejects() throws Exception {
+		try (var dir = new TempDir()) {
+			var lines = new ArrayList<String>();
+			lines.add(TestData.line("Иванов", "1"));
+			for (int i = 0; i <= BatchIngestion.MAX_PENDING_LINES; ++i) {
+				lines.add("Сидоров");
+			}
+			lines.add(TestData.line("Иванов", "2"));
+			Files.write(dir.resolve("in.txt"), lines, StandardCharsets.UTF_8);
+
+			// Результат сохранения готов к моменту ожидания; сохранение
+			// последней строки запоминает, ожидался ли результат первой.
+			var joined = new AtomicBoolean();
+			var joinedBeforeLast = new AtomicBoolean();
+			var asyncSaver = new AsyncSaver<UserData>() {
+				@Override
+				public CompletableFuture<String> saveAsync(UserData data) {
+					if (data.getPhoneNumber().equals("2")) {
+						joinedBeforeLast.set(joined.get());
+						return CompletableFuture.completedFuture(data.getLastName());
+					}
+					return new CompletableFuture<>() {
+						@Override
+						public String join() {
+							joined.set(true);
+							complete(data.getLastName());
+							return super.join();
+						}
+					};
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+			var report = new BatchIngestion(new UserDataScanningParser(), asyncSaver)
+					.run(dir.resolve("in.txt"), dir.resolve("rejects.txt"));
+
+			assertTrue(joinedBeforeLast.get(), "число ожидающих строк не ограничено");
+			assertEquals(2, report.getAccepted());
+			assertEquals(BatchIngestion.MAX_PENDING_LINES + 1, report.getRejected());
+			var rejects = Files.readAllLines(dir.resolve("rejects.txt"), StandardCharsets.UTF_8);
+			assertEquals(BatchIngestion.MAX_PENDING_LINES + 1, rejects.size());
+			assertTrue(rejects.get(0).startsWith("2\t"), rejects.get(0));
+			assertTrue(rejects.get(rejects.size() - 1).startsWith((lines.size() - 1) + "\t"),
+					rejects.get(rejects.size() - 1));
+		}
+	}
+
+	@Test
+	public void asyncSavingReportsEveryLineInLineOrder() throws Exception {
+		try (var dir = new TempDir()) {
+			var lines = input();
+			Files.write(dir.resolve("in.txt"), lines, StandardCharsets.UTF_8);
+
+			var saver = new FailingSaver(true);
+			BatchIngestion.Report report;
+			try (var asyncSaver = new QueuedAsyncSaver<>(saver, 64, QueuedAsyncSaver.OverflowPolicy.BLOCK)) {
+				report = new BatchIngestion(new UserDataScanningParser(), asyncSaver)
+						.run(dir.resolve("in.txt"), dir.resolve("rejects.txt"));
+			}
+
+			assertReport(lines, saver, report, Files.readAllLines(dir.resolve("rejects.txt"), StandardCharsets.UTF_8));
+		}
+	}
+}
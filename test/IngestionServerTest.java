@@ -0,0 +1,105 @@
+import static testing.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import entities.UserData;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class IngestionServerTest {
+
+	/**
+	 * Передаёт серверу строки одним пакетом и возвращает ответы на них.
+	 */
+	private static List<String> send(Saver<UserData> saver, List<String> lines) throws Exception {
+		var server = new IngestionServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				UserDataScanningParser::new, saver, 1);
+		var acceptor = new Thread(() -> {
+			try {
+				server.run();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		acceptor.start();
+		try (var socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+				Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+				var reader = new BufferedReader(
+						new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+			writer.write(String.join("\n", lines) + "\n");
+			writer.flush();
+			var responses = new ArrayList<String>();
+			while (responses.size() < lines.size()) {
+				responses.add(reader.readLine());
+			}
+			return responses;
+		} finally {
+			server.close();
+			acceptor.join();
+		}
+	}
+
+	@Test
+	public void answersOkAndParseErrorsInLineOrder() throws Exception {
+		var saved = new ArrayList<String>();
+		Saver<UserData> saver = data -> {
+			saved.add(data.getLastName());
+			return data.getLastName();
+		};
+
+		var responses = send(saver, List.of(TestData.line("Иванов", "1"), "Петров", TestData.line("Сидоров", "2")));
+
+		assertEquals("OK", responses.get(0));
+		assertEquals("ERROR\tWRONG_ITEMS_COUNT\t\t-5", responses.get(1));
+		assertEquals("OK", responses.get(2));
+		assertEquals(List.of("Иванов", "Сидоров"), saved);
+	}
+
+	@Test
+	public void answersOkOnlyToRecordsSavedBeforeFailure() throws Exception {
+		var saved = new ArrayList<String>();
+		Saver<UserData> saver = data -> {
+			if (data.getLastName().equals("Петров")) {
+				throw new IOException("диск\tзаполнен\nполностью");
+			}
+			saved.add(data.getLastName());
+			return data.getLastName();
+		};
+
+		var responses = send(saver,
+				List.of(TestData.line("Иванов", "1"), TestData.line("Петров", "2"), TestData.line("Сидоров", "3")));
+
+		// Ответ на строку занимает одну строку, а текст ошибки -- одно поле.
+		assertEquals(List.of("OK", "ERROR\tUNSPECIFIED\t\tдиск заполнен полностью",
+				"ERROR\tUNSPECIFIED\t\tдиск заполнен полностью"), responses);
+		assertEquals(List.of("Иванов"), saved);
+	}
+
+	@Test
+	public void flushesBufferedRecordsBeforeAnsweringOk() throws Exception {
+		try (var dir = new TempDir()) {
+			// Буферы пула файлов не сбрасываются периодически и не заполняются.
+			var options = new UserDataSaver.Options()
+					.withWriterPool(16, 1024 * 1024, 0)
+					.withConcurrentAccess(4);
+			try (var saver = new UserDataSaver(dir.path().toString(), UserData::getPhoneNumber, options)) {
+				var responses = send(saver, List.of(TestData.line("Иванов", "1"), TestData.line("Иванов", "2")));
+
+				assertEquals(List.of("OK", "OK"), responses);
+				assertEquals(List.of("1", "2"), Files.readAllLines(dir.resolve("Иванов"), StandardCharsets.UTF_8));
+			}
+		}
+	}
+}
@@ -0,0 +1,221 @@
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertThrows;
+import static testing.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import entities.UserData;
+import exceptions.ParseException;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class PipelinedIngestionTest {
+
+	/**
+	 * Сервис сохранения, запоминающий сохранённые записи.
+	 */
+	private static class RecordingSaver implements Saver<UserData> {
+		final List<String> saved = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public String save(UserData data) {
+			saved.add(data.getLastName() + ":" + data.getPhoneNumber());
+			return data.getLastName();
+		}
+	}
+
+	@Test
+	public void savesAllLinesInInputOrder() throws Exception {
+		try (var dir = new TempDir()) {
+			var lastNames = List.of("Иванов", "Петров", "Сидоров", "Кузнецов", "Смирнов", "Попов", "Лебедев");
+			var lines = new ArrayList<String>();
+			var expected = new ArrayList<String>();
+			for (int i = 0; i < 1000; ++i) {
+				var lastName = lastNames.get(i % lastNames.size());
+				lines.add(TestData.line(lastName, Integer.toString(i)));
+				expected.add(lastName + ":" + i);
+			}
+			Files.write(dir.resolve("in.txt"), lines, StandardCharsets.UTF_8);
+
+			var saver = new RecordingSaver();
+			var report = new PipelinedIngestion(UserDataScanningParser::new, saver, 4, 16)
+					.run(dir.resolve("in.txt"), dir.resolve("rejects.txt"));
+
+			assertEquals(expected, saver.saved);
+			assertEquals(1000, report.getLinesRead());
+			assertEquals(1000, report.getAccepted());
+			assertEquals(0, Files.size(dir.resolve("rejects.txt")));
+		}
+	}
+
+	@Test
+	public void reportsRejectedAndBlankLines() throws Exception {
+		try (var dir = new TempDir()) {
+			Files.write(dir.resolve("in.txt"), List.of(
+					TestData.line("Иванов", "1"),
+					"",
+					"Петров Пётр Петрович 32.01.1990 2 m",
+					"Сидоров Сидор",
+					TestData.line("Сидоров", "3")), StandardCharsets.UTF_8);
+
+			var saver = new RecordingSaver();
+			var report = new PipelinedIngestion(UserDataScanningParser::new, saver, 2, 2)
+					.run(dir.resolve("in.txt"), dir.resolve("rejects.txt"));
+
+			assertEquals(List.of("Иванов:1", "Сидоров:3"), saver.saved);
+			assertEquals(5, report.getLinesRead());
+			assertEquals(2, report.getAccepted());
+			assertEquals(2, report.getRejected());
+			assertEquals(1, report.getSkipped());
+			var rejects = Files.readAllLines(dir.resolve("rejects.txt"), StandardCharsets.UTF_8);
+			assertEquals(2, rejects.size());
+			assertTrue(rejects.get(0).startsWith("3\tWRONG_FORMAT\t"), rejects.get(0));
+			assertTrue(rejects.get(1).startsWith("4\tWRONG_ITEMS_COUNT\t"), rejects.get(1));
+		}
+	}
+
+	@Test
+	public void reportsLinesOfChunkWhoseParsingFailed() throws Exception {
+		try (var dir = new TempDir()) {
+			Files.write(dir.resolve("in.txt"), List.of(
+					TestData.line("Иванов", "1"),
+					TestData.line("Петров", "2"),
+					TestData.line("Сидоров", "3"),
+					"",
+					TestData.line("Смирнов", "5")), StandardCharsets.UTF_8);
+
+			// Парсер выбрасывает исключение на строке с фамилией Сидоров:
+			// блок из строк 3 и 4 не сохраняется, остальные блоки сохраняются.
+			Supplier<Parser<UserData>> failing = () -> new Parser<UserData>() {
+				private final UserDataScanningParser parser = new UserDataScanningParser();
+				private String input;
+
+				@Override
+				public int setInput(String input) {
+					this.input = input;
+					return parser.setInput(input);
+				}
+
+				@Override
+				public UserData parse() throws ParseException {
+					if (input.startsWith("Сидоров")) {
+						throw new IllegalStateException("сбой парсера");
+					}
+					return parser.parse();
+				}
+			};
+			var saver = new RecordingSaver();
+			var report = new PipelinedIngestion(failing, saver, 2, 2)
+					.run(dir.resolve("in.txt"), dir.resolve("rejects.txt"));
+
+			assertEquals(List.of("Иванов:1", "Петров:2", "Смирнов:5"), saver.saved);
+			assertEquals(5, report.getLinesRead());
+			assertEquals(3, report.getAccepted());
+			assertEquals(1, report.getSaveFailures());
+			assertEquals(1, report.getSkipped());
+			assertEquals(List.of("3\tUNSPECIFIED\t\tjava.lang.IllegalStateException: сбой парсера\t"
+					+ TestData.line("Сидоров", "3")),
+					Files.readAllLines(dir.resolve("rejects.txt"), StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void finishesSavingBeforeReadFailureIsReported() throws Exception {
+		try (var dir = new TempDir()) {
+			var input = new ByteArrayOutputStream();
+			input.write((TestData.line("Иванов", "1") + "\nневерная строка\n").getBytes(StandardCharsets.UTF_8));
+			// Недопустимая последовательность UTF-8 во втором блоке, за
+			// пределами буфера декодирования первого.
+			input.write(" ".repeat(10_000).getBytes(StandardCharsets.UTF_8));
+			input.write(new byte[] { (byte) 0xff, (byte) 0xfe, '\n' });
+			Files.write(dir.resolve("in.txt"), input.toByteArray());
+
+			var active = new AtomicInteger();
+			var saver = new RecordingSaver() {
+				@Override
+				public String save(UserData data) {
+					active.incrementAndGet();
+					try {
+						Thread.sleep(100);
+						return super.save(data);
+					} catch (InterruptedException e) {
+						throw new IllegalStateException(e);
+					} finally {
+						active.decrementAndGet();
+					}
+				}
+			};
+			assertThrows(MalformedInputException.class, () -> new PipelinedIngestion(UserDataScanningParser::new,
+					saver, 1, 2).run(dir.resolve("in.txt"), dir.resolve("rejects.txt")));
+
+			// Сохранение завершено, отклонённая строка записана до закрытия
+			// файла отклонённых строк.
+			assertEquals(0, active.get());
+			assertEquals(List.of("Иванов:1"), saver.saved);
+			var rejects = Files.readAllLines(dir.resolve("rejects.txt"), StandardCharsets.UTF_8);
+			assertEquals(1, rejects.size());
+			assertTrue(rejects.get(0).startsWith("2\t"), rejects.get(0));
+		}
+	}
+
+	@Test
+	public void reportsLinesOfFailedSaveAsFailures() throws Exception {
+		try (var dir = new TempDir()) {
+			Files.write(dir.resolve("in.txt"), List.of(
+					TestData.line("Иванов", "1"),
+					TestData.line("Петров", "2")), StandardCharsets.UTF_8);
+
+			Saver<UserData> failing = data -> {
+				throw new Exception(new java.io.IOException("диск заполнен"));
+			};
+			var report = new PipelinedIngestion(UserDataScanningParser::new, failing, 2)
+					.run(dir.resolve("in.txt"), dir.resolve("rejects.txt"));
+
+			assertEquals(0, report.getAccepted());
+			assertEquals(2, report.getSaveFailures());
+			var rejects = Files.readAllLines(dir.resolve("rejects.txt"), StandardCharsets.UTF_8);
+			assertEquals(List.of(
+					"1\tUNSPECIFIED\t\tдиск заполнен\t" + TestData.line("Иванов", "1"),
+					"2\tUNSPECIFIED\t\tдиск заполнен\t" + TestData.line("Петров", "2")), rejects);
+		}
+	}
+
+	@Test
+	public void countsLinesSavedBeforeFailureAsAccepted() throws Exception {
+		try (var dir = new TempDir()) {
+			Files.write(dir.resolve("in.txt"), List.of(
+					TestData.line("Иванов", "1"),
+					TestData.line("Петров", "2"),
+					TestData.line("Сидоров", "3")), StandardCharsets.UTF_8);
+
+			var saver = new RecordingSaver() {
+				@Override
+				public String save(UserData data) {
+					if (data.getLastName().equals("Петров")) {
+						throw new IllegalStateException("диск заполнен");
+					}
+					return super.save(data);
+				}
+			};
+			var report = new PipelinedIngestion(UserDataScanningParser::new, saver, 3)
+					.run(dir.resolve("in.txt"), dir.resolve("rejects.txt"));
+
+			assertEquals(List.of("Иванов:1"), saver.saved);
+			assertEquals(1, report.getAccepted());
+			assertEquals(2, report.getSaveFailures());
+			var rejects = Files.readAllLines(dir.resolve("rejects.txt"), StandardCharsets.UTF_8);
+			assertEquals(List.of(
+					"2\tUNSPECIFIED\t\tдиск заполнен\t" + TestData.line("Петров", "2"),
+					"3\tUNSPECIFIED\t\tдиск заполнен\t" + TestData.line("Сидоров", "3")), rejects);
+		}
+	}
+}
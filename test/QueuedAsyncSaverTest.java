@@ -0,0 +1,114 @@
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertThrows;
+import static testing.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import testing.Test;
+
+public class QueuedAsyncSaverTest {
+
+	/**
+	 * Сервис сохранения строк, запоминающий сохранённые строки.
+	 */
+	private static class RecordingSaver implements Saver<String> {
+		final List<String> saved = Collections.synchronizedList(new ArrayList<>());
+		volatile boolean closed;
+
+		@Override
+		public String save(String data) {
+			saved.add(data);
+			return "/" + data;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	@Test
+	public void savesAcceptedDataBeforeClosing() throws Exception {
+		var saver = new RecordingSaver();
+		var results = new ArrayList<CompletableFuture<String>>();
+		try (var asyncSaver = new QueuedAsyncSaver<>(saver, 16, QueuedAsyncSaver.OverflowPolicy.BLOCK)) {
+			for (int i = 0; i < 1000; ++i) {
+				results.add(asyncSaver.saveAsync(Integer.toString(i)));
+			}
+		}
+
+		assertTrue(saver.closed, "сервис сохранения не закрыт");
+		assertEquals(1000, saver.saved.size());
+		for (int i = 0; i < 1000; ++i) {
+			assertEquals(Integer.toString(i), saver.saved.get(i));
+			assertEquals("/" + i, results.get(i).join());
+		}
+	}
+
+	@Test
+	public void completesResultsOfBatchFailedWithError() throws Exception {
+		var saver = new RecordingSaver() {
+			@Override
+			public String save(String data) {
+				if (data.equals("сбой")) {
+					throw new AssertionError("ошибка потока записи");
+				}
+				return super.save(data);
+			}
+		};
+		try (var asyncSaver = new QueuedAsyncSaver<>(saver, 16, QueuedAsyncSaver.OverflowPolicy.BLOCK)) {
+			var failed = asyncSaver.saveAsync("сбой");
+			var error = assertThrows(CompletionException.class, failed.orTimeout(5, TimeUnit.SECONDS)::join);
+			assertTrue(error.getCause() instanceof AssertionError, String.valueOf(error.getCause()));
+
+			// Поток записи продолжает сохранять данные после ошибки.
+			assertEquals("/после", asyncSaver.saveAsync("после").join());
+		}
+	}
+
+	@Test
+	public void rejectsDataWhenQueueIsFull() throws Exception {
+		var started = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		var saver = new RecordingSaver() {
+			@Override
+			public String save(String data) {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.save(data);
+			}
+		};
+		try (var asyncSaver = new QueuedAsyncSaver<>(saver, 1, QueuedAsyncSaver.OverflowPolicy.REJECT)) {
+			var first = asyncSaver.saveAsync("1");
+			started.await();
+			var queued = asyncSaver.saveAsync("2");
+			var rejected = asyncSaver.saveAsync("3");
+			release.countDown();
+
+			var error = assertThrows(CompletionException.class, rejected::join);
+			assertTrue(error.getCause() instanceof RejectedExecutionException, String.valueOf(error.getCause()));
+			assertEquals("/1", first.join());
+			assertEquals("/2", queued.join());
+		}
+	}
+
+	@Test
+	public void rejectsDataAfterClose() throws Exception {
+		var asyncSaver = new QueuedAsyncSaver<>(new RecordingSaver(), 1, QueuedAsyncSaver.OverflowPolicy.BLOCK);
+		asyncSaver.close();
+
+		var error = assertThrows(CompletionException.class, asyncSaver.saveAsync("1")::join);
+		assertTrue(error.getCause() instanceof RejectedExecutionException, String.valueOf(error.getCause()));
+	}
+}
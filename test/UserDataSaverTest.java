@@ -0,0 +1,218 @@
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertFalse;
+import static testing.Assert.assertNotNull;
+import static testing.Assert.assertNull;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import entities.UserData;
+import storage.RecordFiles;
+import storage.RecordIndexes;
+import storage.ShardedLayout;
+import storage.TextRecordCodec;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class UserDataSaverTest {
+
+	private static List<String> records(TempDir dir) throws Exception {
+		var records = new ArrayList<String>();
+		for (var file : RecordFiles.listSurnameFiles(dir.path())) {
+			records.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+		}
+		return records;
+	}
+
+	@Test
+	public void savesLastNamesDifferingInCaseIntoOneFile() throws Exception {
+		try (var dir = new TempDir()) {
+			var options = new UserDataSaver.Options().withNameDictionary();
+			try (var saver = new UserDataSaver(dir.path().toString(), UserData::getPhoneNumber, options)) {
+				saver.saveAll(List.of(TestData.userData("Иванов", "1"), TestData.userData("ИВАНОВ", "2")));
+				saver.save(TestData.userData("иванов", "3"));
+			}
+
+			assertEquals(List.of(dir.resolve("Иванов")), RecordFiles.listSurnameFiles(dir.path()));
+			assertEquals(List.of("1", "2", "3"), records(dir));
+		}
+	}
+
+	@Test
+	public void groupCommitSavesLastNamesDifferingInCaseIntoOneFile() throws Exception {
+		try (var dir = new TempDir()) {
+			var options = new UserDataSaver.Options().withNameDictionary().withGroupCommit(10, 1000);
+			try (var saver = new UserDataSaver(dir.path().toString(), UserData::getPhoneNumber, options)) {
+				// Записи переносятся из журнала в файлы при закрытии.
+				saver.saveAll(List.of(TestData.userData("Иванов", "1")));
+				saver.saveAll(List.of(TestData.userData("ИВАНОВ", "2")));
+			}
+
+			assertEquals(List.of(dir.resolve("Иванов")), RecordFiles.listSurnameFiles(dir.path()));
+			assertEquals(List.of("1", "2"), records(dir));
+		}
+	}
+
+	@Test
+	public void savesIntoShardFileAfterReshard() throws Exception {
+		try (var dir = new TempDir()) {
+			var options = new UserDataSaver.Options().withNameDictionary();
+			try (var saver = new UserDataSaver(dir.path().toString(), UserData::getPhoneNumber, options)) {
+				saver.save(TestData.userData("Иванов", "1"));
+
+				ShardedLayout.enable(dir.path());
+				ShardedLayout.reshard(dir.path());
+				saver.save(TestData.userData("Иванов", "2"));
+			}
+
+			assertFalse(Files.exists(dir.resolve("Иванов")), "файл создан вне сегмента");
+			assertEquals(List.of("1", "2"), records(dir));
+		}
+	}
+
+	@Test
+	public void skipsRecordsAlreadySaved() throws Exception {
+		try (var dir = new TempDir()) {
+			// С пулом открытых файлов и без него.
+			for (var options : List.of(new UserDataSaver.Options().withDeduplication(),
+					new UserDataSaver.Options().withDeduplication().withWriterPool(4, 1 << 16, 0))) {
+				try (var saver = new UserDataSaver(dir.path().toString(), UserData::getPhoneNumber, options)) {
+					saver.saveAll(List.of(TestData.userData("Иванов", "1"), TestData.userData("Иванов", "2"),
+							TestData.userData("Иванов", "1")));
+					saver.save(TestData.userData("Иванов", "2"));
+					saver.save(TestData.userData("Иванов", "3"));
+				}
+			}
+
+			assertEquals(List.of("1", "2", "3"), records(dir));
+		}
+	}
+
+	@Test
+	public void savingWithoutIndexesInvalidatesThem() throws Exception {
+		try (var dir = new TempDir()) {
+			var codec = new TextRecordCodec(UserData::toString);
+			try (var saver = new UserDataSaver(dir.path().toString(), codec,
+					new UserDataSaver.Options().withSecondaryIndexes())) {
+				saver.save(TestData.userData("Иванов", "1"));
+			}
+			assertNotNull(RecordIndexes.openForReading(dir.path()), "индексы не используются");
+
+			try (var saver = new UserDataSaver(dir.path().toString(), codec, new UserDataSaver.Options())) {
+				saver.save(TestData.userData("Иванов", "2"));
+			}
+
+			assertNull(RecordIndexes.openForReading(dir.path()));
+		}
+	}
+
+	@Test
+	public void concurrentAccessSavesFromThreadsIntoOneFilePerLastName() throws Exception {
+		try (var dir = new TempDir()) {
+			var lastNames = List.of("Иванов", "ИВАНОВ", "иванов", "Петров");
+			var options = new UserDataSaver.Options().withWriterPool(2, 64, 0).withConcurrentAccess(2);
+			try (var saver = new UserDataSaver(dir.path().toString(), UserData::getPhoneNumber, options)) {
+				var threads = new ArrayList<Thread>();
+				var failures = Collections.synchronizedList(new ArrayList<Exception>());
+				for (int t = 0; t < 8; ++t) {
+					int thread = t;
+					threads.add(new Thread(() -> {
+						try {
+							for (int i = 0; i < 500; ++i) {
+								var lastName = lastNames.get((thread + i) % lastNames.size());
+								saver.save(TestData.userData(lastName, thread + "-" + i));
+							}
+						} catch (Exception e) {
+							failures.add(e);
+						}
+					}));
+				}
+				for (var thread : threads) {
+					thread.start();
+				}
+				for (var thread : threads) {
+					thread.join();
+				}
+				assertEquals(List.of(), failures);
+			}
+
+			// Имя файла определяется первым из сохранений в него.
+			var files = RecordFiles.listSurnameFiles(dir.path()).stream()
+					.map(file -> file.getFileName().toString().toLowerCase()).sorted().toList();
+			assertEquals(List.of("иванов", "петров"), files);
+			var expected = new ArrayList<String>();
+			for (int t = 0; t < 8; ++t) {
+				for (int i = 0; i < 500; ++i) {
+					expected.add(t + "-" + i);
+				}
+			}
+			expected.sort(null);
+			var saved = records(dir);
+			saved.sort(null);
+			assertEquals(expected, saved);
+		}
+	}
+
+	@Test
+	public void concurrentAccessSavesFromSeveralProcesses() throws Exception {
+		try (var dir = new TempDir()) {
+			var lastNames = List.of("Иванов", "ИВАНОВ", "Петров");
+			var processes = new ArrayList<Process>();
+			var expected = new ArrayList<String>();
+			for (int p = 0; p < 3; ++p) {
+				var lines = new ArrayList<String>();
+				for (int i = 0; i < 2000; ++i) {
+					var lastName = lastNames.get((p + i) % lastNames.size());
+					lines.add(TestData.line(lastName, p + "" + i));
+					expected.add(TestData.userData(lastName, p + "" + i).toString());
+				}
+				var input = dir.resolve("in" + p + ".txt");
+				Files.write(input, lines, StandardCharsets.UTF_8);
+				processes.add(startApp(dir, App.BATCH_OPTION, input.toString(), App.SHARED_OPTION));
+			}
+			for (var process : processes) {
+				assertEquals(0, process.waitFor(), "код завершения процесса");
+			}
+
+			var dataDir = dir.resolve(App.PATH_TO_DATA_DIR);
+			var files = RecordFiles.listSurnameFiles(dataDir);
+			assertEquals(2, files.size());
+			var saved = new ArrayList<String>();
+			for (var file : files) {
+				saved.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+			}
+			// Записи разных процессов не перемешиваются внутри строк.
+			expected.sort(null);
+			saved.sort(null);
+			assertEquals(expected, saved);
+		}
+	}
+
+	/**
+	 * Запускает приложение в отдельной JVM с рабочей директорией dir.
+	 */
+	private static Process startApp(TempDir dir, String... args) throws Exception {
+		var command = new ArrayList<String>();
+		command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		command.add("-cp");
+		var classPath = new ArrayList<String>();
+		for (var entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			classPath.add(Path.of(entry).toAbsolutePath().toString());
+		}
+		command.add(String.join(File.pathSeparator, classPath));
+		command.add(App.class.getName());
+		command.addAll(List.of(args));
+		return new ProcessBuilder(command).directory(dir.path().toFile())
+				.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+				.redirectErrorStream(true)
+				.start();
+	}
+}
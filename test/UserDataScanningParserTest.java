@@ -0,0 +1,192 @@
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertFalse;
+import static testing.Assert.assertNull;
+import static testing.Assert.assertThrows;
+import static testing.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import entities.NameDictionary;
+import entities.UserData;
+import entities.UserDataView;
+import exceptions.IssueKind;
+import exceptions.ParseException;
+import testing.Test;
+
+public class UserDataScanningParserTest {
+
+	// Строки, охватывающие корректные данные, все роды проблем разбора и
+	// нерегулярные поля, разбираемые эталонной реализацией.
+	private static final List<String> INPUTS = List.of(
+			"Иванов Иван Иванович 01.02.1990 89001234567 m",
+			"  Иванов\tИван Иванович 01.02.1990 89001234567 F  ",
+			"m 89001234567 01.02.1990 Иванов Иван Иванович",
+			"Иванов Иван Иванович 29.02.2024 0012 f",
+			"Иванов Иван Иванович 01.02.1990 89001234567",
+			"Иванов Иван Иванович 01.02.1990 89001234567 m лишнее",
+			"Иванов Иван 01.02.1990 89001234567 m x",
+			"Иванов Иван Иванович Петров 01.02.1990 m",
+			"Иванов Иван Иванович 01.02.1990 89001234567 12",
+			"Иванов Иван Иванович 01.02.1990 02.03.1991 m",
+			"Иванов Иван Иванович m f 89001234567 01.02.1990",
+			"Иванов Иван Иванович 32.01.1990 89001234567 m",
+			"Иванов Иван Иванович 29.02.2023 89001234567 m",
+			"Иванов Иван Иванович 01.13.1990 89001234567 m",
+			"Иванов-Петров Иван Иванович 01.02.1990 89001234567 m",
+			"Иванов Иван Иванович 01.02.1990 +79001234567 m",
+			"Иванов Иван Иванович 1.2.1990 89001234567 m",
+			"",
+			"   ");
+
+	@Test
+	public void matchesReferenceParser() {
+		var reference = new UserDataParser();
+		var scanning = new UserDataScanningParser();
+		for (var input : INPUTS) {
+			assertEquals(outcome(reference, input), outcome(scanning, input), "строка «" + input + "»");
+		}
+	}
+
+	@Test
+	public void parsesFieldsInAnyOrder() throws ParseException {
+		var parser = new UserDataScanningParser();
+
+		assertEquals(0, parser.setInput("m 89001234567 01.02.1990 Иванов Иван Иванович"));
+		var userData = parser.parse();
+
+		assertEquals("<Иванов><Иван><Иванович><01.02.1990><89001234567><m>", userData.toString());
+	}
+
+	@Test
+	public void parsersSharingDictionaryReturnSameNameInstances() throws ParseException {
+		var names = new NameDictionary();
+		var first = new UserDataScanningParser(names);
+		var second = new UserDataScanningParser(names);
+
+		first.setInput(new String("Иванов Иван Иванович 01.02.1990 89001234567 m"));
+		var userData = first.parse();
+		// Нерегулярная строка разбирается эталонной реализацией.
+		second.setInput(new String("m 89001234567 01.02.1990 Иванов Иван Иванович"));
+		var other = second.parse();
+
+		assertTrue(userData.getLastName() == other.getLastName(), "фамилия не интернирована");
+		assertTrue(userData.getFirstName() == other.getFirstName(), "имя не интернировано");
+		assertTrue(userData.getMiddleName() == other.getMiddleName(), "отчество не интернировано");
+		assertEquals(3, names.size());
+	}
+
+	@Test
+	public void parsesIntoReusedViewLikeIntoUserData() {
+		var parser = new UserDataScanningParser();
+		var view = new UserDataView();
+		for (var input : INPUTS) {
+			assertEquals(outcome(parser, input), outcome(parser, new StringBuilder(input), view),
+					"строка «" + input + "»");
+		}
+	}
+
+	@Test
+	public void parsesRegularLineIntoViewWithoutAllocation() throws ParseException {
+		var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		var parser = new UserDataScanningParser();
+		var view = new UserDataView();
+		var input = new StringBuilder("Иванов Иван Иванович 01.02.1990 89001234567 m");
+		parser.setInput(input);
+		parser.parse(view);
+
+		long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+		int checksum = 0;
+		for (int i = 0; i < 10_000; ++i) {
+			parser.setInput(input);
+			parser.parse(view);
+			checksum += view.length(UserDataView.LAST_NAME) + view.getBirthDay();
+		}
+		long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+		assertEquals(10_000 * (6 + 1), checksum);
+		// Допуск -- на выделение памяти самим измерением.
+		assertTrue(allocated < 1024, "выделено байт: " + allocated);
+		assertEquals("Иванов", view.getLastName());
+		assertEquals("89001234567", view.getPhoneNumber());
+	}
+
+	@Test
+	public void tryParseReportsWhatParseThrows() {
+		for (var parser : List.of(new UserDataParser(), new UserDataScanningParser())) {
+			for (var input : INPUTS) {
+				var expected = outcome(parser, input);
+				if (parser.setInput(input) != 0) {
+					continue;
+				}
+				var result = parser.tryParse();
+
+				var actual = result.isValid() ? result.getValue().toString()
+						: result.getIssueKind() + " " + result.getDataItemName() + " «" + result.getWrongValue() + "»";
+				assertEquals(expected, actual, parser.getClass().getName() + ", строка «" + input + "»");
+				assertEquals(result.isValid(), result.getIssueKind() == null, "род проблемы");
+			}
+		}
+	}
+
+	@Test
+	public void tryParseOfRegularLineReportsIssueWithoutStackTrace() {
+		var parser = new UserDataScanningParser();
+		parser.setInput("Иванов Иван Иванович 32.01.1990 89001234567 m");
+
+		var result = parser.tryParse();
+
+		assertFalse(result.isValid(), "строка с некорректной датой разобрана");
+		assertNull(result.getValue());
+		assertEquals(IssueKind.WRONG_FORMAT, result.getIssueKind());
+		assertEquals("32.01.1990", result.getWrongValue());
+		var issue = assertThrows(ParseException.class, result::orElseThrow);
+		assertEquals(0, issue.getStackTrace().length);
+	}
+
+	@Test
+	public void tryParseReusesExceptionForMissingData() {
+		var parser = new UserDataScanningParser();
+		parser.setInput("Иванов Иван Иванович 01.02.1990 89001234567 12");
+
+		var first = assertThrows(ParseException.class, parser.tryParse()::orElseThrow);
+		var second = assertThrows(ParseException.class, parser.tryParse()::orElseThrow);
+
+		assertEquals(IssueKind.MISSING_DATA, first.getIssueKind());
+		assertTrue(first == second, "исключение создано заново");
+		assertEquals(0, first.getStackTrace().length);
+	}
+
+	/**
+	 * @return Описание результата разбора строки: разница количества полей,
+	 *         строковое представление данных либо сведения о проблеме.
+	 */
+	static String outcome(Parser<UserData> parser, String input) {
+		int itemsCountDiff = parser.setInput(input);
+		if (itemsCountDiff != 0) {
+			return "items " + itemsCountDiff;
+		}
+		try {
+			return parser.parse().toString();
+		} catch (ParseException e) {
+			return describe(e);
+		}
+	}
+
+	private static String outcome(UserDataScanningParser parser, CharSequence input, UserDataView view) {
+		int itemsCountDiff = parser.setInput(input);
+		if (itemsCountDiff != 0) {
+			return "items " + itemsCountDiff;
+		}
+		try {
+			parser.parse(view);
+			return view.toUserData().toString();
+		} catch (ParseException e) {
+			return describe(e);
+		}
+	}
+
+	static String describe(ParseException e) {
+		return e.getIssueKind() + " " + e.getDataItemName() + " «" + e.getWrongValue() + "»";
+	}
+}
@@ -0,0 +1,55 @@
+package entities;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertThrows;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import testing.Test;
+import testing.TestData;
+
+public class CompactUserDataListTest {
+
+	@Test
+	public void storesRecordsInColumnsWithoutLoss() {
+		var list = new CompactUserDataList(new NameDictionary(), 0);
+		var expected = new ArrayList<String>();
+		var genders = Gender.values();
+		for (int i = 0; i < 1000; ++i) {
+			var lastName = i % 2 == 0 ? "Иванов" : "ИВАНОВ";
+			var userData = TestData.userData(lastName, "Иван", "Иванович", LocalDate.of(1990, 1, 1).plusDays(i),
+					"0".repeat(i % 3) + i, genders[i % genders.length]);
+			expected.add(userData.toString());
+
+			assertEquals(i, list.add(userData));
+		}
+		list.trimToSize();
+
+		assertEquals(1000, list.size());
+		var read = new ArrayList<String>();
+		for (int i = 0; i < list.size(); ++i) {
+			read.add(list.get(i).toString());
+		}
+		assertEquals(expected, read);
+		// Строки имён хранятся в словаре по одному разу.
+		assertEquals(4, list.getDictionary().size());
+		assertEquals((int) LocalDate.of(1990, 1, 6).toEpochDay(), list.birthDate(5));
+		assertEquals(2, list.phoneLeadingZeros(5));
+		assertEquals(5L, list.phoneNumber(5));
+	}
+
+	@Test
+	public void addsCompactRecordsOfSameDictionary() {
+		var dictionary = new NameDictionary();
+		var list = new CompactUserDataList(dictionary);
+		var compact = CompactUserData.of(TestData.userData("Петров", "007"), dictionary);
+
+		list.add(compact);
+
+		assertEquals(compact, list.getCompact(0));
+		assertEquals("007", list.get(0).getPhoneNumber());
+		assertThrows(IndexOutOfBoundsException.class, () -> list.get(1));
+		assertThrows(IndexOutOfBoundsException.class, () -> list.lastName(-1));
+	}
+}
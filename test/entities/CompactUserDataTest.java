@@ -0,0 +1,64 @@
+package entities;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import testing.Test;
+import testing.TestData;
+
+public class CompactUserDataTest {
+
+	@Test
+	public void convertsPhoneNumbersWithoutLoss() {
+		var dictionary = new NameDictionary();
+		for (var phoneNumber : List.of("89001234567", "0012", "0", "000", "1", "999999999999999999",
+				// Более 18 значащих цифр, не ASCII-цифры и более 127 ведущих
+				// нулей хранятся в словаре.
+				"1234567890123456789", "٠١٢", "0".repeat(128) + "1")) {
+			var userData = TestData.userData("Иванов", phoneNumber);
+
+			var compact = CompactUserData.of(userData, dictionary);
+
+			assertEquals(userData.toString(), compact.toUserData(dictionary).toString(), "номер " + phoneNumber);
+		}
+		var leadingZeros = CompactUserData.of(TestData.userData("Иванов", "0012"), dictionary);
+		assertEquals(12L, leadingZeros.getPhoneNumber());
+		assertEquals(2, leadingZeros.getPhoneLeadingZeros());
+		var inDictionary = CompactUserData.of(TestData.userData("Иванов", "٠١٢"), dictionary);
+		assertEquals(CompactUserData.PHONE_NUMBER_IN_DICTIONARY, inDictionary.getPhoneLeadingZeros());
+	}
+
+	@Test
+	public void convertsEachGenderAndDate() {
+		var dictionary = new NameDictionary();
+		for (var gender : Gender.values()) {
+			for (var birthDate : List.of(LocalDate.of(1901, 12, 31), LocalDate.of(1970, 1, 1),
+					LocalDate.of(2024, 2, 29))) {
+				var userData = TestData.userData("Иванова", "Анна", "Ивановна", birthDate, "1", gender);
+
+				var compact = CompactUserData.of(userData, dictionary);
+
+				assertEquals(gender.ordinal(), compact.getGender());
+				assertEquals(birthDate.toEpochDay(), compact.getBirthDate());
+				assertEquals(userData.toString(), compact.toUserData(dictionary).toString());
+			}
+		}
+	}
+
+	@Test
+	public void keepsCaseOfNamesSharingNormalizedId() {
+		var dictionary = new NameDictionary();
+		var lower = CompactUserData.of(TestData.userData("иванов", "1"), dictionary);
+		var upper = CompactUserData.of(TestData.userData("ИВАНОВ", "1"), dictionary);
+
+		assertTrue(!lower.equals(upper), "записи с фамилиями в разном регистре совпали");
+		assertEquals(dictionary.normalizedId(lower.getLastName()), dictionary.normalizedId(upper.getLastName()));
+		assertEquals("иванов", lower.toUserData(dictionary).getLastName());
+		assertEquals("ИВАНОВ", upper.toUserData(dictionary).getLastName());
+		assertEquals(lower, CompactUserData.of(TestData.userData("иванов", "1"), dictionary));
+		assertEquals(lower.hashCode(), CompactUserData.of(TestData.userData("иванов", "1"), dictionary).hashCode());
+	}
+}
@@ -0,0 +1,96 @@
+package entities;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertThrows;
+import static testing.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import testing.Test;
+
+public class NameDictionaryTest {
+
+	@Test
+	public void assignsIdsInOrderOfAddition() {
+		var names = new NameDictionary();
+
+		assertEquals(0, names.idOf("Иванов"));
+		assertEquals(1, names.idOf("Иван"));
+		assertEquals(0, names.idOf("Иванов"));
+		assertEquals(1, names.idOf("Иван Иванович", 0, 4));
+		assertEquals(2, names.idOf(new StringBuilder("Иванович"), 0, 8));
+
+		assertEquals(3, names.size());
+		assertEquals("Иван", names.name(1));
+		assertEquals(2, names.find("Иванович"));
+		assertEquals(-1, names.find("Петров"));
+		assertEquals(3, names.size());
+		assertThrows(IndexOutOfBoundsException.class, () -> names.name(3));
+		assertThrows(IndexOutOfBoundsException.class, () -> names.normalizedId(-1));
+	}
+
+	@Test
+	public void internsStringsAndFragments() {
+		var names = new NameDictionary();
+		var first = names.intern(new String("Иванов"));
+
+		assertTrue(names.intern(new String("Иванов")) == first, "строка не интернирована");
+		assertTrue(names.intern("<Иванов>", 1, 7) == first, "фрагмент не интернирован");
+		assertTrue(names.name(names.idOf("Иванов")) == first, "строка словаря заменена");
+	}
+
+	@Test
+	public void sharesNormalizedIdBetweenNamesDifferingInCase() {
+		var names = new NameDictionary();
+		int petrov = names.idOf("Петров");
+		int ivanov = names.idOf("иванов");
+		int upper = names.idOf("ИВАНОВ");
+		int yo = names.idOf("Ёлкин");
+		int yoLower = names.idOf("ёлкин");
+
+		assertTrue(ivanov != upper, "строки, различающиеся регистром, не различаются");
+		assertEquals(ivanov, names.normalizedId(upper));
+		assertEquals(ivanov, names.normalizedId(ivanov));
+		assertEquals(petrov, names.normalizedId(petrov));
+		assertEquals(yo, names.normalizedId(yoLower));
+		assertEquals(ivanov, names.findNormalized("Иванов"));
+		assertEquals(-1, names.findNormalized("Сидоров"));
+	}
+
+	@Test
+	public void threadsGetSameIdsForSameNames() throws Exception {
+		var names = new NameDictionary();
+		// Число строк многократно превышает начальную ёмкость словаря.
+		int count = 10_000;
+		var ids = Collections.synchronizedList(new ArrayList<int[]>());
+		var threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; ++t) {
+			int offset = t * 1000;
+			threads.add(new Thread(() -> {
+				var threadIds = new int[count];
+				for (int i = 0; i < count; ++i) {
+					int name = (i + offset) % count;
+					threadIds[name] = names.idOf("Иванов" + name);
+				}
+				ids.add(threadIds);
+			}));
+		}
+		for (var thread : threads) {
+			thread.start();
+		}
+		for (var thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(count, names.size());
+		for (var threadIds : ids) {
+			for (int i = 0; i < count; ++i) {
+				assertEquals(ids.get(0)[i], threadIds[i], "строка " + i);
+				assertEquals("Иванов" + i, names.name(threadIds[i]));
+			}
+		}
+		assertEquals(List.of(), ids.stream().filter(threadIds -> threadIds.length != count).toList());
+	}
+}
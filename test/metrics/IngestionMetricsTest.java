@@ -0,0 +1,66 @@
+package metrics;
+
+import static testing.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import exceptions.IssueKind;
+import testing.Test;
+
+public class IngestionMetricsTest {
+
+	@Test
+	public void countsIssuesByKindAndDataItem() {
+		var metrics = IngestionMetrics.get();
+		metrics.reset();
+		try {
+			metrics.issue(IssueKind.WRONG_FORMAT, "Дата рождения");
+			metrics.issue(IssueKind.WRONG_FORMAT, "Номер телефона");
+			metrics.issue(IssueKind.MISSING_DATA, "Дата рождения");
+			metrics.issue(IssueKind.WRONG_ITEMS_COUNT, null);
+
+			assertEquals(Map.of("UNSPECIFIED", 0L, "MISSING_DATA", 1L, "AMBIGUOUS_DATA", 0L, "WRONG_FORMAT", 2L,
+					"WRONG_ITEMS_COUNT", 1L), metrics.getIssueCounts());
+			assertEquals(Map.of("", 1L, "Дата рождения", 2L, "Номер телефона", 1L),
+					metrics.getDataItemIssueCounts());
+		} finally {
+			metrics.reset();
+		}
+	}
+
+	@Test
+	public void publishesMetricsThroughJmx() throws Exception {
+		var metrics = IngestionMetrics.get();
+		metrics.reset();
+		try {
+			metrics.written(2000, 100);
+			metrics.written(3000, 50);
+			metrics.parsed(1000);
+
+			IngestionMetrics.register();
+			// Повторная публикация не выполняется.
+			IngestionMetrics.register();
+			var server = ManagementFactory.getPlatformMBeanServer();
+			var name = new ObjectName(IngestionMetrics.OBJECT_NAME);
+
+			assertEquals(150L, server.getAttribute(name, "BytesWritten"));
+			var writeLatency = (CompositeData) server.getAttribute(name, "WriteLatency");
+			assertEquals(2L, writeLatency.get("count"));
+			assertEquals(5000L, writeLatency.get("totalNanos"));
+			assertEquals(3000L, writeLatency.get("maxNanos"));
+			var parseLatency = (CompositeData) server.getAttribute(name, "ParseLatency");
+			assertEquals(1L, parseLatency.get("count"));
+
+			server.invoke(name, "reset", null, null);
+
+			assertEquals(0L, server.getAttribute(name, "BytesWritten"));
+			assertEquals(0L, metrics.getWriteLatency().getCount());
+		} finally {
+			metrics.reset();
+		}
+	}
+}
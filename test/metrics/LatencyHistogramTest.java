@@ -0,0 +1,76 @@
+package metrics;
+
+import static testing.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import testing.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void estimatesPercentilesByBucketUpperBounds() {
+		var histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; ++i) {
+			histogram.record(i * 1000L);
+		}
+
+		var snapshot = histogram.snapshot();
+
+		assertEquals(100L, snapshot.getCount());
+		assertEquals(5_050_000L, snapshot.getTotalNanos());
+		assertEquals(100_000L, snapshot.getMaxNanos());
+		// 50 000 нс -- в интервале от 32 768 до 65 535 нс.
+		assertEquals(65_535L, snapshot.getP50Nanos());
+		assertEquals(131_071L, snapshot.getP90Nanos());
+		assertEquals(131_071L, snapshot.getP99Nanos());
+	}
+
+	@Test
+	public void countsZeroNegativeAndLargestDurations() {
+		var histogram = new LatencyHistogram();
+		histogram.record(0);
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+
+		var snapshot = histogram.snapshot();
+
+		assertEquals(3L, snapshot.getCount());
+		assertEquals(0L, snapshot.getP50Nanos());
+		assertEquals(Long.MAX_VALUE, snapshot.getP99Nanos());
+		assertEquals(Long.MAX_VALUE, snapshot.getMaxNanos());
+
+		histogram.reset();
+
+		snapshot = histogram.snapshot();
+		assertEquals(0L, snapshot.getCount());
+		assertEquals(0L, snapshot.getTotalNanos());
+		assertEquals(0L, snapshot.getMaxNanos());
+		assertEquals(0L, snapshot.getP99Nanos());
+	}
+
+	@Test
+	public void recordsFromSeveralThreads() throws Exception {
+		var histogram = new LatencyHistogram();
+		var threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; ++t) {
+			long nanos = (t + 1) * 100L;
+			var thread = new Thread(() -> {
+				for (int i = 0; i < 10_000; ++i) {
+					histogram.record(nanos);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (var thread : threads) {
+			thread.join();
+		}
+
+		var snapshot = histogram.snapshot();
+
+		assertEquals(40_000L, snapshot.getCount());
+		assertEquals(10_000L * (100 + 200 + 300 + 400), snapshot.getTotalNanos());
+		assertEquals(400L, snapshot.getMaxNanos());
+	}
+}
@@ -0,0 +1,125 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertFalse;
+import static testing.Assert.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import entities.Gender;
+import entities.UserData;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class BinaryRecordCodecTest {
+
+	private static final List<UserData> RECORDS = List.of(
+			TestData.userData("Иванов", "Иван", "Иванович", LocalDate.of(1990, 2, 1), "89001234567", Gender.MALE),
+			// Имена вне компактного набора символов, номер с ведущими нулями и
+			// чётным числом цифр, дата до 1970 года.
+			TestData.userData("Müller", "Jürgen", "Ёлкин", LocalDate.of(1901, 12, 31), "0012", Gender.MALE),
+			// Номер из не ASCII-цифр.
+			TestData.userData("Smith", "Anna", "Lee", LocalDate.of(2024, 2, 29), "٠١٢", Gender.FEMALE),
+			TestData.userData("Петрова", "Анна", "Сергеевна", LocalDate.of(2000, 1, 1), "7", Gender.FEMALE));
+
+	@Test
+	public void decodesEncodedRecords() throws Exception {
+		var codec = new BinaryRecordCodec();
+		var buffer = ByteBuffer.wrap(concat(codec.header(), RECORDS.stream().map(codec::encode).toList()));
+
+		BinaryRecordCodec.readHeader(buffer);
+		var decoded = new ArrayList<String>();
+		while (buffer.hasRemaining()) {
+			int length = BinaryRecordCodec.recordLength(buffer);
+			int start = buffer.position();
+			decoded.add(codec.decode(buffer).toString());
+			assertEquals(length, buffer.position() - start, "длина записи");
+		}
+
+		assertEquals(RECORDS.stream().map(UserData::toString).toList(), decoded);
+	}
+
+	@Test
+	public void encodesCyrillicNamesOneBytePerCharacter() {
+		var record = new BinaryRecordCodec().encode(RECORDS.get(0));
+
+		// Префикс длины, 3 имени с префиксами длины, дата, 11 цифр номера по
+		// две в байте с префиксом, пол.
+		assertEquals(1 + (1 + 6) + (1 + 4) + (1 + 8) + 4 + (1 + 6) + 1, record.length);
+	}
+
+	@Test
+	public void rejectsTruncatedAndCorruptedRecords() throws Exception {
+		var codec = new BinaryRecordCodec();
+		var record = codec.encode(RECORDS.get(0));
+
+		assertEquals(-1, BinaryRecordCodec.recordLength(ByteBuffer.allocate(0)));
+		for (int length = 1; length < record.length; ++length) {
+			var truncated = ByteBuffer.wrap(Arrays.copyOf(record, length));
+			assertThrows(IOException.class, () -> codec.decode(truncated));
+		}
+		var wrongGender = record.clone();
+		wrongGender[record.length - 1] = 'x';
+		assertThrows(IOException.class, () -> codec.decode(ByteBuffer.wrap(wrongGender)));
+		var wrongLength = record.clone();
+		++wrongLength[0];
+		assertThrows(IOException.class, () -> codec.decode(ByteBuffer.wrap(concat(wrongLength, List.of(record)))));
+	}
+
+	@Test
+	public void rejectsOtherFormatsAndVersions() {
+		var text = ByteBuffer.wrap(TestData.userData("Иванов", "1").toString().getBytes(StandardCharsets.UTF_8));
+		assertFalse(BinaryRecordCodec.hasMagic(text), "текст принят за двоичный формат");
+		assertThrows(IOException.class, () -> BinaryRecordCodec.readHeader(text));
+
+		var header = new BinaryRecordCodec().header();
+		++header[header.length - 1];
+		assertThrows(IOException.class, () -> BinaryRecordCodec.readHeader(ByteBuffer.wrap(header)));
+	}
+
+	@Test
+	public void appendsRecordsWithSingleHeader() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve("Иванов");
+			var codec = new BinaryRecordCodec();
+			RecordFiles.append(file, List.of(codec.encode(RECORDS.get(0))), codec, false);
+			RecordFiles.append(file, List.of(codec.encode(RECORDS.get(1)), codec.encode(RECORDS.get(2))), codec,
+					false);
+
+			var read = new ArrayList<String>();
+			try (var records = UserDataReader.stream(file)) {
+				records.forEach(userData -> read.add(userData.toString()));
+			}
+
+			assertEquals(RECORDS.subList(0, 3).stream().map(UserData::toString).toList(), read);
+			// Текстовые записи в двоичный файл не дописываются.
+			var text = List.of(RECORDS.get(3).toString().getBytes(StandardCharsets.UTF_8));
+			assertThrows(IOException.class,
+					() -> RecordFiles.append(file, text, new TextRecordCodec(UserData::toString), false));
+			var expected = concat(codec.header(), RECORDS.subList(0, 3).stream().map(codec::encode).toList());
+			assertEquals((long) expected.length, Files.size(file));
+		}
+	}
+
+	private static byte[] concat(byte[] first, List<byte[]> rest) {
+		int length = first.length;
+		for (var bytes : rest) {
+			length += bytes.length;
+		}
+		var result = Arrays.copyOf(first, length);
+		int position = first.length;
+		for (var bytes : rest) {
+			System.arraycopy(bytes, 0, result, position, bytes.length);
+			position += bytes.length;
+		}
+		return result;
+	}
+}
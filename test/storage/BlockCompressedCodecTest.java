@@ -0,0 +1,160 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import entities.UserData;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class BlockCompressedCodecTest {
+
+	private static final TextRecordCodec TEXT = new TextRecordCodec(UserData::toString);
+
+	@Test
+	public void readsBackAppendedBlocks() throws Exception {
+		try (var dir = new TempDir()) {
+			var codec = codec(dir.path());
+			var file = dir.resolve("Иванов");
+			append(codec, file, "1", "2");
+			append(codec, file, "3");
+
+			assertEquals(List.of("1", "2", "3"), phoneNumbers(file));
+			try (var channel = FileChannel.open(file)) {
+				assertEquals(2, BlockCompressedCodec.blockOffsets(channel).size());
+				assertEquals(Files.size(file), BlockCompressedCodec.completeLength(channel,
+						BlockCompressedCodec.HEADER_LENGTH));
+			}
+		}
+	}
+
+	@Test
+	public void truncatesTornBlockBeforeAppending() throws Exception {
+		try (var dir = new TempDir()) {
+			var codec = codec(dir.path());
+			var file = dir.resolve("Иванов");
+			append(codec, file, "1");
+			long firstBlockEnd = Files.size(file);
+			append(codec, file, "2", "3");
+			// Сбой во время дописывания второго блока.
+			truncate(file, Files.size(file) - 3);
+			assertEquals(List.of("1"), phoneNumbers(file));
+
+			append(codec, file, "4");
+
+			assertEquals(List.of("1", "4"), phoneNumbers(file));
+			try (var channel = FileChannel.open(file)) {
+				assertEquals(List.of((long) BlockCompressedCodec.HEADER_LENGTH, firstBlockEnd),
+						BlockCompressedCodec.blockOffsets(channel));
+			}
+		}
+	}
+
+	@Test
+	public void truncatesTornBlockHeaderBeforeAppending() throws Exception {
+		try (var dir = new TempDir()) {
+			var codec = codec(dir.path());
+			var file = dir.resolve("Иванов");
+			append(codec, file, "1");
+			Files.write(file, new byte[] { (byte) 0x80 }, StandardOpenOption.APPEND);
+
+			append(codec, file, "2");
+
+			assertEquals(List.of("1", "2"), phoneNumbers(file));
+		}
+	}
+
+	@Test
+	public void checksBlocksAppendedByAnotherWriter() throws Exception {
+		try (var dir = new TempDir()) {
+			var codec = codec(dir.path());
+			// Другой экземпляр формата -- как другой процесс.
+			var other = new BlockCompressedCodec(TEXT, CompressionDictionary.load(dir.path()));
+			var file = dir.resolve("Иванов");
+			append(codec, file, "1");
+			append(other, file, "2");
+			append(other, file, "3", "4");
+			truncate(file, Files.size(file) - 1);
+
+			append(codec, file, "5");
+
+			assertEquals(List.of("1", "2", "5"), phoneNumbers(file));
+		}
+	}
+
+	@Test
+	public void refusesToAppendAfterCorruptedBlockHeader() throws Exception {
+		try (var dir = new TempDir()) {
+			var codec = codec(dir.path());
+			var file = dir.resolve("Иванов");
+			append(codec, file, "1");
+			long size = Files.size(file);
+			var garbage = new byte[12];
+			Arrays.fill(garbage, (byte) 0xFF);
+			Files.write(file, garbage, StandardOpenOption.APPEND);
+
+			assertThrows(IOException.class, () -> append(codec, file, "2"));
+			assertEquals(size + garbage.length, Files.size(file));
+		}
+	}
+
+	@Test
+	public void reshardDropsTornBlocksOfMergedFiles() throws Exception {
+		try (var dir = new TempDir()) {
+			var codec = codec(dir.path());
+			ShardedLayout.enable(dir.path());
+			var shardFile = ShardedLayout.createShard(dir.path(), "Иванов").resolve("Иванов");
+			append(codec, shardFile, "1");
+			append(codec, shardFile, "2");
+			truncate(shardFile, Files.size(shardFile) - 1);
+			var topLevelFile = dir.resolve("иванов");
+			append(codec, topLevelFile, "3");
+			append(codec, topLevelFile, "4");
+			truncate(topLevelFile, Files.size(topLevelFile) - 1);
+
+			ShardedLayout.reshard(dir.path());
+			append(codec, shardFile, "5");
+
+			assertEquals(List.of("1", "3", "5"), phoneNumbers(shardFile));
+		}
+	}
+
+	private static BlockCompressedCodec codec(Path dataDir) throws IOException {
+		var samples = new ArrayList<byte[]>();
+		for (int i = 0; i < 100; ++i) {
+			samples.add(TEXT.encode(TestData.userData("Иванов", Integer.toString(i))));
+		}
+		var dictionary = CompressionDictionary.train(samples, TEXT.separator()).storeIfAbsent(dataDir);
+		return new BlockCompressedCodec(TEXT, dictionary);
+	}
+
+	private static void append(RecordCodec codec, Path file, String... phoneNumbers) throws IOException {
+		var records = new ArrayList<byte[]>();
+		for (var phoneNumber : phoneNumbers) {
+			records.add(codec.encode(TestData.userData("Иванов", phoneNumber)));
+		}
+		RecordFiles.append(file, records, codec, true);
+	}
+
+	private static List<String> phoneNumbers(Path file) throws IOException {
+		var found = new ArrayList<String>();
+		RecordFiles.scan(file, 0, scanner -> found.add(scanner.string(RecordScanner.PHONE_NUMBER)));
+		return found;
+	}
+
+	private static void truncate(Path file, long size) throws IOException {
+		try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(size);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertFalse;
+import static testing.Assert.assertThrows;
+import static testing.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import testing.Test;
+
+public class BloomFilterTest {
+
+	@Test
+	public void findsAddedRecordsBeyondExpectedCount() {
+		// Число записей многократно превышает ёмкость первой ступени.
+		var filter = new BloomFilter(BloomFilter.MIN_CAPACITY);
+		int count = 10_000;
+		for (int i = 0; i < count; ++i) {
+			filter.add(record(i));
+		}
+
+		assertEquals((long) count, filter.count());
+		for (int i = 0; i < count; ++i) {
+			assertTrue(filter.mightContain(record(i)), "запись не найдена: " + i);
+		}
+		int falsePositives = 0;
+		for (int i = count; i < 2 * count; ++i) {
+			if (filter.mightContain(record(i))) {
+				++falsePositives;
+			}
+		}
+		assertTrue(falsePositives <= count * 2 / 100, "ложных срабатываний: " + falsePositives);
+	}
+
+	@Test
+	public void readsWrittenFilter() throws Exception {
+		var filter = new BloomFilter(100);
+		for (int i = 0; i < 300; ++i) {
+			filter.add(record(i));
+		}
+
+		var read = BloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(bytes(filter))));
+
+		assertEquals(300L, read.count());
+		for (int i = 0; i < 600; ++i) {
+			assertEquals(filter.mightContain(record(i)), read.mightContain(record(i)), "запись " + i);
+		}
+	}
+
+	@Test
+	public void rejectsTruncatedAndCorruptedFilter() throws Exception {
+		var filter = new BloomFilter(100);
+		filter.add(record(1));
+		var bytes = bytes(filter);
+
+		var truncated = Arrays.copyOf(bytes, bytes.length - 1);
+		assertThrows(IOException.class,
+				() -> BloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(truncated))));
+		// Число хеш-функций первой ступени не соответствует уровню.
+		var corrupted = bytes.clone();
+		++corrupted[Integer.BYTES + Long.BYTES + Integer.BYTES - 1];
+		assertThrows(IOException.class,
+				() -> BloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(corrupted))));
+		assertFalse(new BloomFilter(100).mightContain(record(1)), "запись найдена в пустом фильтре");
+	}
+
+	private static byte[] record(int i) {
+		return ("<Иванов><Иван><Иванович><01.02.1990><" + i + "><m>").getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] bytes(BloomFilter filter) throws IOException {
+		var bytes = new ByteArrayOutputStream();
+		try (var out = new DataOutputStream(bytes)) {
+			filter.writeTo(out);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,52 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import entities.Gender;
+import entities.UserData;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class CompactRecordStoreTest {
+
+	@Test
+	public void answersQueriesOverLoadedRecords() throws Exception {
+		try (var dir = new TempDir()) {
+			var codec = new TextRecordCodec(UserData::toString);
+			var first = TestData.userData("Иванов", "Иван", "Иванович", LocalDate.of(1990, 2, 1), "0012",
+					Gender.MALE);
+			var second = TestData.userData("ИВАНОВ", "Анна", "Ивановна", LocalDate.of(1991, 3, 1), "12",
+					Gender.FEMALE);
+			var third = TestData.userData("Петров", "Пётр", "Петрович", LocalDate.of(1992, 4, 1), "٠١٢",
+					Gender.MALE);
+			RecordFiles.append(dir.resolve("Иванов"), List.of(codec.encode(first), codec.encode(second)), codec,
+					false);
+			RecordFiles.append(dir.resolve("Петров"), List.of(codec.encode(third)), codec, false);
+
+			var store = CompactRecordStore.load(dir.path());
+
+			assertEquals(3, store.size());
+			assertEquals(strings(first, second), strings(store.findByLastName("иванов")));
+			assertEquals(List.of(), store.findByLastName("Сидоров"));
+			// Ведущие нули номера различаются.
+			assertEquals(strings(first), strings(store.findByPhoneNumber("0012")));
+			assertEquals(strings(second), strings(store.findByPhoneNumber("12")));
+			assertEquals(strings(third), strings(store.findByPhoneNumber("٠١٢")));
+			assertEquals(List.of(), store.findByPhoneNumber("٠١"));
+			assertEquals(strings(second, third),
+					strings(store.findByBirthDate(LocalDate.of(1991, 3, 1), LocalDate.of(1992, 4, 1))));
+		}
+	}
+
+	private static List<String> strings(UserData... records) {
+		return strings(List.of(records));
+	}
+
+	private static List<String> strings(List<UserData> records) {
+		return records.stream().map(UserData::toString).toList();
+	}
+}
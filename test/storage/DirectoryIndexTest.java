@@ -0,0 +1,128 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import testing.TempDir;
+import testing.Test;
+
+public class DirectoryIndexTest {
+
+	@Test
+	public void findsFilesCaseInsensitively() throws Exception {
+		try (var dir = new TempDir(); var index = new DirectoryIndex(dir.path())) {
+			Files.createFile(dir.resolve("Иванов"));
+			index.put(dir.resolve("Иванов"));
+
+			assertEquals(dir.resolve("Иванов"), index.find("иВАНОВ"));
+			assertEquals(null, index.find("Петров"));
+		}
+	}
+
+	@Test
+	public void skipsServiceEntries() throws Exception {
+		try (var dir = new TempDir()) {
+			Files.createFile(dir.resolve(".names"));
+			Files.createDirectory(dir.resolve(RecordIndexes.INDEX_DIR));
+			Files.createFile(dir.resolve("Иванов"));
+			try (var index = new DirectoryIndex(dir.path())) {
+				assertEquals(1, index.size());
+
+				Files.createFile(dir.resolve(".bloom"));
+				Files.createFile(dir.resolve("Петров"));
+				// Уведомления обрабатываются по порядку: когда найден второй
+				// файл, служебный уже обработан.
+				for (int i = 0; i < 500 && index.size() < 2; ++i) {
+					Thread.sleep(10);
+				}
+
+				assertEquals(2, index.size());
+				assertEquals(dir.resolve("Петров"), index.find("петров"));
+			}
+		}
+	}
+
+	@Test
+	public void removesFileDeletedByOwner() throws Exception {
+		try (var dir = new TempDir(); var index = new DirectoryIndex(dir.path())) {
+			var file = index.findOrCreate("Иванов");
+			Files.delete(file);
+
+			index.remove(file);
+
+			assertEquals(null, index.find("Иванов"));
+		}
+	}
+
+	@Test
+	public void sharedIndexChecksThatFoundFileExists() throws Exception {
+		try (var dir = new TempDir(); var index = new DirectoryIndex(dir.path(), true)) {
+			var file = index.findOrCreate("Иванов");
+
+			// Файл удалён другим процессом; уведомление могло ещё не прийти.
+			Files.delete(file);
+
+			assertEquals(null, index.find("Иванов"));
+		}
+	}
+
+	@Test
+	public void threadsCreateOneFileForNamesDifferingInCase() throws Exception {
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		try (var dir = new TempDir(); var index = new DirectoryIndex(dir.path())) {
+			for (int round = 0; round < 50; ++round) {
+				var lastName = "Фамилия" + "абвгдежзиклмнопрстуфхцчшщэюя".charAt(round % 28) + round;
+				var created = new ArrayList<Future<Path>>();
+				for (int i = 0; i < 8; ++i) {
+					var name = i % 2 == 0 ? lastName : lastName.toUpperCase();
+					created.add(threads.submit(() -> index.findOrCreate(name)));
+				}
+				var first = created.get(0).get();
+				for (var file : created) {
+					assertEquals(first, file.get());
+				}
+			}
+			assertEquals(50, RecordFiles.listSurnameFiles(dir.path()).size());
+		} finally {
+			threads.shutdown();
+		}
+	}
+
+	@Test
+	public void indexFindsFileRegisteredByAnotherIndex() throws Exception {
+		try (var dir = new TempDir();
+				var first = new DirectoryIndex(dir.path());
+				var second = new DirectoryIndex(dir.path())) {
+			var created = first.findOrCreate("Иванов");
+
+			// Второй индекс мог ещё не получить уведомление о файле, но
+			// находит его по реестру.
+			assertEquals(created, second.findOrCreate("ИВАНОВ"));
+			assertEquals(List.of(created), RecordFiles.listSurnameFiles(dir.path()));
+		}
+	}
+
+	@Test
+	public void dropsTornRegistryRecord() throws Exception {
+		try (var dir = new TempDir()) {
+			// Запись реестра, не завершённая аварийно завершённым процессом.
+			Files.write(dir.resolve(DirectoryIndex.REGISTRY_FILE), "Иванов\nПет".getBytes(StandardCharsets.UTF_8));
+			try (var index = new DirectoryIndex(dir.path())) {
+				index.findOrCreate("Сидоров");
+			}
+
+			assertEquals(List.of("Иванов", "Сидоров"),
+					Files.readAllLines(dir.resolve(DirectoryIndex.REGISTRY_FILE), StandardCharsets.UTF_8));
+			assertTrue(Files.exists(dir.resolve("Сидоров")), "файл не создан");
+		}
+	}
+}
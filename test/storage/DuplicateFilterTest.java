@@ -0,0 +1,96 @@
+package storage;
+
+import static testing.Assert.assertFalse;
+import static testing.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import entities.UserData;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class DuplicateFilterTest {
+
+	private static final RecordCodec TEXT = new TextRecordCodec(UserData::toString);
+
+	@Test
+	public void findsRecordsOfTextAndBinaryFiles() throws Exception {
+		try (var dir = new TempDir()) {
+			for (var codec : List.of(TEXT, new BinaryRecordCodec())) {
+				var file = dir.resolve(codec == TEXT ? "Иванов" : "Петров");
+				var lastName = file.getFileName().toString();
+				append(file, codec, records(codec, lastName, "1", "2", "3"));
+				var existing = codec.encode(TestData.userData(lastName, "2"));
+				var missing = codec.encode(TestData.userData(lastName, "4"));
+
+				try (var duplicates = new DuplicateFilter(dir.path(), codec)) {
+					assertTrue(duplicates.mightContain(file, existing), "запись не найдена фильтром");
+					assertTrue(duplicates.contains(file, existing), "запись не найдена в файле");
+					assertFalse(duplicates.contains(file, missing), "найдена отсутствующая запись");
+					// Файл, которого ещё нет, не содержит записей.
+					var absent = dir.resolve("Сидоров");
+					assertFalse(duplicates.mightContain(absent, existing), "запись найдена в отсутствующем файле");
+					assertFalse(duplicates.contains(absent, existing), "запись найдена в отсутствующем файле");
+				}
+			}
+		}
+	}
+
+	@Test
+	public void keepsAddedRecordsAcrossReopen() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve("Иванов");
+			append(file, TEXT, records(TEXT, "Иванов", "1"));
+			var added = TEXT.encode(TestData.userData("Иванов", "2"));
+			try (var duplicates = new DuplicateFilter(dir.path(), TEXT)) {
+				assertFalse(duplicates.contains(file, added), "найдена отсутствующая запись");
+				duplicates.add(file, added);
+				append(file, TEXT, List.of(added));
+			}
+
+			assertTrue(Files.exists(dir.resolve(DuplicateFilter.FILTERS_DIR).resolve("Иванов")),
+					"фильтр не сохранён");
+			try (var duplicates = new DuplicateFilter(dir.path(), TEXT)) {
+				assertTrue(duplicates.mightContain(file, added), "запись не найдена фильтром");
+				assertTrue(duplicates.contains(file, added), "запись не найдена в файле");
+			}
+		}
+	}
+
+	@Test
+	public void rebuildsFilterOfFileAppendedBypassingIt() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve("Иванов");
+			append(file, TEXT, records(TEXT, "Иванов", "1"));
+			try (var duplicates = new DuplicateFilter(dir.path(), TEXT)) {
+				duplicates.mightContain(file, TEXT.encode(TestData.userData("Иванов", "1")));
+			}
+			// Записи дописаны в обход фильтра: сохранённый фильтр не
+			// соответствует длине файла.
+			var bypassing = records(TEXT, "Иванов", "2", "3", "4", "5");
+			append(file, TEXT, bypassing);
+
+			try (var duplicates = new DuplicateFilter(dir.path(), TEXT)) {
+				for (var record : bypassing) {
+					assertTrue(duplicates.mightContain(file, record), "запись не найдена фильтром");
+				}
+			}
+		}
+	}
+
+	private static List<byte[]> records(RecordCodec codec, String lastName, String... phoneNumbers) {
+		var records = new ArrayList<byte[]>();
+		for (var phoneNumber : phoneNumbers) {
+			records.add(codec.encode(TestData.userData(lastName, phoneNumber)));
+		}
+		return records;
+	}
+
+	private static void append(Path file, RecordCodec codec, List<byte[]> records) throws Exception {
+		RecordFiles.append(file, records, codec, false);
+	}
+}
@@ -0,0 +1,183 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertFalse;
+import static testing.Assert.assertThrows;
+import static testing.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import testing.TempDir;
+import testing.Test;
+
+public class GroupCommitJournalTest {
+
+	/**
+	 * Получатель, дописывающий записи в целевые файлы.
+	 */
+	private static class FileSink implements GroupCommitJournal.Sink {
+		@Override
+		public void append(Path file, byte[] record) throws IOException {
+			Files.write(file, record, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		}
+
+		@Override
+		public void flush() {
+		}
+	}
+
+	@Test
+	public void appliesCommittedRecordsAndDeletesSegmentsOnClose() throws Exception {
+		try (var dir = new TempDir()) {
+			var journal = new GroupCommitJournal(dir.path(), new FileSink(), 5, 100, 1 << 20);
+			journal.commit(List.of(dir.resolve("a.txt"), dir.resolve("b.txt")), List.of(bytes("1\n"), bytes("2\n")));
+			journal.commit(List.of(dir.resolve("a.txt")), List.of(bytes("3\n")));
+			journal.close();
+
+			assertEquals(List.of("1", "3"), Files.readAllLines(dir.resolve("a.txt")));
+			assertEquals(List.of("2"), Files.readAllLines(dir.resolve("b.txt")));
+			assertEquals(List.of(), segments(dir.path()));
+		}
+	}
+
+	@Test
+	public void closeAppliesRecordsAcknowledgedConcurrently() throws Exception {
+		try (var dir = new TempDir()) {
+			var journal = new GroupCommitJournal(dir.path(), new FileSink(), 20, 1000, 1 << 20);
+			var acknowledged = Collections.synchronizedList(new ArrayList<String>());
+			var started = new CountDownLatch(4);
+			var writers = new ArrayList<Thread>();
+			for (int w = 0; w < 4; ++w) {
+				var file = dir.resolve("w" + w + ".txt");
+				var prefix = "w" + w + "-";
+				var writer = new Thread(() -> {
+					started.countDown();
+					for (int i = 0;; ++i) {
+						try {
+							journal.commit(List.of(file), List.of(bytes(prefix + i + "\n")));
+						} catch (IOException e) {
+							return;
+						}
+						acknowledged.add(prefix + i);
+					}
+				});
+				writer.start();
+				writers.add(writer);
+			}
+
+			started.await();
+			Thread.sleep(100);
+			journal.close();
+			for (var writer : writers) {
+				writer.join();
+			}
+
+			var applied = new HashSet<String>();
+			for (int w = 0; w < 4; ++w) {
+				var file = dir.resolve("w" + w + ".txt");
+				if (Files.exists(file)) {
+					applied.addAll(Files.readAllLines(file));
+				}
+			}
+			assertFalse(acknowledged.isEmpty(), "ни одна запись не подтверждена");
+			for (var record : acknowledged) {
+				assertTrue(applied.contains(record), "подтверждённая запись не перенесена: " + record);
+			}
+			assertEquals(List.of(), segments(dir.path()));
+		}
+	}
+
+	@Test
+	public void rejectsCommitsAfterClose() throws Exception {
+		try (var dir = new TempDir()) {
+			var journal = new GroupCommitJournal(dir.path(), new FileSink(), 5, 100, 1 << 20);
+			journal.close();
+			journal.close();
+
+			assertThrows(IOException.class,
+					() -> journal.commit(List.of(dir.resolve("a.txt")), List.of(bytes("1\n"))));
+			assertFalse(Files.exists(dir.resolve("a.txt")), "запись перенесена после закрытия");
+		}
+	}
+
+	@Test
+	public void rejectsSecondJournalInSameDirectory() throws Exception {
+		try (var dir = new TempDir()) {
+			var journal = new GroupCommitJournal(dir.path(), new FileSink(), 5, 100, 1 << 20);
+			try {
+				assertThrows(IOException.class,
+						() -> new GroupCommitJournal(dir.path(), new FileSink(), 5, 100, 1 << 20));
+			} finally {
+				journal.close();
+			}
+		}
+	}
+
+	@Test
+	public void recoversRecordsCommittedBeforeCrash() throws Exception {
+		try (var dir = new TempDir(); var copy = new TempDir()) {
+			Files.write(dir.resolve("a.txt"), bytes("0\n"));
+			var applying = new CountDownLatch(1);
+			var release = new CountDownLatch(1);
+			var journal = new GroupCommitJournal(dir.path(), new FileSink() {
+				@Override
+				public void append(Path file, byte[] record) throws IOException {
+					applying.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+					super.append(file, record);
+				}
+			}, 10_000, 2, 1 << 20);
+			try {
+				// Обе записи фиксируются одной группой, и исходные длины обоих
+				// файлов фиксируются до начала переноса.
+				journal.commit(List.of(dir.resolve("a.txt"), dir.resolve("b.txt")),
+						List.of(bytes("1\n"), bytes("2\n")));
+				applying.await();
+
+				// Состояние директории на момент сбоя: записи зафиксированы в
+				// журнале, перенос начат; в файлы дописаны оборванные строки.
+				try (var files = Files.list(dir.path())) {
+					for (var file : files.toList()) {
+						Files.copy(file, copy.resolve(file.getFileName().toString()));
+					}
+				}
+				Files.write(copy.resolve("a.txt"), bytes("<оборв"), StandardOpenOption.APPEND);
+				Files.write(copy.resolve("b.txt"), bytes("<оборв"));
+
+				new GroupCommitJournal(copy.path(), new FileSink(), 5, 100, 1 << 20).close();
+
+				assertEquals(List.of("0", "1"), Files.readAllLines(copy.resolve("a.txt")));
+				assertEquals(List.of("2"), Files.readAllLines(copy.resolve("b.txt")));
+				assertEquals(List.of(), segments(copy.path()));
+			} finally {
+				release.countDown();
+				journal.close();
+			}
+			assertEquals(List.of("0", "1"), Files.readAllLines(dir.resolve("a.txt")));
+		}
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static List<Path> segments(Path dir) throws IOException {
+		try (var files = Files.list(dir)) {
+			return files.filter(file -> file.getFileName().toString().startsWith(WriteAheadLog.SEGMENT_PREFIX))
+					.toList();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import entities.Gender;
+import entities.UserData;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class MappedQueryEngineTest {
+
+	private static final UserData IVANOV = TestData.userData("Иванов", "Иван", "Иванович", LocalDate.of(1990, 2, 1),
+			"100", Gender.MALE);
+	private static final UserData IVANOVA = TestData.userData("Иванова", "Анна", "Ивановна",
+			LocalDate.of(1990, 2, 2), "200", Gender.FEMALE);
+	private static final UserData PETROV = TestData.userData("Петров", "Пётр", "Петрович", LocalDate.of(1991, 1, 1),
+			"100", Gender.MALE);
+	private static final UserData SIDOROV = TestData.userData("Сидоров", "Иван", "Петрович",
+			LocalDate.of(1989, 12, 31), "300", Gender.MALE);
+
+	@Test
+	public void findsRecordsByScanningDataFiles() throws Exception {
+		try (var dir = new TempDir()) {
+			writeRecords(dir);
+
+			assertFinds(new MappedQueryEngine(dir.path()));
+		}
+	}
+
+	@Test
+	public void findsRecordsByIndexes() throws Exception {
+		try (var dir = new TempDir()) {
+			writeRecords(dir);
+			RecordIndexes.rebuild(dir.path());
+
+			assertFinds(new MappedQueryEngine(dir.path()));
+		}
+	}
+
+	@Test
+	public void ignoresIndexesBehindDataFiles() throws Exception {
+		try (var dir = new TempDir()) {
+			writeRecords(dir);
+			RecordIndexes.rebuild(dir.path());
+			var late = TestData.userData("Петров", "Пётр", "Петрович", LocalDate.of(1990, 2, 1), "400", Gender.MALE);
+			Files.write(dir.resolve("Петров"), List.of(late.toString()), StandardCharsets.UTF_8,
+					StandardOpenOption.APPEND);
+			RecordIndexes.markChanged(dir.path());
+
+			var engine = new MappedQueryEngine(dir.path());
+
+			assertEquals(strings(List.of(late)), strings(engine.findByPhoneNumber("400")));
+			assertEquals(strings(List.of(IVANOV, late)),
+					sorted(engine.findByBirthDate(LocalDate.of(1990, 2, 1), LocalDate.of(1990, 2, 1))));
+		}
+	}
+
+	private static void assertFinds(MappedQueryEngine engine) throws Exception {
+		assertEquals(strings(List.of(IVANOV)), strings(engine.findByLastName("иВАНОВ")));
+		assertEquals(List.of(), engine.findByLastName("Кузнецов"));
+		assertEquals(strings(List.of(IVANOV, PETROV)), sorted(engine.findByPhoneNumber("100")));
+		assertEquals(List.of(), engine.findByPhoneNumber("10"));
+		// Границы диапазона дат включаются.
+		assertEquals(strings(List.of(IVANOV, IVANOVA, SIDOROV)),
+				sorted(engine.findByBirthDate(LocalDate.of(1989, 12, 31), LocalDate.of(1990, 2, 2))));
+		assertEquals(List.of(), engine.findByBirthDate(LocalDate.of(1992, 1, 1), LocalDate.of(2000, 1, 1)));
+	}
+
+	private static void writeRecords(TempDir dir) throws Exception {
+		for (var userData : List.of(IVANOV, IVANOVA, PETROV, SIDOROV)) {
+			Files.write(dir.resolve(userData.getLastName()), List.of(userData.toString()), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static List<String> strings(List<UserData> records) {
+		var strings = new ArrayList<String>();
+		for (var userData : records) {
+			strings.add(userData.toString());
+		}
+		return strings;
+	}
+
+	private static List<String> sorted(List<UserData> records) {
+		var strings = strings(records);
+		strings.sort(null);
+		return strings;
+	}
+}
@@ -0,0 +1,102 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertFalse;
+import static testing.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import entities.Gender;
+import entities.UserData;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class OffHeapRecordStoreTest {
+
+	private static List<String> strings(List<UserData> records) {
+		var strings = new ArrayList<String>();
+		for (var userData : records) {
+			strings.add(userData.toString());
+		}
+		return strings;
+	}
+
+	@Test
+	public void findsRecordsInAdditionOrder() {
+		var store = new OffHeapRecordStore();
+		var first = TestData.userData("Иванов", "1");
+		var second = TestData.userData("ИВАНОВ", "2");
+		var third = TestData.userData("Петров", "1");
+		long address = store.add(first);
+		store.add(second);
+		store.add(third);
+
+		assertEquals(3, store.size());
+		assertEquals(first.toString(), store.get(address).toString());
+		assertEquals(strings(List.of(first, second)), strings(store.findByLastName("иванов")));
+		assertEquals(strings(List.of(first, third)), strings(store.findByPhoneNumber("1")));
+		assertEquals(List.of(), store.findByLastName("Сидоров"));
+		assertEquals(List.of(), store.findByPhoneNumber("3"));
+	}
+
+	@Test
+	public void addsOnlyAbsentRecords() {
+		var store = new OffHeapRecordStore();
+
+		assertTrue(store.addIfAbsent(TestData.userData("Иванов", "1")), "запись не добавлена");
+		assertFalse(store.addIfAbsent(TestData.userData("Иванов", "1")), "повтор добавлен");
+		assertTrue(store.addIfAbsent(TestData.userData("Иванов", "2")), "запись не добавлена");
+		assertEquals(2, store.size());
+	}
+
+	@Test
+	public void keepsRecordsAcrossSlabsAndIndexGrowth() {
+		var store = new OffHeapRecordStore();
+		int count = 500_000;
+		for (int i = 0; i < count; ++i) {
+			store.add(TestData.userData("Фамилия" + (char) ('а' + i % 32), "Имя", "Отчество",
+					LocalDate.of(1950 + i % 50, 1, 1), Integer.toString(i), i % 2 == 0 ? Gender.MALE : Gender.FEMALE));
+		}
+
+		assertTrue(store.memoryBytes() > OffHeapRecordStore.SLAB_BYTES, "записи уместились в одну страницу");
+		assertEquals(count, store.size());
+		for (int i = 0; i < count; i += 9973) {
+			var found = store.findByPhoneNumber(Integer.toString(i));
+			assertEquals(1, found.size());
+			assertEquals("Фамилия" + (char) ('а' + i % 32), found.get(0).getLastName());
+		}
+		assertEquals(count / 32, store.findByLastName("ФАМИЛИЯБ").size());
+		assertEquals(count / 50, store.findByBirthDate(LocalDate.of(1960, 1, 1), LocalDate.of(1960, 12, 31)).size());
+
+		var phones = new long[1];
+		store.forEach(userData -> assertEquals(Long.toString(phones[0]++), userData.getPhoneNumber()));
+		assertEquals(count, phones[0]);
+	}
+
+	@Test
+	public void answersQueriesLikeMappedQueryEngine() throws Exception {
+		try (var dir = new TempDir()) {
+			var lines = new ArrayList<String>();
+			for (int i = 0; i < 1000; ++i) {
+				lines.add(TestData.userData(i % 3 == 0 ? "Иванов" : "Петров", "Иван", "Иванович",
+						LocalDate.of(1980 + i % 20, 1 + i % 12, 1 + i % 28), Integer.toString(i % 100), Gender.MALE)
+						.toString());
+			}
+			Files.write(dir.resolve("Записи"), lines, StandardCharsets.UTF_8);
+
+			var store = OffHeapRecordStore.load(dir.path(), false);
+			var engine = new MappedQueryEngine(dir.path());
+
+			assertEquals(1000, store.size());
+			assertEquals(strings(engine.findByPhoneNumber("42")), strings(store.findByPhoneNumber("42")));
+			var from = LocalDate.of(1985, 3, 1);
+			var to = LocalDate.of(1990, 6, 30);
+			assertEquals(strings(engine.findByBirthDate(from, to)), strings(store.findByBirthDate(from, to)));
+		}
+	}
+}
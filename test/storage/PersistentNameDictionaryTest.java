@@ -0,0 +1,78 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import testing.TempDir;
+import testing.Test;
+
+public class PersistentNameDictionaryTest {
+
+	@Test
+	public void keepsIdsAcrossReopen() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve(".names");
+			try (var names = PersistentNameDictionary.open(file)) {
+				names.idOf("Иванов");
+				names.idOf("Иван");
+				names.idOf("ИВАНОВ");
+			}
+
+			try (var names = PersistentNameDictionary.open(file)) {
+				assertEquals(3, names.size());
+				assertEquals(2, names.find("ИВАНОВ"));
+				assertEquals(0, names.normalizedId(2));
+				assertEquals(3, names.idOf("Петров"));
+			}
+
+			try (var names = PersistentNameDictionary.open(file)) {
+				assertEquals(3, names.find("Петров"));
+			}
+		}
+	}
+
+	@Test
+	public void dropsTornRecord() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve(".names");
+			try (var names = PersistentNameDictionary.open(file)) {
+				names.idOf("Иванов");
+				names.idOf("Петров");
+			}
+			long length = Files.size(file);
+			// Запись оборвана при сбое: длина записана, байты строки -- нет.
+			Files.write(file, new byte[] { 0, 0, 0, 10, 'x' }, StandardOpenOption.APPEND);
+
+			try (var names = PersistentNameDictionary.open(file)) {
+				assertEquals(2, names.size());
+				assertEquals(length, Files.size(file));
+				assertEquals(2, names.idOf("Сидоров"));
+			}
+
+			try (var names = PersistentNameDictionary.open(file)) {
+				assertEquals(2, names.find("Сидоров"));
+			}
+		}
+	}
+
+	@Test
+	public void rejectsDictionaryInUseAndRepeatedNames() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve(".names");
+			try (var names = PersistentNameDictionary.open(file)) {
+				names.idOf("Иванов");
+
+				assertThrows(IOException.class, () -> PersistentNameDictionary.open(file));
+			}
+
+			// Строка, повторяющаяся в файле, означает повреждение файла.
+			Files.write(file, Files.readAllBytes(file), StandardOpenOption.APPEND);
+
+			assertThrows(IOException.class, () -> PersistentNameDictionary.open(file));
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertThrows;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import entities.Gender;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class RecordAggregatorTest {
+
+	@Test
+	public void countsRecordsOfSmallAndSplitFiles() throws Exception {
+		try (var dir = new TempDir()) {
+			var genders = new HashMap<Gender, Long>();
+			var years = new TreeMap<Integer, Long>();
+			var prefixes = new TreeMap<String, Long>();
+			var lastNames = new HashMap<String, Long>();
+			long count = 0;
+
+			// Файл Иванов больше участка, обрабатываемого задачей без
+			// разделения, и разбивается на участки.
+			String[] files = { "Иванов", "Петров", "Сидоров" };
+			int[] sizes = { 120_000, 1000, 1 };
+			for (int f = 0; f < files.length; ++f) {
+				try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve(files[f]), StandardCharsets.UTF_8)) {
+					for (int i = 0; i < sizes[f]; ++i) {
+						var lastName = i % 2 == 0 ? files[f] : files[f].toUpperCase();
+						var gender = i % 3 == 0 ? Gender.FEMALE : Gender.MALE;
+						var phoneNumber = Integer.toString(i * 7919 % 100_000);
+						var userData = TestData.userData(lastName, "Иван", "Иванович",
+								LocalDate.of(1950 + i % 60, 1 + i % 12, 1 + i % 28), phoneNumber, gender);
+						writer.write(userData.toString());
+						writer.newLine();
+
+						++count;
+						genders.merge(gender, 1L, Long::sum);
+						years.merge(userData.getBirthDate().getYear(), 1L, Long::sum);
+						prefixes.merge(phoneNumber.substring(0, Math.min(2, phoneNumber.length())), 1L, Long::sum);
+						lastNames.merge(files[f], 1L, Long::sum);
+					}
+				}
+			}
+
+			var aggregates = new RecordAggregator(dir.path(), 2).aggregate();
+
+			assertEquals(count, aggregates.getRecordCount());
+			for (var gender : Gender.values()) {
+				assertEquals(genders.getOrDefault(gender, 0L), aggregates.getGenderCounts().getOrDefault(gender, 0L));
+			}
+			assertEquals(years, aggregates.getBirthYearCounts());
+			assertEquals(prefixes, aggregates.getPhonePrefixCounts());
+			var foldedLastNames = new HashMap<String, Long>();
+			for (Map.Entry<String, Long> entry : aggregates.getLastNameCounts().entrySet()) {
+				foldedLastNames.merge(entry.getKey().substring(0, 1) + entry.getKey().substring(1).toLowerCase(),
+						entry.getValue(), Long::sum);
+			}
+			assertEquals(lastNames, foldedLastNames);
+		}
+	}
+
+	@Test
+	public void rejectsPhonePrefixLengthOutOfRange() {
+		assertThrows(IllegalArgumentException.class, () -> new RecordAggregator(null, 0));
+		assertThrows(IllegalArgumentException.class,
+				() -> new RecordAggregator(null, RecordAggregator.MAX_PHONE_PREFIX_DIGITS + 1));
+	}
+}
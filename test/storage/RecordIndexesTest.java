@@ -0,0 +1,172 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertNotNull;
+import static testing.Assert.assertNull;
+import static testing.Assert.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import entities.UserData;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class RecordIndexesTest {
+
+	@Test
+	public void findsLocationsOfRecords() throws Exception {
+		try (var dir = new TempDir()) {
+			var first = TestData.userData("Иванов", "1").toString();
+			var second = TestData.userData("Иванов", "2").toString();
+			Files.write(dir.resolve("Иванов"), List.of(first, second), StandardCharsets.UTF_8);
+			Files.write(dir.resolve("Петров"), List.of(TestData.userData("Петров", "2").toString()),
+					StandardCharsets.UTF_8);
+			RecordIndexes.rebuild(dir.path());
+
+			var indexes = RecordIndexes.openForReading(dir.path());
+
+			assertNotNull(indexes, "индексы не используются");
+			assertEquals(3L, indexes.recordCount());
+			long secondOffset = first.getBytes(StandardCharsets.UTF_8).length + System.lineSeparator().length();
+			assertEquals(List.of(dir.resolve("Иванов") + "@" + secondOffset, dir.resolve("Петров") + "@0"),
+					locations(indexes.findByPhoneNumber("2")));
+			assertEquals(3, indexes.findByBirthDate(LocalDate.of(1990, 2, 1), LocalDate.of(1990, 2, 1)).size());
+			assertEquals(List.of(), indexes.findByBirthDate(LocalDate.of(1990, 2, 2), LocalDate.of(1991, 1, 1)));
+		}
+	}
+
+	@Test
+	public void addsRecordsAppendedThroughIndexes() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve("Иванов");
+			var first = TestData.userData("Иванов", "1").toString();
+			var second = TestData.userData("Иванов", "2").toString();
+			try (var indexes = RecordIndexes.openForWriting(dir.path())) {
+				append(file, first);
+				indexes.add(file, "1", LocalDate.of(1990, 2, 1), first.getBytes(StandardCharsets.UTF_8).length);
+
+				// Индексы, открытые на запись, не используются для чтения.
+				assertNull(RecordIndexes.openForReading(dir.path()));
+				assertThrows(IOException.class, () -> RecordIndexes.openForWriting(dir.path()));
+
+				append(file, second);
+				indexes.add(file, "2", LocalDate.of(1990, 2, 1), second.getBytes(StandardCharsets.UTF_8).length);
+			}
+
+			var indexes = RecordIndexes.openForReading(dir.path());
+
+			assertNotNull(indexes, "индексы не используются");
+			long secondOffset = first.getBytes(StandardCharsets.UTF_8).length + System.lineSeparator().length();
+			assertEquals(List.of(file + "@" + secondOffset), locations(indexes.findByPhoneNumber("2")));
+		}
+	}
+
+	@Test
+	public void catchesUpWithRecordsAppendedWithoutIndexes() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve("Иванов");
+			append(file, TestData.userData("Иванов", "1").toString());
+			RecordIndexes.rebuild(dir.path());
+			append(file, TestData.userData("Иванов", "2").toString());
+			append(dir.resolve("Петров"), TestData.userData("Петров", "3").toString());
+			RecordIndexes.markChanged(dir.path());
+
+			// Индексы не соответствуют файлам данных.
+			assertNull(RecordIndexes.openForReading(dir.path()));
+
+			RecordIndexes.openForWriting(dir.path()).close();
+			var indexes = RecordIndexes.openForReading(dir.path());
+
+			assertNotNull(indexes, "индексы не используются");
+			assertEquals(3L, indexes.recordCount());
+			assertEquals(1, indexes.findByPhoneNumber("2").size());
+			assertEquals(List.of(dir.resolve("Петров") + "@0"), locations(indexes.findByPhoneNumber("3")));
+		}
+	}
+
+	@Test
+	public void ignoresIndexesChangedByOtherWriter() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve("Иванов");
+			append(file, TestData.userData("Иванов", "1").toString());
+			var writing = RecordIndexes.openForWriting(dir.path());
+			// Другой процесс дописывает запись без участия индексов.
+			RecordIndexes.markChanged(dir.path());
+			append(file, TestData.userData("Иванов", "2").toString());
+			writing.close();
+
+			assertNull(RecordIndexes.openForReading(dir.path()));
+
+			RecordIndexes.openForWriting(dir.path()).close();
+			var indexes = RecordIndexes.openForReading(dir.path());
+
+			assertNotNull(indexes, "индексы не используются");
+			assertEquals(2L, indexes.recordCount());
+		}
+	}
+
+	@Test
+	public void excludesRemovedFiles() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve("Иванов");
+			append(file, TestData.userData("Иванов", "1").toString());
+			try (var indexes = RecordIndexes.openForWriting(dir.path())) {
+				Files.delete(file);
+				indexes.remove(file);
+
+				assertEquals(List.of(), indexes.findByPhoneNumber("1"));
+
+				append(file, TestData.userData("Иванов", "2").toString());
+				indexes.addFile(file);
+
+				assertEquals(List.of(), indexes.findByPhoneNumber("1"));
+				assertEquals(List.of(file + "@0"), locations(indexes.findByPhoneNumber("2")));
+			}
+			assertNotNull(RecordIndexes.openForReading(dir.path()), "индексы не используются");
+		}
+	}
+
+	@Test
+	public void rebuildsIndexesLeftOpenByWriter() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve("Иванов");
+			append(file, TestData.userData("Иванов", "1").toString());
+			RecordIndexes.rebuild(dir.path());
+			// Пишущий процесс не закрыл индексы: записи дописаны, но не
+			// добавлены.
+			Files.createFile(dir.resolve(RecordIndexes.INDEX_DIR).resolve("writer"));
+			append(file, TestData.userData("Иванов", "2").toString());
+
+			assertNull(RecordIndexes.openForReading(dir.path()));
+
+			RecordIndexes.openForWriting(dir.path()).close();
+			var indexes = RecordIndexes.openForReading(dir.path());
+
+			assertNotNull(indexes, "индексы не используются");
+			assertEquals(2L, indexes.recordCount());
+		}
+	}
+
+	/**
+	 * Дописывает запись в файл данных так же, как сервис сохранения.
+	 */
+	private static void append(Path file, String record) throws IOException {
+		RecordFiles.append(file, List.of(record.getBytes(StandardCharsets.UTF_8)),
+				new TextRecordCodec(UserData::toString), false);
+	}
+
+	private static List<String> locations(List<RecordIndexes.Location> locations) {
+		var strings = new ArrayList<String>();
+		for (var location : locations) {
+			strings.add(location.getFile() + "@" + location.getOffset());
+		}
+		return strings;
+	}
+}
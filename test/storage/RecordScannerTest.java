@@ -0,0 +1,105 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertFalse;
+import static testing.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import entities.Gender;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class RecordScannerTest {
+
+	@Test
+	public void scansFieldsOfRecords() {
+		var first = TestData.userData("Иванов", "Иван", "Иванович", LocalDate.of(1990, 2, 1), "123", Gender.MALE);
+		var second = TestData.userData("Петрова", "Анна", "Сергеевна", LocalDate.of(2000, 2, 29), "456",
+				Gender.FEMALE);
+		var scanner = new RecordScanner().reset(buffer(first + "\r\n" + second + "\n"));
+
+		assertTrue(scanner.next(), "первая запись не найдена");
+		assertEquals(0, scanner.recordStart());
+		assertEquals("Иванов", scanner.string(RecordScanner.LAST_NAME));
+		assertEquals(19900201, scanner.birthDateKey());
+		assertEquals(first.toString(), scanner.toUserData().toString());
+
+		assertTrue(scanner.next(), "вторая запись не найдена");
+		assertEquals(LocalDate.of(2000, 2, 29), scanner.birthDate());
+		assertEquals(Gender.FEMALE, scanner.gender());
+		assertTrue(scanner.fieldEquals(RecordScanner.PHONE_NUMBER, "456".getBytes(StandardCharsets.UTF_8)),
+				"номер телефона");
+		assertEquals(RecordScanner.hash("456".getBytes(StandardCharsets.UTF_8)),
+				scanner.fieldHash(RecordScanner.PHONE_NUMBER));
+
+		assertFalse(scanner.next(), "лишняя запись");
+	}
+
+	@Test
+	public void skipsRecordsWithInvalidBirthDate() {
+		var lines = new ArrayList<String>();
+		for (var date : List.of("32.01.1990", "29.02.2023", "00.01.1990", "01.13.1990", "01.00.1990", "ab.cd.efgh",
+				"01-02-1990", "1.2.19900", "+1.02.1990")) {
+			lines.add("<Иванов><Иван><Иванович><" + date + "><123><m>");
+		}
+		lines.add("<Петров><Пётр><Петрович><29.02.2024><456><m>");
+		var scanner = new RecordScanner().reset(buffer(String.join("\n", lines)));
+
+		assertTrue(scanner.next(), "корректная запись не найдена");
+		assertEquals("Петров", scanner.string(RecordScanner.LAST_NAME));
+		assertEquals(LocalDate.of(2024, 2, 29), scanner.birthDate());
+		assertFalse(scanner.next(), "лишняя запись");
+	}
+
+	@Test
+	public void skipsMalformedLines() {
+		var valid = TestData.userData("Иванов", "1").toString();
+		var text = String.join("\n", "<Иванов><Иван>", "мусор", "<Иванов><Иван><Иванович><01.02.1990><1><mm>",
+				"<Иванов><Иван><<Иванович><01.02.1990><1><m>", valid);
+		var scanner = new RecordScanner().reset(buffer(text));
+
+		assertTrue(scanner.next(), "корректная запись не найдена");
+		assertEquals(valid, scanner.toUserData().toString());
+		assertFalse(scanner.next(), "лишняя запись");
+	}
+
+	@Test
+	public void skipsRecordsWithInvalidGender() {
+		var lines = new ArrayList<String>();
+		for (var gender : List.of("x", "ж", "0", " ", "F", "m")) {
+			lines.add("<Иванов><Иван><Иванович><01.02.1990><123><" + gender + ">");
+		}
+		var scanner = new RecordScanner().reset(buffer(String.join("\n", lines)));
+
+		assertTrue(scanner.next(), "корректная запись не найдена");
+		assertEquals(Gender.FEMALE, scanner.gender());
+		assertTrue(scanner.next(), "корректная запись не найдена");
+		assertEquals(Gender.MALE, scanner.gender());
+		assertFalse(scanner.next(), "лишняя запись");
+	}
+
+	@Test
+	public void aggregationSkipsRecordsWithInvalidBirthDate() throws Exception {
+		try (var dir = new TempDir()) {
+			Files.write(dir.resolve("Иванов"), List.of(
+					"<Иванов><Иван><Иванович><31.02.1990><123><m>",
+					"<Иванов><Иван><Иванович><28.02.1990><124><m>"), StandardCharsets.UTF_8);
+
+			var aggregates = new RecordAggregator(dir.path(), 2).aggregate();
+
+			assertEquals(1, aggregates.getRecordCount());
+			assertEquals(Long.valueOf(1), aggregates.getBirthYearCounts().get(1990));
+		}
+	}
+
+	private static ByteBuffer buffer(String text) {
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+	}
+}
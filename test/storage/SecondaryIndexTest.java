@@ -0,0 +1,74 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import testing.TempDir;
+import testing.Test;
+
+public class SecondaryIndexTest {
+
+	@Test
+	public void findsPairsAcrossMemtableRunsAndMerges() throws Exception {
+		try (var dir = new TempDir()) {
+			// Малый буфер и малое число серий: пары распределяются по сериям,
+			// которые многократно сливаются.
+			var index = new SecondaryIndex(dir.path(), "test", 7, 2);
+			var random = new Random(1);
+			var keys = new long[1000];
+			for (int i = 0; i < keys.length; ++i) {
+				keys[i] = random.nextInt(100) - 50;
+				index.add(keys[i], i);
+			}
+
+			assertEquals((long) keys.length, index.size());
+			for (long from = -52; from <= 52; from += 13) {
+				assertEquals(expected(keys, from, from + 5), found(index, from, from + 5), "ключи от " + from);
+			}
+			assertEquals(expected(keys, Long.MIN_VALUE, Long.MAX_VALUE),
+					found(index, Long.MIN_VALUE, Long.MAX_VALUE));
+		}
+	}
+
+	@Test
+	public void keepsFlushedRunsAcrossReopen() throws Exception {
+		try (var dir = new TempDir()) {
+			var index = new SecondaryIndex(dir.path(), "test", 4, 8);
+			for (int i = 0; i < 10; ++i) {
+				index.add(i % 3, i);
+			}
+			index.flush();
+			index.add(1, 100);
+
+			// Пары, не записанные в серию, не сохраняются.
+			var reopened = new SecondaryIndex(dir.path(), "test", 4, 8);
+
+			assertEquals(10L, reopened.size());
+			assertEquals(List.of(1L, 4L, 7L), found(reopened, 1, 1));
+
+			reopened.clear();
+
+			assertEquals(0L, new SecondaryIndex(dir.path(), "test", 4, 8).size());
+		}
+	}
+
+	private static List<Long> expected(long[] keys, long from, long to) {
+		var values = new ArrayList<Long>();
+		for (int i = 0; i < keys.length; ++i) {
+			if (keys[i] >= from && keys[i] <= to) {
+				values.add((long) i);
+			}
+		}
+		return values;
+	}
+
+	private static List<Long> found(SecondaryIndex index, long from, long to) {
+		var values = new ArrayList<Long>();
+		index.lookup(from, to, values::add);
+		values.sort(null);
+		return values;
+	}
+}
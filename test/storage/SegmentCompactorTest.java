@@ -0,0 +1,232 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertFalse;
+import static testing.Assert.assertThrows;
+import static testing.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import entities.UserData;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class SegmentCompactorTest {
+
+	private static final RecordCodec CODEC = new TextRecordCodec(UserData::toString);
+
+	/**
+	 * Пишущий процесс, запоминающий освобождённые и уплотнённые файлы.
+	 */
+	private static class RecordingWriter implements SegmentCompactor.Writer {
+		final List<Path> released = new ArrayList<>();
+		final List<Path> compacted = new ArrayList<>();
+
+		@Override
+		public void release(Path file) throws IOException {
+			released.add(file);
+		}
+
+		@Override
+		public void compacted(List<Path> files, Path segment) {
+			compacted.addAll(files);
+		}
+	}
+
+	@Test
+	public void movesColdSmallFilesIntoSegment() throws Exception {
+		try (var dir = new TempDir()) {
+			append(dir.resolve("Иванов"), "1", "2");
+			append(dir.resolve("Петров"), "3");
+			append(dir.resolve("Сидоров"), "4");
+			append(dir.resolve("Кузнецов"), "5");
+			for (var name : List.of("Иванов", "Петров", "Сидоров")) {
+				makeCold(dir.resolve(name));
+			}
+			var writer = new RecordingWriter();
+
+			int compacted = new SegmentCompactor(dir.path(), CODEC, 1024, 1 << 20).compact(60_000,
+					new ReentrantLock(), writer);
+
+			assertEquals(3, compacted);
+			var expected = List.of(dir.resolve("Иванов"), dir.resolve("Петров"), dir.resolve("Сидоров"));
+			assertEquals(expected, writer.released);
+			assertEquals(expected, writer.compacted);
+			// Файл, изменявшийся недавно, не уплотняется.
+			assertEquals(List.of(dir.resolve("Кузнецов")), RecordFiles.listSurnameFiles(dir.path()));
+			assertEquals(1, SegmentStore.listSegments(dir.path()).size());
+
+			var engine = new MappedQueryEngine(dir.path());
+			assertEquals(List.of("1", "2"), phones(engine.findByLastName("иванов")));
+			assertEquals(List.of("3"), phones(engine.findByLastName("Петров")));
+			assertEquals(List.of("3"), phones(engine.findByPhoneNumber("3")));
+			assertEquals(List.of("1", "2", "3", "4", "5"), allPhones(dir.path()));
+		}
+	}
+
+	@Test
+	public void keepsLargeFilesAndSingleColdFile() throws Exception {
+		try (var dir = new TempDir()) {
+			append(dir.resolve("Иванов"), "1");
+			append(dir.resolve("Петров"), "2".repeat(2000));
+			makeCold(dir.resolve("Иванов"));
+			makeCold(dir.resolve("Петров"));
+
+			int compacted = new SegmentCompactor(dir.path(), CODEC, 1024, 1 << 20).compact(60_000,
+					new ReentrantLock(), new RecordingWriter());
+
+			// Уплотнение единственного небольшого файла не сокращает числа
+			// файлов.
+			assertEquals(0, compacted);
+			assertEquals(2, RecordFiles.listSurnameFiles(dir.path()).size());
+			assertEquals(List.of(), SegmentStore.listSegments(dir.path()));
+		}
+	}
+
+	@Test
+	public void copiesRecordsFlushedOnRelease() throws Exception {
+		try (var dir = new TempDir()) {
+			append(dir.resolve("Иванов"), "1");
+			append(dir.resolve("Петров"), "2");
+			makeCold(dir.resolve("Иванов"));
+			makeCold(dir.resolve("Петров"));
+			var writer = new RecordingWriter() {
+				@Override
+				public void release(Path file) throws IOException {
+					super.release(file);
+					// Буферизованные записи сбрасываются на диск после
+					// копирования файла без блокировки записи.
+					if (file.getFileName().toString().equals("Иванов")) {
+						append(file, "3");
+					}
+				}
+			};
+
+			new SegmentCompactor(dir.path(), CODEC, 1024, 1 << 20).compact(60_000, new ReentrantLock(), writer);
+
+			assertEquals(List.of(), RecordFiles.listSurnameFiles(dir.path()));
+			assertEquals(List.of("1", "3"), phones(new MappedQueryEngine(dir.path()).findByLastName("Иванов")));
+			assertEquals(List.of("1", "2", "3"), allPhones(dir.path()));
+		}
+	}
+
+	@Test
+	public void findsRecordsSavedAfterCompaction() throws Exception {
+		try (var dir = new TempDir()) {
+			append(dir.resolve("Иванов"), "1");
+			append(dir.resolve("Петров"), "2");
+			makeCold(dir.resolve("Иванов"));
+			makeCold(dir.resolve("Петров"));
+			var compactor = new SegmentCompactor(dir.path(), CODEC, 1024, 1 << 20);
+			compactor.compact(60_000, new ReentrantLock(), new RecordingWriter());
+
+			append(dir.resolve("Иванов"), "3");
+			append(dir.resolve("Сидоров"), "4");
+			makeCold(dir.resolve("Иванов"));
+			makeCold(dir.resolve("Сидоров"));
+			compactor.compact(60_000, new ReentrantLock(), new RecordingWriter());
+
+			assertEquals(2, SegmentStore.listSegments(dir.path()).size());
+			assertEquals(List.of("1", "3"), phones(new MappedQueryEngine(dir.path()).findByLastName("Иванов")));
+			assertEquals(List.of("1", "2", "3", "4"), allPhones(dir.path()));
+		}
+	}
+
+	@Test
+	public void abandonsSegmentWhenCompactionFails() throws Exception {
+		try (var dir = new TempDir()) {
+			append(dir.resolve("Иванов"), "1");
+			append(dir.resolve("Петров"), "2");
+			makeCold(dir.resolve("Иванов"));
+			makeCold(dir.resolve("Петров"));
+			var lock = new ReentrantLock();
+			var failing = new RecordingWriter() {
+				@Override
+				public void release(Path file) throws IOException {
+					throw new IOException("сбой");
+				}
+			};
+
+			assertThrows(IOException.class,
+					() -> new SegmentCompactor(dir.path(), CODEC, 1024, 1 << 20).compact(60_000, lock, failing));
+
+			assertFalse(lock.isLocked(), "блокировка записи не освобождена");
+			assertEquals(2, RecordFiles.listSurnameFiles(dir.path()).size());
+			assertEquals(List.of(), SegmentStore.listSegments(dir.path()));
+			try (var files = Files.list(dir.resolve(SegmentStore.SEGMENTS_DIR))) {
+				assertEquals(0L, files.count());
+			}
+
+			int compacted = new SegmentCompactor(dir.path(), CODEC, 1024, 1 << 20).compact(60_000, lock,
+					new RecordingWriter());
+
+			assertEquals(2, compacted);
+			assertEquals(List.of("1", "2"), allPhones(dir.path()));
+		}
+	}
+
+	@Test
+	public void completesCompactionInterruptedAfterPublishing() throws Exception {
+		try (var dir = new TempDir()) {
+			append(dir.resolve("Иванов"), "1");
+			append(dir.resolve("Петров"), "2");
+			makeCold(dir.resolve("Иванов"));
+			makeCold(dir.resolve("Петров"));
+			// Копии файлов фамилий восстанавливаются после уплотнения, как
+			// если бы сбой произошёл до их удаления.
+			var copies = new ArrayList<byte[]>();
+			for (var name : List.of("Иванов", "Петров")) {
+				copies.add(Files.readAllBytes(dir.resolve(name)));
+			}
+			new SegmentCompactor(dir.path(), CODEC, 1024, 1 << 20).compact(60_000, new ReentrantLock(),
+					new RecordingWriter());
+			var segment = SegmentStore.listSegments(dir.path()).get(0);
+			var name = segment.getFileName().toString();
+			var prefix = name.substring(0, name.length() - SegmentStore.DATA_SUFFIX.length());
+			var pending = segment.resolveSibling(prefix + ".pending");
+			Files.write(dir.resolve("Иванов"), copies.get(0));
+			Files.write(dir.resolve("Петров"), copies.get(1));
+			append(dir.resolve("Петров"), "3");
+			Files.write(pending, String.join("\n", "Иванов\t" + copies.get(0).length,
+					"Петров\t" + copies.get(1).length).getBytes(StandardCharsets.UTF_8));
+
+			new SegmentCompactor(dir.path(), CODEC, 1024, 1 << 20);
+
+			// Файл, дописанный после уплотнения, сохраняется.
+			assertFalse(Files.exists(pending), "список удаляемых файлов не удалён");
+			assertEquals(List.of(dir.resolve("Петров")), RecordFiles.listSurnameFiles(dir.path()));
+			assertTrue(Files.exists(segment), "сегмент удалён");
+		}
+	}
+
+	private static void append(Path file, String... phoneNumbers) throws IOException {
+		var records = new ArrayList<byte[]>();
+		for (var phoneNumber : phoneNumbers) {
+			var userData = TestData.userData(file.getFileName().toString(), phoneNumber);
+			records.add(CODEC.encode(userData));
+		}
+		RecordFiles.append(file, records, CODEC, false);
+	}
+
+	private static void makeCold(Path file) throws IOException {
+		Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 3_600_000));
+	}
+
+	private static List<String> phones(List<UserData> records) {
+		return records.stream().map(UserData::getPhoneNumber).toList();
+	}
+
+	private static List<String> allPhones(Path dataDir) throws IOException {
+		try (var records = UserDataReader.stream(dataDir)) {
+			return records.map(UserData::getPhoneNumber).sorted().toList();
+		}
+	}
+}
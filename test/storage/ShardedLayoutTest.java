@@ -0,0 +1,150 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertFalse;
+import static testing.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import entities.UserData;
+import testing.TempDir;
+import testing.Test;
+
+public class ShardedLayoutTest {
+
+	private final RecordCodec codec = new TextRecordCodec(UserData::toString);
+
+	@Test
+	public void reshardMovesTopLevelFilesIntoShards() throws Exception {
+		try (var dir = new TempDir()) {
+			append(dir.resolve("Иванов"), "1", "2");
+			append(dir.resolve("Петров"), "3");
+
+			assertEquals(2, ShardedLayout.reshard(dir.path()));
+
+			assertTrue(ShardedLayout.isSharded(dir.path()), "директория не сегментирована");
+			assertFalse(Files.exists(dir.resolve("Иванов")), "файл остался на верхнем уровне");
+			var moved = ShardedLayout.shardOf(dir.path(), "Иванов").resolve("Иванов");
+			assertEquals(List.of("1", "2"), Files.readAllLines(moved, StandardCharsets.UTF_8));
+			assertEquals(moved, ShardedLayout.findInShard(dir.path(), "ИВАНОВ"));
+			assertEquals(2, RecordFiles.listSurnameFiles(dir.path()).size());
+		}
+	}
+
+	@Test
+	public void searchSkipsTopLevelOfMigratedDirectory() throws Exception {
+		try (var dir = new TempDir()) {
+			append(dir.resolve("Иванов"), "1");
+			ShardedLayout.enable(dir.path());
+
+			assertFalse(ShardedLayout.isMigrated(dir.path()), "файлы верхнего уровня не учтены");
+			assertEquals(List.of(dir.resolve("Иванов")), RecordFiles.findDataFiles(dir.path(), "иванов"));
+
+			ShardedLayout.reshard(dir.path());
+
+			assertTrue(ShardedLayout.isMigrated(dir.path()), "директория не отмечена как перенесённая");
+			var moved = ShardedLayout.shardOf(dir.path(), "Иванов").resolve("Иванов");
+			assertEquals(List.of(moved), RecordFiles.findDataFiles(dir.path(), "иванов"));
+		}
+		try (var dir = new TempDir()) {
+			ShardedLayout.enable(dir.path());
+
+			assertTrue(ShardedLayout.isMigrated(dir.path()), "пустая директория не отмечена как перенесённая");
+		}
+	}
+
+	@Test
+	public void reshardMergesFileIntoShardFileOfSameName() throws Exception {
+		try (var dir = new TempDir()) {
+			ShardedLayout.enable(dir.path());
+			var shardFile = ShardedLayout.createShard(dir.path(), "иванов").resolve("иванов");
+			append(shardFile, "1");
+			append(dir.resolve("Иванов"), "2", "3");
+
+			assertEquals(1, ShardedLayout.reshard(dir.path()));
+
+			assertFalse(Files.exists(dir.resolve("Иванов")), "файл остался на верхнем уровне");
+			assertEquals(List.of("1", "2", "3"), Files.readAllLines(shardFile, StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void reshardDoesNotLoseRecordsAppendedConcurrently() throws Exception {
+		try (var dir = new TempDir()) {
+			ShardedLayout.enable(dir.path());
+			append(ShardedLayout.createShard(dir.path(), "Иванов").resolve("Иванов"), "начало");
+
+			// Блокировки файлов (FileLock) согласуют процессы, поэтому запись
+			// выполняется другим процессом, как и при переносе командой
+			// App --reshard.
+			var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+			var writer = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					Writer.class.getName(), dir.resolve("Иванов").toString(), "2000")
+					.redirectErrorStream(true)
+					.start();
+			while (writer.isAlive()) {
+				ShardedLayout.reshard(dir.path());
+			}
+			var output = new String(writer.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+			assertEquals(0, writer.waitFor(), output);
+			ShardedLayout.reshard(dir.path());
+
+			var records = new ArrayList<String>();
+			for (var file : RecordFiles.listSurnameFiles(dir.path())) {
+				records.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+			}
+			assertEquals(2001, records.size());
+			var distinct = new HashSet<>(records);
+			for (int i = 0; i < 2000; ++i) {
+				assertTrue(distinct.contains(Integer.toString(i)), "потеряна запись " + i);
+			}
+		}
+	}
+
+	@Test
+	public void directoryIndexForgetsShardFileDeletedByAnotherProcess() throws Exception {
+		try (var dir = new TempDir()) {
+			ShardedLayout.enable(dir.path());
+			try (var index = new DirectoryIndex(dir.path())) {
+				var file = index.findOrCreate("Иванов");
+				assertEquals(ShardedLayout.shardOf(dir.path(), "Иванов").resolve("Иванов"), file);
+				assertEquals(file, index.find("иванов"));
+
+				Files.delete(file);
+
+				assertEquals(null, index.find("иванов"));
+			}
+		}
+	}
+
+	/**
+	 * Процесс, дописывающий в файл записи с номерами от 0 до заданного числа
+	 * в режиме совместного доступа.
+	 */
+	static final class Writer {
+		public static void main(String[] args) throws Exception {
+			var codec = new TextRecordCodec(UserData::toString);
+			var file = Path.of(args[0]);
+			for (int i = 0; i < Integer.parseInt(args[1]); ++i) {
+				RecordFiles.append(file, List.of(bytes(Integer.toString(i))), codec, true);
+			}
+		}
+	}
+
+	private void append(Path file, String... records) throws Exception {
+		var bytes = new ArrayList<byte[]>();
+		for (var record : records) {
+			bytes.add(bytes(record));
+		}
+		RecordFiles.append(file, bytes, codec, true);
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,35 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertThrows;
+import static testing.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+
+import testing.Test;
+
+public class StripedLocksTest {
+
+	@Test
+	public void givesOneLockToNamesDifferingInCase() {
+		var locks = new StripedLocks(64);
+
+		assertTrue(locks.lockFor("Иванов") == locks.lockFor("ИВАНОВ"), "разные блокировки одного имени");
+		assertTrue(locks.lockFor("Ёлкин") == locks.lockFor("ёлкин"), "разные блокировки одного имени");
+	}
+
+	@Test
+	public void roundsStripesCountUpToPowerOfTwo() {
+		for (int stripesCount : new int[] { 1, 3, 4, 5 }) {
+			var locks = new StripedLocks(stripesCount);
+			var distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (int i = 0; i < 1000; ++i) {
+				distinct.add(locks.lockFor("Иванов" + i));
+			}
+
+			assertEquals(Integer.highestOneBit(stripesCount * 2 - 1), distinct.size(), "полос: " + stripesCount);
+		}
+		assertThrows(IllegalArgumentException.class, () -> new StripedLocks(0));
+	}
+}
@@ -0,0 +1,105 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertFalse;
+import static testing.Assert.assertNotNull;
+import static testing.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+
+import entities.Gender;
+import entities.UserData;
+import testing.TempDir;
+import testing.Test;
+import testing.TestData;
+
+public class UserDataReaderTest {
+
+	@Test
+	public void readsTextAndBinaryFilesOfDirectory() throws Exception {
+		try (var dir = new TempDir()) {
+			var first = TestData.userData("Иванов", "1");
+			var second = TestData.userData("Иванов", "2");
+			var third = TestData.userData("Петров", "Пётр", "Петрович", LocalDate.of(1991, 1, 1), "3", Gender.MALE);
+			Files.write(dir.resolve("Иванов"), List.of(first.toString(), "<Иванов><оборванная", second.toString()),
+					StandardCharsets.UTF_8);
+			var codec = new BinaryRecordCodec();
+			RecordFiles.append(dir.resolve("Петров"), List.of(codec.encode(third)), codec, false);
+			// Служебные файлы и поддиректории директории данных не читаются.
+			Files.write(dir.resolve(".names"), List.of(first.toString()), StandardCharsets.UTF_8);
+			Files.createDirectory(dir.resolve(RecordIndexes.INDEX_DIR));
+
+			var read = new ArrayList<String>();
+			try (var records = UserDataReader.stream(dir.path())) {
+				records.forEach(userData -> read.add(userData.toString()));
+			}
+			read.sort(null);
+
+			assertEquals(List.of(first.toString(), second.toString(), third.toString()), read);
+		}
+	}
+
+	@Test
+	public void splitsLargeTextFileAtLineBoundaries() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve("Иванов");
+			int count = 60_000;
+			try (var writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+				for (int i = 0; i < count; ++i) {
+					writer.write(TestData.userData("Иванов", Integer.toString(i)).toString());
+					writer.newLine();
+				}
+			}
+
+			// Файл разделяется на диапазоны, которые читаются параллельно.
+			try (var spliterator = UserDataReader.spliterator(file)) {
+				var prefix = spliterator.trySplit();
+				assertNotNull(prefix, "файл не разделён");
+				var phones = new boolean[count];
+				for (Spliterator<UserData> part : List.of(prefix, spliterator)) {
+					part.forEachRemaining(userData -> {
+						int phone = Integer.parseInt(userData.getPhoneNumber());
+						assertFalse(phones[phone], "запись прочитана дважды: " + phone);
+						phones[phone] = true;
+					});
+				}
+				for (int i = 0; i < count; ++i) {
+					assertTrue(phones[i], "запись не прочитана: " + i);
+				}
+			}
+
+			try (var records = UserDataReader.stream(file)) {
+				assertEquals((long) count,
+						records.parallel().filter(userData -> userData.getLastName().equals("Иванов")).count());
+			}
+		}
+	}
+
+	@Test
+	public void readsRecordsPresentWhenStreamIsCreated() throws Exception {
+		try (var dir = new TempDir()) {
+			var file = dir.resolve("Иванов");
+			Files.write(file, List.of(TestData.userData("Иванов", "1").toString(),
+					TestData.userData("Иванов", "2").toString()), StandardCharsets.UTF_8);
+
+			try (var records = UserDataReader.stream(file)) {
+				var iterator = records.iterator();
+				assertEquals("1", iterator.next().getPhoneNumber());
+
+				// Записи, дописанные после начала чтения, но до чтения их
+				// блока, в поток не попадают: размер файла зафиксирован при
+				// создании потока.
+				Files.write(file, List.of(TestData.userData("Иванов", "3").toString()), StandardCharsets.UTF_8,
+						StandardOpenOption.APPEND);
+				assertEquals("2", iterator.next().getPhoneNumber());
+				assertFalse(iterator.hasNext(), "прочитана запись за концом файла");
+			}
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertThrows;
+import static testing.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import testing.TempDir;
+import testing.Test;
+
+public class WriteAheadLogTest {
+
+	private static final byte TYPE = 7;
+
+	@Test
+	public void commitsRecordsInGroups() throws Exception {
+		try (var dir = new TempDir()) {
+			var batches = Collections.synchronizedList(new ArrayList<List<Long>>());
+			var log = new WriteAheadLog(dir.path(), 1, 10_000, 3, batch -> batches.add(seqs(batch)));
+			try {
+				log.append(TYPE, bytes("1"));
+				log.append(TYPE, bytes("2"));
+				Thread.sleep(50);
+
+				// Группа не накоплена, время её накопления не истекло.
+				assertEquals(List.of(), batches);
+
+				long seq = log.append(TYPE, bytes("3"));
+				log.awaitCommitted(seq);
+
+				assertEquals(List.of(List.of(1L, 2L, 3L)), batches);
+			} finally {
+				log.close();
+			}
+			assertEquals(List.of("1", "2", "3"), bodies(WriteAheadLog.readAll(dir.path())));
+		}
+	}
+
+	@Test
+	public void closeCommitsPendingRecords() throws Exception {
+		try (var dir = new TempDir()) {
+			var batches = Collections.synchronizedList(new ArrayList<List<Long>>());
+			var log = new WriteAheadLog(dir.path(), 10, 10_000, 100, batch -> batches.add(seqs(batch)));
+			log.append(TYPE, bytes("1"));
+			log.append(TYPE, bytes("2"));
+			log.close();
+
+			assertEquals(List.of(List.of(10L, 11L)), batches);
+			assertEquals(List.of("1", "2"), bodies(WriteAheadLog.readAll(dir.path())));
+		}
+	}
+
+	@Test
+	public void readStopsAtTornOrCorruptedEntry() throws Exception {
+		try (var dir = new TempDir()) {
+			var log = new WriteAheadLog(dir.path(), 1, 0, 1, batch -> {
+			});
+			for (var body : List.of("первая", "вторая", "третья")) {
+				log.awaitCommitted(log.append(TYPE, bytes(body)));
+			}
+			log.close();
+			var segment = segments(dir.path()).get(0);
+
+			try (var channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+				channel.truncate(channel.size() - 3);
+			}
+
+			assertEquals(List.of("первая", "вторая"), bodies(WriteAheadLog.readAll(dir.path())));
+
+			// Повреждение тела второй записи: не совпадает CRC32.
+			int secondBody = 2 * (Integer.BYTES * 2 + 1 + Long.BYTES) + bytes("первая").length;
+			try (var channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+				channel.write(ByteBuffer.wrap(bytes("Х")), secondBody);
+			}
+
+			assertEquals(List.of("первая"), bodies(WriteAheadLog.readAll(dir.path())));
+		}
+	}
+
+	@Test
+	public void rejectsCorruptedSegmentOtherThanLast() throws Exception {
+		try (var dir = new TempDir()) {
+			var log = new WriteAheadLog(dir.path(), 1, 0, 1, batch -> {
+			});
+			log.awaitCommitted(log.append(TYPE, bytes("1")));
+			log.awaitCommitted(log.append(TYPE, bytes("2")));
+			log.rotate();
+			log.awaitCommitted(log.append(TYPE, bytes("3")));
+			log.close();
+			var segments = segments(dir.path());
+
+			// Оборванная запись последнего сегмента отбрасывается.
+			try (var channel = FileChannel.open(segments.get(1), StandardOpenOption.WRITE)) {
+				channel.truncate(channel.size() - 1);
+			}
+
+			assertEquals(List.of("1", "2"), bodies(WriteAheadLog.readAll(dir.path())));
+
+			// Закрытый сегмент не может быть оборван сбоем.
+			try (var channel = FileChannel.open(segments.get(0), StandardOpenOption.WRITE)) {
+				channel.truncate(channel.size() - 1);
+			}
+
+			assertThrows(IOException.class, () -> WriteAheadLog.readAll(dir.path()));
+		}
+	}
+
+	@Test
+	public void deletesRotatedSegmentsUpToSeq() throws Exception {
+		try (var dir = new TempDir()) {
+			var log = new WriteAheadLog(dir.path(), 1, 0, 1, batch -> {
+			});
+			try {
+				log.awaitCommitted(log.append(TYPE, bytes("1")));
+				log.rotate();
+				log.awaitCommitted(log.append(TYPE, bytes("2")));
+				log.rotate();
+				log.awaitCommitted(log.append(TYPE, bytes("3")));
+
+				assertEquals(3, segments(dir.path()).size());
+
+				log.deleteSegmentsUpTo(2);
+
+				assertEquals(List.of("3"), bodies(WriteAheadLog.readAll(dir.path())));
+			} finally {
+				log.closeAndDelete();
+			}
+			assertTrue(segments(dir.path()).isEmpty(), "сегменты не удалены");
+		}
+	}
+
+	private static List<Long> seqs(List<WriteAheadLog.Entry> entries) {
+		return entries.stream().map(entry -> entry.seq).toList();
+	}
+
+	private static List<String> bodies(List<WriteAheadLog.Entry> entries) {
+		return entries.stream().map(entry -> new String(entry.body, StandardCharsets.UTF_8)).toList();
+	}
+
+	private static List<Path> segments(Path dir) throws Exception {
+		try (var files = Files.list(dir)) {
+			return files.filter(file -> file.getFileName().toString().startsWith(WriteAheadLog.SEGMENT_PREFIX))
+					.sorted()
+					.toList();
+		}
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+}
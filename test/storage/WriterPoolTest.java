@@ -0,0 +1,201 @@
+package storage;
+
+import static testing.Assert.assertEquals;
+import static testing.Assert.assertThrows;
+import static testing.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import testing.TempDir;
+import testing.Test;
+
+public class WriterPoolTest {
+
+	@Test
+	public void buffersRecordsUntilFlush() throws Exception {
+		try (var dir = new TempDir(); var pool = new WriterPool(4, 1024, 0)) {
+			var file = dir.resolve("Иванов");
+			pool.append(file, bytes("1"));
+			pool.append(file, bytes("2"));
+
+			assertEquals(0L, size(file));
+
+			pool.flush(file);
+
+			assertEquals(List.of("1", "2"), lines(file));
+		}
+	}
+
+	@Test
+	public void flushesBufferWhenThresholdIsReached() throws Exception {
+		try (var dir = new TempDir(); var pool = new WriterPool(4, 8, 0)) {
+			var file = dir.resolve("Иванов");
+			pool.append(file, bytes("1234"));
+			pool.append(file, bytes("5678"));
+
+			// Вторая запись с разделителем не помещается в буфер.
+			assertEquals(List.of("1234"), lines(file));
+
+			pool.append(file, bytes("0123456789"));
+
+			// Запись длиннее буфера пишется сразу, после сброса буфера.
+			assertEquals(List.of("1234", "5678", "0123456789"), lines(file));
+		}
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedFile() throws Exception {
+		try (var dir = new TempDir()) {
+			var pool = new WriterPool(2, 1024, 0);
+			var first = dir.resolve("Иванов");
+			var second = dir.resolve("Петров");
+			var third = dir.resolve("Сидоров");
+			pool.append(first, bytes("1"));
+			pool.append(second, bytes("2"));
+			pool.append(first, bytes("3"));
+			pool.append(third, bytes("4"));
+
+			assertEquals(List.of("2"), lines(second));
+			assertEquals(0L, size(first));
+			assertEquals(0L, size(third));
+
+			pool.append(second, bytes("5"));
+			pool.close();
+
+			assertEquals(List.of("1", "3"), lines(first));
+			assertEquals(List.of("2", "5"), lines(second));
+			assertEquals(List.of("4"), lines(third));
+		}
+	}
+
+	@Test
+	public void reopensFileDeletedWhileOpen() throws Exception {
+		try (var dir = new TempDir(); var pool = new WriterPool(4, 1024, 0)) {
+			var file = dir.resolve("Иванов");
+			pool.append(file, bytes("1"));
+			pool.flush(file);
+			Files.delete(file);
+
+			pool.append(file, bytes("2"));
+			pool.flush(file);
+
+			assertEquals(List.of("2"), lines(file));
+		}
+	}
+
+	@Test
+	public void keepsBufferWhenWriteFails() throws Exception {
+		try (var dir = new TempDir(); var pool = new WriterPool(4, 1024, 0)) {
+			var subdir = Files.createDirectory(dir.resolve("sub"));
+			var file = subdir.resolve("Иванов");
+			pool.append(file, bytes("1"));
+			pool.flush(file);
+			pool.append(file, bytes("2"));
+			pool.append(file, bytes("3"));
+			// Файл нельзя открыть заново: удалена его директория.
+			Files.delete(file);
+			Files.delete(subdir);
+
+			assertThrows(IOException.class, () -> pool.flush(file));
+			assertThrows(IOException.class, () -> pool.release(file));
+
+			Files.createDirectory(subdir);
+			pool.append(file, bytes("4"));
+			pool.flush(file);
+
+			assertEquals(List.of("2", "3", "4"), lines(file));
+		}
+	}
+
+	@Test
+	public void retriesFailedFlushOnClose() throws Exception {
+		try (var dir = new TempDir()) {
+			var pool = new WriterPool(1, 1024, 0);
+			var subdir = Files.createDirectory(dir.resolve("sub"));
+			var first = subdir.resolve("Иванов");
+			var second = dir.resolve("Петров");
+			pool.append(first, bytes("1"));
+			pool.flush(first);
+			pool.append(first, bytes("2"));
+			Files.delete(first);
+			Files.delete(subdir);
+
+			// Вытесняемый файл, буфер которого не удалось сбросить, остаётся
+			// в пуле.
+			assertThrows(IOException.class, () -> pool.append(second, bytes("3")));
+			assertThrows(IOException.class, pool::close);
+
+			Files.createDirectory(subdir);
+			pool.close();
+
+			assertEquals(List.of("2"), lines(first));
+			assertEquals(0L, size(second));
+		}
+	}
+
+	@Test
+	public void periodicFlushFailureDoesNotLoseRecords() throws Exception {
+		try (var dir = new TempDir(); var pool = new WriterPool(4, 1024, 5)) {
+			var subdir = Files.createDirectory(dir.resolve("sub"));
+			var file = subdir.resolve("Иванов");
+			pool.append(file, bytes("1"));
+			pool.flush(file);
+			Files.delete(file);
+			Files.delete(subdir);
+			pool.append(file, bytes("2"));
+			Thread.sleep(50);
+
+			// Ошибка периодического сброса не передаётся дописыванию.
+			pool.append(file, bytes("3"));
+			Files.createDirectory(subdir);
+			pool.flush();
+
+			assertEquals(List.of("2", "3"), lines(file));
+		}
+	}
+
+	@Test
+	public void flushesPeriodically() throws Exception {
+		try (var dir = new TempDir(); var pool = new WriterPool(4, 1024, 10)) {
+			var file = dir.resolve("Иванов");
+			pool.append(file, bytes("1"));
+
+			long deadline = System.nanoTime() + 5_000_000_000L;
+			while (size(file) == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(5);
+			}
+
+			assertEquals(List.of("1"), lines(file));
+		}
+	}
+
+	@Test
+	public void rejectsAppendAfterClose() throws Exception {
+		try (var dir = new TempDir()) {
+			var pool = new WriterPool(4, 1024, 0);
+			pool.append(dir.resolve("Иванов"), bytes("1"));
+			pool.close();
+			pool.close();
+
+			assertThrows(IllegalStateException.class, () -> pool.append(dir.resolve("Иванов"), bytes("2")));
+			assertTrue(Files.exists(dir.resolve("Иванов")), "файл не создан");
+			assertEquals(List.of("1"), lines(dir.resolve("Иванов")));
+		}
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static long size(Path file) throws Exception {
+		return Files.exists(file) ? Files.size(file) : 0;
+	}
+
+	private static List<String> lines(Path file) throws Exception {
+		return Files.readAllLines(file, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,88 @@
+package testing;
+
+import java.util.Objects;
+
+/**
+ * Проверки утверждений тестов; при нарушении утверждения выбрасывается
+ * AssertionError.
+ */
+public final class Assert {
+
+	/**
+	 * Проверяемое действие, которое может выбросить исключение.
+	 */
+	@FunctionalInterface
+	public interface Action {
+		void run() throws Throwable;
+	}
+
+	private Assert() {
+	}
+
+	public static void assertEquals(Object expected, Object actual) {
+		assertEquals(expected, actual, null);
+	}
+
+	public static void assertEquals(Object expected, Object actual, String message) {
+		if (!Objects.equals(expected, actual)) {
+			fail(String.format("%sожидалось <%s>, получено <%s>", prefix(message), expected, actual));
+		}
+	}
+
+	public static void assertEquals(long expected, long actual) {
+		assertEquals(expected, actual, null);
+	}
+
+	public static void assertEquals(long expected, long actual, String message) {
+		if (expected != actual) {
+			fail(String.format("%sожидалось <%d>, получено <%d>", prefix(message), expected, actual));
+		}
+	}
+
+	public static void assertTrue(boolean condition, String message) {
+		if (!condition) {
+			fail(message);
+		}
+	}
+
+	public static void assertFalse(boolean condition, String message) {
+		assertTrue(!condition, message);
+	}
+
+	public static void assertNull(Object actual) {
+		assertEquals(null, actual);
+	}
+
+	public static void assertNotNull(Object actual, String message) {
+		assertTrue(actual != null, message);
+	}
+
+	/**
+	 * Проверяет, что действие выбрасывает исключение заданного класса (либо
+	 * его подкласса).
+	 *
+	 * @return Выброшенное исключение.
+	 */
+	public static <T extends Throwable> T assertThrows(Class<T> expected, Action action) {
+		try {
+			action.run();
+		} catch (Throwable e) {
+			if (expected.isInstance(e)) {
+				return expected.cast(e);
+			}
+			var error = new AssertionError(String.format("ожидалось исключение %s, выброшено %s",
+					expected.getName(), e.getClass().getName()));
+			error.initCause(e);
+			throw error;
+		}
+		throw new AssertionError(String.format("ожидалось исключение %s", expected.getName()));
+	}
+
+	public static void fail(String message) {
+		throw new AssertionError(message);
+	}
+
+	private static String prefix(String message) {
+		return message == null ? "" : message + ": ";
+	}
+}
@@ -0,0 +1,35 @@
+package testing;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/**
+ * Временная директория теста, удаляемая вместе с содержимым при закрытии.
+ */
+public final class TempDir implements AutoCloseable {
+
+	private final Path path;
+
+	public TempDir() throws IOException {
+		this.path = Files.createTempDirectory("userdata-test-");
+	}
+
+	public Path path() {
+		return path;
+	}
+
+	public Path resolve(String other) {
+		return path.resolve(other);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try (var paths = Files.walk(path)) {
+			for (var file : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+}
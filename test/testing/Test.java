@@ -0,0 +1,15 @@
+package testing;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Отмечает метод теста: открытый метод экземпляра без параметров. Для
+ * каждого метода создаётся новый экземпляр класса теста.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Test {
+}
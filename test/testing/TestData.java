@@ -0,0 +1,39 @@
+package testing;
+
+import java.time.LocalDate;
+
+import entities.Gender;
+import entities.UserData;
+
+/**
+ * Данные для тестов.
+ */
+public final class TestData {
+
+	private TestData() {
+	}
+
+	public static UserData userData(String lastName, String phoneNumber) {
+		return userData(lastName, "Иван", "Иванович", LocalDate.of(1990, 2, 1), phoneNumber, Gender.MALE);
+	}
+
+	public static UserData userData(String lastName, String firstName, String middleName, LocalDate birthDate,
+			String phoneNumber, Gender gender) {
+		var userData = new UserData();
+		userData.setLastName(lastName);
+		userData.setFirstName(firstName);
+		userData.setMiddleName(middleName);
+		userData.setBirthDate(birthDate);
+		userData.setPhoneNumber(phoneNumber);
+		userData.setGender(gender);
+		return userData;
+	}
+
+	/**
+	 * @return Строка входных данных, разбор которой даёт запись с заданными
+	 *         фамилией и номером телефона.
+	 */
+	public static String line(String lastName, String phoneNumber) {
+		return lastName + " Иван Иванович 01.02.1990 " + phoneNumber + " m";
+	}
+}
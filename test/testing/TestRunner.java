@@ -0,0 +1,99 @@
+package testing;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Запуск тестов: в директориях пути классов находятся классы, имена которых
+ * оканчиваются на Test, и выполняются их методы, отмеченные аннотацией Test.
+ * <p>
+ * Запуск (из корня репозитория):
+ *
+ * <pre>
+ * javac -encoding UTF-8 -d out $(find src test -name '*.java') &amp;&amp; java -cp out testing.TestRunner [фильтр]
+ * </pre>
+ *
+ * где фильтр -- регулярное выражение для имён тестов вида Класс.метод. Код
+ * завершения -- 1, если какой-либо тест не пройден.
+ */
+public final class TestRunner {
+
+	private static final String TEST_CLASS_SUFFIX = "Test.class";
+
+	public static void main(String[] args) throws Exception {
+		var filter = Pattern.compile(args.length > 0 ? args[0] : "");
+		int passed = 0;
+		var failed = new ArrayList<String>();
+
+		for (var testClass : findTestClasses()) {
+			var methods = new ArrayList<Method>();
+			for (var method : testClass.getDeclaredMethods()) {
+				var name = testClass.getName() + "." + method.getName();
+				if (method.isAnnotationPresent(Test.class) && filter.matcher(name).find()) {
+					methods.add(method);
+				}
+			}
+			methods.sort(Comparator.comparing(Method::getName));
+
+			for (var method : methods) {
+				var name = testClass.getName() + "." + method.getName();
+				long started = System.nanoTime();
+				try {
+					var constructor = testClass.getDeclaredConstructor();
+					constructor.setAccessible(true);
+					method.setAccessible(true);
+					method.invoke(constructor.newInstance());
+					++passed;
+					System.out.printf("OK    %s (%d мс)%n", name, (System.nanoTime() - started) / 1_000_000);
+				} catch (InvocationTargetException e) {
+					failed.add(name);
+					System.out.printf("FAIL  %s%n", name);
+					e.getCause().printStackTrace(System.out);
+				}
+			}
+		}
+
+		System.out.printf("%nТестов пройдено: %d, не пройдено: %d.%n", passed, failed.size());
+		for (var name : failed) {
+			System.out.println("\t" + name);
+		}
+		System.exit(failed.isEmpty() ? 0 : 1);
+	}
+
+	private static List<Class<?>> findTestClasses() throws IOException, ClassNotFoundException {
+		var classes = new ArrayList<Class<?>>();
+		for (var entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			var root = Path.of(entry);
+			if (!Files.isDirectory(root)) {
+				continue;
+			}
+			List<Path> files;
+			try (var paths = Files.walk(root)) {
+				files = paths.filter(file -> file.getFileName().toString().endsWith(TEST_CLASS_SUFFIX))
+						.sorted()
+						.toList();
+			}
+			for (var file : files) {
+				var name = root.relativize(file).toString();
+				name = name.substring(0, name.length() - ".class".length()).replace(File.separatorChar, '.');
+				if (name.contains("$")) {
+					continue;
+				}
+				var testClass = Class.forName(name);
+				if (!Modifier.isAbstract(testClass.getModifiers()) && !testClass.isAnnotation()) {
+					classes.add(testClass);
+				}
+			}
+		}
+		return classes;
+	}
+}